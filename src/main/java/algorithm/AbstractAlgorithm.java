@@ -23,11 +23,15 @@ import static main.Configuration.OUTPUT_DIRECTORY;
 import static main.Configuration.RESTORED_DIRECTORY;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
 import decisionMechanism.DistanceCalculator;
@@ -301,6 +305,34 @@ public abstract class AbstractAlgorithm {
 	return restoredFile;
     }
 
+    /**
+     * Writes a payload, which is streamed out of the encapsulated file, to the
+     * restored payload file, and validates its checksum. The payload stream is
+     * closed.
+     * 
+     * @param restorationMetadata
+     *            restoration metadata of the payload
+     * @param payloadStream
+     * @return restored payload
+     * @throws IOException
+     */
+    protected RestoredFile restorePayload(Properties restorationMetadata, InputStream payloadStream)
+	    throws IOException {
+	RestoredFile restoredPayload = new RestoredFile(
+		RESTORED_DIRECTORY + restorationMetadata.getProperty("payloadName"));
+	FileOutputStream outputStream = new FileOutputStream(restoredPayload);
+	try {
+	    IOUtils.copy(payloadStream, outputStream);
+	} finally {
+	    outputStream.close();
+	    payloadStream.close();
+	}
+	restoredPayload.wasPayload = true;
+	restoredPayload.originalFilePath = restorationMetadata.getProperty("payloadPath");
+	restoredPayload.validateChecksum(restorationMetadata.getProperty("payloadChecksum"));
+	return restoredPayload;
+    }
+
     /**
      * File filter that accepts all file types.
      */
@@ -33,6 +33,8 @@ import static model.Criterion.STANDARDS;
 import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -42,21 +44,43 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
+import javax.swing.JLabel;
+
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
+import codec.ParallelZipWriter;
 import edu.mit.lib.bagit.Bag;
 import edu.mit.lib.bagit.Filler;
 import edu.mit.lib.bagit.Loader;
 import model.RestoredFile;
 import model.Scenario;
+import view.GUIPanel;
 
 /**
  * This Plug-In uses the BagIt implemenation from Richard Rodgers for integrating BagIt into PeriCAT.
+ *
+ * The bag directory is zipped by the {@link ParallelZipWriter}, like the
+ * {@link ZipPackaging} archives, with the deflate level of the configuration
+ * panel.
  */
 public class BagItPackaging extends AbstractAlgorithm {
+    private final CompressionLevelBox compressionLevelBox = new CompressionLevelBox();
 
     public BagItPackaging() {
+	createConfigurationPanel();
+    }
+
+    private void createConfigurationPanel() {
+	panel = new GUIPanel();
+	panel.setLayout(new GridBagLayout());
+	GridBagConstraints constraints = new GridBagConstraints();
+	constraints.gridx = 0;
+	constraints.gridy = 0;
+	constraints.anchor = GridBagConstraints.NORTHWEST;
+	panel.add(new JLabel("Deflate level of zip (0 stores all files):"), constraints);
+	constraints.gridx++;
+	panel.add(compressionLevelBox, constraints);
     }
 
     @Override
@@ -114,7 +138,36 @@ public class BagItPackaging extends AbstractAlgorithm {
 	    InputStream inputStream2 = new FileInputStream("" + payloadFile);
 	    filler = filler.tag("" + payloadFile.getName(), inputStream2);
 	}
-	return filler.toPackage();
+	return zipBag(filler.toDirectory());
+    }
+
+    /**
+     * Zips the bag directory next to the directory, and deletes the directory
+     * afterwards, like {@link Filler#toPackage()} does.
+     */
+    private File zipBag(File bagDirectory) throws IOException {
+	File packageFile = new File(bagDirectory.getParentFile(), bagDirectory.getName() + ".zip");
+	ParallelZipWriter zipWriter = new ParallelZipWriter(packageFile, compressionLevelBox.getCompressionLevel(),
+		Runtime.getRuntime().availableProcessors());
+	try {
+	    addDirectory(zipWriter, bagDirectory, bagDirectory.getName());
+	    zipWriter.finish();
+	} finally {
+	    zipWriter.close();
+	}
+	FileUtils.deleteDirectory(bagDirectory);
+	return packageFile;
+    }
+
+    private void addDirectory(ParallelZipWriter zipWriter, File directory, String path) throws IOException {
+	for (File file : directory.listFiles()) {
+	    String entryName = path + "/" + file.getName();
+	    if (file.isDirectory()) {
+		addDirectory(zipWriter, file, entryName);
+	    } else {
+		zipWriter.addEntry(entryName, file);
+	    }
+	}
     }
 
     @Override
@@ -0,0 +1,56 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package algorithm;
+
+import javax.swing.JComboBox;
+
+/**
+ * Selection of the deflate level of zip archives, which is part of the
+ * configuration panels of the packaging algorithms. Level 0 stores all files
+ * without compression.
+ */
+class CompressionLevelBox extends JComboBox<Integer> {
+    private static final long serialVersionUID = 1L;
+    /** Level of zlib, which balances speed and size */
+    static final int DEFAULT_LEVEL = 6;
+
+    CompressionLevelBox() {
+	super(new Integer[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 });
+	setSelectedItem(DEFAULT_LEVEL);
+    }
+
+    /**
+     * @return the selected deflate level from 0 to 9
+     */
+    int getCompressionLevel() {
+	return (Integer) getSelectedItem();
+    }
+
+    /**
+     * @param compressionLevel
+     *            deflate level from 0 to 9
+     */
+    void setCompressionLevel(int compressionLevel) {
+	if (compressionLevel < 0 || compressionLevel > 9) {
+	    throw new IllegalArgumentException("Invalid deflate level " + compressionLevel);
+	}
+	setSelectedItem(compressionLevel);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package algorithm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.IOUtils;
+
+import controller.PeriCATController;
+
+/**
+ * Runs the external tools (e.g. f5.jar and openstego.jar) that are used by
+ * some of the information encapsulation techniques.
+ *
+ * The output and error streams of a process are read on separate threads while
+ * it runs, so that a tool that writes much output can't block. Processes that
+ * don't finish within the timeout are killed, and processes that exit with a
+ * non-zero exit value are reported as failed. The number of external processes
+ * that run at the same time is limited to the number of processors, because
+ * every tool starts its own Java VM.
+ */
+class ExternalProcessExecutor {
+    /** Default timeout for one call of an external tool, in milliseconds. */
+    static final long DEFAULT_TIMEOUT = 60000;
+
+    private static final Semaphore runningProcesses = new Semaphore(Runtime.getRuntime().availableProcessors(),
+	    true);
+
+    private static final ExecutorService streamReaders = Executors.newCachedThreadPool(new ThreadFactory() {
+	@Override
+	public Thread newThread(Runnable runnable) {
+	    Thread thread = new Thread(runnable, "external-process-reader");
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    });
+
+    /* private constructor: static class */
+    private ExternalProcessExecutor() {
+    }
+
+    /**
+     * Executes the command with the default timeout.
+     *
+     * @param command
+     *            the command and its arguments
+     * @return result of the call
+     * @throws IOException
+     *             if the process can't be started, didn't finish in time, or
+     *             exited with a non-zero exit value
+     */
+    static ExternalProcessResult execute(String[] command) throws IOException {
+	return execute(command, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Executes the command and waits until it finished. The process is killed,
+     * if it takes longer than the timeout.
+     *
+     * @param command
+     *            the command and its arguments
+     * @param timeout
+     *            maximum run time of the process in milliseconds
+     * @return result of the call
+     * @throws IOException
+     *             if the process can't be started, didn't finish in time, or
+     *             exited with a non-zero exit value
+     */
+    static ExternalProcessResult execute(String[] command, long timeout) throws IOException {
+	try {
+	    runningProcesses.acquire();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted while waiting to start " + Arrays.toString(command));
+	}
+	try {
+	    long start = System.nanoTime();
+	    final Process process = new ProcessBuilder(command).start();
+	    process.getOutputStream().close();
+	    Future<byte[]> output = streamReaders.submit(new StreamReader(process.getInputStream()));
+	    Future<byte[]> error = streamReaders.submit(new StreamReader(process.getErrorStream()));
+	    Future<Integer> exitValue = streamReaders.submit(new Callable<Integer>() {
+		@Override
+		public Integer call() throws InterruptedException {
+		    return process.waitFor();
+		}
+	    });
+	    try {
+		ExternalProcessResult result = new ExternalProcessResult(exitValue.get(timeout, TimeUnit.MILLISECONDS),
+			get(output), get(error), (System.nanoTime() - start) / 1000000);
+		printVerbose(command, result);
+		if (result.exitValue != 0) {
+		    throw new IOException("The external process " + Arrays.toString(command)
+			    + " failed with exit value " + result.exitValue + ": " + new String(result.error).trim());
+		}
+		return result;
+	    } catch (TimeoutException e) {
+		throw new IOException("The external process " + Arrays.toString(command) + " didn't finish within "
+			+ timeout + " ms and was killed.");
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw new InterruptedIOException("Interrupted while waiting for " + Arrays.toString(command));
+	    } catch (ExecutionException e) {
+		throw new IOException(e.getCause());
+	    } finally {
+		process.destroy();
+	    }
+	} finally {
+	    runningProcesses.release();
+	}
+    }
+
+    private static byte[] get(Future<byte[]> stream) throws InterruptedException, IOException {
+	try {
+	    return stream.get();
+	} catch (ExecutionException e) {
+	    throw new IOException(e.getCause());
+	}
+    }
+
+    private static void printVerbose(String[] command, ExternalProcessResult result) {
+	if (PeriCATController.verbose) {
+	    System.out.println("External process " + Arrays.toString(command) + " finished with exit value "
+		    + result.exitValue + " after " + result.latency + " ms.");
+	}
+    }
+
+    /**
+     * Reads a stream of the process completely.
+     */
+    private static class StreamReader implements Callable<byte[]> {
+	private final InputStream stream;
+
+	StreamReader(InputStream stream) {
+	    this.stream = stream;
+	}
+
+	@Override
+	public byte[] call() throws IOException {
+	    try {
+		return IOUtils.toByteArray(stream);
+	    } finally {
+		stream.close();
+	    }
+	}
+    }
+
+    /**
+     * Exit value, output and latency of one call of an external tool.
+     */
+    static class ExternalProcessResult {
+	final int exitValue;
+	final byte[] output;
+	final byte[] error;
+	/** run time of the process in milliseconds */
+	final long latency;
+
+	ExternalProcessResult(int exitValue, byte[] output, byte[] error, long latency) {
+	    this.exitValue = exitValue;
+	    this.output = output;
+	    this.error = error;
+	    this.latency = latency;
+	}
+    }
+}
@@ -35,7 +35,6 @@ import static model.Criterion.VISIBILITY;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -102,8 +101,11 @@ public class F5Steganography extends AbstractAlgorithm {
 	String carrier = getCarrier(carrierFile);
 	String payload = getPayloadPathString(carrierFile, payloadList.get(0));
 	String output = getOutputString(carrierFile);
-	encapsulate(carrier, payload, output);
-	FileUtils.forceDelete(new File(payload)); // tmp
+	try {
+	    encapsulate(carrier, payload, output);
+	} finally {
+	    FileUtils.forceDelete(new File(payload)); // tmp
+	}
 	File outputFile = new File(output);
 	if (outputFile.isFile()) {
 	    return outputFile;
@@ -112,17 +114,9 @@ public class F5Steganography extends AbstractAlgorithm {
     }
 
     private void encapsulate(String carrier, String payload, String output) throws IOException {
-	try {
-	    String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "f5.jar", "e", "-e", payload, carrier,
-		    output };
-	    Process process = Runtime.getRuntime().exec(args);
-	    process.waitFor();
-	    InputStream inputStream = process.getInputStream();
-	    byte b[] = new byte[inputStream.available()];
-	    inputStream.read(b, 0, b.length);
-	} catch (InterruptedException e) {
-	    e.printStackTrace();
-	}
+	String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "f5.jar", "e", "-e", payload, carrier,
+		output };
+	ExternalProcessExecutor.execute(args);
     }
 
     private String getCarrier(File carrierFile) {
@@ -147,7 +141,12 @@ public class F5Steganography extends AbstractAlgorithm {
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
 	File tmpPayload = new File("tmp");
 	tmpPayload.delete(); // F5 won't override existing files!
-	restore("" + tmpPayload.toPath(), "" + carrier.toPath());
+	try {
+	    restore("" + tmpPayload.toPath(), "" + carrier.toPath());
+	} catch (IOException e) {
+	    FileUtils.deleteQuietly(tmpPayload);
+	    throw e;
+	}
 	RestoredFile copiedCarrier = new RestoredFile(RESTORED_DIRECTORY + carrier.getName());
 	copiedCarrier.wasCarrier = true;
 	copiedCarrier.checksumValid = false;
@@ -177,16 +176,8 @@ public class F5Steganography extends AbstractAlgorithm {
     }
 
     private void restore(String payload, String carrier) throws IOException {
-	try {
-	    Process process = Runtime.getRuntime()
-		    .exec(new String[] { "java", "-jar", LIBRARY_DIRECTORY + "f5.jar", "x", "-e", payload, carrier });
-	    process.waitFor();
-	    InputStream inputStream = process.getInputStream();
-	    byte b[] = new byte[inputStream.available()];
-	    inputStream.read(b, 0, b.length);
-	} catch (InterruptedException e) {
-	    e.printStackTrace();
-	}
+	String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "f5.jar", "x", "-e", payload, carrier };
+	ExternalProcessExecutor.execute(args);
     }
 
     @Override
@@ -35,12 +35,12 @@ import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
 import java.awt.Color;
-import java.awt.Graphics;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
@@ -49,8 +49,14 @@ import java.util.Properties;
 import javax.imageio.ImageIO;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
+import codec.ImageRegionReader;
+import codec.PNGEncoder;
+import codec.PNGRegionExtractor;
+import codec.RasterOperations;
+import codec.StackedPNGWriter;
 import model.PayloadSegment;
 import model.RestoredFile;
 import model.Scenario;
@@ -70,6 +76,8 @@ import model.Scenario;
 public class ImageImageFrameExpanding extends AbstractAlgorithm {
 
     protected final int METADATA_HEIGHT = 200;
+    /** Header comment of each entry of the restoration metadata table */
+    private static final String TABLE_ENTRY_COMMENT = "restoration metadata of a payload image";
     private final List<File> tmpFiles = new ArrayList<File>();
 
     /*
@@ -89,6 +97,16 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
     /**
      * Attach all payload images to the carrier image.
      * 
+     * The payload images are appended one below the other at the bottom of
+     * the carrier image. The restoration metadata of all payload images,
+     * including their positions, is stored in one table, which is embedded in
+     * a single restoration metadata image at the bottom of the output image.
+     * 
+     * The sizes of all images are read from the image headers in advance.
+     * Then the carrier, the payload images and the restoration metadata image
+     * are streamed row by row into the output PNG image, so that neither the
+     * input images nor the output image are held in memory.
+     * 
      * @param carrier
      * @param payloadList
      * @return encapsulated file
@@ -96,10 +114,35 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      */
     private File appendAllPayload(File carrier, List<File> payloadList) throws IOException {
 	File outputFile = getOutputFile(carrier);
-	FileUtils.copyFile(carrier, outputFile);
+	Dimension carrierSize;
+	try {
+	    carrierSize = getImageSize(carrier);
+	} catch (IOException e) {
+	    return outputFile;// "This wan't an image! Return."
+	}
+	List<File> images = new ArrayList<File>();
+	images.add(carrier);
+	List<Properties> restorationMetadataTable = new ArrayList<Properties>();
+	int outputWidth = carrierSize.width;
+	int payloadY = carrierSize.height;
 	for (File payload : payloadList) {
-	    append(outputFile, payload);
+	    Dimension payloadSize;
+	    try {
+		payloadSize = getImageSize(payload);
+	    } catch (IOException e) {
+		continue;
+	    }
+	    images.add(payload);
+	    restorationMetadataTable.add(getRestorationMetadata(carrier, carrierSize, payload,
+		    new Rectangle(0, payloadY, payloadSize.width, payloadSize.height)));
+	    outputWidth = Math.max(outputWidth, payloadSize.width);
+	    payloadY += payloadSize.height;
+	}
+	if (restorationMetadataTable.isEmpty()) {
+	    return outputFile;
 	}
+	images.add(getMetadataImageFile(restorationMetadataTable, outputWidth));
+	StackedPNGWriter.write(images, outputFile);
 	return outputFile;
     }
 
@@ -113,85 +156,109 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      * @throws IOException
      */
     public File encapsulate(File carrier, File payload) throws IOException {
-	File outputFile = getOutputFile(carrier);
-	FileUtils.copyFile(carrier, outputFile);
-	append(outputFile, payload);
+	List<File> payloadList = new ArrayList<File>();
+	payloadList.add(payload);
+	File outputFile = appendAllPayload(carrier, payloadList);
+	clearTmpFiles();
 	return outputFile;
     }
 
     /**
-     * This method appends the payload image to the bottom of the carrier image.
-     * Furthermore restoration information is added.
+     * Append restoration metadata. Size of carrier and payload files is added.
+     * The sizes are read from the image headers, without decoding the images.
      * 
      * @param carrier
-     *            The file where the payload should be added
      * @param payload
+     * @return metadata image
      * @throws IOException
      */
-    private void append(File carrier, File payload) throws IOException {
-	BufferedImage carrierImage = ImageIO.read(carrier);
-	BufferedImage payloadImage = ImageIO.read(payload);
-	if (carrierImage == null || payloadImage == null) {
-	    return;// "This wan't an image! Return."
-	}
-	BufferedImage outputImage = getOutputImage(carrierImage, payloadImage);
-	BufferedImage metadataImage = getMetadataImage(carrier, payload);
-	Graphics graphics = outputImage.getGraphics();
-	graphics.drawImage(carrierImage, 0, 0, null);
-	graphics.drawImage(payloadImage, 0, carrierImage.getHeight(), null);
-	graphics.drawImage(metadataImage, 0, carrierImage.getHeight() + payloadImage.getHeight(), null);
-	writeImage(carrier, outputImage);
-    }
-
-    private BufferedImage getOutputImage(BufferedImage carrierImage, BufferedImage payloadImage) {
-	int outputWidth = Math.max(carrierImage.getWidth(), payloadImage.getWidth());
-	int outputHeight = carrierImage.getHeight() + payloadImage.getHeight() + METADATA_HEIGHT;
-	return new BufferedImage(outputWidth, outputHeight, carrierImage.getType());
+    protected BufferedImage getMetadataImage(File carrier, File payload) throws IOException {
+	Dimension carrierSize = getImageSize(carrier);
+	Dimension payloadSize = getImageSize(payload);
+	List<Properties> restorationMetadataTable = new ArrayList<Properties>();
+	restorationMetadataTable.add(getRestorationMetadata(carrier, carrierSize, payload,
+		new Rectangle(0, carrierSize.height, payloadSize.width, payloadSize.height)));
+	return ImageIO
+		.read(getMetadataImageFile(restorationMetadataTable, Math.max(carrierSize.width, payloadSize.width)));
     }
 
     /**
-     * Append restoration metadata. Size of carrier and payload files is added.
+     * Returns the restoration metadata of one payload image: the metadata of
+     * a {@link PayloadSegment}, the size of the original carrier, and the
+     * position and size of the payload image in the output image.
      * 
      * @param carrier
+     * @param carrierSize
      * @param payload
-     * @return metadata image
+     * @param payloadBounds
+     * @return restoration metadata
+     */
+    private Properties getRestorationMetadata(File carrier, Dimension carrierSize, File payload,
+	    Rectangle payloadBounds) {
+	PayloadSegment payloadSegment = new PayloadSegment(carrier, payload, this);
+	// add height and width of carrier and payload:
+	payloadSegment.addOptionalProperty("carrierWidth", "" + carrierSize.width);
+	payloadSegment.addOptionalProperty("carrierHeight", "" + carrierSize.height);
+	payloadSegment.addOptionalProperty("payloadY", "" + payloadBounds.y);
+	payloadSegment.addOptionalProperty("payloadWidth", "" + payloadBounds.width);
+	payloadSegment.addOptionalProperty("payloadHeight", "" + payloadBounds.height);
+	return payloadSegment.getRestorationMetadata();
+    }
+
+    /**
+     * Creates the restoration metadata image, in which the restoration
+     * metadata table of all payload images is embedded.
+     * 
+     * @param restorationMetadataTable
+     * @param width
+     *            width of the output image
+     * @return temporary metadata image file
      * @throws IOException
      */
-    protected BufferedImage getMetadataImage(File carrier, File payload) throws IOException {
-	BufferedImage carrierBuffered = ImageIO.read(carrier);
-	BufferedImage payloadBuffered = ImageIO.read(payload);
-	BufferedImage metadataImage = new BufferedImage(
-		Math.max(carrierBuffered.getWidth(), payloadBuffered.getWidth()), METADATA_HEIGHT,
-		carrierBuffered.getType());
+    private File getMetadataImageFile(List<Properties> restorationMetadataTable, int width) throws IOException {
+	BufferedImage metadataImage = new BufferedImage(width, METADATA_HEIGHT, BufferedImage.TYPE_INT_RGB);
 	colorizeImage(metadataImage, Color.blue.getRGB());
 	File metadataImageFile = new File(OUTPUT_DIRECTORY + "metadataImage.png");
 	writeImage(metadataImageFile, metadataImage);
+	tmpFiles.add(metadataImageFile);
 	File metadataFile = new File(OUTPUT_DIRECTORY + "tmpMetadataText.txt");
 	tmpFiles.add(metadataFile);
-	PayloadSegment payloadSegment = new PayloadSegment(carrier, payload, this);
-	// add height and width of carrier and payload:
-	payloadSegment.addOptionalProperty("carrierWidth", "" + carrierBuffered.getWidth());
-	payloadSegment.addOptionalProperty("carrierHeight", "" + carrierBuffered.getHeight());
-	payloadSegment.addOptionalProperty("payloadWidth", "" + payloadBuffered.getWidth());
-	payloadSegment.addOptionalProperty("payloadHeight", "" + payloadBuffered.getHeight());
-	byte[] metadata = payloadSegment.getRestorationMetadataBytes();
-	FileUtils.writeByteArrayToFile(metadataFile, metadata);
+	ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+	for (Properties restorationMetadata : restorationMetadataTable) {
+	    restorationMetadata.store(metadata, TABLE_ENTRY_COMMENT);
+	}
+	FileUtils.writeByteArrayToFile(metadataFile, metadata.toByteArray());
 	OpenStegoRandomLSBSteganography lsbAlgorithm = new OpenStegoRandomLSBSteganography();
 	File tmpOutputFile = lsbAlgorithm.encapsulate(metadataImageFile, metadataFile);
+	if (tmpOutputFile == null) {
+	    throw new IOException("The restoration metadata couldn't be embedded.");
+	}
 	tmpFiles.add(tmpOutputFile);
-	metadataImage = ImageIO.read(tmpOutputFile);
-	return metadataImage;
+	return tmpOutputFile;
+    }
+
+    /**
+     * Returns the size of an image, which is read from the image header.
+     * 
+     * @param image
+     * @return width and height of the image
+     * @throws IOException
+     *             if the file isn't a readable image
+     */
+    private Dimension getImageSize(File image) throws IOException {
+	ImageRegionReader reader = new ImageRegionReader(image);
+	try {
+	    return reader.getBounds().getSize();
+	} finally {
+	    reader.close();
+	}
     }
 
     /**
      * Colorises the image. (The metadata image is blue.)
      */
     private void colorizeImage(BufferedImage image, int color) {
-	for (int x = 0; x < image.getWidth(); x++) {
-	    for (int y = 0; y < METADATA_HEIGHT; y++) {
-		image.setRGB(x, y, color);
-	    }
-	}
+	RasterOperations.fill(image, color);
     }
 
     /*
@@ -200,58 +267,113 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
 
     /**
      * Cuts away the payload from the carrier to restore the carrier. Recovers
-     * the payload file. This method calls a recurse method, to recover all
-     * attached payload files.
+     * all attached payload files.
      * 
      * The encapsulated data image consists of the carrier image, the payload
-     * image, and the restoration metadata image.
+     * images, and the restoration metadata image. The restoration metadata
+     * table is read from the restoration metadata image, then the carrier and
+     * all payload images are extracted in one pass over the encapsulated
+     * image.
+     * 
+     * Images which were encapsulated by former versions of this algorithm
+     * consist of nested frames, each with its own restoration metadata image.
+     * They are restored frame by frame.
      */
     @Override
     public List<RestoredFile> restore(File carrier) throws IOException {
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
-	Properties restorationMetadata = getRestorationMetadata(carrier);
-	if (payloadAttached(restorationMetadata)) {
-	    restoredFiles.addAll(recursivelyRestoreAll(carrier, restorationMetadata));
+	ImageRegionReader encapsulatedImage;
+	try {
+	    encapsulatedImage = new ImageRegionReader(carrier);
+	} catch (IOException e) {
+	    return restoredFiles;// "This wan't an image! Return."
+	}
+	try {
+	    List<Properties> restorationMetadataTable = getRestorationMetadataTable(encapsulatedImage,
+		    encapsulatedImage.getBounds());
+	    if (isTable(restorationMetadataTable)) {
+		restoredFiles.addAll(restoreAll(carrier, restorationMetadataTable));
+	    } else if (!restorationMetadataTable.isEmpty()) {
+		restoredFiles.addAll(restoreNestedFrames(encapsulatedImage, restorationMetadataTable.get(0)));
+	    }
 	    updateRelatedFilesMetadata(restoredFiles);
+	} finally {
+	    encapsulatedImage.close();
+	    clearTmpFiles();
 	}
-	clearTmpFiles();
 	return restoredFiles;
     }
 
     /**
-     * Recursively restores all payload files, and adds the last restored
-     * carrier to the restored files list.
+     * Extracts all payload images and the carrier image, which are listed in
+     * the restoration metadata table, in one pass over the encapsulated image.
      * 
-     * @param encapsulatedImages
-     * @param restorationMetadata
-     * @return restored files
+     * @param encapsulatedImage
+     * @param restorationMetadataTable
+     * @return restored files, the carrier is the last one
      * @throws IOException
      */
-    private List<RestoredFile> recursivelyRestoreAll(File encapsulatedImages, Properties restorationMetadata)
+    private List<RestoredFile> restoreAll(File encapsulatedImage, List<Properties> restorationMetadataTable)
 	    throws IOException {
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
-	restoredFiles.add(restorePayload(encapsulatedImages, restorationMetadata));
-	RestoredFile carrier = restoreCarrier(encapsulatedImages, restorationMetadata);
-	// There are more payload files, if there is further valid restoration
-	// metadata attached -> one more iteration:
-	Properties furtherMetadata = getRestorationMetadata(carrier);
-	if (payloadAttached(furtherMetadata)) {
-	    restoredFiles.addAll(recursivelyRestoreAll(carrier, furtherMetadata));
-	} else { // last carrier! -> break
-	    restoredFiles.add(carrier);
+	List<Rectangle> regions = new ArrayList<Rectangle>();
+	for (Properties restorationMetadata : restorationMetadataTable) {
+	    restoredFiles.add(getRestoredPayload(restorationMetadata));
+	    regions.add(getPayloadBounds(restorationMetadata));
 	}
+	Properties carrierMetadata = restorationMetadataTable.get(0);
+	restoredFiles.add(getRestoredCarrier(carrierMetadata));
+	regions.add(getCarrierBounds(carrierMetadata));
+	PNGRegionExtractor.extract(encapsulatedImage, regions, restoredFiles);
 	return restoredFiles;
     }
 
     /**
-     * There is another payload file attached, if there is valid restoration
-     * metadata.
+     * Restores the nested frames of an image, which was encapsulated by a
+     * former version of this algorithm, and adds the last restored carrier to
+     * the restored files list. The frames are processed from the outside to
+     * the inside: the carrier part of a frame is the next frame, whose
+     * restoration metadata image is at its bottom.
      * 
+     * @param encapsulatedImage
      * @param restorationMetadata
-     * @return true if another payload file is attached
+     *            metadata of the outermost frame
+     * @return restored files
+     * @throws IOException
      */
-    private boolean payloadAttached(Properties restorationMetadata) {
-	return restorationMetadata != null && restorationMetadata.size() > 0;
+    private List<RestoredFile> restoreNestedFrames(ImageRegionReader encapsulatedImage,
+	    Properties restorationMetadata) throws IOException {
+	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
+	Properties frameMetadata = restorationMetadata;
+	while (true) {
+	    restoredFiles.add(restorePayload(encapsulatedImage, frameMetadata));
+	    // There are more payload files, if there is further valid
+	    // restoration metadata attached to the carrier part:
+	    List<Properties> furtherMetadata = getRestorationMetadataTable(encapsulatedImage,
+		    getCarrierBounds(frameMetadata));
+	    if (furtherMetadata.isEmpty()) { // last carrier! -> break
+		restoredFiles.add(restoreCarrier(encapsulatedImage, frameMetadata));
+		return restoredFiles;
+	    }
+	    frameMetadata = furtherMetadata.get(0);
+	}
+    }
+
+    /**
+     * The restoration metadata is a table of all payload images, if it
+     * contains the positions of the payload images. Otherwise it is the
+     * metadata of one nested frame.
+     * 
+     * @param restorationMetadataTable
+     * @return true if the payload images are stored below each other
+     */
+    private boolean isTable(List<Properties> restorationMetadataTable) {
+	for (Properties restorationMetadata : restorationMetadataTable) {
+	    if (restorationMetadata.getProperty("payloadY") == null) {
+		return false;
+	    }
+	}
+	return !restorationMetadataTable.isEmpty();
     }
 
     /**
@@ -274,7 +396,8 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      * This method returns the restoration metadata as {@link Properties} class.
      * The restoration metadata contains among others the height and width of
      * the original carrier and payload images, which is necessary to restore
-     * them.
+     * them. If more than one payload image is attached, the restoration
+     * metadata of the last one is returned.
      * 
      * @param encapsulatedData
      * @return Should return null, if no valid restoration data is available!
@@ -282,22 +405,60 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      */
     protected Properties getRestorationMetadata(File encapsulatedData) {
 	try {
-	    File embeddedRestorationMetadata = restoreRestorationMetadataImage(encapsulatedData);
+	    ImageRegionReader encapsulatedImage = new ImageRegionReader(encapsulatedData);
+	    try {
+		List<Properties> restorationMetadataTable = getRestorationMetadataTable(encapsulatedImage,
+			encapsulatedImage.getBounds());
+		if (restorationMetadataTable.isEmpty()) {
+		    return null;
+		}
+		return restorationMetadataTable.get(restorationMetadataTable.size() - 1);
+	    } finally {
+		encapsulatedImage.close();
+	    }
+	} catch (IOException e) {
+	    return null;
+	}
+    }
+
+    /**
+     * Returns the restoration metadata table, which is embedded in the
+     * restoration metadata image at the bottom of the frame. The table has one
+     * entry for each payload image.
+     * 
+     * @param encapsulatedImage
+     * @param frame
+     *            region of the encapsulated image which contains the frame
+     * @return restoration metadata table. Is empty, if no valid restoration
+     *         data is available!
+     */
+    private List<Properties> getRestorationMetadataTable(ImageRegionReader encapsulatedImage, Rectangle frame) {
+	List<Properties> restorationMetadataTable = new ArrayList<Properties>();
+	try {
+	    File embeddedRestorationMetadata = restoreRestorationMetadataImage(encapsulatedImage, frame);
+	    if (embeddedRestorationMetadata == null) {
+		return restorationMetadataTable;
+	    }
 	    OpenStegoRandomLSBSteganography lsbAlgorithm = new OpenStegoRandomLSBSteganography();
 	    List<RestoredFile> restoredFiles = lsbAlgorithm.restore(embeddedRestorationMetadata);
 	    tmpFiles.addAll(restoredFiles);
 	    RestoredFile restorationMetadata = getRestorationMetadataFile(restoredFiles);
 	    if (restorationMetadata == null) {
-		return null;
+		return restorationMetadataTable;
+	    }
+	    // Each entry was stored with its own header comment:
+	    String table = FileUtils.readFileToString(restorationMetadata, "ISO-8859-1");
+	    for (String entry : table.split("(?m)^#" + TABLE_ENTRY_COMMENT + "$")) {
+		Properties metadata = new Properties();
+		metadata.load(new StringReader(entry));
+		if (metadata.size() > 0) {
+		    restorationMetadataTable.add(metadata);
+		}
 	    }
-	    InputStream inputStream = new FileInputStream(restorationMetadata);
-	    Properties metadata = new Properties();
-	    metadata.load(inputStream);
-	    inputStream.close();
-	    return metadata;
 	} catch (Exception e) {
+	    restorationMetadataTable.clear();
 	}
-	return null;
+	return restorationMetadataTable;
     }
 
     /**
@@ -314,21 +475,41 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      */
     protected File restoreRestorationMetadataImage(File encapsulatedData) {
 	try {
-	    BufferedImage encapsulatedImage = ImageIO.read(encapsulatedData);
-	    if (encapsulatedImage.getHeight() < METADATA_HEIGHT) {
-		return null;
+	    ImageRegionReader encapsulatedImage = new ImageRegionReader(encapsulatedData);
+	    try {
+		return restoreRestorationMetadataImage(encapsulatedImage, encapsulatedImage.getBounds());
+	    } finally {
+		encapsulatedImage.close();
 	    }
-	    BufferedImage restorationMetadataBuffered = encapsulatedImage.getSubimage(0,
-		    encapsulatedImage.getHeight() - METADATA_HEIGHT, encapsulatedImage.getWidth(), METADATA_HEIGHT);
-	    File embeddedRestorationMetadata = new File("tmpRestorationMetadata.png");
-	    tmpFiles.add(embeddedRestorationMetadata);
-	    writeImage(embeddedRestorationMetadata, restorationMetadataBuffered);
-	    return embeddedRestorationMetadata;
 	} catch (IOException e) {
 	    return null;
 	}
     }
 
+    /**
+     * Decodes only the restoration metadata image at the bottom of the frame,
+     * and writes it to a temporary file for the lsb steganography algorithm.
+     * 
+     * @param encapsulatedImage
+     * @param frame
+     *            region of the encapsulated image which contains the frame
+     * @return image with embedded restoration data, or null if the frame is too
+     *         small to contain one
+     * @throws IOException
+     */
+    private File restoreRestorationMetadataImage(ImageRegionReader encapsulatedImage, Rectangle frame)
+	    throws IOException {
+	if (frame.height < METADATA_HEIGHT) {
+	    return null;
+	}
+	BufferedImage restorationMetadataBuffered = encapsulatedImage.read(new Rectangle(frame.x,
+		frame.y + frame.height - METADATA_HEIGHT, frame.width, METADATA_HEIGHT));
+	File embeddedRestorationMetadata = new File("tmpRestorationMetadata.png");
+	tmpFiles.add(embeddedRestorationMetadata);
+	writeImage(embeddedRestorationMetadata, restorationMetadataBuffered);
+	return embeddedRestorationMetadata;
+    }
+
     /**
      * The payload file of the restored files is the restoration metadata file.
      * 
@@ -358,13 +539,40 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      * @throws IOException
      */
     protected RestoredFile restoreCarrier(File encapsulatedImage, Properties restorationMetadata) throws IOException {
-	BufferedImage encapsulatedImageBuffered = ImageIO.read(encapsulatedImage);
-	int carrierWidth = Integer.parseInt(restorationMetadata.getProperty("carrierWidth"));
-	int carrierHeight = Integer.parseInt(restorationMetadata.getProperty("carrierHeight"));
-	BufferedImage carrierBuffered = encapsulatedImageBuffered.getSubimage(0, 0, carrierWidth, carrierHeight);
+	ImageRegionReader reader = new ImageRegionReader(encapsulatedImage);
+	try {
+	    return restoreCarrier(reader, restorationMetadata);
+	} finally {
+	    reader.close();
+	}
+    }
+
+    /**
+     * Decodes only the carrier region of the frame, and writes it to the
+     * restored carrier file.
+     * 
+     * @param encapsulatedImage
+     * @param restorationMetadata
+     * @return carrier image
+     * @throws IOException
+     */
+    private RestoredFile restoreCarrier(ImageRegionReader encapsulatedImage, Properties restorationMetadata)
+	    throws IOException {
+	BufferedImage carrierBuffered = encapsulatedImage.read(getCarrierBounds(restorationMetadata));
+	RestoredFile carrier = getRestoredCarrier(restorationMetadata);
+	writeImage(carrier, carrierBuffered);
+	return carrier;
+    }
+
+    /**
+     * Creates the restored carrier file and sets its restoration attributes.
+     * 
+     * @param restorationMetadata
+     * @return restored carrier, without content
+     */
+    private RestoredFile getRestoredCarrier(Properties restorationMetadata) {
 	String originalCarrierPath = restorationMetadata.getProperty("carrierPath");
 	RestoredFile carrier = new RestoredFile(RESTORED_DIRECTORY + Paths.get(originalCarrierPath).getFileName());
-	writeImage(carrier, carrierBuffered);
 	carrier.wasCarrier = true;
 	carrier.wasPayload = false;
 	carrier.checksumValid = false;
@@ -384,15 +592,40 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      * @throws IOException
      */
     protected RestoredFile restorePayload(File encapsulatedImage, Properties restorationMetadata) throws IOException {
-	BufferedImage encapsulatedImageBuffered = ImageIO.read(encapsulatedImage);
-	int payloadWidth = Integer.parseInt(restorationMetadata.getProperty("payloadWidth"));
-	int payloadHeight = Integer.parseInt(restorationMetadata.getProperty("payloadHeight"));
-	int carrierHeight = Integer.parseInt(restorationMetadata.getProperty("carrierHeight"));
-	BufferedImage payloadBuffered = encapsulatedImageBuffered.getSubimage(0, carrierHeight, payloadWidth,
-		payloadHeight);
+	ImageRegionReader reader = new ImageRegionReader(encapsulatedImage);
+	try {
+	    return restorePayload(reader, restorationMetadata);
+	} finally {
+	    reader.close();
+	}
+    }
+
+    /**
+     * Decodes only the payload region of the frame, and writes it to the
+     * restored payload file.
+     * 
+     * @param encapsulatedImage
+     * @param restorationMetadata
+     * @return payload image
+     * @throws IOException
+     */
+    private RestoredFile restorePayload(ImageRegionReader encapsulatedImage, Properties restorationMetadata)
+	    throws IOException {
+	BufferedImage payloadBuffered = encapsulatedImage.read(getPayloadBounds(restorationMetadata));
+	RestoredFile payload = getRestoredPayload(restorationMetadata);
+	writeImage(payload, payloadBuffered);
+	return payload;
+    }
+
+    /**
+     * Creates the restored payload file and sets its restoration attributes.
+     * 
+     * @param restorationMetadata
+     * @return restored payload, without content
+     */
+    private RestoredFile getRestoredPayload(Properties restorationMetadata) {
 	RestoredFile payload = new RestoredFile(
 		RESTORED_DIRECTORY + Paths.get(restorationMetadata.getProperty("payloadPath")).getFileName());
-	writeImage(payload, payloadBuffered);
 	payload.wasPayload = true;
 	payload.wasCarrier = false;
 	// The restored file attributes are not important here,
@@ -401,6 +634,27 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
 	return payload;
     }
 
+    /**
+     * The carrier is at the top left of the image.
+     */
+    private Rectangle getCarrierBounds(Properties restorationMetadata) {
+	int carrierWidth = Integer.parseInt(restorationMetadata.getProperty("carrierWidth"));
+	int carrierHeight = Integer.parseInt(restorationMetadata.getProperty("carrierHeight"));
+	return new Rectangle(0, 0, carrierWidth, carrierHeight);
+    }
+
+    /**
+     * The payload is at its stored position. In nested frames it is directly
+     * below the carrier part of the frame.
+     */
+    private Rectangle getPayloadBounds(Properties restorationMetadata) {
+	int payloadWidth = Integer.parseInt(restorationMetadata.getProperty("payloadWidth"));
+	int payloadHeight = Integer.parseInt(restorationMetadata.getProperty("payloadHeight"));
+	int payloadY = Integer.parseInt(
+		restorationMetadata.getProperty("payloadY", restorationMetadata.getProperty("carrierHeight")));
+	return new Rectangle(0, payloadY, payloadWidth, payloadHeight);
+    }
+
     /**
      * Write a buffered output image to the output file
      * 
@@ -409,10 +663,7 @@ public class ImageImageFrameExpanding extends AbstractAlgorithm {
      * @throws IOException
      */
     private void writeImage(File output, BufferedImage outputImage) throws IOException {
-	if (!output.exists()) {
-	    output.createNewFile();
-	}
-	ImageIO.write(outputImage, "png", output);
+	PNGEncoder.getDefault().write(outputImage, output);
     }
 
     /**
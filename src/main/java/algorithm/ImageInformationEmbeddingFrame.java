@@ -21,6 +21,7 @@ package algorithm;
 
 import static main.Configuration.LIBRARY_DIRECTORY;
 import static main.Configuration.OUTPUT_DIRECTORY;
+import static main.Configuration.RESTORED_DIRECTORY;
 import static model.Criterion.CARRIER_PROCESSABILITY;
 import static model.Criterion.CARRIER_RESTORABILITY;
 import static model.Criterion.COMPRESSION;
@@ -33,19 +34,27 @@ import static model.Criterion.STANDARDS;
 import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import javax.imageio.ImageIO;
+import javax.swing.ButtonGroup;
+import javax.swing.JLabel;
+import javax.swing.JRadioButton;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
+import codec.ImageRegionReader;
+import codec.PNGEncoder;
+import codec.PixelBytePacking;
+import codec.PixelBytePacking.UnpackedFile;
 import model.RestoredFile;
 import model.Scenario;
+import view.GUIPanel;
 
 /**
  * This technique works similar to closing credits of a movie, but for images. It is developed by Anna Eggers.
@@ -66,6 +75,42 @@ import model.Scenario;
  */
 public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
     private final List<File> tmpFiles = new ArrayList<File>();
+    private final JRadioButton lsbEmbeddingButton = new JRadioButton("LSB steganography");
+    final JRadioButton densePackingButton = new JRadioButton("dense packing");
+
+    public ImageInformationEmbeddingFrame() {
+	createConfigurationGui();
+    }
+
+    private void createConfigurationGui() {
+	initButtons();
+	panel = new GUIPanel();
+	panel.setLayout(new GridBagLayout());
+	GridBagConstraints constraints = new GridBagConstraints();
+	constraints.gridx = 0;
+	constraints.gridy = 0;
+	constraints.anchor = GridBagConstraints.NORTHWEST;
+	panel.add(new JLabel("<html><h2>Payload embedding options</h2></html>"), constraints);
+	constraints.gridy++;
+	panel.add(new JLabel("Embed payload bytes with (default LSB steganography):"), constraints);
+	constraints.gridx++;
+	panel.add(lsbEmbeddingButton, constraints);
+	constraints.gridx++;
+	panel.add(densePackingButton, constraints);
+	constraints.gridx = 0;
+	constraints.gridy++;
+    }
+
+    /**
+     * Buttons to choose between LSB steganography and dense packing of the
+     * payload bytes.
+     */
+    private void initButtons() {
+	ButtonGroup buttonGroupEmbedding = new ButtonGroup();
+	buttonGroupEmbedding.add(lsbEmbeddingButton);
+	buttonGroupEmbedding.add(densePackingButton);
+	lsbEmbeddingButton.setSelected(true);
+    }
 
     /*
      * ******* ENCAPSULATION *************
@@ -84,7 +129,8 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
     /**
      * Will create an image for each payload file, which has the same width as
      * the carrier file, in which the payload file will be embedded using the
-     * LSB steganography algorithm.
+     * LSB steganography algorithm. If dense packing is selected, the payload
+     * bytes are stored directly in the pixels of the image instead.
      * 
      * Appends the images at the bottom of the carrier image.
      * 
@@ -93,10 +139,15 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
      * @throws IOException
      */
     private File appendAllPayload(File carrier, List<File> payloadList) throws IOException {
+	int width = getImageWidth(carrier);
 	List<File> embeddedPayloadFiles = new ArrayList<File>();
 	for (File payload : payloadList) {
-	    BufferedImage payloadImage = createPayloadImage(carrier, payload);
-	    embeddedPayloadFiles.add(embedPayload(payloadImage, payload));
+	    if (densePackingButton.isSelected()) {
+		embeddedPayloadFiles.add(packPayload(width, payload));
+	    } else {
+		BufferedImage payloadImage = createPayloadImage(width, payload);
+		embeddedPayloadFiles.add(embedPayload(payloadImage, payload));
+	    }
 	}
 	ImageImageFrameExpanding imageAlgorithm = new ImageImageFrameExpanding();
 	tmpFiles.addAll(embeddedPayloadFiles);
@@ -104,18 +155,35 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
     }
 
     /**
-     * Create empty image with enough capacity to embed the payload
+     * Returns the width of the carrier image, which is read from the image
+     * header.
      * 
      * @param carrier
+     * @return width of the carrier image
+     * @throws IOException
+     *             if the carrier isn't a readable image
+     */
+    private int getImageWidth(File carrier) throws IOException {
+	ImageRegionReader reader = new ImageRegionReader(carrier);
+	try {
+	    return reader.getBounds().width;
+	} finally {
+	    reader.close();
+	}
+    }
+
+    /**
+     * Create empty image with enough capacity to embed the payload
+     * 
+     * @param width
+     *            of the carrier
      * @param payload
      * @return image for payload
      * @throws IOException
      */
-    private BufferedImage createPayloadImage(File carrier, File payload) throws IOException {
-	BufferedImage carrierImage = ImageIO.read(carrier);
-	byte[] payloadBytes = FileUtils.readFileToByteArray(payload);
-	int neededPayloadHeight = getNeededHeight(carrierImage.getWidth(), payloadBytes.length);
-	return new BufferedImage(carrierImage.getWidth(), neededPayloadHeight, BufferedImage.TYPE_INT_RGB);
+    private BufferedImage createPayloadImage(int width, File payload) throws IOException {
+	int neededPayloadHeight = getNeededHeight(width, payload.length());
+	return new BufferedImage(width, neededPayloadHeight, BufferedImage.TYPE_INT_RGB);
     }
 
     /**
@@ -135,8 +203,8 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
      *         capacity to embed the payload with the OpenStego
      *         algorithm.
      */
-    private int getNeededHeight(int width, int length) {
-	return (length * 8 / width) + 1;
+    private int getNeededHeight(int width, long length) {
+	return (int) (length * 8 / width) + 1;
     }
 
     /**
@@ -150,12 +218,27 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
     private File embedPayload(BufferedImage payloadImage, File payload) throws IOException {
 	OpenStegoRandomLSBSteganography lsbAlgorithm = new OpenStegoRandomLSBSteganography();
 	File tmpPayloadImage = new File(payload.getName() + "_payloadImage.png");
-	ImageIO.write(payloadImage, "png", tmpPayloadImage);
+	PNGEncoder.getDefault().write(payloadImage, tmpPayloadImage);
 	File outputFile = lsbAlgorithm.encapsulate(tmpPayloadImage, payload);
 	tmpPayloadImage.delete();
 	return outputFile;
     }
 
+    /**
+     * Packs the payload bytes densely into the pixels of a new image.
+     * 
+     * @param width
+     *            of the carrier
+     * @param payload
+     * @return image file with packed payload
+     * @throws IOException
+     */
+    private File packPayload(int width, File payload) throws IOException {
+	File outputFile = new File(OUTPUT_DIRECTORY + payload.getName() + "_payloadImage.png");
+	PixelBytePacking.pack(payload, width, outputFile);
+	return outputFile;
+    }
+
     /*
      * ******* RESTORATION *************
      */
@@ -208,13 +291,25 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
 
     /**
      * Uses the open stego LSB algorithm to get the original payload files out
-     * of the images, in which they are embedded.
+     * of the images, in which they are embedded. Densely packed payload files
+     * are unpacked.
      * 
      * @param payloadImage
      * @return payload
      * @throws IOException
      */
     private RestoredFile recover(RestoredFile payloadImage) throws IOException {
+	if (PixelBytePacking.isPacked(payloadImage)) {
+	    UnpackedFile unpackedFile = PixelBytePacking.unpack(payloadImage, new File(RESTORED_DIRECTORY));
+	    RestoredFile payload = new RestoredFile(unpackedFile.file.getPath());
+	    payload.wasPayload = true;
+	    payload.originalFilePath = unpackedFile.originalPath;
+	    // the checksum is validated during unpacking:
+	    payload.checksumValid = unpackedFile.checksumValid;
+	    payload.restorationNote = unpackedFile.checksumValid ? "Payload can be restored correctly."
+		    : "The checksum of the payload is wrong, the payload image was altered.";
+	    return payload;
+	}
 	OpenStegoRandomLSBSteganography algorithm = new OpenStegoRandomLSBSteganography();
 	List<RestoredFile> restoredFiles = algorithm.restore(payloadImage);
 	RestoredFile payload = null;
@@ -275,6 +370,8 @@ public class ImageInformationEmbeddingFrame extends AbstractAlgorithm {
     public String getDescription() {
 	String description = "This algorithm works on PNG images. It extends the carrier image with additional pixels and "
 		+ "embeds the payload file into these additional pixels."
+		+ "\nThe payload bytes are embedded with LSB steganography, or packed densely with three bytes per pixel, "
+		+ "which results in a much smaller frame."
 		+ "\nThe carrier image and payload file can be restored correctly, "
 		+ "using this technique.The algorithm is able to append more than one payload file.\n"
 		+ "The difference to the Image-Image Frame Expanding algorithm is, that this algorithm can embed all file types "
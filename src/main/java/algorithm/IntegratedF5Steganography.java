@@ -0,0 +1,178 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package algorithm;
+
+import static main.Configuration.RESTORED_DIRECTORY;
+import static model.Criterion.CARRIER_PROCESSABILITY;
+import static model.Criterion.CARRIER_RESTORABILITY;
+import static model.Criterion.COMPRESSION;
+import static model.Criterion.DETECTABILITY;
+import static model.Criterion.ENCAPSULATION_METHOD;
+import static model.Criterion.ENCRYPTION;
+import static model.Criterion.PAYLOAD_ACCESSIBILITY;
+import static model.Criterion.PAYLOAD_RESTORABILITY;
+import static model.Criterion.STANDARDS;
+import static model.Criterion.VELOCITY;
+import static model.Criterion.VISIBILITY;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+
+import codec.F5Embedding;
+import codec.JPEGCoefficientImage;
+import model.PayloadSegment;
+import model.RestoredFile;
+import model.Scenario;
+
+/**
+ * Integrated pure Java implementation of the F5 steganography algorithm.
+ *
+ * In contrast to the {@link F5Steganography} plug-in, which uses the external
+ * f5.jar, this technique doesn't decode the carrier JPEG to pixels and encodes
+ * it again. The payload segment is embedded directly into the quantised DCT
+ * coefficients of the carrier, and only the entropy coded scan is written anew.
+ * The quality of the carrier is therefore not reduced by a second lossy
+ * compression.
+ *
+ * Note: The embedding format differs from the one of the f5.jar, so files that
+ * were encapsulated with one of the two F5 techniques can't be restored with
+ * the other one.
+ */
+public class IntegratedF5Steganography extends AbstractAlgorithm {
+    /** The F5 password. It defines the order in which coefficients are used. */
+    private static final String PASSWORD = "PeriCAT";
+
+    @Override
+    Scenario defineScenario() {
+	Scenario scenario = new Scenario("Integrated F5 ideal scenario");
+	scenario.description = "This is the ideal scenario to use the integrated F5 algorithm.";
+	scenario.setCriterionValue(ENCAPSULATION_METHOD, EMBEDDING);
+	scenario.setCriterionValue(VISIBILITY, INVISIBLE);
+	scenario.setCriterionValue(DETECTABILITY, NOT_DETECTABLE);
+	scenario.setCriterionValue(CARRIER_RESTORABILITY, NO);
+	scenario.setCriterionValue(PAYLOAD_RESTORABILITY, YES);
+	scenario.setCriterionValue(CARRIER_PROCESSABILITY, YES);
+	scenario.setCriterionValue(PAYLOAD_ACCESSIBILITY, NO);
+	scenario.setCriterionValue(ENCRYPTION, NO);
+	scenario.setCriterionValue(COMPRESSION, YES);
+	scenario.setCriterionValue(VELOCITY, YES);
+	scenario.setCriterionValue(STANDARDS, NO);
+	return scenario;
+    }
+
+    @Override
+    SuffixFileFilter configureCarrierFileFilter() {
+	List<String> supportedFileFormats = new ArrayList<String>();
+	supportedFileFormats.add("jpg");
+	supportedFileFormats.add("jpeg");
+	return new SuffixFileFilter(supportedFileFormats);
+    }
+
+    /**
+     * The payload segment is embedded as binary data, so every file type can be
+     * used as payload.
+     */
+    @Override
+    SuffixFileFilter configurePayloadFileFilter() {
+	return new AcceptAllFilter();
+    }
+
+    @Override
+    SuffixFileFilter configureDecapsulationFileFilter() {
+	return configureCarrierFileFilter();
+    }
+
+    @Override
+    public File encapsulate(File carrier, List<File> payloadList) throws IOException {
+	PayloadSegment payloadSegment = new PayloadSegment(carrier, payloadList.get(0), this);
+	JPEGCoefficientImage image = JPEGCoefficientImage.read(carrier);
+	new F5Embedding(image, PASSWORD).embed(payloadSegment.getPayloadSegmentBytes());
+	File outputFile = new File(getOutputFileName(carrier));
+	image.write(outputFile);
+	return outputFile;
+    }
+
+    @Override
+    public List<RestoredFile> restore(File carrier) throws IOException {
+	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
+	JPEGCoefficientImage image = JPEGCoefficientImage.read(carrier);
+	byte[] payloadSegmentBytes = new F5Embedding(image, PASSWORD).extract();
+	PayloadSegment payloadSegment = PayloadSegment.getPayloadSegment(payloadSegmentBytes);
+	if (payloadSegment == null) {
+	    return restoredFiles;
+	}
+	RestoredFile restoredPayload = new RestoredFile(RESTORED_DIRECTORY + payloadSegment.getPayloadName());
+	FileUtils.writeByteArrayToFile(restoredPayload, payloadSegment.getPayloadBytes());
+	restoredPayload.validateChecksum(payloadSegment.getPayloadChecksum());
+	restoredPayload.restorationNote = "Payload can be restored correctly.";
+	restoredPayload.wasPayload = true;
+	restoredPayload.originalFilePath = payloadSegment.getPayloadPath();
+	restoredFiles.add(restoredPayload);
+	RestoredFile copiedCarrier = new RestoredFile(RESTORED_DIRECTORY + carrier.getName());
+	FileUtils.copyFile(carrier, copiedCarrier);
+	copiedCarrier.wasCarrier = true;
+	copiedCarrier.checksumValid = false;
+	copiedCarrier.restorationNote = "The carrier can't be restored with this steganography algorithm. It still contains the embedded payload file(s).";
+	copiedCarrier.originalFilePath = payloadSegment.getCarrierPath();
+	restoredFiles.add(copiedCarrier);// carrier can not be restored
+	for (RestoredFile file : restoredFiles) {
+	    file.algorithm = this;
+	    for (RestoredFile relatedFile : restoredFiles) {
+		if (file != relatedFile) {
+		    file.relatedFiles.add(relatedFile);
+		}
+	    }
+	}
+	return restoredFiles;
+    }
+
+    @Override
+    public String getName() {
+	return "F5 Steganography (integrated)";
+    }
+
+    @Override
+    public String getDescription() {
+	return "F5 is a steganography algorithm described in the paper \"F5 - A Steganography "
+		+ "Algorithm - High Capacity Despite Better Steganalysis - Andreas Westfeld\".\n"
+		+ "This is an integrated implementation of F5, which works directly on the quantised "
+		+ "DCT coefficients of baseline JPEG carriers. In contrast to the F5 plug-in, it needs "
+		+ "no external jar, and the carrier isn't decoded and compressed again, so its image "
+		+ "quality is only changed by the embedding itself. Progressive JPEGs are not supported.\n"
+		+ "The payload can be restored correctly in every bit, but, as typical for "
+		+ "steganography, the carrier can't be brought back into its original state.\n"
+		+ "Files encapsulated with the F5 plug-in (f5.jar) can't be restored with this technique, "
+		+ "and vice versa.";
+    }
+
+    /**
+     * The carrier has to be a sequential JPEG, and exactly one payload file is
+     * supported.
+     */
+    @Override
+    public boolean fulfilledTechnicalCriteria(File carrier, List<File> payloadList) {
+	return carrier.isFile() && payloadList.size() == 1 && JPEGCoefficientImage.isSupported(carrier);
+    }
+}
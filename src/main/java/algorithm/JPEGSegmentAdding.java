@@ -0,0 +1,257 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package algorithm;
+
+import static main.Configuration.RESTORED_DIRECTORY;
+import static main.Configuration.TOOL_DESCRIPTION;
+import static model.Criterion.CARRIER_PROCESSABILITY;
+import static model.Criterion.CARRIER_RESTORABILITY;
+import static model.Criterion.COMPRESSION;
+import static model.Criterion.DETECTABILITY;
+import static model.Criterion.ENCAPSULATION_METHOD;
+import static model.Criterion.ENCRYPTION;
+import static model.Criterion.PAYLOAD_ACCESSIBILITY;
+import static model.Criterion.PAYLOAD_RESTORABILITY;
+import static model.Criterion.STANDARDS;
+import static model.Criterion.VELOCITY;
+import static model.Criterion.VISIBILITY;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+
+import codec.JPEGSegmentStream;
+import codec.JPEGSegmentStream.Segment;
+import model.PayloadSegment;
+import model.RestoredFile;
+import model.Scenario;
+
+/**
+ * This technique inserts the payloads as APP11 application segments into the
+ * header of a JPEG file, behind the SOI marker and the JFIF (APP0) or Exif
+ * (APP1) header. Unlike the {@link JPEGTextAdding}, which appends the payloads
+ * behind the EOI marker, the output is a standard conforming JPEG file.
+ *
+ * The header is parsed with the {@link JPEGSegmentStream}, which stops at the
+ * SOS marker. The entropy coded image data is only copied byte for byte, so
+ * the restoration time depends on the size of the payloads, not on the size
+ * of the image.
+ */
+public class JPEGSegmentAdding extends AbstractAlgorithm {
+    /**
+     * Identifier at the start of each pericles segment, followed by a byte,
+     * which tells if the segment contains restoration metadata or payload
+     * data.
+     */
+    private static final byte[] IDENTIFIER = { 'P', 'e', 'r', 'i', 'C', 'A', 'T', 0 };
+    private static final byte METADATA_SEGMENT = 0;
+    private static final byte DATA_SEGMENT = 1;
+    /** Maximum data length of a pericles segment, near 64 KB */
+    static final int MAX_SEGMENT_LENGTH = JPEGSegmentStream.MAX_DATA_LENGTH;
+
+    /**
+     * Copies the carrier up to the insert position, writes a metadata segment
+     * and the data segments for each payload, and copies the rest of the
+     * carrier. The payloads are streamed into the segments.
+     */
+    @Override
+    public File encapsulate(File carrier, List<File> payloadList) throws IOException {
+	File outputFile = getOutputFile(carrier);
+	FileInputStream input = new FileInputStream(carrier);
+	FileOutputStream output = new FileOutputStream(outputFile);
+	try {
+	    JPEGSegmentStream jpeg = new JPEGSegmentStream(input.getChannel());
+	    FileChannel outputChannel = output.getChannel();
+	    long insertPosition = jpeg.getInsertPosition();
+	    jpeg.transfer(0, insertPosition, outputChannel);
+	    for (File payload : payloadList) {
+		writePayloadSegments(carrier, payload, outputChannel);
+	    }
+	    jpeg.transfer(insertPosition, input.getChannel().size() - insertPosition, outputChannel);
+	} finally {
+	    input.close();
+	    output.close();
+	}
+	return outputFile;
+    }
+
+    private void writePayloadSegments(File carrier, File payload, FileChannel output) throws IOException {
+	ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+	metadata.write(IDENTIFIER);
+	metadata.write(METADATA_SEGMENT);
+	PayloadSegment.createRestorationMetadata(carrier, payload, this).store(metadata, TOOL_DESCRIPTION);
+	JPEGSegmentStream.writeSegment(output, JPEGSegmentStream.APP11, metadata.toByteArray(), 0,
+		metadata.size());
+	byte[] prefix = Arrays.copyOf(IDENTIFIER, IDENTIFIER.length + 1);
+	prefix[IDENTIFIER.length] = DATA_SEGMENT;
+	OutputStream segmentStream = JPEGSegmentStream.newSegmentOutputStream(output, JPEGSegmentStream.APP11, prefix,
+		MAX_SEGMENT_LENGTH);
+	FileUtils.copyFile(payload, segmentStream);
+	segmentStream.close();
+    }
+
+    /**
+     * Reads the header up to the SOS marker, streams the payloads out of their
+     * segments and restores the carrier by copying all other bytes.
+     */
+    @Override
+    public List<RestoredFile> restore(File encapsulatedData) throws IOException {
+	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
+	FileInputStream input = new FileInputStream(encapsulatedData);
+	try {
+	    JPEGSegmentStream jpeg = new JPEGSegmentStream(input.getChannel());
+	    List<Segment> periclesSegments = new ArrayList<Segment>();
+	    List<List<Segment>> payloads = new ArrayList<List<Segment>>();
+	    for (Segment segment : jpeg.getSegments()) {
+		if (segment.marker != JPEGSegmentStream.APP11 || segment.length <= IDENTIFIER.length) {
+		    continue;
+		}
+		byte[] header = jpeg.readData(segment, IDENTIFIER.length + 1);
+		if (!Arrays.equals(IDENTIFIER, Arrays.copyOf(header, IDENTIFIER.length))) {
+		    continue;
+		}
+		periclesSegments.add(segment);
+		if (header[IDENTIFIER.length] == METADATA_SEGMENT) {
+		    payloads.add(new ArrayList<Segment>());
+		} else if (payloads.isEmpty()) {
+		    throw new IOException("The JPEG contains payload data without restoration metadata.");
+		}
+		payloads.get(payloads.size() - 1).add(segment);
+	    }
+	    Properties restorationMetadata = null;
+	    for (List<Segment> payloadSegments : payloads) {
+		byte[] metadata = jpeg.readData(payloadSegments.get(0));
+		restorationMetadata = new Properties();
+		restorationMetadata.load(new ByteArrayInputStream(metadata, IDENTIFIER.length + 1,
+			metadata.length - IDENTIFIER.length - 1));
+		InputStream payloadStream = jpeg.newSegmentInputStream(
+			payloadSegments.subList(1, payloadSegments.size()), IDENTIFIER.length + 1);
+		restoredFiles.add(restorePayload(restorationMetadata, payloadStream));
+	    }
+	    RestoredFile restoredCarrier;
+	    if (restorationMetadata == null) {
+		// No pericles segments in carrier
+		restoredCarrier = new RestoredFile(RESTORED_DIRECTORY + encapsulatedData.getName());
+		FileUtils.copyFile(encapsulatedData, restoredCarrier);
+		restoredCarrier.checksumValid = true;
+		restoredCarrier.restorationNote = "There were no payload files embedded, so no checksum calculation possible.";
+	    } else {
+		restoredCarrier = new RestoredFile(
+			RESTORED_DIRECTORY + restorationMetadata.getProperty("carrierName"));
+		FileOutputStream output = new FileOutputStream(restoredCarrier);
+		try {
+		    jpeg.transferWithout(output.getChannel(), periclesSegments);
+		} finally {
+		    output.close();
+		}
+		restoredCarrier.originalFilePath = restorationMetadata.getProperty("carrierPath");
+		restoredCarrier.validateChecksum(restorationMetadata.getProperty("carrierChecksum"));
+	    }
+	    restoredCarrier.wasCarrier = true;
+	    restoredFiles.add(restoredCarrier);
+	} finally {
+	    input.close();
+	}
+	for (RestoredFile file : restoredFiles) {
+	    file.algorithm = this;
+	    for (RestoredFile relatedFile : restoredFiles) {
+		if (file != relatedFile) {
+		    file.relatedFiles.add(relatedFile);
+		}
+	    }
+	}
+	return restoredFiles;
+    }
+
+    @Override
+    Scenario defineScenario() {
+	Scenario scenario = new Scenario("JPEG segment adding scenario");
+	scenario.description = "This is the ideal scenario to use the JPEG segment adding algorithm.";
+	scenario.setCriterionValue(ENCAPSULATION_METHOD, EMBEDDING);
+	scenario.setCriterionValue(VISIBILITY, INVISIBLE);
+	scenario.setCriterionValue(DETECTABILITY, DETECTABLE);
+	scenario.setCriterionValue(CARRIER_RESTORABILITY, YES);
+	scenario.setCriterionValue(PAYLOAD_RESTORABILITY, YES);
+	scenario.setCriterionValue(CARRIER_PROCESSABILITY, YES);
+	scenario.setCriterionValue(PAYLOAD_ACCESSIBILITY, NO);
+	scenario.setCriterionValue(ENCRYPTION, NO);
+	scenario.setCriterionValue(COMPRESSION, NO);
+	scenario.setCriterionValue(VELOCITY, YES);
+	scenario.setCriterionValue(STANDARDS, YES);
+	return scenario;
+    }
+
+    @Override
+    SuffixFileFilter configureCarrierFileFilter() {
+	ArrayList<String> supportedFormats = new ArrayList<String>();
+	supportedFormats.add("jpg");
+	supportedFormats.add("JPG");
+	supportedFormats.add("JPEG");
+	supportedFormats.add("jpeg");
+	return new SuffixFileFilter(supportedFormats);
+    }
+
+    /**
+     * Payload can be of any type.
+     */
+    @Override
+    SuffixFileFilter configurePayloadFileFilter() {
+	return new AcceptAllFilter();
+    }
+
+    @Override
+    SuffixFileFilter configureDecapsulationFileFilter() {
+	return configureCarrierFileFilter();
+    }
+
+    @Override
+    public String getName() {
+	return "JPEG segment adding";
+    }
+
+    @Override
+    public String getDescription() {
+	String description = "This algorithm inserts payload files of any type as APP11 application"
+		+ " segments into the header of carrier JPEG files, behind the JFIF or Exif header."
+		+ " The output is a standard conforming JPEG file. The image data isn't decoded,"
+		+ " so the JPEG and the payload files can be restored correctly in every bit.\n"
+		+ "The restoration only reads the header of the JPEG, and is therefore fast"
+		+ " for large images.";
+	return description;
+    }
+
+    @Override
+    public boolean fulfilledTechnicalCriteria(File carrier, List<File> payloadList) {
+	return carrier.isFile() && payloadList.size() > 0;
+    }
+}
@@ -85,6 +85,7 @@ public class MetsSubmissionInformationPackage extends AbstractAlgorithm {
     private final JTextField personField = new JTextField(20);
     private final JRadioButton tarButton = new JRadioButton("tar");
     private final JRadioButton zipButton = new JRadioButton("zip");
+    private final CompressionLevelBox compressionLevelBox = new CompressionLevelBox();
 
     public MetsSubmissionInformationPackage() {
 	createConfigurationPanel();
@@ -128,6 +129,11 @@ public class MetsSubmissionInformationPackage extends AbstractAlgorithm {
 	panel.add(tarButton, constraints);
 	constraints.gridx = 0;
 	constraints.gridy++;
+	panel.add(new JLabel("Deflate level of zip (0 stores all files):"), constraints);
+	constraints.gridx++;
+	panel.add(compressionLevelBox, constraints);
+	constraints.gridx = 0;
+	constraints.gridy++;
     }
 
     @SuppressWarnings("unchecked")
@@ -256,7 +262,8 @@ public class MetsSubmissionInformationPackage extends AbstractAlgorithm {
 	payloadList.add(metsFile);
 	File outputFile = null;
 	if (zipButton.isSelected()) {
-	    outputFile = new ZipPackaging().encapsulate(carrier, payloadList);
+	    outputFile = new ZipPackaging(compressionLevelBox.getCompressionLevel(),
+		    Runtime.getRuntime().availableProcessors()).encapsulate(carrier, payloadList);
 
 	} else if (tarButton.isSelected()) {
 	    outputFile = new TarPackaging().encapsulate(carrier, payloadList);
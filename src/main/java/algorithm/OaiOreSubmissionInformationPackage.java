@@ -66,6 +66,7 @@ import view.GUIPanel;
 public class OaiOreSubmissionInformationPackage extends AbstractAlgorithm {
     private final JRadioButton tarButton = new JRadioButton("tar");
     private final JRadioButton zipButton = new JRadioButton("zip");
+    private final CompressionLevelBox compressionLevelBox = new CompressionLevelBox();
 
     public OaiOreSubmissionInformationPackage() {
 	createConfigurationPanel();
@@ -89,6 +90,11 @@ public class OaiOreSubmissionInformationPackage extends AbstractAlgorithm {
 	panel.add(tarButton, constraints);
 	constraints.gridx = 0;
 	constraints.gridy++;
+	panel.add(new JLabel("Deflate level of zip (0 stores all files):"), constraints);
+	constraints.gridx++;
+	panel.add(compressionLevelBox, constraints);
+	constraints.gridx = 0;
+	constraints.gridy++;
     }
 
     @Override
@@ -125,7 +131,8 @@ public class OaiOreSubmissionInformationPackage extends AbstractAlgorithm {
 	    payloadList.add(resourceMapFile);
 	    File outputFile = null;
 	    if (zipButton.isSelected()) {
-		outputFile = new ZipPackaging().encapsulate(carrier, payloadList);
+		outputFile = new ZipPackaging(compressionLevelBox.getCompressionLevel(),
+			Runtime.getRuntime().availableProcessors()).encapsulate(carrier, payloadList);
 	    } else if (tarButton.isSelected()) {
 		outputFile = new TarPackaging().encapsulate(carrier, payloadList);
 	    }
@@ -37,7 +37,6 @@ import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -152,12 +151,15 @@ public class OpenStegoRandomLSBSteganography extends AbstractAlgorithm {
 	String cover = getCover(carrier);
 	String message = getPayload(carrier, payloadList.get(0));
 	String output = getOutputFileName(carrier);
-	if (trueCompressionButton.isSelected()) {
-	    encapsulateAndCompress(cover, message, output);
-	} else {
-	    encapsulate(cover, message, output);
+	try {
+	    if (trueCompressionButton.isSelected()) {
+		encapsulateAndCompress(cover, message, output);
+	    } else {
+		encapsulate(cover, message, output);
+	    }
+	} finally {
+	    FileUtils.forceDelete(new File(message));// tmp
 	}
-	FileUtils.forceDelete(new File(message));// tmp
 	File outputFile = new File(output);
 	if (outputFile.isFile()) {
 	    return outputFile;
@@ -166,31 +168,15 @@ public class OpenStegoRandomLSBSteganography extends AbstractAlgorithm {
     }
 
     private void encapsulate(String cover, String message, String output) throws IOException {
-	try {
-	    String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "openstego.jar", "embed", "-a",
-		    "RandomLSB", "-cf", cover, "-mf", message, "-sf", output, "-C", "-E" };
-	    Process process = Runtime.getRuntime().exec(args);
-	    process.waitFor();
-	    InputStream inputStream = process.getInputStream();
-	    byte b[] = new byte[inputStream.available()];
-	    inputStream.read(b, 0, b.length);
-	} catch (InterruptedException e) {
-	    e.printStackTrace();
-	}
+	String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "openstego.jar", "embed", "-a",
+		"RandomLSB", "-cf", cover, "-mf", message, "-sf", output, "-C", "-E" };
+	ExternalProcessExecutor.execute(args);
     }
 
     private void encapsulateAndCompress(String cover, String message, String output) throws IOException {
-	try {
-	    String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "openstego.jar", "embed", "-a",
-		    "RandomLSB", "-cf", cover, "-mf", message, "-sf", output, "-c", "-E" };
-	    Process process = Runtime.getRuntime().exec(args);
-	    process.waitFor();
-	    InputStream inputStream = process.getInputStream();
-	    byte b[] = new byte[inputStream.available()];
-	    inputStream.read(b, 0, b.length);
-	} catch (InterruptedException e) {
-	    e.printStackTrace();
-	}
+	String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "openstego.jar", "embed", "-a",
+		"RandomLSB", "-cf", cover, "-mf", message, "-sf", output, "-c", "-E" };
+	ExternalProcessExecutor.execute(args);
     }
 
     private String getCover(File carrier) {
@@ -209,16 +195,13 @@ public class OpenStegoRandomLSBSteganography extends AbstractAlgorithm {
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
 	File tmpDir = new File("tmpDir");
 	tmpDir.mkdir();
+	String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "openstego.jar", "extract", "-a",
+		"RandomLSB", "-sf", "" + carrier.toPath(), "-xd", "" + tmpDir.toPath() };
 	try {
-	    String[] args = new String[] { "java", "-jar", LIBRARY_DIRECTORY + "openstego.jar", "extract", "-a",
-		    "RandomLSB", "-sf", "" + carrier.toPath(), "-xd", "" + tmpDir.toPath() };
-	    Process process = Runtime.getRuntime().exec(args);
-	    process.waitFor();
-	    InputStream inputStream = process.getInputStream();
-	    byte b[] = new byte[inputStream.available()];
-	    inputStream.read(b, 0, b.length);
-	} catch (InterruptedException e) {
-	    e.printStackTrace();
+	    ExternalProcessExecutor.execute(args);
+	} catch (IOException e) {
+	    FileUtils.deleteQuietly(tmpDir);
+	    throw e;
 	}
 	String originalCarrierPath = "";
 	if (tmpDir.listFiles().length == 1) {
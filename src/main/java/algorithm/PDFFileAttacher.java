@@ -32,129 +32,311 @@ import static model.Criterion.STANDARDS;
 import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
-import org.apache.pdfbox.exceptions.COSVisitorException;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.pdmodel.PDDocumentNameDictionary;
-import org.apache.pdfbox.pdmodel.PDEmbeddedFilesNameTreeNode;
-import org.apache.pdfbox.pdmodel.common.COSObjectable;
-import org.apache.pdfbox.pdmodel.common.filespecification.PDComplexFileSpecification;
-import org.apache.pdfbox.pdmodel.common.filespecification.PDEmbeddedFile;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.util.DateConverter;
 
+import codec.CompressionProbe;
+import codec.PDFIncrementalWriter;
+import codec.PDFStructureReader;
 import model.RestoredFile;
 import model.Scenario;
 
 /**
  * This class uses the pdfbox library to attach files to pdfs.
  *
- * Attaches the payload file as file attachment to a pdf.
+ * Attaches the payload file as file attachment to a pdf. The attachments are
+ * written as incremental update, see {@link PDFIncrementalWriter}.
  */
 public class PDFFileAttacher extends AbstractAlgorithm {
 
+    /** Trailer entry of the update with the size and checksum of the carrier */
+    static final COSName CARRIER_KEY = COSName.getPDFName("PericlesCarrier");
+    private static final COSName CHECKSUM_KEY = COSName.getPDFName("CheckSum");
+
     /**
      * Note: This algorithm doesn't use the payload segment to keep the payload
      * file originally, because it will be displayed as normal file in the users
      * pdf viewer.
+     * 
+     * The attachments are added as incremental update: the carrier bytes are
+     * copied unchanged, and the new objects, a new catalog and a new cross
+     * reference section are appended. Only the trailer and the catalog of the
+     * carrier are parsed, so the time doesn't depend on the number of pages.
+     * 
+     * The embedded file streams are prepared in parallel, while the carrier is
+     * copied, and are then written one after the other.
      */
     @Override
     public File encapsulate(File carrier, List<File> payloadList) throws IOException {
-	File outputFile = copyCarrier(carrier);
-	attachAll(outputFile, payloadList);
-	return outputFile;
+	ExecutorService executor = Executors.newFixedThreadPool(
+		Math.max(1, Math.min(payloadList.size(), Runtime.getRuntime().availableProcessors())));
+	List<Future<EmbeddedFileStream>> preparedStreams = new ArrayList<Future<EmbeddedFileStream>>();
+	for (File payload : payloadList) {
+	    preparedStreams.add(executor.submit(new EmbeddedFileStream(payload)));
+	}
+	executor.shutdown();
+	try {
+	    File outputFile = copyCarrier(carrier);
+	    writeUpdate(carrier, outputFile, getAll(preparedStreams));
+	    return outputFile;
+	} finally {
+	    for (Future<EmbeddedFileStream> preparedStream : preparedStreams) {
+		try {
+		    preparedStream.get().delete();
+		} catch (ExecutionException e) {
+		    // nothing to delete
+		} catch (InterruptedException e) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
     }
 
-    private void attachAll(File outputFile, List<File> payloadList) throws IOException {
-	PDDocument document = PDDocument.load(outputFile);
-	List<PDComplexFileSpecification> fileSpecifications = getFileSpecifications(document, payloadList);
-	PDDocumentNameDictionary namesDictionary = new PDDocumentNameDictionary(document.getDocumentCatalog());
-	PDEmbeddedFilesNameTreeNode filesTree = namesDictionary.getEmbeddedFiles();
-	filesTree = new PDEmbeddedFilesNameTreeNode();
-	Map<String, COSObjectable> fileMap = new HashMap<String, COSObjectable>();
-	for (int i = 0; i < fileSpecifications.size(); i++) {
-	    fileMap.put("PericlesMetadata-" + i, fileSpecifications.get(i));
+    private List<EmbeddedFileStream> getAll(List<Future<EmbeddedFileStream>> preparedStreams) throws IOException {
+	List<EmbeddedFileStream> streams = new ArrayList<EmbeddedFileStream>();
+	try {
+	    for (Future<EmbeddedFileStream> preparedStream : preparedStreams) {
+		streams.add(preparedStream.get());
+	    }
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The preparation of the embedded files was interrupted.", e);
 	}
-	filesTree.setNames(fileMap);
-	namesDictionary.setEmbeddedFiles(filesTree);
-	document.getDocumentCatalog().setNames(namesDictionary);
+	return streams;
+    }
+
+    private void writeUpdate(File carrier, File outputFile, List<EmbeddedFileStream> streams) throws IOException {
+	PDFStructureReader reader = new PDFStructureReader(carrier);
 	try {
-	    document.save(outputFile);
-	} catch (COSVisitorException e) {
+	    if (reader.isEncrypted()) {
+		throw new IOException("Attaching files to encrypted PDF documents isn't supported.");
+	    }
+	    RandomAccessFile output = new RandomAccessFile(outputFile, "rw");
+	    try {
+		PDFIncrementalWriter writer = new PDFIncrementalWriter(output.getChannel(),
+			reader.getTrailer().getInt(COSName.SIZE));
+		attachAll(reader, writer, streams);
+		COSDictionary trailer = new COSDictionary();
+		for (COSName key : new COSName[] { COSName.ROOT, COSName.INFO, COSName.ID }) {
+		    if (reader.getTrailer().getItem(key) != null) {
+			trailer.setItem(key, reader.getTrailer().getItem(key));
+		    }
+		}
+		COSDictionary carrierInformation = new COSDictionary();
+		carrierInformation.setLong(COSName.SIZE, writer.getUpdatePosition());
+		carrierInformation.setString(CHECKSUM_KEY, "" + FileUtils.checksumCRC32(carrier));
+		trailer.setItem(CARRIER_KEY, carrierInformation);
+		writer.finish(trailer, reader.getStartxref(), reader.isXrefStream());
+	    } finally {
+		output.close();
+	    }
+	} finally {
+	    reader.close();
 	}
-	document.close();
     }
 
-    private List<PDComplexFileSpecification> getFileSpecifications(PDDocument document, List<File> payloadList)
+    /**
+     * Writes the embedded files, their file specifications, a new embedded
+     * files name tree, and the names dictionary and catalog, which point to the
+     * new tree.
+     */
+    private void attachAll(PDFStructureReader reader, PDFIncrementalWriter writer, List<EmbeddedFileStream> streams)
 	    throws IOException {
-	List<PDComplexFileSpecification> fileSpecifications = new ArrayList<PDComplexFileSpecification>();
-	for (File payload : payloadList) {
-	    FileInputStream inputStream = new FileInputStream(payload);
-	    PDEmbeddedFile embeddedFile = new PDEmbeddedFile(document, inputStream);
-	    embeddedFile.setCreationDate(new GregorianCalendar());
-	    PDComplexFileSpecification fileSpecification = new PDComplexFileSpecification();
-	    fileSpecification.setFile(payload.toPath().toString());
-	    fileSpecification.setEmbeddedFile(embeddedFile);
-	    fileSpecifications.add(fileSpecification);
+	Map<String, COSObject> fileMap = new TreeMap<String, COSObject>();
+	for (int i = 0; i < streams.size(); i++) {
+	    fileMap.put("PericlesMetadata-" + i, writeFileSpecification(writer, streams.get(i)));
+	}
+	COSArray names = new COSArray();
+	for (Map.Entry<String, COSObject> entry : fileMap.entrySet()) {
+	    names.add(new COSString(entry.getKey()));
+	    names.add(entry.getValue());
+	}
+	COSDictionary filesTree = new COSDictionary();
+	filesTree.setItem(COSName.NAMES, names);
+	COSObject filesTreeReference = writer.newReference();
+	writer.writeObject(filesTreeReference, filesTree);
+
+	COSDictionary catalog = new COSDictionary(reader.getCatalog());
+	COSBase oldNamesDictionary = reader.resolve(catalog, COSName.NAMES);
+	COSDictionary namesDictionary = oldNamesDictionary instanceof COSDictionary
+		? new COSDictionary((COSDictionary) oldNamesDictionary) : new COSDictionary();
+	namesDictionary.setItem(COSName.EMBEDDED_FILES, filesTreeReference);
+	COSObject namesReference = writer.newReference();
+	writer.writeObject(namesReference, namesDictionary);
+	catalog.setItem(COSName.NAMES, namesReference);
+	writer.writeObject(reader.getCatalogReference(), catalog);
+    }
+
+    private COSObject writeFileSpecification(PDFIncrementalWriter writer, EmbeddedFileStream stream)
+	    throws IOException {
+	File payload = stream.payload;
+	COSDictionary parameters = new COSDictionary();
+	parameters.setLong(COSName.SIZE, payload.length());
+	parameters.setString(COSName.CREATION_DATE, DateConverter.toString(new GregorianCalendar()));
+	COSDictionary embeddedFile = new COSDictionary();
+	embeddedFile.setItem(COSName.TYPE, COSName.getPDFName("EmbeddedFile"));
+	embeddedFile.setItem(COSName.getPDFName("Params"), parameters);
+	if (stream.deflated) {
+	    embeddedFile.setItem(COSName.FILTER, COSName.FLATE_DECODE);
 	}
-	return fileSpecifications;
+	COSObject embeddedFileReference = writer.newReference();
+	writer.writeStream(embeddedFileReference, embeddedFile, stream.data);
+
+	COSDictionary embeddedFiles = new COSDictionary();
+	embeddedFiles.setItem(COSName.F, embeddedFileReference);
+	COSDictionary fileSpecification = new COSDictionary();
+	fileSpecification.setItem(COSName.TYPE, COSName.FILESPEC);
+	fileSpecification.setString(COSName.F, payload.toPath().toString());
+	fileSpecification.setString(COSName.UF, payload.toPath().toString());
+	fileSpecification.setItem(COSName.EF, embeddedFiles);
+	COSObject fileSpecificationReference = writer.newReference();
+	writer.writeObject(fileSpecificationReference, fileSpecification);
+	return fileSpecificationReference;
     }
 
-    private File copyCarrier(File carrier) throws IOException, FileNotFoundException {
+    /**
+     * Encoded data of an embedded file stream. Payloads are deflated to a
+     * temporary file, unless they are already compressed, see
+     * {@link CompressionProbe}.
+     */
+    private static class EmbeddedFileStream implements Callable<EmbeddedFileStream> {
+	final File payload;
+	File data;
+	boolean deflated = false;
+
+	EmbeddedFileStream(File payload) {
+	    this.payload = payload;
+	    data = payload;
+	}
+
+	@Override
+	public EmbeddedFileStream call() throws IOException {
+	    if (!CompressionProbe.isCompressible(payload)) {
+		return this;
+	    }
+	    File deflatedData = File.createTempFile("EmbeddedFileStream", ".deflated");
+	    Deflater deflater = new Deflater();
+	    try {
+		OutputStream output = new DeflaterOutputStream(
+			new BufferedOutputStream(new FileOutputStream(deflatedData)), deflater);
+		try {
+		    FileUtils.copyFile(payload, output);
+		} finally {
+		    output.close();
+		}
+	    } catch (IOException e) {
+		deflatedData.delete();
+		throw e;
+	    } finally {
+		deflater.end();
+	    }
+	    data = deflatedData;
+	    deflated = true;
+	    return this;
+	}
+
+	void delete() {
+	    if (deflated) {
+		data.delete();
+	    }
+	}
+    }
+
+    /**
+     * Copies the carrier bytes with {@link FileChannel#transferTo}, without
+     * buffering them in the heap.
+     */
+    private File copyCarrier(File carrier) throws IOException {
 	File outputFile = new File(getOutputFileName(carrier));
-	byte[] carrierBytes = FileUtils.readFileToByteArray(carrier);
-	FileOutputStream outputStream = new FileOutputStream(outputFile);
-	outputStream.write(carrierBytes);
-	outputStream.close();
+	copy(carrier, outputFile, carrier.length());
 	return outputFile;
     }
 
+    private static void copy(File source, File target, long count) throws IOException {
+	FileInputStream input = new FileInputStream(source);
+	FileOutputStream output = new FileOutputStream(target);
+	try {
+	    FileChannel channel = input.getChannel();
+	    long position = 0;
+	    while (position < count) {
+		position += channel.transferTo(position, count - position, output.getChannel());
+	    }
+	} finally {
+	    input.close();
+	    output.close();
+	}
+    }
+
+    /**
+     * Reads only the trailer, the catalog, the embedded files name tree and
+     * the embedded file streams, and not the pages of the PDF. The data of the
+     * embedded files is kept in a scratch file, and streamed to the restored
+     * payload files.
+     */
     @Override
     public List<RestoredFile> restore(File originalPdf) throws IOException {
-	RestoredFile copiedPdf = getRestoredCarrier(originalPdf);
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
-	PDDocument document = PDDocument.load(copiedPdf);
-	PDDocumentNameDictionary namesDictionary = new PDDocumentNameDictionary(document.getDocumentCatalog());
-	PDEmbeddedFilesNameTreeNode filesTree = namesDictionary.getEmbeddedFiles();
-	if (filesTree != null) {
-	    int i = 0;
-	    while (true) {
-		PDComplexFileSpecification fileSpecification = (PDComplexFileSpecification) filesTree
-			.getValue("PericlesMetadata-" + i);
-		if (fileSpecification == null) {
-		    break;
-		}
-		File oldAttachedFile = new File(fileSpecification.getFile());
-		RestoredFile restoredPayload = new RestoredFile(RESTORED_DIRECTORY + oldAttachedFile.getName());
-		PDEmbeddedFile embeddedFile = fileSpecification.getEmbeddedFile();
-		InputStream inputStream = embeddedFile.createInputStream();
-		FileOutputStream outputStream = new FileOutputStream(restoredPayload);
-		IOUtils.copy(inputStream, outputStream);
-		removeBuggyLineEnding(restoredPayload);
+	COSDictionary carrierInformation;
+	PDFStructureReader reader = new PDFStructureReader(originalPdf);
+	try {
+	    COSBase item = reader.getTrailer().getItem(CARRIER_KEY);
+	    carrierInformation = item instanceof COSDictionary ? (COSDictionary) item : null;
+	    Map<String, COSBase> embeddedFiles = new HashMap<String, COSBase>();
+	    COSBase namesDictionary = reader.resolve(reader.getCatalog(), COSName.NAMES);
+	    if (namesDictionary instanceof COSDictionary) {
+		readNameTree(reader, ((COSDictionary) namesDictionary).getItem(COSName.EMBEDDED_FILES), embeddedFiles);
+	    }
+	    for (int i = 0; embeddedFiles.containsKey("PericlesMetadata-" + i); i++) {
+		RestoredFile restoredPayload = restorePayload(reader, embeddedFiles.get("PericlesMetadata-" + i),
+			carrierInformation == null);
 		restoredPayload.wasPayload = true;
 		restoredPayload.checksumValid = true;
 		restoredPayload.restorationNote = "Checksum wasn't calculated, because this algorithm isn't using restoration metadata. The original payload file survives the encapsulation with this algorithm.";
 		restoredFiles.add(restoredPayload);
-		i++;
 	    }
+	} finally {
+	    reader.close();
 	}
-	document.close();
+	RestoredFile copiedPdf = restoreCarrier(originalPdf, carrierInformation);
 	copiedPdf.wasCarrier = true;
-	copiedPdf.checksumValid = false;
-	copiedPdf.restorationNote = "Checksum can't be valid, because attached payload files can't be removed from carrier.";
 	restoredFiles.add(copiedPdf);
 	for (RestoredFile file : restoredFiles) {
 	    file.algorithm = this;
@@ -168,14 +350,135 @@ public class PDFFileAttacher extends AbstractAlgorithm {
     }
 
     /**
-     * PDFBox adds a new line with ^M at the end of the restored payload file.
-     * This method removes the buggy line.
+     * Collects the entries of a name tree node and its kids.
+     */
+    private void readNameTree(PDFStructureReader reader, COSBase node, Map<String, COSBase> entries)
+	    throws IOException {
+	node = reader.resolve(node);
+	if (!(node instanceof COSDictionary)) {
+	    return;
+	}
+	COSBase names = reader.resolve((COSDictionary) node, COSName.NAMES);
+	if (names instanceof COSArray) {
+	    COSArray namesArray = (COSArray) names;
+	    for (int i = 0; i + 1 < namesArray.size(); i += 2) {
+		COSBase key = reader.resolve(namesArray.get(i));
+		if (key instanceof COSString) {
+		    entries.put(((COSString) key).getString(), namesArray.get(i + 1));
+		}
+	    }
+	}
+	COSBase kids = reader.resolve((COSDictionary) node, COSName.KIDS);
+	if (kids instanceof COSArray) {
+	    for (int i = 0; i < ((COSArray) kids).size(); i++) {
+		readNameTree(reader, ((COSArray) kids).get(i), entries);
+	    }
+	}
+    }
+
+    /**
+     * Streams the decoded data of the embedded file to the restored payload.
      * 
-     * @param restoredPayload
+     * @param savedByPDFBox
+     *            true, if the whole document was saved by PDFBox, which adds
+     *            a line break at the end of the embedded file
+     */
+    private RestoredFile restorePayload(PDFStructureReader reader, COSBase fileSpecification,
+	    boolean savedByPDFBox) throws IOException {
+	COSBase specification = reader.resolve(fileSpecification);
+	if (!(specification instanceof COSDictionary)) {
+	    throw new IOException("Invalid file specification of an attachment.");
+	}
+	COSDictionary specificationDictionary = (COSDictionary) specification;
+	COSBase fileName = reader.resolve(specificationDictionary, COSName.F);
+	if (!(fileName instanceof COSString)) {
+	    fileName = reader.resolve(specificationDictionary, COSName.UF);
+	}
+	COSBase embeddedFiles = reader.resolve(specificationDictionary, COSName.EF);
+	COSBase embeddedFile = embeddedFiles instanceof COSDictionary
+		? reader.resolve((COSDictionary) embeddedFiles, COSName.F) : null;
+	if (!(fileName instanceof COSString) || !(embeddedFile instanceof COSStream)) {
+	    throw new IOException("The attachment has no file name or no embedded file.");
+	}
+	File oldAttachedFile = new File(((COSString) fileName).getString());
+	RestoredFile restoredPayload = new RestoredFile(RESTORED_DIRECTORY + oldAttachedFile.getName());
+	InputStream inputStream = ((COSStream) embeddedFile).getUnfilteredStream();
+	OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(restoredPayload));
+	if (savedByPDFBox) {
+	    outputStream = new LineEndingRemover(outputStream);
+	}
+	try {
+	    IOUtils.copy(inputStream, outputStream);
+	} finally {
+	    inputStream.close();
+	    outputStream.close();
+	}
+	return restoredPayload;
+    }
+
+    /**
+     * Cuts off the incremental update with the attachments. PDFs, which were
+     * saved as a whole by former versions of this algorithm, are copied.
      */
-    private void removeBuggyLineEnding(File restoredPayload) throws IOException {
-	byte[] data = FileUtils.readFileToByteArray(restoredPayload);
-	FileUtils.writeByteArrayToFile(restoredPayload, Arrays.copyOfRange(data, 0, data.length - 2), false);
+    private RestoredFile restoreCarrier(File originalPdf, COSDictionary carrierInformation) throws IOException {
+	RestoredFile restoredCarrier = new RestoredFile(getRestoredCarrierName(originalPdf));
+	if (carrierInformation == null) {
+	    FileUtils.copyFile(originalPdf, restoredCarrier);
+	    restoredCarrier.checksumValid = false;
+	    restoredCarrier.restorationNote = "Checksum can't be valid, because the PDF wasn't attached with an incremental update.";
+	} else {
+	    copy(originalPdf, restoredCarrier, carrierInformation.getLong(COSName.SIZE));
+	    restoredCarrier.validateChecksum(carrierInformation.getString(CHECKSUM_KEY));
+	}
+	return restoredCarrier;
+    }
+
+    /**
+     * PDFBox adds a new line with ^M at the end of the restored payload file,
+     * if the whole document was saved by PDFBox. This stream removes the buggy
+     * line while the payload is written: the last two bytes are held back, and
+     * are dropped on close if they are the line break.
+     */
+    private static class LineEndingRemover extends FilterOutputStream {
+	private final byte[] pending = new byte[2];
+	private int pendingLength = 0;
+
+	LineEndingRemover(OutputStream output) {
+	    super(output);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+	    if (pendingLength == pending.length) {
+		out.write(pending[0]);
+		pending[0] = pending[1];
+		pending[1] = (byte) b;
+	    } else {
+		pending[pendingLength++] = (byte) b;
+	    }
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int length) throws IOException {
+	    if (length < pending.length) {
+		for (int i = 0; i < length; i++) {
+		    write(data[offset + i]);
+		}
+		return;
+	    }
+	    out.write(pending, 0, pendingLength);
+	    out.write(data, offset, length - pending.length);
+	    System.arraycopy(data, offset + length - pending.length, pending, 0, pending.length);
+	    pendingLength = pending.length;
+	}
+
+	@Override
+	public void close() throws IOException {
+	    if (pendingLength < pending.length || pending[0] != '\r' || pending[1] != '\n') {
+		out.write(pending, 0, pendingLength);
+	    }
+	    super.close();
+	}
     }
 
     @Override
@@ -185,12 +488,12 @@ public class PDFFileAttacher extends AbstractAlgorithm {
 	scenario.setCriterionValue(ENCAPSULATION_METHOD, EMBEDDING);
 	scenario.setCriterionValue(VISIBILITY, VISIBLE);
 	scenario.setCriterionValue(DETECTABILITY, DETECTABLE);
-	scenario.setCriterionValue(CARRIER_RESTORABILITY, NO);
+	scenario.setCriterionValue(CARRIER_RESTORABILITY, YES);
 	scenario.setCriterionValue(PAYLOAD_RESTORABILITY, YES);
 	scenario.setCriterionValue(CARRIER_PROCESSABILITY, YES);
 	scenario.setCriterionValue(PAYLOAD_ACCESSIBILITY, YES);
 	scenario.setCriterionValue(ENCRYPTION, NO);
-	scenario.setCriterionValue(COMPRESSION, NO);
+	scenario.setCriterionValue(COMPRESSION, YES);
 	scenario.setCriterionValue(VELOCITY, NO);
 	scenario.setCriterionValue(STANDARDS, YES);
 	return scenario;
@@ -225,9 +528,9 @@ public class PDFFileAttacher extends AbstractAlgorithm {
 		+ "any kind of files to PDF documents. If the encapsulated PDF is opened in a PDF "
 		+ "reader, the reader will notify the user of the attached file, if it supports "
 		+ "the view of attached files.\nThe payload file can be restored correctly in every "
-		+ "bit. It seems to be that the used library doesn't support the removing of the attached "
-		+ "files from the carrier, so the carrier can not be restored to its original state with"
-		+ "the PeriCAT tool, but with PDF editors which support this feature.\n"
+		+ "bit. The attachments are appended as incremental update to the unchanged carrier bytes,"
+		+ " so the carrier PDF can be restored correctly in every bit, too. Payload files are"
+		+ " compressed with the FlateDecode filter, unless they are already compressed.\n"
 		+ "Don't use this algorithm on PDF documents that already keep PERICLES metadata!";
 	return description;
     }
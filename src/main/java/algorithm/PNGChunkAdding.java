@@ -20,6 +20,7 @@
 package algorithm;
 
 import static main.Configuration.RESTORED_DIRECTORY;
+import static main.Configuration.TOOL_DESCRIPTION;
 import static model.Criterion.CARRIER_PROCESSABILITY;
 import static model.Criterion.CARRIER_RESTORABILITY;
 import static model.Criterion.COMPRESSION;
@@ -32,35 +33,59 @@ import static model.Criterion.STANDARDS;
 import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
-import ar.com.hjg.pngj.IImageLine;
-import ar.com.hjg.pngj.PngReader;
-import ar.com.hjg.pngj.PngWriter;
-import ar.com.hjg.pngj.chunks.ChunkCopyBehaviour;
-import ar.com.hjg.pngj.chunks.ChunkPredicate;
-import ar.com.hjg.pngj.chunks.ChunksList;
-import ar.com.hjg.pngj.chunks.PngChunk;
-import ar.com.hjg.pngj.chunks.PngChunkTEXT;
+import codec.CompressionProbe;
+import codec.PNGChunkStream;
+import codec.PNGChunkStream.Chunk;
 import model.PayloadSegment;
 import model.RestoredFile;
 import model.Scenario;
 
 /**
- * This technique uses the PNGJ library to embed additional information chunks into PNG files.
- *
- * Note: A(nimated)PNGs are not supported by PNGJ. A future implementation
- * should use the apache commons imaging library, when it's final.
+ * This technique embeds additional information chunks into PNG files. It works
+ * on the raw chunk sequence of the PNG with the {@link PNGChunkStream}: the
+ * chunks of the carrier are copied byte for byte, and only the pericles
+ * chunks are added or filtered out. The payloads are stored binary safe in
+ * private ancillary chunks of bounded size.
+ * As the image data isn't decoded, A(nimated)PNGs can be used as carrier, too.
  */
 public class PNGChunkAdding extends AbstractAlgorithm {
+    /** Keyword of the text chunks of former versions of this algorithm */
     private static final String KEYWORD = "Pericles Metadata";
+    private static final String TEXT_CHUNK = "tEXt";
+    private static final Charset TEXT_CHARSET = Charset.forName("ISO-8859-1");
+    /**
+     * Private, ancillary and safe to copy chunk type of the payload chunks. The
+     * first data byte tells, if the chunk contains restoration metadata or
+     * payload data.
+     */
+    static final String PAYLOAD_CHUNK = "pcAt";
+    /** Maximum data length of a payload chunk */
+    static final int MAX_CHUNK_LENGTH = 64 * 1024;
+    private static final byte METADATA_CHUNK = 0;
+    private static final byte DATA_CHUNK = 1;
+    private static final byte STORED = 0;
+    private static final byte DEFLATED = 1;
 
     @Override
     Scenario defineScenario() {
@@ -69,12 +94,12 @@ public class PNGChunkAdding extends AbstractAlgorithm {
 	scenario.setCriterionValue(ENCAPSULATION_METHOD, EMBEDDING);
 	scenario.setCriterionValue(VISIBILITY, INVISIBLE);
 	scenario.setCriterionValue(DETECTABILITY, DETECTABLE);
-	scenario.setCriterionValue(CARRIER_RESTORABILITY, NO);
+	scenario.setCriterionValue(CARRIER_RESTORABILITY, YES);
 	scenario.setCriterionValue(PAYLOAD_RESTORABILITY, YES);
 	scenario.setCriterionValue(CARRIER_PROCESSABILITY, YES);
 	scenario.setCriterionValue(PAYLOAD_ACCESSIBILITY, YES);
 	scenario.setCriterionValue(ENCRYPTION, NO);
-	scenario.setCriterionValue(COMPRESSION, NO);
+	scenario.setCriterionValue(COMPRESSION, YES);
 	scenario.setCriterionValue(VELOCITY, NO);
 	scenario.setCriterionValue(STANDARDS, YES);
 	return scenario;
@@ -88,13 +113,12 @@ public class PNGChunkAdding extends AbstractAlgorithm {
 	return new SuffixFileFilter(supportedFormats);
     }
 
+    /**
+     * Payload can be of any type.
+     */
     @Override
     SuffixFileFilter configurePayloadFileFilter() {
-	ArrayList<String> supportedFormats = new ArrayList<String>();
-	supportedFormats.add("txt");
-	supportedFormats.add("json");
-	supportedFormats.add("xml");
-	return new SuffixFileFilter(supportedFormats);
+	return new AcceptAllFilter();
     }
 
     @Override
@@ -103,92 +127,131 @@ public class PNGChunkAdding extends AbstractAlgorithm {
     }
 
     /**
-     * Create an ancillary TEXT chunk and add it to the carrier PNG. The text is
-     * saved in the payload text file (txt, or JSON, or XML)
+     * Inserts the payloads in front of the IEND chunk of the carrier PNG. Each
+     * payload is stored in a sequence of private ancillary chunks: a metadata
+     * chunk with the restoration metadata, followed by data chunks with the
+     * raw or deflated payload bytes. The payload is streamed into data chunks
+     * of at most {@link #MAX_CHUNK_LENGTH} bytes, so it is never buffered in
+     * full.
      * 
-     * TODO: Problem - the library alters the original data chunks and uses
-     * another compression. If it should be done in a way that the original
-     * chunks stay untouched, an own parser has to be developed.
+     * The chunks of the carrier are copied byte for byte, without decoding the
+     * image data, so the carrier can be restored in every bit by removing the
+     * added chunks.
      */
     @Override
     public File encapsulate(File carrier, List<File> payloadList) throws IOException {
 	File outputFile = getOutputFile(carrier);
-	PngReader reader = new PngReader(carrier);
-	PngWriter writer = new PngWriter(outputFile, reader.imgInfo, true);
-	ChunksList chunkList = reader.getChunksList();
-	writer.copyChunksFrom(chunkList, ChunkCopyBehaviour.COPY_ALL);
-	for (File payload : payloadList) {
-	    PayloadSegment payloadSegment = new PayloadSegment(carrier, payload, this);
-	    byte[] payloadBytes = payloadSegment.getPayloadSegmentBytes();
-	    PngChunkTEXT textChunk = new PngChunkTEXT(reader.imgInfo);
-	    // (more than one with the same keyword is permissible)
-	    textChunk.setKeyVal(KEYWORD, new String(payloadBytes));
-	    writer.getChunksList().queue(textChunk);
-	}
-	for (int row = 0; row < reader.imgInfo.rows; row++) {
-	    IImageLine line = reader.readRow();
-	    writer.writeRow(line);
+	FileInputStream input = new FileInputStream(carrier);
+	FileOutputStream output = new FileOutputStream(outputFile);
+	try {
+	    PNGChunkStream png = new PNGChunkStream(input.getChannel());
+	    FileChannel outputChannel = output.getChannel();
+	    Chunk endChunk = png.getEndChunk();
+	    png.transfer(0, endChunk.position, outputChannel);
+	    for (File payload : payloadList) {
+		writePayloadChunks(carrier, payload, outputChannel);
+	    }
+	    png.transfer(endChunk.position, input.getChannel().size() - endChunk.position, outputChannel);
+	} finally {
+	    input.close();
+	    output.close();
 	}
-	reader.end();
-	writer.end();
 	return outputFile;
     }
 
+    private void writePayloadChunks(File carrier, File payload, FileChannel output) throws IOException {
+	boolean deflate = CompressionProbe.isCompressible(payload);
+	ByteArrayOutputStream metadata = new ByteArrayOutputStream();
+	metadata.write(METADATA_CHUNK);
+	metadata.write(deflate ? DEFLATED : STORED);
+	PayloadSegment.createRestorationMetadata(carrier, payload, this).store(metadata, TOOL_DESCRIPTION);
+	PNGChunkStream.writeChunk(output, PAYLOAD_CHUNK, metadata.toByteArray(), 0, metadata.size());
+	OutputStream chunkStream = PNGChunkStream.newChunkOutputStream(output, PAYLOAD_CHUNK,
+		new byte[] { DATA_CHUNK }, MAX_CHUNK_LENGTH);
+	Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+	try {
+	    OutputStream payloadStream = deflate ? new DeflaterOutputStream(chunkStream, deflater) : chunkStream;
+	    FileUtils.copyFile(payload, payloadStream);
+	    payloadStream.close();
+	} finally {
+	    deflater.end();
+	}
+    }
+
+    /**
+     * Restores the payloads from the pericles chunks, and the carrier by
+     * copying all other chunks. Only the chunk headers and the first byte of
+     * the pericles chunks are read to find them. The payloads are streamed
+     * out of their data chunks. PNGs with the text chunks of former versions of
+     * this algorithm are restored, too.
+     */
     @Override
     public List<RestoredFile> restore(File outputFile) throws IOException {
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
-	PngReader reader = new PngReader(outputFile);
-	reader.end();
-	ChunksList chunkList = reader.getChunksList();
-	final List<PngChunkTEXT> periclesChunks = new ArrayList<PngChunkTEXT>();
-	for (PngChunk chunk : chunkList.getById("tEXt")) {
-	    PngChunkTEXT textChunk = (PngChunkTEXT) chunk;
-	    if (textChunk.getKey().equals(KEYWORD)) {
-		periclesChunks.add(textChunk);
-		restoredFiles.add(restorePaylad(textChunk));
-	    }
-	}
-	// create restored carrier file:
-	RestoredFile restoredCarrier = null;
-	if (periclesChunks.size() > 0) {
-	    PayloadSegment payloadSegment = PayloadSegment.getPayloadSegment(periclesChunks.get(0).getVal().getBytes());
-	    restoredCarrier = new RestoredFile(RESTORED_DIRECTORY + payloadSegment.getCarrierName());
-	    restoredCarrier.originalFilePath = payloadSegment.getCarrierPath();
-	    restoredCarrier.wasCarrier = true;
-	    restoredCarrier.checksumValid = false;
-	    restoredCarrier.restorationNote = "Checksum can't be valid, as the order and size of chunks is alterd. This is lossless, so the carrier is actually the same.";
-	} else {
-	    // No pericles chunks in carrier
-	    restoredCarrier = new RestoredFile(RESTORED_DIRECTORY + outputFile.getName());
-	    FileUtils.copyFile(outputFile, restoredCarrier);
-	    restoredCarrier.wasCarrier = true;
-	    restoredCarrier.checksumValid = true;
-	    restoredCarrier.restorationNote = "There were no payload files embedded, so no checksum calculation possible.";
-	    restoredCarrier.algorithm = this;
-	    restoredFiles.add(restoredCarrier);
-	    return restoredFiles;
-	}
-	// remove all pericles chunks from carrier:
-	reader = new PngReader(outputFile);
-	PngWriter writer = new PngWriter(restoredCarrier, reader.imgInfo, true);
-	writer.copyChunksFrom(chunkList, new ChunkPredicate() {
-	    @Override
-	    public boolean match(PngChunk chunk) {
-		for (PngChunkTEXT toBeRemovedChunk : periclesChunks) {
-		    if (!chunk.equals(toBeRemovedChunk)) {
-			return true;
+	FileInputStream input = new FileInputStream(outputFile);
+	try {
+	    PNGChunkStream png = new PNGChunkStream(input.getChannel());
+	    byte[] keyword = (KEYWORD + "\0").getBytes(TEXT_CHARSET);
+	    List<Chunk> periclesChunks = new ArrayList<Chunk>();
+	    List<List<Chunk>> payloads = new ArrayList<List<Chunk>>();
+	    Properties restorationMetadata = null;
+	    for (Chunk chunk : png.getChunks()) {
+		if (chunk.type.equals(PAYLOAD_CHUNK) && chunk.length > 0) {
+		    periclesChunks.add(chunk);
+		    if (png.readData(chunk, 1)[0] == METADATA_CHUNK) {
+			payloads.add(new ArrayList<Chunk>());
+		    } else if (payloads.isEmpty()) {
+			throw new IOException("The PNG contains payload data without restoration metadata.");
 		    }
+		    payloads.get(payloads.size() - 1).add(chunk);
+		} else if (chunk.type.equals(TEXT_CHUNK)
+			&& Arrays.equals(keyword, png.readData(chunk, keyword.length))) {
+		    periclesChunks.add(chunk);
+		    byte[] data = png.readData(chunk);
+		    String text = new String(data, keyword.length, data.length - keyword.length, TEXT_CHARSET);
+		    PayloadSegment payloadSegment = PayloadSegment.getPayloadSegment(text.getBytes());
+		    restorationMetadata = payloadSegment.getRestorationMetadata();
+		    restoredFiles.add(restorePayload(restorationMetadata,
+			    new ByteArrayInputStream(payloadSegment.getPayloadBytes())));
+		}
+	    }
+	    for (List<Chunk> payloadChunks : payloads) {
+		byte[] metadata = png.readData(payloadChunks.get(0));
+		restorationMetadata = new Properties();
+		restorationMetadata.load(new ByteArrayInputStream(metadata, 2, metadata.length - 2));
+		InputStream payloadStream = png.newChunkInputStream(payloadChunks.subList(1, payloadChunks.size()), 1);
+		if (metadata[1] == DEFLATED) {
+		    payloadStream = new InflaterInputStream(payloadStream);
 		}
-		return false;
+		restoredFiles.add(restorePayload(restorationMetadata, payloadStream));
 	    }
-	});
-	for (int row = 0; row < reader.imgInfo.rows; row++) {
-	    IImageLine line = reader.readRow();
-	    writer.writeRow(line);
+	    RestoredFile restoredCarrier;
+	    if (restorationMetadata == null) {
+		// No pericles chunks in carrier
+		restoredCarrier = new RestoredFile(RESTORED_DIRECTORY + outputFile.getName());
+		FileUtils.copyFile(outputFile, restoredCarrier);
+		restoredCarrier.wasCarrier = true;
+		restoredCarrier.checksumValid = true;
+		restoredCarrier.restorationNote = "There were no payload files embedded, so no checksum calculation possible.";
+		restoredCarrier.algorithm = this;
+		restoredFiles.add(restoredCarrier);
+		return restoredFiles;
+	    }
+	    // remove all pericles chunks from carrier:
+	    restoredCarrier = new RestoredFile(RESTORED_DIRECTORY + restorationMetadata.getProperty("carrierName"));
+	    FileOutputStream output = new FileOutputStream(restoredCarrier);
+	    try {
+		png.transferWithout(output.getChannel(), periclesChunks);
+	    } finally {
+		output.close();
+	    }
+	    restoredCarrier.originalFilePath = restorationMetadata.getProperty("carrierPath");
+	    restoredCarrier.wasCarrier = true;
+	    restoredCarrier.validateChecksum(restorationMetadata.getProperty("carrierChecksum"));
+	    restoredFiles.add(restoredCarrier);
+	} finally {
+	    input.close();
 	}
-	reader.end();
-	writer.end();
-	restoredFiles.add(restoredCarrier);
 	for (RestoredFile file : restoredFiles) {
 	    file.algorithm = this;
 	    for (RestoredFile relatedFile : restoredFiles) {
@@ -200,18 +263,6 @@ public class PNGChunkAdding extends AbstractAlgorithm {
 	return restoredFiles;
     }
 
-    private RestoredFile restorePaylad(PngChunkTEXT textChunk) throws IOException {
-	PayloadSegment payloadSegment = PayloadSegment.getPayloadSegment(textChunk.getVal().getBytes());
-	RestoredFile restoredPayload = new RestoredFile(RESTORED_DIRECTORY + payloadSegment.getPayloadName());
-	FileOutputStream outputStream = new FileOutputStream(restoredPayload);
-	outputStream.write(payloadSegment.getPayloadBytes());
-	outputStream.close();
-	restoredPayload.wasPayload = true;
-	restoredPayload.originalFilePath = payloadSegment.getPayloadPath();
-	restoredPayload.validateChecksum(payloadSegment.getPayloadChecksum());
-	return restoredPayload;
-    }
-
     @Override
     public String getName() {
 	return "PNG chunk adding";
@@ -219,13 +270,11 @@ public class PNGChunkAdding extends AbstractAlgorithm {
 
     @Override
     public String getDescription() {
-	String description = "This algorithm works on PNG carrier files and text"
-		+ " payload files. It uses the JPNG library to add an arbitrary text"
-		+ " chunk to the existing PNG. The payload file can be restored correctly "
-		+ "in every bit. As the library has too much intelligence, it reorganize the "
-		+ "PNG chunks and therefore the carrier PNG cannot be restored in every bit. "
-		+ "The reorganisation is lossless, so the significant properties of the PNG won't be altered."
-		+ "\nThis encapsulation algorithms doesn't support A(nimated)PNGs.";
+	String description = "This algorithm works on PNG carrier files and payload"
+		+ " files of any type. It adds private chunks with the (compressed) payload"
+		+ " in front of the end of the existing PNG. The chunks of the carrier are copied byte for byte,"
+		+ " without decoding the image, so the payload files and the carrier PNG"
+		+ " can be restored correctly in every bit. A(nimated)PNGs are supported as well.";
 	return description;
     }
 
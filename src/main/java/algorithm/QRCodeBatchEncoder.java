@@ -0,0 +1,330 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package algorithm;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.filefilter.FileFileFilter;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import codec.QRCodeSheetEncoder;
+import model.PayloadSegment;
+
+/**
+ * Creates QR-code labels for all files of a payload directory. The QR-codes
+ * are encoded like the separate QR-code files of the
+ * {@link QRCodeWatermarking}, so each label can be restored by the algorithm.
+ * Their restoration metadata has no date, so the same payloads always result
+ * in the same labels.
+ *
+ * The payloads are encoded by a fixed number of worker threads. Each worker
+ * keeps its encoding hints and its image buffer for all of its QR-codes,
+ * instead of creating a new writer and a new image for each payload. The
+ * QR-codes are either written to one file per payload, or packed onto pages
+ * with several QR-codes, which are arranged like the QR-codes of a
+ * {@link QRCodeSheetEncoder} sheet. All images get a {@link QRCodeLayout}, so
+ * that the QR-codes of a page are decoded in parallel on restoration.
+ *
+ * Payloads, which don't fit into one QR-code of the configured size, are
+ * skipped and listed in the {@link Report}.
+ */
+public class QRCodeBatchEncoder {
+    private final int symbolSize;
+    private final int symbolsPerPage;
+    private final String imageFormat;
+    private final int threads;
+
+    /**
+     * @param symbolSize
+     *            width and height of each QR-code in pixels, including the
+     *            quiet zone
+     * @param symbolsPerPage
+     *            number of QR-codes on one page, 1 to write a file for each
+     *            payload
+     * @param imageFormat
+     *            format of the output images, e.g. png
+     * @param threads
+     *            number of worker threads
+     */
+    public QRCodeBatchEncoder(int symbolSize, int symbolsPerPage, String imageFormat, int threads) {
+	if (symbolSize < 21 + 2 * QRCodeSheetEncoder.QUIET_ZONE) {
+	    throw new IllegalArgumentException("The QR-code size " + symbolSize + " is too small.");
+	}
+	if (symbolsPerPage < 1) {
+	    throw new IllegalArgumentException("A page needs at least one QR-code.");
+	}
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.symbolSize = symbolSize;
+	this.symbolsPerPage = symbolsPerPage;
+	this.imageFormat = imageFormat;
+	this.threads = threads;
+    }
+
+    /**
+     * Encodes each file of the payload directory into a QR-code. Sub
+     * directories are ignored.
+     *
+     * @param payloadDirectory
+     * @param outputDirectory
+     *            is created if it doesn't exist
+     * @return statistics of the batch
+     * @throws IOException
+     *             if a payload can't be read, or an image can't be written
+     */
+    public Report encode(File payloadDirectory, File outputDirectory) throws IOException {
+	File[] payloads = payloadDirectory.listFiles((FileFilter) FileFileFilter.FILE);
+	if (payloads == null) {
+	    throw new IOException(payloadDirectory + " is no directory.");
+	}
+	Arrays.sort(payloads);
+	if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+	    throw new IOException("Can't create the output directory " + outputDirectory);
+	}
+	Report report = new Report();
+	long start = System.nanoTime();
+	AtomicInteger nextPage = new AtomicInteger();
+	ExecutorService executor = Executors.newFixedThreadPool(threads);
+	try {
+	    List<Future<Void>> workers = new ArrayList<Future<Void>>();
+	    for (int i = 0; i < threads; i++) {
+		workers.add(executor.submit(new Worker(payloads, outputDirectory, nextPage, report)));
+	    }
+	    for (Future<Void> worker : workers) {
+		worker.get();
+	    }
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The QR-code batch was interrupted.", e);
+	} finally {
+	    executor.shutdownNow();
+	}
+	report.nanos = System.nanoTime() - start;
+	return report;
+    }
+
+    /**
+     * Encodes pages until all pages are taken. The hints, the page image and
+     * its pixel array are reused for all pages of the worker.
+     */
+    private class Worker implements Callable<Void> {
+	private final File[] payloads;
+	private final File outputDirectory;
+	private final AtomicInteger nextPage;
+	private final Report report;
+	private final Map<EncodeHintType, ErrorCorrectionLevel> hints;
+	private BufferedImage page = null;
+	private int[] pixels;
+
+	Worker(File[] payloads, File outputDirectory, AtomicInteger nextPage, Report report) {
+	    this.payloads = payloads;
+	    this.outputDirectory = outputDirectory;
+	    this.nextPage = nextPage;
+	    this.report = report;
+	    hints = Collections.singletonMap(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
+	}
+
+	@Override
+	public Void call() throws IOException {
+	    int pageCount = (payloads.length + symbolsPerPage - 1) / symbolsPerPage;
+	    int pageIndex;
+	    while ((pageIndex = nextPage.getAndIncrement()) < pageCount) {
+		int from = pageIndex * symbolsPerPage;
+		int count = Math.min(symbolsPerPage, payloads.length - from);
+		preparePage(count);
+		int symbols = 0;
+		for (int i = 0; i < count; i++) {
+		    ByteMatrix symbol = encode(payloads[from + i]);
+		    if (symbol == null) {
+			report.addSkipped(payloads[from + i]);
+		    } else {
+			draw(symbol, QRCodeSheetEncoder.getSymbolBounds(i, count, symbolSize));
+			symbols++;
+		    }
+		}
+		if (symbols > 0) {
+		    File output = getOutputFile(pageIndex, from);
+		    Rectangle bounds = new Rectangle(0, 0, page.getWidth(), page.getHeight());
+		    QRCodeWatermarking.writeImage(page, imageFormat, output, new QRCodeLayout(bounds, symbolSize));
+		    report.addFile(symbols);
+		}
+	    }
+	    return null;
+	}
+
+	/**
+	 * Clears the page image, and only creates a new one if the number of
+	 * rows or columns changes.
+	 */
+	private void preparePage(int count) {
+	    Rectangle last = QRCodeSheetEncoder.getSymbolBounds(count - 1, count, symbolSize);
+	    int columns = (int) Math.ceil(Math.sqrt(count));
+	    int width = columns * symbolSize;
+	    int height = last.y + symbolSize;
+	    if (page == null || page.getWidth() != width || page.getHeight() != height) {
+		page = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) page.getRaster().getDataBuffer()).getData();
+	    }
+	    Arrays.fill(pixels, Color.WHITE.getRGB());
+	}
+
+	/**
+	 * @return QR-code modules of the payload segment, or null if the payload
+	 *         doesn't fit into a QR-code of the configured size
+	 */
+	private ByteMatrix encode(File payload) {
+	    PayloadSegment metadata = new PayloadSegment(payload);
+	    metadata.addOptionalProperty("usedMethod", QRCodeWatermarking.SEPARATE_FILE);
+	    try {
+		ByteMatrix symbol = Encoder.encode(new String(metadata.getReproduciblePayloadSegmentBytes()),
+			ErrorCorrectionLevel.L, hints).getMatrix();
+		return symbol.getWidth() + 2 * QRCodeSheetEncoder.QUIET_ZONE <= symbolSize ? symbol : null;
+	    } catch (WriterException e) {
+		return null;
+	    }
+	}
+
+	/**
+	 * Draws the modules into the tile of the page, with the largest module
+	 * size that fits, centred in the tile.
+	 */
+	private void draw(ByteMatrix symbol, Rectangle tile) {
+	    int moduleSize = symbolSize / (symbol.getWidth() + 2 * QRCodeSheetEncoder.QUIET_ZONE);
+	    int offset = (symbolSize - symbol.getWidth() * moduleSize) / 2;
+	    int black = Color.BLACK.getRGB();
+	    int pageWidth = page.getWidth();
+	    for (int y = 0; y < symbol.getHeight(); y++) {
+		for (int x = 0; x < symbol.getWidth(); x++) {
+		    if (symbol.get(x, y) != 1) {
+			continue;
+		    }
+		    int left = tile.x + offset + x * moduleSize;
+		    int top = tile.y + offset + y * moduleSize;
+		    for (int row = top; row < top + moduleSize; row++) {
+			Arrays.fill(pixels, row * pageWidth + left, row * pageWidth + left + moduleSize, black);
+		    }
+		}
+	    }
+	}
+
+	/**
+	 * Single QR-codes get the full name of their payload, so that payloads
+	 * with the same base name don't overwrite each other. Pages are
+	 * numbered.
+	 */
+	private File getOutputFile(int pageIndex, int from) {
+	    String name;
+	    if (symbolsPerPage == 1) {
+		name = payloads[from].getName();
+	    } else {
+		name = String.format("qrcode-page-%05d", pageIndex + 1);
+	    }
+	    return new File(outputDirectory, name + "." + imageFormat);
+	}
+    }
+
+    /**
+     * Statistics of a batch.
+     */
+    public static class Report {
+	private int symbols = 0;
+	private int files = 0;
+	private final List<File> skipped = new ArrayList<File>();
+	private long nanos;
+
+	synchronized void addFile(int fileSymbols) {
+	    symbols += fileSymbols;
+	    files++;
+	}
+
+	synchronized void addSkipped(File payload) {
+	    skipped.add(payload);
+	}
+
+	/**
+	 * @return number of encoded QR-codes
+	 */
+	public synchronized int getSymbols() {
+	    return symbols;
+	}
+
+	/**
+	 * @return number of written image files
+	 */
+	public synchronized int getFiles() {
+	    return files;
+	}
+
+	/**
+	 * @return payloads, which are too big for a QR-code
+	 */
+	public synchronized List<File> getSkipped() {
+	    return new ArrayList<File>(skipped);
+	}
+
+	/**
+	 * @return duration of the batch in seconds
+	 */
+	public double getSeconds() {
+	    return nanos / 1e9;
+	}
+
+	/**
+	 * @return encoded and written QR-codes per second
+	 */
+	public double getSymbolsPerSecond() {
+	    return getSymbols() / Math.max(getSeconds(), 1e-9);
+	}
+
+	@Override
+	public String toString() {
+	    return String.format("%d QR-codes in %d files, %.2f s, %.1f QR-codes per second, %d payloads skipped",
+		    getSymbols(), getFiles(), getSeconds(), getSymbolsPerSecond(), getSkipped().size());
+	}
+    }
+}
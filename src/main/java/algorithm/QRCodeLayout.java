@@ -0,0 +1,144 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package algorithm;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngjException;
+
+/**
+ * Position and size of the QR-codes, which the {@link QRCodeWatermarking}
+ * added to an image. PNG images store the layout in a tEXt chunk of their
+ * header, other image formats in a small sidecar file next to the image.
+ *
+ * With the layout, the restoration only has to decode the region of the
+ * QR-codes, instead of searching them in the whole image.
+ */
+class QRCodeLayout {
+    static final String KEYWORD = "QR-code layout";
+    static final String SIDECAR_EXTENSION = ".qrlayout";
+
+    final Rectangle bounds;
+    final int symbolSize;
+
+    /**
+     * @param bounds
+     *            region of the image, which contains all QR-codes
+     * @param symbolSize
+     *            pixel size of the tile of one QR-code
+     */
+    QRCodeLayout(Rectangle bounds, int symbolSize) {
+	this.bounds = bounds;
+	this.symbolSize = symbolSize;
+    }
+
+    /**
+     * @return the same layout at another position
+     */
+    QRCodeLayout moveTo(int x, int y) {
+	return new QRCodeLayout(new Rectangle(x, y, bounds.width, bounds.height), symbolSize);
+    }
+
+    /**
+     * @return text chunk for the {@link codec.PNGEncoder}
+     */
+    Map<String, String> toTextChunk() {
+	return Collections.singletonMap(KEYWORD, toString());
+    }
+
+    /**
+     * Writes the layout to the sidecar file of the image.
+     *
+     * @param image
+     * @throws IOException
+     */
+    void writeSidecar(File image) throws IOException {
+	FileUtils.writeStringToFile(getSidecar(image), toString());
+    }
+
+    @Override
+    public String toString() {
+	return "x=" + bounds.x + " y=" + bounds.y + " width=" + bounds.width + " height=" + bounds.height
+		+ " symbolSize=" + symbolSize;
+    }
+
+    /**
+     * Reads the layout from the PNG header, or the sidecar file of the image.
+     *
+     * @param image
+     * @return layout, or null if the image has no valid layout
+     * @throws IOException
+     */
+    static QRCodeLayout read(File image) throws IOException {
+	File sidecar = getSidecar(image);
+	if (sidecar.isFile()) {
+	    return parse(FileUtils.readFileToString(sidecar));
+	}
+	try {
+	    // The constructor reads the chunks up to the image data.
+	    PngReader reader = new PngReader(image);
+	    try {
+		return parse(reader.getMetadata().getTxtForKey(KEYWORD));
+	    } finally {
+		reader.close();
+	    }
+	} catch (PngjException e) {
+	    return null; // no PNG image
+	}
+    }
+
+    private static File getSidecar(File image) {
+	return new File(image.getPath() + SIDECAR_EXTENSION);
+    }
+
+    private static QRCodeLayout parse(String text) {
+	if (text == null) {
+	    return null;
+	}
+	int[] values = new int[5];
+	String[] keys = { "x", "y", "width", "height", "symbolSize" };
+	String[] entries = text.trim().split("\\s+");
+	if (entries.length != keys.length) {
+	    return null;
+	}
+	for (int i = 0; i < keys.length; i++) {
+	    String[] entry = entries[i].split("=");
+	    if (entry.length != 2 || !entry[0].equals(keys[i])) {
+		return null;
+	    }
+	    try {
+		values[i] = Integer.parseInt(entry[1]);
+	    } catch (NumberFormatException e) {
+		return null;
+	    }
+	}
+	if (values[2] <= 0 || values[3] <= 0 || values[4] <= 0) {
+	    return null;
+	}
+	return new QRCodeLayout(new Rectangle(values[0], values[1], values[2], values[3]), values[4]);
+    }
+}
@@ -33,20 +33,30 @@ import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
 import java.awt.Color;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import javax.imageio.ImageIO;
 import javax.swing.ButtonGroup;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JRadioButton;
@@ -54,23 +64,31 @@ import javax.swing.JTextArea;
 import javax.swing.JTextField;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
-import com.google.zxing.ChecksumException;
 import com.google.zxing.EncodeHintType;
-import com.google.zxing.FormatException;
 import com.google.zxing.LuminanceSource;
 import com.google.zxing.NotFoundException;
-import com.google.zxing.Result;
+import com.google.zxing.ReaderException;
+import com.google.zxing.WriterException;
 import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
 import com.google.zxing.common.HybridBinarizer;
-import com.google.zxing.qrcode.QRCodeReader;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
-
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import codec.ImageRegionReader;
+import codec.PNGEncoder;
+import codec.QRCodeSheetDecoder;
+import codec.QRCodeSheetEncoder;
+import codec.QRCodeSymbolEncoder;
+import codec.RasterOperations;
 import model.PayloadSegment;
 import model.RestoredFile;
 import model.Scenario;
@@ -83,20 +101,30 @@ import view.GUIPanel;
  * will create QR-codes from the payload files, and either ignore the carriers
  * and save the QR-codes into separate files, or use only the first payload and
  * add it on each carrier image.
+ *
+ * Payloads, which don't fit into one QR-code of the configured size, are
+ * compressed and split into a structured append sequence of QR-codes, which are
+ * encoded in parallel and placed next to each other.
+ *
+ * The position and size of the QR-codes are stored with the output image (see
+ * {@link QRCodeLayout}), so that the restoration only decodes this region, and
+ * all QR-codes of the region in parallel.
  */
 public class QRCodeWatermarking extends AbstractAlgorithm {
     private final JRadioButton trueEncapsulate = new JRadioButton("Add the QR-code to carrier image");
     private final JRadioButton falseEncapsulate = new JRadioButton(
 	    "Create separate QR-code file for each payload file (this will ignore the carrier!)");
     private final JLabel messageLabel = new JLabel();
-    private final JTextField sizeField = new JTextField(20);
+    private final JCheckBox structuredAppendBox = new JCheckBox(
+	    "Split payloads, which don't fit into one QR-code of this size, into several QR-codes", true);
+    protected final JTextField sizeField = new JTextField(20);
     protected final JTextField xPositionField = new JTextField(20);
     protected final JTextField yPositionField = new JTextField(20);
     private final String[] fileFormats = { "png", "jpeg", "jpg", "bmp", "gif" };
     private final JComboBox<String> imageFormatBox = new JComboBox<String>(fileFormats);
 
     private final String ON_IMAGE = "ON_IMAGE";
-    private final String SEPARATE_FILE = "SEPARATE_FILE";
+    static final String SEPARATE_FILE = "SEPARATE_FILE";
     private final int DEFAULT_SIZE = 200;
 
     {
@@ -153,25 +181,88 @@ public class QRCodeWatermarking extends AbstractAlgorithm {
 	File outputFile = new File(outputFileName);
 	Hashtable<EncodeHintType, ErrorCorrectionLevel> hintMap = new Hashtable<EncodeHintType, ErrorCorrectionLevel>();
 	hintMap.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
-	BitMatrix byteMatrix = encodeWithQRCode(barcodeInformation, hintMap, size);
-	if (byteMatrix == null) {
+	BufferedImage barcodeImage;
+	if (splitLargePayloads() && !fitsIntoOneQRCode(barcodeInformation, hintMap, size)) {
+	    barcodeImage = createStructuredAppendImage(payloadSegment, size);
+	} else {
+	    BitMatrix byteMatrix = encodeWithQRCode(barcodeInformation, hintMap, size);
+	    barcodeImage = byteMatrix == null ? null : createBarcodeImage(byteMatrix, size);
+	}
+	if (barcodeImage == null) {
+	    return null;
+	}
+	Rectangle bounds = new Rectangle(0, 0, barcodeImage.getWidth(), barcodeImage.getHeight());
+	writeImage(barcodeImage, imageFormat, outputFile, new QRCodeLayout(bounds, size));
+	return outputFile;
+    }
+
+    /**
+     * Checks if the information can be encoded into one QR-code, which isn't
+     * larger than the configured size.
+     * 
+     * @param barcodeInformation
+     * @param hintMap
+     * @param size
+     * @return true, if one QR-code is enough
+     */
+    private boolean fitsIntoOneQRCode(String barcodeInformation,
+	    Hashtable<EncodeHintType, ErrorCorrectionLevel> hintMap, int size) {
+	try {
+	    QRCode code = Encoder.encode(barcodeInformation, ErrorCorrectionLevel.L, hintMap);
+	    return code.getMatrix().getWidth() + 2 * QRCodeSheetEncoder.QUIET_ZONE <= size;
+	} catch (WriterException e) {
+	    return false;
+	}
+    }
+
+    /**
+     * Compresses the payload segment, and splits it into a structured append
+     * sequence of QR-codes with the configured size. The QR-codes are encoded
+     * in parallel and tiled into one image.
+     * 
+     * @param payloadSegment
+     * @param size
+     * @return image with all QR-codes, or null if the payload is too big
+     * @throws IOException
+     */
+    private BufferedImage createStructuredAppendImage(byte[] payloadSegment, int size) throws IOException {
+	ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+	Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+	DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater);
+	deflaterStream.write(payloadSegment);
+	deflaterStream.close();
+	deflater.end();
+	try {
+	    return new QRCodeSheetEncoder(size, ErrorCorrectionLevel.L).encode(compressed.toByteArray());
+	} catch (WriterException e) {
+	    displayMessage(e.getMessage());
 	    return null;
 	}
+    }
+
+    /**
+     * Draws the QR-code modules in black on a white image. The pixels are
+     * written directly to the data array of the image.
+     * 
+     * @param byteMatrix
+     * @param size
+     * @return QR-code image
+     */
+    private BufferedImage createBarcodeImage(BitMatrix byteMatrix, int size) {
 	BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
-	image.createGraphics();
-	Graphics2D graphics = (Graphics2D) image.getGraphics();
-	graphics.setColor(Color.WHITE);
-	graphics.fillRect(0, 0, size, size);
-	graphics.setColor(Color.BLACK);
-	for (int x = 0; x < size; x++) {
-	    for (int y = 0; y < size; y++) {
+	int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	int white = Color.WHITE.getRGB();
+	int black = Color.BLACK.getRGB();
+	Arrays.fill(pixels, white);
+	for (int y = 0; y < size; y++) {
+	    int rowOffset = y * size;
+	    for (int x = 0; x < size; x++) {
 		if (byteMatrix.get(x, y)) {
-		    graphics.fillRect(x, y, 1, 1);
+		    pixels[rowOffset + x] = black;
 		}
 	    }
 	}
-	ImageIO.write(image, imageFormat, outputFile);
-	return outputFile;
+	return image;
     }
 
     /**
@@ -226,15 +317,44 @@ public class QRCodeWatermarking extends AbstractAlgorithm {
 	    qrCodeFile.delete();
 	    return null;
 	}
-	Graphics graphics = carrier.getGraphics();
-	graphics.drawImage(barcode, getXPosition(), getYPosition(), null);
+	RasterOperations.copy(barcode, carrier, getXPosition(), getYPosition());
 	String outputFileName = FilenameUtils.removeExtension(getOutputFileName(carrierFile)) + "." + imageFormat;
 	File outputFile = new File(outputFileName);
-	ImageIO.write(carrier, imageFormat, outputFile);
+	QRCodeLayout layout = QRCodeLayout.read(qrCodeFile);
+	writeImage(carrier, imageFormat, outputFile,
+		layout == null ? null : layout.moveTo(getXPosition(), getYPosition()));
 	qrCodeFile.delete();
 	return outputFile;
     }
 
+    /**
+     * Writes the image in the image format. PNG images are written by the
+     * shared {@link PNGEncoder}, with the QR-code layout in their header.
+     * Other formats are written by ImageIO, and get a layout sidecar file.
+     * 
+     * @param image
+     * @param imageFormat
+     * @param outputFile
+     * @param layout
+     *            position and size of the QR-codes on the image, or null
+     * @throws IOException
+     */
+    static void writeImage(BufferedImage image, String imageFormat, File outputFile, QRCodeLayout layout)
+	    throws IOException {
+	if ("png".equalsIgnoreCase(imageFormat)) {
+	    if (layout == null) {
+		PNGEncoder.getDefault().write(image, outputFile);
+	    } else {
+		PNGEncoder.getDefault().write(image, outputFile, layout.toTextChunk());
+	    }
+	} else {
+	    ImageIO.write(image, imageFormat, outputFile);
+	    if (layout != null) {
+		layout.writeSidecar(outputFile);
+	    }
+	}
+    }
+
     /**
      * Determines if the QR-code should be saved to a separate file, or embedded
      * on the carrier.
@@ -245,45 +365,123 @@ public class QRCodeWatermarking extends AbstractAlgorithm {
 	return trueEncapsulate.isSelected();
     }
 
+    /**
+     * Determines if payloads, which are too big for one QR-code of the
+     * configured size, should be split into several QR-codes.
+     * 
+     * @return true, if structured append is used for large payloads
+     */
+    private boolean splitLargePayloads() {
+	return structuredAppendBox.isSelected();
+    }
+
     /*
      * ****** RESTORATION **********
      */
 
     /**
-     * Input an image file, look for a QR-code, recreate the payload file.
+     * Input an image file, look for a QR-code, recreate the payload file. Pages
+     * of the {@link QRCodeBatchEncoder} contain a QR-code for each of several
+     * payload files, which are all restored.
      */
     @Override
     public List<RestoredFile> restore(File qrCodeImage) throws IOException {
 	List<RestoredFile> restoredFiles = new ArrayList<RestoredFile>();
-	BufferedImage bufferedQrCode = ImageIO.read(qrCodeImage);
-	LuminanceSource luminance = new BufferedImageLuminanceSource(bufferedQrCode);
-	BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(luminance));
-	QRCodeReader reader = new QRCodeReader();
 	try {
-	    Result result = reader.decode(bitmap);
-	    PayloadSegment payloadSegment = PayloadSegment.getPayloadSegment(result.getText().getBytes());
-	    String payloadName = payloadSegment.getPayloadName();
-	    RestoredFile payloadFile = new RestoredFile(RESTORED_DIRECTORY + payloadName);
-	    FileOutputStream out = new FileOutputStream(payloadFile);
-	    out.write(payloadSegment.getPayloadBytes());
-	    out.close();
-	    payloadFile.algorithm = this;
-	    payloadFile.wasPayload = true;
-	    payloadFile.wasCarrier = false;
-	    payloadFile.validateChecksum(payloadSegment.getPayloadChecksum());
-	    if (payloadSegment.getRestorationMetadata().getProperty("usedMethod").equals(ON_IMAGE)) {
-		RestoredFile carrier = restoreCarrier(qrCodeImage);
-		payloadFile.relatedFiles.add(carrier);
-		carrier.relatedFiles.add(payloadFile);
-		restoredFiles.add(carrier);
+	    for (byte[] payloadSegmentBytes : readPayloadSegments(qrCodeImage)) {
+		PayloadSegment payloadSegment = PayloadSegment.getPayloadSegment(payloadSegmentBytes);
+		String payloadName = payloadSegment.getPayloadName();
+		RestoredFile payloadFile = new RestoredFile(RESTORED_DIRECTORY + payloadName);
+		FileOutputStream out = new FileOutputStream(payloadFile);
+		out.write(payloadSegment.getPayloadBytes());
+		out.close();
+		payloadFile.algorithm = this;
+		payloadFile.wasPayload = true;
+		payloadFile.wasCarrier = false;
+		payloadFile.validateChecksum(payloadSegment.getPayloadChecksum());
+		if (payloadSegment.getRestorationMetadata().getProperty("usedMethod").equals(ON_IMAGE)) {
+		    RestoredFile carrier = restoreCarrier(qrCodeImage);
+		    payloadFile.relatedFiles.add(carrier);
+		    carrier.relatedFiles.add(payloadFile);
+		    restoredFiles.add(carrier);
+		}
+		restoredFiles.add(payloadFile);
 	    }
-	    restoredFiles.add(payloadFile);
-	} catch (NotFoundException | ChecksumException | FormatException e) {
+	} catch (ReaderException e) {
 	    e.printStackTrace();
 	}
 	return restoredFiles;
     }
 
+    /**
+     * Decodes the QR-codes of the image. If the image contains a structured
+     * append sequence, the data of all QR-codes is put together and
+     * decompressed. Otherwise each QR-code contains its own payload segment.
+     * 
+     * @param qrCodeImage
+     * @return payload segments
+     * @throws ReaderException
+     * @throws IOException
+     */
+    private List<byte[]> readPayloadSegments(File qrCodeImage) throws ReaderException, IOException {
+	List<DecoderResult> symbols = decodeSymbols(qrCodeImage);
+	List<byte[]> payloadSegments = new ArrayList<byte[]>();
+	for (DecoderResult symbol : symbols) {
+	    if (symbol.hasStructuredAppend()) {
+		payloadSegments.add(inflate(QRCodeSheetDecoder.joinStructuredAppend(symbols)));
+		return payloadSegments;
+	    }
+	}
+	// The whole image search can detect a QR-code twice.
+	Set<String> texts = new LinkedHashSet<String>();
+	for (DecoderResult symbol : symbols) {
+	    texts.add(symbol.getText());
+	}
+	for (String text : texts) {
+	    payloadSegments.add(text.getBytes());
+	}
+	return payloadSegments;
+    }
+
+    private byte[] inflate(byte[] compressed) throws IOException {
+	InputStream inflaterStream = new InflaterInputStream(new ByteArrayInputStream(compressed));
+	try {
+	    return IOUtils.toByteArray(inflaterStream);
+	} finally {
+	    inflaterStream.close();
+	}
+    }
+
+    /**
+     * Decodes only the region of the QR-codes, if the image has a QR-code
+     * layout, and each QR-code of the region in parallel. Without layout, or if
+     * a QR-code of the region can't be decoded, the whole image is searched
+     * for QR-codes.
+     * 
+     * @param qrCodeImage
+     * @return decoded QR-codes
+     * @throws NotFoundException
+     * @throws IOException
+     */
+    private List<DecoderResult> decodeSymbols(File qrCodeImage) throws NotFoundException, IOException {
+	QRCodeLayout layout = QRCodeLayout.read(qrCodeImage);
+	if (layout != null) {
+	    ImageRegionReader reader = new ImageRegionReader(qrCodeImage);
+	    try {
+		if (reader.getBounds().contains(layout.bounds)) {
+		    return QRCodeSheetDecoder.decodeTiles(reader.read(layout.bounds), layout.symbolSize);
+		}
+	    } catch (NotFoundException e) {
+		// The image was changed after the encapsulation, or the detector
+		// missed a QR-code of its tile.
+	    } finally {
+		reader.close();
+	    }
+	}
+	LuminanceSource luminance = new BufferedImageLuminanceSource(ImageIO.read(qrCodeImage));
+	return QRCodeSheetDecoder.decodeAll(new BinaryBitmap(new HybridBinarizer(luminance)));
+    }
+
     private RestoredFile restoreCarrier(File qrCodeImage) {
 	RestoredFile carrier = getRestoredCarrier(qrCodeImage);
 	carrier.wasCarrier = true;
@@ -320,6 +518,7 @@ public class QRCodeWatermarking extends AbstractAlgorithm {
 	constraints.gridwidth = 2;
 	constraints.gridx = 0;
 	constraints.gridy++;
+	panel.add(structuredAppendBox, constraints);
 	constraints.gridy++;
 	constraints.gridx = 0;
 	constraints.gridwidth = 1;
@@ -346,7 +545,9 @@ public class QRCodeWatermarking extends AbstractAlgorithm {
 		+ "\n- Carrier files need to be one of the following file types:" + "\n\tpng, jpeg, jp2, jpg, bmp, gif"
 		+ "\n- All carrier files of other file formats are ignored."
 		+ "\n- The QR-code pixel size should exceed the carrier image size in no dimension."
-		+ "\n- If the size of the selected payload file is too big to create a QR-code from it, you will get an error message."
+		+ "\n- If the payload is too big for one QR-code of the selected size, it is compressed and split into up to "
+		+ QRCodeSymbolEncoder.MAX_SYMBOLS + " QR-codes (structured append), which are placed next to each other."
+		+ " Without this option, or if the payload is too big even for this, you will get an error message."
 		+ "\n\n" + "Options for adding the QR-code to the carrier images:");
 	infoArea.setEditable(false);
 	infoArea.setLineWrap(true);
@@ -480,6 +681,7 @@ public class QRCodeWatermarking extends AbstractAlgorithm {
 		+ "It can be configured to either create a QR-code file for each payload file,"
 		+ " and ignore the carrier; Or create a QR-code from the first payload file, and "
 		+ "add it on each carrier image.\n"
+		+ "Payloads that are too big for one QR-code are compressed and split into several QR-codes.\n"
 		+ "All carrier files that aren't images, will be ingored by this algorithm.";
 	return description;
     }
@@ -39,72 +39,112 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JLabel;
 import javax.swing.JRadioButton;
+import javax.swing.JTextField;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
-import org.apache.commons.compress.compressors.bzip2.BZip2Utils;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
-import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
+import codec.CodecBenchmark;
+import codec.CompressionCodec;
+import codec.IndexedGzipFile;
+import codec.IndexedGzipOutputStream;
 import model.RestoredFile;
 import model.Scenario;
 import view.GUIPanel;
 
 /**
  * Tar packaging is implemented using the apache commons library.
+ *
+ * The archive is compressed by one of the {@link CompressionCodec}s. Gzip
+ * compresses the tar stream on several threads, like pigz does. BZip2 writes
+ * concatenated bzip2 streams of 900 KB each, like pbzip2 does, which are
+ * compressed and decompressed on several threads. XZ compresses best, and LZ4
+ * fastest. The automatic selection runs the {@link CodecBenchmark} on a sample
+ * of the files, and takes the codec with the best ratio of the codecs, which
+ * reach the minimum throughput.
+ *
+ * Indexed gzip archives are written by the {@link IndexedGzipOutputStream}, which
+ * stores the position of each entry, so {@link #restore(File, Collection)} can
+ * extract single entries without decompressing the whole archive.
  */
 public class TarPackaging extends AbstractAlgorithm {
+    /** Throughput in MB/s, which the automatic codec selection requires */
+    static final double DEFAULT_MIN_THROUGHPUT = 20;
+
+    private final int threads;
+
+    /**
+     * Creates the algorithm, which uses all available processors.
+     */
     public TarPackaging() {
+	this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads
+     *            number of threads, which compress and decompress the archive
+     */
+    public TarPackaging(int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.threads = threads;
 	panel = new TarConfigurationPanel();
     }
 
     @Override
     public File encapsulate(File carrier, List<File> payloadFiles) throws IOException {
 	String outputName = getOutputFileName(carrier);
+	CompressionCodec codec = null;
+	if (compression() && !indexedGzip()) {
+	    codec = selectCodec(carrier, payloadFiles);
+	}
 	int dotIndex = outputName.lastIndexOf('.');
 	if (dotIndex > 0) {
-	    if (compression()) {
-		if (gzip()) {
-		    outputName = outputName.substring(0, dotIndex) + ".tgz";
-		} else if (bzip()) {
-		    outputName = outputName.substring(0, dotIndex) + ".tbz2";
-		}
+	    if (codec != null) {
+		outputName = outputName.substring(0, dotIndex) + "." + codec.getExtension();
+	    } else if (compression()) {
+		outputName = outputName.substring(0, dotIndex) + ".tgz";
 	    } else {
 		outputName = outputName.substring(0, dotIndex) + ".tar";
 	    }
 	}
 	File tarFile = new File(outputName);
 	FileOutputStream outputStream = new FileOutputStream(tarFile);
-	if (compression()) {
-	    if (gzip()) {
-		TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
-			new GzipCompressorOutputStream(new BufferedOutputStream(outputStream)));
-		archiveFile(carrier, tarOutputStream);
-		for (File payload : payloadFiles) {
-		    archiveFile(payload, tarOutputStream);
-		}
-		tarOutputStream.close();
-	    } else if (bzip()) {
-		TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
-			new BZip2CompressorOutputStream(new BufferedOutputStream(outputStream)));
-		archiveFile(carrier, tarOutputStream);
-		for (File payload : payloadFiles) {
-		    archiveFile(payload, tarOutputStream);
-		}
-		tarOutputStream.close();
+	if (codec != null) {
+	    TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(
+		    codec.createOutputStream(outputStream, getCompressionLevel(), threads));
+	    archiveFile(carrier, tarOutputStream);
+	    for (File payload : payloadFiles) {
+		archiveFile(payload, tarOutputStream);
+	    }
+	    tarOutputStream.close();
+	} else if (compression()) {
+	    IndexedGzipOutputStream gzipStream = new IndexedGzipOutputStream(outputStream, getCompressionLevel(),
+		    threads);
+	    // with one record per block, every record is written at once:
+	    TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(gzipStream, 512);
+	    gzipStream.addIndexEntry(carrier.getName());
+	    archiveFile(carrier, tarOutputStream);
+	    for (File payload : payloadFiles) {
+		gzipStream.addIndexEntry(payload.getName());
+		archiveFile(payload, tarOutputStream);
 	    }
+	    tarOutputStream.close();
 	} else {
 	    TarArchiveOutputStream tarOutputStream = new TarArchiveOutputStream(new BufferedOutputStream(outputStream));
 	    archiveFile(carrier, tarOutputStream);
@@ -117,6 +157,29 @@ public class TarPackaging extends AbstractAlgorithm {
 	return tarFile;
     }
 
+    /**
+     * @return the selected codec, or the codec, which the
+     *         {@link CodecBenchmark} selects on a sample of the files
+     */
+    private CompressionCodec selectCodec(File carrier, List<File> payloadFiles) throws IOException {
+	TarConfigurationPanel tarPanel = (TarConfigurationPanel) panel;
+	if (tarPanel.gzipCompressionButton.isSelected()) {
+	    return CompressionCodec.GZIP;
+	} else if (tarPanel.bzip2CompressionButton.isSelected()) {
+	    return CompressionCodec.BZIP2;
+	} else if (tarPanel.xzCompressionButton.isSelected()) {
+	    return CompressionCodec.XZ;
+	} else if (tarPanel.lz4CompressionButton.isSelected()) {
+	    return CompressionCodec.LZ4;
+	}
+	List<File> files = new ArrayList<File>();
+	files.add(carrier);
+	files.addAll(payloadFiles);
+	byte[] sample = CodecBenchmark.readSample(files, CodecBenchmark.SAMPLE_LENGTH);
+	return CodecBenchmark.selectCodec(CodecBenchmark.measureAll(sample, getCompressionLevel(), threads),
+		getMinThroughput());
+    }
+
     private void archiveFile(File carrier, TarArchiveOutputStream tarOutputStream)
 	    throws IOException, FileNotFoundException {
 	TarArchiveEntry tarEntry = new TarArchiveEntry(carrier, carrier.getName());
@@ -127,66 +190,36 @@ public class TarPackaging extends AbstractAlgorithm {
 	inputStream.close();
     }
 
+    /**
+     * Extracts all entries, see {@link #restore(File, Collection)}.
+     */
     @Override
     protected List<RestoredFile> restore(File tarFile) throws IOException {
-	List<RestoredFile> extractedFiles = new ArrayList<RestoredFile>();
-	FileInputStream inputStream = new FileInputStream(tarFile);
-	if (GzipUtils.isCompressedFilename(tarFile.getName())) {
-	    TarArchiveInputStream tarInputStream = new TarArchiveInputStream(
-		    new GzipCompressorInputStream(new BufferedInputStream(inputStream)));
-	    TarArchiveEntry entry = tarInputStream.getNextTarEntry();
-	    while (entry != null) {
-		RestoredFile outputFile = new RestoredFile(RESTORED_DIRECTORY + entry.getName());
-		if (entry.isDirectory()) {
-		    if (!outputFile.exists()) {
-			outputFile.mkdirs();
-		    }
-		} else if (entry.isFile()) {
-		    FileOutputStream outputFileStream = new FileOutputStream(outputFile);
-		    IOUtils.copy(tarInputStream, outputFileStream);
-		    outputFileStream.close();
-		}
-		extractedFiles.add(outputFile);
-		entry = tarInputStream.getNextTarEntry();
-	    }
-	    tarInputStream.close();
-	} else if (BZip2Utils.isCompressedFilename(tarFile.getName())) {
-	    TarArchiveInputStream tarInputStream = new TarArchiveInputStream(
-		    new BZip2CompressorInputStream(new BufferedInputStream(inputStream)));
-	    TarArchiveEntry entry = tarInputStream.getNextTarEntry();
-	    while (entry != null) {
-		RestoredFile outputFile = new RestoredFile(RESTORED_DIRECTORY + entry.getName());
-		if (entry.isDirectory()) {
-		    if (!outputFile.exists()) {
-			outputFile.mkdirs();
-		    }
-		} else if (entry.isFile()) {
-		    FileOutputStream outputFileStream = new FileOutputStream(outputFile);
-		    IOUtils.copy(tarInputStream, outputFileStream);
-		    outputFileStream.close();
-		}
-		extractedFiles.add(outputFile);
-		entry = tarInputStream.getNextTarEntry();
-	    }
-	    tarInputStream.close();
+	return restore(tarFile, null);
+    }
+
+    /**
+     * Extracts selected entries of a tar archive. If the archive was written
+     * with a gzip index, only the gzip members of the selected entries are
+     * decompressed, so the time doesn't depend on the size of the other
+     * entries. Other archives are read from the start.
+     *
+     * @param tarFile
+     * @param entryNames
+     *            names of the entries to extract, or null to extract all
+     *            entries
+     * @return the extracted files
+     * @throws IOException
+     *             if the archive can't be read, or has no entry of a selected
+     *             name
+     */
+    public List<RestoredFile> restore(File tarFile, Collection<String> entryNames) throws IOException {
+	List<RestoredFile> extractedFiles;
+	if (entryNames != null && GzipUtils.isCompressedFilename(tarFile.getName())
+		&& IndexedGzipFile.hasIndex(tarFile)) {
+	    extractedFiles = extractIndexedEntries(new IndexedGzipFile(tarFile), entryNames);
 	} else {
-	    TarArchiveInputStream tarInputStream = new TarArchiveInputStream(new BufferedInputStream(inputStream));
-	    TarArchiveEntry entry = tarInputStream.getNextTarEntry();
-	    while (entry != null) {
-		RestoredFile outputFile = new RestoredFile(RESTORED_DIRECTORY + entry.getName());
-		if (entry.isDirectory()) {
-		    if (!outputFile.exists()) {
-			outputFile.mkdirs();
-		    }
-		} else if (entry.isFile()) {
-		    FileOutputStream outputFileStream = new FileOutputStream(outputFile);
-		    IOUtils.copy(tarInputStream, outputFileStream);
-		    outputFileStream.close();
-		}
-		extractedFiles.add(outputFile);
-		entry = tarInputStream.getNextTarEntry();
-	    }
-	    tarInputStream.close();
+	    extractedFiles = extractEntries(openArchive(tarFile), entryNames);
 	}
 	for (RestoredFile file : extractedFiles) {
 	    file.algorithm = this;
@@ -203,9 +236,88 @@ public class TarPackaging extends AbstractAlgorithm {
 	return extractedFiles;
     }
 
+    private TarArchiveInputStream openArchive(File tarFile) throws IOException {
+	CompressionCodec codec = CompressionCodec.forFileName(tarFile.getName());
+	if (codec != null) {
+	    return new TarArchiveInputStream(codec.createInputStream(tarFile, threads));
+	}
+	return new TarArchiveInputStream(new BufferedInputStream(new FileInputStream(tarFile)));
+    }
+
+    /**
+     * Reads the archive from the start, and extracts the selected entries, or
+     * all entries if no names are given.
+     */
+    private List<RestoredFile> extractEntries(TarArchiveInputStream tarInputStream, Collection<String> entryNames)
+	    throws IOException {
+	List<RestoredFile> extractedFiles = new ArrayList<RestoredFile>();
+	Set<String> missingNames = entryNames == null ? new HashSet<String>() : new HashSet<String>(entryNames);
+	try {
+	    TarArchiveEntry entry = tarInputStream.getNextTarEntry();
+	    while (entry != null) {
+		if (entryNames == null || missingNames.remove(entry.getName())) {
+		    extractedFiles.add(extractEntry(tarInputStream, entry));
+		}
+		entry = tarInputStream.getNextTarEntry();
+	    }
+	} finally {
+	    tarInputStream.close();
+	}
+	if (!missingNames.isEmpty()) {
+	    throw new IOException("The tar archive has no file " + missingNames.iterator().next());
+	}
+	return extractedFiles;
+    }
+
+    /**
+     * Opens the archive at the index position of each selected entry.
+     */
+    private List<RestoredFile> extractIndexedEntries(IndexedGzipFile indexedFile, Collection<String> entryNames)
+	    throws IOException {
+	List<RestoredFile> extractedFiles = new ArrayList<RestoredFile>();
+	for (String entryName : entryNames) {
+	    InputStream inputStream = indexedFile.getInputStream(entryName);
+	    if (inputStream == null) {
+		throw new IOException("The tar archive has no file " + entryName);
+	    }
+	    TarArchiveInputStream tarInputStream = new TarArchiveInputStream(inputStream);
+	    try {
+		TarArchiveEntry entry = tarInputStream.getNextTarEntry();
+		if (entry == null || !entry.getName().equals(entryName)) {
+		    throw new IOException("The gzip index doesn't point to the tar entry " + entryName);
+		}
+		extractedFiles.add(extractEntry(tarInputStream, entry));
+	    } finally {
+		tarInputStream.close();
+	    }
+	}
+	return extractedFiles;
+    }
+
+    private RestoredFile extractEntry(TarArchiveInputStream tarInputStream, TarArchiveEntry entry)
+	    throws IOException {
+	RestoredFile outputFile = new RestoredFile(RESTORED_DIRECTORY + entry.getName());
+	if (entry.isDirectory()) {
+	    if (!outputFile.exists()) {
+		outputFile.mkdirs();
+	    }
+	} else if (entry.isFile()) {
+	    FileOutputStream outputFileStream = new FileOutputStream(outputFile);
+	    IOUtils.copy(tarInputStream, outputFileStream);
+	    outputFileStream.close();
+	}
+	return outputFile;
+    }
+
     @Override
     public String getDescription() {
-	return "Creates a tar archive that includes all carrier and payload files."
+	return "Creates a tar archive that includes all carrier and payload files. The archive can be"
+		+ " compressed with gzip, bzip2, xz or LZ4, at a configurable level. Gzip and BZip2"
+		+ " compression run on all processor cores, and so does the restoration of BZip2 archives."
+		+ " The automatic selection measures all codecs on a sample of the files, and takes the one"
+		+ " with the best ratio, which reaches the minimum throughput."
+		+ " Indexed gzip archives store the position of each file, so single files can be restored"
+		+ " without decompressing the whole archive."
 		+ "\n\nhttp://en.wikipedia.org/wiki/Tar_%28computing%29 :\n"
 		+ "In computing, tar is a computer software utility for collecting "
 		+ "many files into one archive file for distribution or backup purposes. "
@@ -255,6 +367,9 @@ public class TarPackaging extends AbstractAlgorithm {
 	supportedFileFormats.add("tbz2");
 	supportedFileFormats.add("tbz");
 	supportedFileFormats.add("bz2");
+	supportedFileFormats.add("txz");
+	supportedFileFormats.add("xz");
+	supportedFileFormats.add("lz4");
 	return new SuffixFileFilter(supportedFileFormats);
     }
 
@@ -272,12 +387,24 @@ public class TarPackaging extends AbstractAlgorithm {
 	return ((TarConfigurationPanel) panel).trueCompressionButton.isSelected();
     }
 
-    private boolean gzip() {
-	return ((TarConfigurationPanel) panel).gzipCompressionButton.isSelected();
+    private boolean indexedGzip() {
+	return ((TarConfigurationPanel) panel).indexedGzipCompressionButton.isSelected();
+    }
+
+    private int getCompressionLevel() {
+	return ((TarConfigurationPanel) panel).compressionLevelBox.getCompressionLevel();
     }
 
-    private boolean bzip() {
-	return ((TarConfigurationPanel) panel).bzip2CompressionButton.isSelected();
+    /**
+     * @return the minimum throughput of the automatic codec selection in MB/s,
+     *         which is configured by the user
+     */
+    private double getMinThroughput() {
+	try {
+	    return Double.parseDouble(((TarConfigurationPanel) panel).minThroughputField.getText());
+	} catch (Exception e) {
+	    return DEFAULT_MIN_THROUGHPUT;
+	}
     }
 
     class TarConfigurationPanel extends GUIPanel {
@@ -286,6 +413,12 @@ public class TarPackaging extends AbstractAlgorithm {
 	protected final JRadioButton falseCompressionButton = new JRadioButton("false");
 	protected final JRadioButton gzipCompressionButton = new JRadioButton("Gzip (.tgz)");
 	protected final JRadioButton bzip2CompressionButton = new JRadioButton("BZip2 (.tbz2)");
+	protected final JRadioButton indexedGzipCompressionButton = new JRadioButton("Indexed gzip (.tgz)");
+	protected final JRadioButton xzCompressionButton = new JRadioButton("XZ (.txz)");
+	protected final JRadioButton lz4CompressionButton = new JRadioButton("LZ4 (.tar.lz4)");
+	protected final JRadioButton autoCompressionButton = new JRadioButton("Auto (best ratio above the throughput)");
+	protected final CompressionLevelBox compressionLevelBox = new CompressionLevelBox();
+	protected final JTextField minThroughputField = new JTextField(5);
 
 	public TarConfigurationPanel() {
 	    add(new JLabel("<html><h2>Tar archiving options</h2></html>"), constraints);
@@ -310,8 +443,30 @@ public class TarPackaging extends AbstractAlgorithm {
 	    optionsGroup.add(bzip2CompressionButton);
 	    add(bzip2CompressionButton, constraints);
 	    constraints.gridy++;
+	    optionsGroup.add(indexedGzipCompressionButton);
+	    add(indexedGzipCompressionButton, constraints);
+	    constraints.gridy++;
+	    optionsGroup.add(xzCompressionButton);
+	    add(xzCompressionButton, constraints);
+	    constraints.gridy++;
+	    optionsGroup.add(lz4CompressionButton);
+	    add(lz4CompressionButton, constraints);
+	    constraints.gridy++;
+	    optionsGroup.add(autoCompressionButton);
+	    add(autoCompressionButton, constraints);
+	    constraints.gridy++;
 	    gzipCompressionButton.setSelected(true);
 	    constraints.gridx = 0;
+	    add(new JLabel("Compression level:"), constraints);
+	    constraints.gridx++;
+	    add(compressionLevelBox, constraints);
+	    constraints.gridx = 0;
+	    constraints.gridy++;
+	    add(new JLabel("Minimum throughput of auto (MB/s):"), constraints);
+	    constraints.gridx++;
+	    minThroughputField.setText("" + (int) DEFAULT_MIN_THROUGHPUT);
+	    add(minThroughputField, constraints);
+	    constraints.gridx = 0;
 	}
     }
 }
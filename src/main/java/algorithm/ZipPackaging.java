@@ -32,30 +32,95 @@ import static model.Criterion.STANDARDS;
 import static model.Criterion.VELOCITY;
 import static model.Criterion.VISIBILITY;
 
+import java.awt.GridBagConstraints;
+import java.awt.GridBagLayout;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.JLabel;
 
-import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.ArchiveOutputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.SuffixFileFilter;
 
+import codec.ParallelZipWriter;
 import model.RestoredFile;
 import model.Scenario;
+import view.GUIPanel;
 /**
  * Zip packaging is implemented using the apache commons library.
+ *
+ * The archive is written by the {@link ParallelZipWriter}, which deflates the
+ * files on several threads, and stores files, which are already compressed.
+ * The deflate level is chosen in the configuration panel.
  */
 public class ZipPackaging extends AbstractAlgorithm {
+    private final CompressionLevelBox compressionLevelBox = new CompressionLevelBox();
+    /** Size of the copy buffer of each extracted entry */
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private final int threads;
+
+    /**
+     * Creates the algorithm, which uses all available processors.
+     */
+    public ZipPackaging() {
+	this(CompressionLevelBox.DEFAULT_LEVEL, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param compressionLevel
+     *            initial deflate level from 0 to 9
+     * @param threads
+     *            number of threads, which deflate the files
+     */
+    public ZipPackaging(int compressionLevel, int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	compressionLevelBox.setCompressionLevel(compressionLevel);
+	this.threads = threads;
+	createConfigurationPanel();
+    }
+
+    private void createConfigurationPanel() {
+	panel = new GUIPanel();
+	panel.setLayout(new GridBagLayout());
+	GridBagConstraints constraints = new GridBagConstraints();
+	constraints.gridx = 0;
+	constraints.gridy = 0;
+	constraints.anchor = GridBagConstraints.NORTHWEST;
+	panel.add(new JLabel("Deflate level (0 stores all files):"), constraints);
+	constraints.gridx++;
+	panel.add(compressionLevelBox, constraints);
+    }
+
+    /**
+     * @return the deflate level of the next archives
+     */
+    public int getCompressionLevel() {
+	return compressionLevelBox.getCompressionLevel();
+    }
+
+    /**
+     * @param compressionLevel
+     *            deflate level from 0 to 9
+     */
+    public void setCompressionLevel(int compressionLevel) {
+	compressionLevelBox.setCompressionLevel(compressionLevel);
+    }
 
     @Override
     public File encapsulate(File carrier, List<File> payloadList) throws IOException {
@@ -65,49 +130,83 @@ public class ZipPackaging extends AbstractAlgorithm {
 	    outputName = outputName.substring(0, dotIndex) + ".zip";
 	}
 	File zipFile = new File(outputName);
+	ParallelZipWriter zipWriter = new ParallelZipWriter(zipFile, getCompressionLevel(), threads);
 	try {
-	    FileOutputStream outputStream = new FileOutputStream(zipFile);
-	    ArchiveOutputStream archiveOutputStream = new ArchiveStreamFactory()
-		    .createArchiveOutputStream(ArchiveStreamFactory.ZIP, outputStream);
-	    archiveFile(archiveOutputStream, carrier);
+	    zipWriter.addEntry(carrier.getName(), carrier);
 	    for (File payload : payloadList) {
-		archiveFile(archiveOutputStream, payload);
+		zipWriter.addEntry(payload.getName(), payload);
 	    }
-	    archiveOutputStream.close();
-	    outputStream.close();
-	} catch (ArchiveException e) {
+	    zipWriter.finish();
+	} finally {
+	    zipWriter.close();
 	}
 	return zipFile;
     }
 
-    private void archiveFile(ArchiveOutputStream archiveOutputStream, File file)
-	    throws IOException, FileNotFoundException {
-	archiveOutputStream.putArchiveEntry(new ZipArchiveEntry(file.getName()));
-	FileInputStream inputStream = new FileInputStream(file);
-	IOUtils.copy(inputStream, archiveOutputStream);
-	archiveOutputStream.closeArchiveEntry();
-	inputStream.close();
-    }
-
+    /**
+     * Extracts all entries, see {@link #restore(File, Collection)}.
+     */
     @Override
     protected List<RestoredFile> restore(File zipFile) throws IOException {
+	return restore(zipFile, null);
+    }
+
+    /**
+     * Extracts selected entries of a zip archive. Only the central directory
+     * and the selected entries are read, so the time doesn't depend on the
+     * size of the other entries. The entries are inflated in parallel.
+     *
+     * @param zipFile
+     * @param entryNames
+     *            names of the entries to extract, or null to extract all
+     *            entries
+     * @return the extracted files in the order of the central directory
+     * @throws IOException
+     *             if the archive can't be read, or has no entry of a selected
+     *             name
+     */
+    public List<RestoredFile> restore(File zipFile, Collection<String> entryNames) throws IOException {
 	List<RestoredFile> extractedFiles = new ArrayList<RestoredFile>();
+	ZipFile archive = new ZipFile(zipFile);
+	ExecutorService executor = null;
 	try {
-	    InputStream inputStream = new FileInputStream(zipFile);
-	    ArchiveInputStream archiveInputStream = new ArchiveStreamFactory()
-		    .createArchiveInputStream(ArchiveStreamFactory.ZIP, inputStream);
-	    ZipArchiveEntry entry = (ZipArchiveEntry) archiveInputStream.getNextEntry();
-	    while (entry != null) {
-		RestoredFile extractedFile = new RestoredFile(RESTORED_DIRECTORY + entry.getName());
-		OutputStream outputStream = new FileOutputStream(extractedFile);
-		IOUtils.copy(archiveInputStream, outputStream);
-		outputStream.close();
-		extractedFiles.add(extractedFile);
-		entry = (ZipArchiveEntry) archiveInputStream.getNextEntry();
+	    List<ZipArchiveEntry> entries = new ArrayList<ZipArchiveEntry>();
+	    if (entryNames == null) {
+		for (ZipArchiveEntry entry : Collections.list(archive.getEntries())) {
+		    if (!entry.isDirectory()) {
+			entries.add(entry);
+		    }
+		}
+	    } else {
+		for (String entryName : entryNames) {
+		    ZipArchiveEntry entry = archive.getEntry(entryName);
+		    if (entry == null || entry.isDirectory()) {
+			throw new IOException("The zip archive has no file " + entryName);
+		    }
+		    entries.add(entry);
+		}
+	    }
+	    executor = Executors.newFixedThreadPool(Math.max(1, Math.min(entries.size(), threads)));
+	    List<Future<RestoredFile>> extractions = new ArrayList<Future<RestoredFile>>();
+	    for (ZipArchiveEntry entry : entries) {
+		extractions.add(executor.submit(new EntryExtraction(archive, entry)));
 	    }
-	    archiveInputStream.close();
-	    inputStream.close();
-	} catch (ArchiveException e) {
+	    for (Future<RestoredFile> extraction : extractions) {
+		extractedFiles.add(extraction.get());
+	    }
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The extraction of " + zipFile.getName() + " was interrupted.", e);
+	} finally {
+	    if (executor != null) {
+		executor.shutdownNow();
+	    }
+	    archive.close();
 	}
 	for (RestoredFile file : extractedFiles) {
 	    file.algorithm = this;
@@ -129,9 +228,44 @@ public class ZipPackaging extends AbstractAlgorithm {
 	return extractedFiles;
     }
 
+    /**
+     * Inflates one entry to the restoration directory. The entries share the
+     * archive file, which serializes the reading of the compressed data, but
+     * the inflating runs in parallel.
+     */
+    private static class EntryExtraction implements Callable<RestoredFile> {
+	private final ZipFile archive;
+	private final ZipArchiveEntry entry;
+
+	EntryExtraction(ZipFile archive, ZipArchiveEntry entry) {
+	    this.archive = archive;
+	    this.entry = entry;
+	}
+
+	@Override
+	public RestoredFile call() throws IOException {
+	    RestoredFile extractedFile = new RestoredFile(RESTORED_DIRECTORY + entry.getName());
+	    InputStream inputStream = archive.getInputStream(entry);
+	    try {
+		OutputStream outputStream = new FileOutputStream(extractedFile);
+		try {
+		    IOUtils.copyLarge(inputStream, outputStream, new byte[BUFFER_SIZE]);
+		} finally {
+		    outputStream.close();
+		}
+	    } finally {
+		inputStream.close();
+	    }
+	    return extractedFile;
+	}
+    }
+
     @Override
     public String getDescription() {
 	return "Creates a zip archive that includes all carrier and payload files. Zip64 is used if the file sizes exceed 4GB."
+		+ " The files are compressed on all processor cores. Files, which are already compressed, like"
+		+ " JPEG images or videos, are stored without compression. The restoration reads the central"
+		+ " directory, so single files can be extracted without reading the whole archive."
 		+ "\n\nhttps://en.wikipedia.org/wiki/Zip_(file_format) :\n"
 		+ ".ZIP is an archive file format that supports lossless data compression. A .ZIP file may "
 		+ "contain one or more files or folders that may have been compressed. The .ZIP file format "
@@ -0,0 +1,108 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Callable;
+import java.util.zip.Deflater;
+
+/**
+ * Deflates one block of a larger stream to raw deflate data, in the way of
+ * pigz. The block is primed with the end of the previous block as preset
+ * dictionary. All blocks but the last end with a sync flush, so the outputs of
+ * consecutive blocks can be concatenated to one deflate stream.
+ */
+class BlockDeflater implements Callable<byte[]> {
+    /** Size of the preset dictionary, the deflate window */
+    static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private final byte[] data;
+    private final int length;
+    private final byte[] dictionary;
+    private final boolean last;
+    private final int compressionLevel;
+    private final int strategy;
+
+    /**
+     * @param data
+     *            uncompressed block
+     * @param length
+     *            number of bytes of the block
+     * @param dictionary
+     *            last {@link #DICTIONARY_SIZE} bytes of the previous block, or
+     *            null for the first block
+     * @param last
+     *            true, if this block ends the deflate stream
+     * @param compressionLevel
+     *            deflate level from 0 to 9
+     * @param strategy
+     *            deflate strategy, see {@link Deflater#setStrategy(int)}
+     */
+    BlockDeflater(byte[] data, int length, byte[] dictionary, boolean last, int compressionLevel, int strategy) {
+	this.data = data;
+	this.length = length;
+	this.dictionary = dictionary;
+	this.last = last;
+	this.compressionLevel = compressionLevel;
+	this.strategy = strategy;
+    }
+
+    /**
+     * @return the last bytes of a block, which are the dictionary of the next
+     *         block, or null if the block is too short
+     */
+    static byte[] getDictionary(byte[] block, int length) {
+	if (length < DICTIONARY_SIZE) {
+	    return null;
+	}
+	byte[] dictionary = new byte[DICTIONARY_SIZE];
+	System.arraycopy(block, length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+	return dictionary;
+    }
+
+    @Override
+    public byte[] call() {
+	Deflater deflater = new Deflater(compressionLevel, true);
+	try {
+	    deflater.setStrategy(strategy);
+	    if (dictionary != null) {
+		deflater.setDictionary(dictionary);
+	    }
+	    deflater.setInput(data, 0, length);
+	    ByteArrayOutputStream output = new ByteArrayOutputStream(length / 2 + 64);
+	    byte[] buffer = new byte[64 * 1024];
+	    if (last) {
+		deflater.finish();
+		while (!deflater.finished()) {
+		    output.write(buffer, 0, deflater.deflate(buffer));
+		}
+	    } else {
+		int count;
+		do {
+		    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+		    output.write(buffer, 0, count);
+		} while (count == buffer.length);
+	    }
+	    return output.toByteArray();
+	} finally {
+	    deflater.end();
+	}
+    }
+}
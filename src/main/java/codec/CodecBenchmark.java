@@ -0,0 +1,184 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+
+/**
+ * Measures the compression ratio and the throughput of the
+ * {@link CompressionCodec}s on a sample of the data, which is going to be
+ * compressed, and selects the codec with the best ratio, which is fast enough.
+ */
+public class CodecBenchmark {
+    /** Number of bytes, which are sampled from the files */
+    public static final int SAMPLE_LENGTH = 1024 * 1024;
+
+    /* private constructor: static class */
+    private CodecBenchmark() {
+    }
+
+    /**
+     * Takes the same number of bytes from the start of each file. Files, which
+     * are shorter than their share, leave the rest to the larger files.
+     *
+     * @param files
+     * @param sampleLength
+     *            maximum length of the sample
+     * @return the sample
+     * @throws IOException
+     *             if a file can't be read
+     */
+    public static byte[] readSample(List<File> files, int sampleLength) throws IOException {
+	List<File> sortedFiles = new ArrayList<File>(files);
+	Collections.sort(sortedFiles, new Comparator<File>() {
+	    @Override
+	    public int compare(File file1, File file2) {
+		return Long.valueOf(file1.length()).compareTo(file2.length());
+	    }
+	});
+	byte[] sample = new byte[sampleLength];
+	int length = 0;
+	for (int i = 0; i < sortedFiles.size(); i++) {
+	    int share = (sampleLength - length) / (sortedFiles.size() - i);
+	    InputStream input = new FileInputStream(sortedFiles.get(i));
+	    try {
+		length += IOUtils.read(input, sample, length, share);
+	    } finally {
+		input.close();
+	    }
+	}
+	byte[] result = new byte[length];
+	System.arraycopy(sample, 0, result, 0, length);
+	return result;
+    }
+
+    /**
+     * Compresses the data with each codec. Each codec compresses the data once
+     * to warm up, before it is measured, so the first codecs aren't slowed
+     * down by the class loading and the compilation of their code.
+     *
+     * @param data
+     * @param compressionLevel
+     *            level from 0 to 9
+     * @param threads
+     *            number of threads of the codecs, which compress in parallel
+     * @return one result per codec
+     * @throws IOException
+     */
+    public static List<Result> measureAll(byte[] data, int compressionLevel, int threads) throws IOException {
+	List<Result> results = new ArrayList<Result>();
+	for (CompressionCodec codec : CompressionCodec.values()) {
+	    measure(codec, data, compressionLevel, threads);
+	    results.add(measure(codec, data, compressionLevel, threads));
+	}
+	return results;
+    }
+
+    /**
+     * Compresses the data to nowhere, and counts the compressed bytes.
+     *
+     * @param codec
+     * @param data
+     * @param compressionLevel
+     *            level from 0 to 9
+     * @param threads
+     *            number of threads of the codec
+     * @return the result of the codec
+     * @throws IOException
+     */
+    public static Result measure(CompressionCodec codec, byte[] data, int compressionLevel, int threads)
+	    throws IOException {
+	CountingOutputStream counter = new CountingOutputStream(new NullOutputStream());
+	long start = System.nanoTime();
+	OutputStream output = codec.createOutputStream(counter, compressionLevel, threads);
+	try {
+	    output.write(data);
+	} finally {
+	    output.close();
+	}
+	return new Result(codec, data.length, counter.getByteCount(), System.nanoTime() - start);
+    }
+
+    /**
+     * @param results
+     * @param minThroughput
+     *            minimum throughput in MB/s
+     * @return the codec with the smallest output of the codecs, which reach
+     *         the throughput, or the fastest codec if none reaches it
+     */
+    public static CompressionCodec selectCodec(List<Result> results, double minThroughput) {
+	Result smallest = null;
+	Result fastest = null;
+	for (Result result : results) {
+	    if (result.getThroughput() >= minThroughput
+		    && (smallest == null || result.compressedSize < smallest.compressedSize)) {
+		smallest = result;
+	    }
+	    if (fastest == null || result.getThroughput() > fastest.getThroughput()) {
+		fastest = result;
+	    }
+	}
+	return smallest != null ? smallest.codec : fastest.codec;
+    }
+
+    /**
+     * Size and time of the compression of one codec.
+     */
+    public static class Result {
+	public final CompressionCodec codec;
+	public final long size;
+	public final long compressedSize;
+	/** Compression time in nanoseconds */
+	public final long time;
+
+	Result(CompressionCodec codec, long size, long compressedSize, long time) {
+	    this.codec = codec;
+	    this.size = size;
+	    this.compressedSize = compressedSize;
+	    this.time = time;
+	}
+
+	/**
+	 * @return compressed size divided by the uncompressed size
+	 */
+	public double getRatio() {
+	    return size == 0 ? 1 : (double) compressedSize / size;
+	}
+
+	/**
+	 * @return uncompressed MB per second
+	 */
+	public double getThroughput() {
+	    return size / 1024.0 / 1024.0 / Math.max(time / 1e9, 1e-9);
+	}
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2Utils;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipUtils;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.apache.commons.compress.compressors.xz.XZUtils;
+
+/**
+ * The compression formats of tar archives, with the streams, which write and
+ * read them. Gzip and bzip2 are compressed on several threads, xz and LZ4 on
+ * one thread. The level ranges from 0 to 9: it is the deflate level of gzip
+ * and the preset of xz. Bzip2 always uses its largest block size of 900 KB,
+ * which compresses best at about the same speed, and LZ4 has only one level.
+ */
+public enum CompressionCodec {
+    GZIP("tgz"), BZIP2("tbz2"), XZ("txz"), LZ4("tar.lz4");
+
+    private final String extension;
+
+    private CompressionCodec(String extension) {
+	this.extension = extension;
+    }
+
+    /**
+     * @return the file extension of compressed tar archives
+     */
+    public String getExtension() {
+	return extension;
+    }
+
+    /**
+     * @param output
+     *            stream, which receives the compressed data
+     * @param compressionLevel
+     *            level from 0 to 9 of gzip and xz
+     * @param threads
+     *            number of threads of gzip and bzip2
+     * @return the stream, which compresses data to the output
+     * @throws IOException
+     */
+    public OutputStream createOutputStream(OutputStream output, int compressionLevel, int threads)
+	    throws IOException {
+	switch (this) {
+	case GZIP:
+	    return new ParallelGzipOutputStream(output, compressionLevel, threads);
+	case BZIP2:
+	    return new ParallelBZip2OutputStream(new BufferedOutputStream(output),
+		    BZip2CompressorOutputStream.MAX_BLOCKSIZE, threads);
+	case XZ:
+	    return new XZCompressorOutputStream(new BufferedOutputStream(output), compressionLevel);
+	default:
+	    return new LZ4FrameOutputStream(new BufferedOutputStream(output));
+	}
+    }
+
+    /**
+     * @param compressedFile
+     * @param threads
+     *            number of threads of bzip2
+     * @return the stream, which decompresses the file
+     * @throws IOException
+     */
+    public InputStream createInputStream(File compressedFile, int threads) throws IOException {
+	if (this == BZIP2) {
+	    return new ParallelBZip2InputStream(compressedFile, threads);
+	}
+	InputStream input = new BufferedInputStream(new FileInputStream(compressedFile));
+	try {
+	    switch (this) {
+	    case GZIP:
+		return new GzipCompressorInputStream(input, true);
+	    case XZ:
+		return new XZCompressorInputStream(input, true);
+	    default:
+		return new LZ4FrameInputStream(input);
+	    }
+	} catch (IOException e) {
+	    input.close();
+	    throw e;
+	}
+    }
+
+    /**
+     * @param fileName
+     * @return the codec of the file extension, or null if the file isn't
+     *         compressed
+     */
+    public static CompressionCodec forFileName(String fileName) {
+	if (GzipUtils.isCompressedFilename(fileName)) {
+	    return GZIP;
+	} else if (BZip2Utils.isCompressedFilename(fileName)) {
+	    return BZIP2;
+	} else if (XZUtils.isCompressedFilename(fileName)) {
+	    return XZ;
+	} else if (fileName.toLowerCase().endsWith(".lz4")) {
+	    return LZ4;
+	}
+	return null;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Decides, if it is worth to compress a file. Files of already compressed
+ * formats are recognised by their extension. For all other files, the start of
+ * the file is deflated with the fastest level, which is a cheap estimation of
+ * the entropy of the data.
+ */
+public class CompressionProbe {
+    /** Number of bytes at the start of the file, which are deflated */
+    public static final int SAMPLE_LENGTH = 64 * 1024;
+    /** Compression has to save at least 10% of the sample */
+    private static final double MAX_RATIO = 0.9;
+    private static final Set<String> COMPRESSED_FORMATS = new HashSet<String>(Arrays.asList("jpg", "jpeg",
+	    "jp2", "png", "gif", "webp", "zip", "jar", "docx", "xlsx", "pptx", "odt", "ods", "odp", "epub", "gz",
+	    "tgz", "bz2", "tbz2", "xz", "txz", "lz4", "7z", "rar", "mp3", "mp4", "m4a", "ogg", "flac", "avi",
+	    "mkv", "mov", "webm"));
+
+    /* private constructor: static class */
+    private CompressionProbe() {
+    }
+
+    /**
+     * @param file
+     * @return true, if the file extension belongs to a compressed format
+     */
+    public static boolean isCompressedFormat(File file) {
+	return COMPRESSED_FORMATS.contains(FilenameUtils.getExtension(file.getName()).toLowerCase());
+    }
+
+    /**
+     * @param file
+     * @return true, if the file doesn't belong to a compressed format, and the
+     *         deflated sample is smaller than 90% of the sample
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public static boolean isCompressible(File file) throws IOException {
+	if (isCompressedFormat(file)) {
+	    return false;
+	}
+	byte[] sample = new byte[(int) Math.min(file.length(), SAMPLE_LENGTH)];
+	InputStream input = new FileInputStream(file);
+	try {
+	    IOUtils.readFully(input, sample);
+	} finally {
+	    input.close();
+	}
+	return isCompressible(sample, sample.length);
+    }
+
+    /**
+     * Probes data, which is already in memory, e.g. the first block of a file.
+     * At most {@link #SAMPLE_LENGTH} bytes are deflated.
+     *
+     * @param data
+     * @param length
+     *            number of bytes of the data
+     * @return true, if the deflated sample is smaller than 90% of the sample
+     */
+    public static boolean isCompressible(byte[] data, int length) {
+	int sampleLength = Math.min(length, SAMPLE_LENGTH);
+	Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	try {
+	    deflater.setInput(data, 0, sampleLength);
+	    deflater.finish();
+	    byte[] buffer = new byte[sampleLength + 64];
+	    int compressedLength = 0;
+	    while (!deflater.finished()) {
+		compressedLength += deflater.deflate(buffer);
+	    }
+	    return compressedLength < sampleLength * MAX_RATIO;
+	} finally {
+	    deflater.end();
+	}
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The F5 steganography algorithm from Andreas Westfeld, applied directly on
+ * the quantised DCT coefficients of a {@link JPEGCoefficientImage}.
+ *
+ * The AC coefficients of all components are visited in the order of a
+ * {@link KeyedPermutation} (permutative straddling). Zero coefficients carry
+ * no information. A bit is stored in the parity of a coefficient, and a
+ * coefficient is changed by decrementing its absolute value. If this results
+ * in a zero (shrinkage), the bit is embedded again in the next coefficient.
+ *
+ * The first 40 bits (matrix parameter k and the number of payload bytes) are
+ * embedded one bit per coefficient. The payload is embedded with matrix
+ * encoding (1, 2^k-1, k), which changes at most one of 2^k-1 coefficients for k
+ * bits.
+ */
+public class F5Embedding {
+    private static final int HEADER_BITS = 40;
+    private static final int MAX_K = 7;
+
+    private final short[][] coefficients;
+    private final long[] componentStarts;
+    private final KeyedPermutation permutation;
+    private long permutationIndex = 0;
+
+    /**
+     * @param image
+     *            carrier coefficients
+     * @param password
+     *            defines the order in which the coefficients are used
+     */
+    public F5Embedding(JPEGCoefficientImage image, String password) {
+	List<JPEGCoefficientImage.Component> components = image.getComponents();
+	coefficients = new short[components.size()][];
+	componentStarts = new long[components.size() + 1];
+	for (int i = 0; i < components.size(); i++) {
+	    coefficients[i] = components.get(i).getCoefficients();
+	    componentStarts[i + 1] = componentStarts[i] + coefficients[i].length;
+	}
+	permutation = new KeyedPermutation(componentStarts[components.size()], password);
+    }
+
+    /**
+     * Embeds the message into the coefficients of the image.
+     *
+     * @param message
+     * @throws IOException
+     *             if the capacity of the image is too small
+     */
+    public void embed(byte[] message) throws IOException {
+	int k = chooseMatrixParameter(message.length);
+	permutationIndex = 0;
+	long header = (long) k << 32 | message.length & 0xFFFFFFFFL;
+	for (int i = HEADER_BITS - 1; i >= 0; i--) {
+	    embedSingleBit((int) (header >>> i) & 1);
+	}
+	BitSource bits = new BitSource(message);
+	int n = (1 << k) - 1;
+	int[] componentIndices = new int[n];
+	int[] offsets = new int[n];
+	while (bits.hasNext()) {
+	    int value = bits.next(k);
+	    for (int i = 0; i < n; i++) {
+		nextUsable(componentIndices, offsets, i);
+	    }
+	    while (true) {
+		int hash = 0;
+		for (int i = 0; i < n; i++) {
+		    if (bitOf(coefficients[componentIndices[i]][offsets[i]]) == 1) {
+			hash ^= i + 1;
+		    }
+		}
+		int change = hash ^ value;
+		if (change == 0) {
+		    break;
+		}
+		short[] array = coefficients[componentIndices[change - 1]];
+		int offset = offsets[change - 1];
+		array[offset] = decrement(array[offset]);
+		if (array[offset] != 0) {
+		    break;
+		}
+		// shrinkage: replace the coefficient and try again
+		for (int i = change - 1; i < n - 1; i++) {
+		    componentIndices[i] = componentIndices[i + 1];
+		    offsets[i] = offsets[i + 1];
+		}
+		nextUsable(componentIndices, offsets, n - 1);
+	    }
+	}
+    }
+
+    /**
+     * Extracts an embedded message.
+     *
+     * @return message bytes
+     * @throws IOException
+     *             if no valid message is embedded
+     */
+    public byte[] extract() throws IOException {
+	permutationIndex = 0;
+	long header = 0;
+	int[] componentIndices = new int[1];
+	int[] offsets = new int[1];
+	for (int i = 0; i < HEADER_BITS; i++) {
+	    nextUsable(componentIndices, offsets, 0);
+	    header = header << 1 | bitOf(coefficients[componentIndices[0]][offsets[0]]);
+	}
+	int k = (int) (header >>> 32);
+	long length = header & 0xFFFFFFFFL;
+	if (k < 1 || k > MAX_K || length > getUsableCoefficients() / 8) {
+	    throw new IOException("No F5 message embedded");
+	}
+	int n = (1 << k) - 1;
+	componentIndices = new int[n];
+	offsets = new int[n];
+	ByteArrayOutputStream message = new ByteArrayOutputStream((int) length);
+	long bitCount = length * 8;
+	int currentByte = 0;
+	int currentBits = 0;
+	for (long extracted = 0; extracted < bitCount; extracted += k) {
+	    int hash = 0;
+	    for (int i = 0; i < n; i++) {
+		nextUsable(componentIndices, offsets, i);
+		if (bitOf(coefficients[componentIndices[i]][offsets[i]]) == 1) {
+		    hash ^= i + 1;
+		}
+	    }
+	    for (int bit = k - 1; bit >= 0 && extracted + (k - 1 - bit) < bitCount; bit--) {
+		currentByte = currentByte << 1 | (hash >> bit & 1);
+		if (++currentBits == 8) {
+		    message.write(currentByte);
+		    currentByte = 0;
+		    currentBits = 0;
+		}
+	    }
+	}
+	return message.toByteArray();
+    }
+
+    /**
+     * Chooses the largest matrix parameter k for which the expected capacity
+     * of the image is still big enough for the message.
+     */
+    private int chooseMatrixParameter(int messageLength) throws IOException {
+	long[] counts = countCoefficients();
+	// on average 51% of the ones are lost by shrinkage:
+	long expected = counts[0] - counts[1] * 51 / 100 - 2 * HEADER_BITS;
+	long bits = (long) messageLength * 8;
+	int k = 0;
+	for (int candidate = 1; candidate <= MAX_K; candidate++) {
+	    long n = (1 << candidate) - 1;
+	    long groups = (bits + candidate - 1) / candidate;
+	    // shrinkage needs extra coefficients for each changed group:
+	    if (groups * n + groups / 2 <= expected) {
+		k = candidate;
+	    }
+	}
+	if (k == 0) {
+	    throw new IOException("The payload is too big for the carrier image");
+	}
+	return k;
+    }
+
+    private long getUsableCoefficients() throws IOException {
+	return countCoefficients()[0];
+    }
+
+    /**
+     * Counts the non-zero AC coefficients and the AC coefficients with an
+     * absolute value of one, for each component in parallel.
+     *
+     * @return {non-zero, ones}
+     */
+    private long[] countCoefficients() throws IOException {
+	List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+	for (final short[] componentCoefficients : coefficients) {
+	    tasks.add(new Callable<long[]>() {
+		@Override
+		public long[] call() {
+		    long nonZero = 0;
+		    long ones = 0;
+		    for (int i = 0; i < componentCoefficients.length; i++) {
+			int value = componentCoefficients[i];
+			if (value != 0 && i % JPEGCoefficientImage.BLOCK_SIZE != 0) {
+			    nonZero++;
+			    if (value == 1 || value == -1) {
+				ones++;
+			    }
+			}
+		    }
+		    return new long[] { nonZero, ones };
+		}
+	    });
+	}
+	long[] counts = new long[2];
+	for (long[] componentCounts : JPEGCoefficientImage.runAll(tasks)) {
+	    counts[0] += componentCounts[0];
+	    counts[1] += componentCounts[1];
+	}
+	return counts;
+    }
+
+    private void embedSingleBit(int bit) throws IOException {
+	int[] componentIndices = new int[1];
+	int[] offsets = new int[1];
+	while (true) {
+	    nextUsable(componentIndices, offsets, 0);
+	    short[] array = coefficients[componentIndices[0]];
+	    int offset = offsets[0];
+	    if (bitOf(array[offset]) == bit) {
+		return;
+	    }
+	    array[offset] = decrement(array[offset]);
+	    if (array[offset] != 0) {
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Stores the position of the next non-zero AC coefficient in the
+     * permutation order at the passed index of the arrays.
+     */
+    private void nextUsable(int[] componentIndices, int[] offsets, int index) throws IOException {
+	while (permutationIndex < permutation.size()) {
+	    long position = permutation.get(permutationIndex++);
+	    int component = 0;
+	    while (position >= componentStarts[component + 1]) {
+		component++;
+	    }
+	    int offset = (int) (position - componentStarts[component]);
+	    if (offset % JPEGCoefficientImage.BLOCK_SIZE != 0 && coefficients[component][offset] != 0) {
+		componentIndices[index] = component;
+		offsets[index] = offset;
+		return;
+	    }
+	}
+	throw new IOException("The carrier image has not enough capacity");
+    }
+
+    /**
+     * The embedded bit of a coefficient. Decrementing the absolute value
+     * always flips the bit.
+     */
+    private static int bitOf(int coefficient) {
+	return coefficient > 0 ? coefficient & 1 : 1 - (coefficient & 1);
+    }
+
+    private static short decrement(short coefficient) {
+	return (short) (coefficient > 0 ? coefficient - 1 : coefficient + 1);
+    }
+
+    /**
+     * Delivers the bits of a message in groups of k bits, most significant bit
+     * first. The last group is filled with zeros.
+     */
+    private static class BitSource {
+	private final byte[] message;
+	private long position = 0;
+
+	BitSource(byte[] message) {
+	    this.message = message;
+	}
+
+	boolean hasNext() {
+	    return position < (long) message.length * 8;
+	}
+
+	int next(int count) {
+	    int value = 0;
+	    for (int i = 0; i < count; i++) {
+		int bit = 0;
+		if (hasNext()) {
+		    bit = message[(int) (position >>> 3)] >> (7 - (int) (position & 7)) & 1;
+		}
+		value = value << 1 | bit;
+		position++;
+	    }
+	    return value;
+	}
+    }
+}
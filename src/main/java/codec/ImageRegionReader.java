@@ -0,0 +1,113 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads rectangular regions of an image file, instead of decoding the whole
+ * image. The image size is taken from the image header. The reader and its
+ * input stream are opened once and shared by all reads of the same file, so
+ * that a technique which needs several parts of one image doesn't have to open
+ * and decode the file for each of them.
+ *
+ * Only the pixels of the requested region are stored. A PNG reader still has to
+ * inflate the rows above the region, but the rows below the region are not
+ * read at all.
+ */
+public class ImageRegionReader {
+    private final File file;
+    private final ImageInputStream inputStream;
+    private final ImageReader reader;
+
+    /**
+     * Opens the image file.
+     *
+     * @param file
+     * @throws IOException
+     *             if the file isn't a readable image
+     */
+    public ImageRegionReader(File file) throws IOException {
+	this.file = file;
+	inputStream = ImageIO.createImageInputStream(file);
+	if (inputStream == null) {
+	    throw new IOException("Can't read " + file);
+	}
+	Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+	if (!readers.hasNext()) {
+	    inputStream.close();
+	    throw new IOException(file + " is no supported image.");
+	}
+	reader = readers.next();
+	reader.setInput(inputStream, false, true);
+    }
+
+    /**
+     * Returns the bounds of the whole image, which are read from the image
+     * header.
+     *
+     * @return rectangle at position 0,0 with the width and height of the image
+     * @throws IOException
+     */
+    public Rectangle getBounds() throws IOException {
+	return new Rectangle(0, 0, reader.getWidth(0), reader.getHeight(0));
+    }
+
+    /**
+     * Decodes only the pixels of the region.
+     *
+     * @param region
+     *            has to lie completely inside of the image bounds
+     * @return image with the size of the region
+     * @throws IOException
+     *             if the region exceeds the image, or the image can't be
+     *             decoded
+     */
+    public BufferedImage read(Rectangle region) throws IOException {
+	if (region.isEmpty() || !getBounds().contains(region)) {
+	    throw new IOException("The region " + region + " isn't part of the image " + file);
+	}
+	ImageReadParam param = reader.getDefaultReadParam();
+	param.setSourceRegion(region);
+	return reader.read(0, param);
+    }
+
+    /**
+     * Releases the reader and closes the image file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+	try {
+	    reader.dispose();
+	} finally {
+	    inputStream.close();
+	}
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.imageio.ImageIO;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.chunks.PngChunkPLTE;
+import ar.com.hjg.pngj.chunks.PngChunkTRNS;
+
+/**
+ * Delivers the pixels of an image file row by row, from top to bottom, as 8 bit
+ * ARGB values.
+ *
+ * PNG images are streamed with PNGJ: only the current row is decoded and kept
+ * in memory. Other image formats are decoded completely with {@link ImageIO}
+ * when they are opened.
+ */
+public abstract class ImageRowSource {
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    /**
+     * Opens the image file. Only the image header is read.
+     *
+     * @param file
+     * @return row source of the image
+     * @throws IOException
+     *             if the file isn't a readable image
+     */
+    public static ImageRowSource open(File file) throws IOException {
+	if (isPNG(file)) {
+	    try {
+		return new PNGRowSource(new PngReader(file));
+	    } catch (PngjException e) {
+		throw new IOException("Can't read the PNG image " + file, e);
+	    }
+	}
+	BufferedImage image = ImageIO.read(file);
+	if (image == null) {
+	    throw new IOException(file + " is no supported image.");
+	}
+	return new BufferedImageRowSource(image);
+    }
+
+    private static boolean isPNG(File file) throws IOException {
+	byte[] signature = new byte[PNG_SIGNATURE.length];
+	InputStream inputStream = new FileInputStream(file);
+	try {
+	    int length = 0;
+	    while (length < signature.length) {
+		int read = inputStream.read(signature, length, signature.length - length);
+		if (read < 0) {
+		    return false;
+		}
+		length += read;
+	    }
+	} finally {
+	    inputStream.close();
+	}
+	for (int i = 0; i < signature.length; i++) {
+	    if (signature[i] != PNG_SIGNATURE[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * @return width of the image in pixels
+     */
+    public abstract int getWidth();
+
+    /**
+     * @return height of the image in pixels
+     */
+    public abstract int getHeight();
+
+    /**
+     * @return true, if the image has transparent pixels or an alpha channel
+     */
+    public abstract boolean hasAlpha();
+
+    /**
+     * Reads the next row of the image.
+     *
+     * @param argb
+     *            the pixels are written to the first {@link #getWidth()}
+     *            elements of this array. The other elements are not changed.
+     * @throws IOException
+     *             if there are no more rows, or the image can't be decoded
+     */
+    public abstract void readRow(int[] argb) throws IOException;
+
+    /**
+     * Closes the image file. Calling this method more than once has no effect.
+     */
+    public abstract void close();
+
+    /**
+     * Row source of a PNG image, which is decoded row by row by PNGJ.
+     * Interlaced images are loaded completely by PNGJ before the first row is
+     * returned.
+     */
+    private static class PNGRowSource extends ImageRowSource {
+	private final PngReader reader;
+	private final ImageInfo imageInfo;
+	private final PngChunkPLTE palette;
+	private final PngChunkTRNS transparency;
+	private final int[] paletteAlpha;
+
+	PNGRowSource(PngReader reader) {
+	    this.reader = reader;
+	    imageInfo = reader.imgInfo;
+	    palette = reader.getMetadata().getPLTE();
+	    transparency = reader.getMetadata().getTRNS();
+	    paletteAlpha = imageInfo.indexed && transparency != null ? transparency.getPalletteAlpha() : null;
+	}
+
+	@Override
+	public int getWidth() {
+	    return imageInfo.cols;
+	}
+
+	@Override
+	public int getHeight() {
+	    return imageInfo.rows;
+	}
+
+	@Override
+	public boolean hasAlpha() {
+	    return imageInfo.alpha || transparency != null;
+	}
+
+	@Override
+	public void readRow(int[] argb) throws IOException {
+	    int[] samples;
+	    try {
+		if (!reader.hasMoreRows()) {
+		    throw new IOException("There are no more rows in the image.");
+		}
+		samples = ((ImageLineInt) reader.readRow()).getScanline();
+	    } catch (PngjException e) {
+		throw new IOException(e);
+	    }
+	    int channels = imageInfo.channels;
+	    for (int x = 0; x < imageInfo.cols; x++) {
+		int index = x * channels;
+		if (imageInfo.indexed) {
+		    int entry = samples[index];
+		    int alpha = paletteAlpha != null && entry < paletteAlpha.length ? paletteAlpha[entry] : 255;
+		    argb[x] = alpha << 24 | palette.getEntry(entry) & 0xFFFFFF;
+		} else if (imageInfo.greyscale) {
+		    int grey = toByte(samples[index]);
+		    boolean transparent = transparency != null && samples[index] == transparency.getGray();
+		    argb[x] = getAlpha(samples, index, transparent) << 24 | grey << 16 | grey << 8 | grey;
+		} else {
+		    boolean transparent = false;
+		    if (transparency != null) {
+			int[] rgb = transparency.getRGB();
+			transparent = samples[index] == rgb[0] && samples[index + 1] == rgb[1]
+				&& samples[index + 2] == rgb[2];
+		    }
+		    argb[x] = getAlpha(samples, index, transparent) << 24 | toByte(samples[index]) << 16
+			    | toByte(samples[index + 1]) << 8 | toByte(samples[index + 2]);
+		}
+	    }
+	}
+
+	private int getAlpha(int[] samples, int index, boolean transparent) {
+	    if (imageInfo.alpha) {
+		return toByte(samples[index + imageInfo.channels - 1]);
+	    }
+	    return transparent ? 0 : 255;
+	}
+
+	/**
+	 * Scales a sample to 8 bits.
+	 */
+	private int toByte(int sample) {
+	    switch (imageInfo.bitDepth) {
+	    case 1:
+		return sample * 255;
+	    case 2:
+		return sample * 85;
+	    case 4:
+		return sample * 17;
+	    case 16:
+		return sample >> 8;
+	    default:
+		return sample;
+	    }
+	}
+
+	@Override
+	public void close() {
+	    reader.close();
+	}
+    }
+
+    /**
+     * Row source of an image, which was decoded completely.
+     */
+    private static class BufferedImageRowSource extends ImageRowSource {
+	private final BufferedImage image;
+	private int row = 0;
+
+	BufferedImageRowSource(BufferedImage image) {
+	    this.image = image;
+	}
+
+	@Override
+	public int getWidth() {
+	    return image.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+	    return image.getHeight();
+	}
+
+	@Override
+	public boolean hasAlpha() {
+	    return image.getColorModel().hasAlpha();
+	}
+
+	@Override
+	public void readRow(int[] argb) throws IOException {
+	    if (row >= image.getHeight()) {
+		throw new IOException("There are no more rows in the image.");
+	    }
+	    image.getRGB(0, row++, image.getWidth(), 1, argb, 0, image.getWidth());
+	}
+
+	@Override
+	public void close() {
+	}
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads the index of a gzip file, which was written by the
+ * {@link IndexedGzipOutputStream}, and opens the file at the indexed
+ * positions. Only the gzip member, which contains the position, and the
+ * following members are decompressed, so the time to reach a position doesn't
+ * depend on the size of the data before it.
+ */
+public class IndexedGzipFile {
+    private final File file;
+    private final Map<String, IndexEntry> index = new LinkedHashMap<String, IndexEntry>();
+
+    /**
+     * Reads the index.
+     *
+     * @param gzipFile
+     * @throws IOException
+     *             if the file can't be read, or has no index
+     */
+    public IndexedGzipFile(File gzipFile) throws IOException {
+	file = gzipFile;
+	RandomAccessFile input = new RandomAccessFile(gzipFile, "r");
+	try {
+	    long indexOffset = readLocator(input);
+	    if (indexOffset < 0) {
+		throw new IOException(gzipFile.getName() + " has no gzip index.");
+	    }
+	    readIndex(input, indexOffset);
+	} finally {
+	    input.close();
+	}
+    }
+
+    /**
+     * @param gzipFile
+     * @return true, if the file ends with the index of an
+     *         {@link IndexedGzipOutputStream}
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public static boolean hasIndex(File gzipFile) throws IOException {
+	RandomAccessFile input = new RandomAccessFile(gzipFile, "r");
+	try {
+	    return readLocator(input) >= 0;
+	} finally {
+	    input.close();
+	}
+    }
+
+    /**
+     * @return the position of the first index member, or -1 if the file
+     *         doesn't end with a locator member
+     */
+    private static long readLocator(RandomAccessFile input) throws IOException {
+	long locatorOffset = input.length() - IndexedGzipOutputStream.LOCATOR_LENGTH;
+	if (locatorOffset < 0) {
+	    return -1;
+	}
+	input.seek(locatorOffset);
+	byte[] data = readExtraData(input, IndexedGzipOutputStream.LOCATOR_SUBFIELD);
+	if (data == null || data.length != 8) {
+	    return -1;
+	}
+	long indexOffset = 0;
+	for (byte b : data) {
+	    indexOffset = indexOffset << 8 | b & 0xff;
+	}
+	return indexOffset >= 0 && indexOffset <= locatorOffset ? indexOffset : -1;
+    }
+
+    /**
+     * Reads an empty gzip member with one extra subfield.
+     *
+     * @return the data of the subfield, or null if the member has another
+     *         structure
+     */
+    private static byte[] readExtraData(RandomAccessFile input, byte[] subfield) throws IOException {
+	byte[] header = new byte[16];
+	input.readFully(header);
+	if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8 || header[3] != 4
+		|| header[12] != subfield[0] || header[13] != subfield[1]) {
+	    return null;
+	}
+	int extraLength = (header[10] & 0xff) | (header[11] & 0xff) << 8;
+	int length = (header[14] & 0xff) | (header[15] & 0xff) << 8;
+	if (extraLength != length + 4) {
+	    return null;
+	}
+	byte[] data = new byte[length];
+	input.readFully(data);
+	// empty deflate stream, CRC32 and size:
+	input.skipBytes(10);
+	return data;
+    }
+
+    private void readIndex(RandomAccessFile input, long indexOffset) throws IOException {
+	long locatorOffset = input.length() - IndexedGzipOutputStream.LOCATOR_LENGTH;
+	ByteArrayOutputStream indexData = new ByteArrayOutputStream();
+	input.seek(indexOffset);
+	while (input.getFilePointer() < locatorOffset) {
+	    byte[] data = readExtraData(input, IndexedGzipOutputStream.INDEX_SUBFIELD);
+	    if (data == null) {
+		throw new IOException(file.getName() + " has a broken gzip index.");
+	    }
+	    indexData.write(data);
+	}
+	DataInputStream indexStream = new DataInputStream(new ByteArrayInputStream(indexData.toByteArray()));
+	int entries = indexStream.readInt();
+	for (int i = 0; i < entries; i++) {
+	    String name = indexStream.readUTF();
+	    index.put(name, new IndexEntry(indexStream.readLong(), indexStream.readLong(), indexStream.readLong()));
+	}
+    }
+
+    /**
+     * @return the names of the indexed positions, in the order they were
+     *         written
+     */
+    public Set<String> getNames() {
+	return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * Opens the decompressed data at an indexed position. The stream continues
+     * to the end of the data.
+     *
+     * @param name
+     *            name of the position
+     * @return the decompressed data from the position on, or null if the name
+     *         isn't indexed
+     * @throws IOException
+     *             if the file can't be read
+     */
+    public InputStream getInputStream(String name) throws IOException {
+	IndexEntry entry = index.get(name);
+	if (entry == null) {
+	    return null;
+	}
+	FileInputStream input = new FileInputStream(file);
+	try {
+	    input.getChannel().position(entry.memberOffset);
+	    InputStream gzipStream = new GzipCompressorInputStream(new BufferedInputStream(input), true);
+	    IOUtils.skipFully(gzipStream, entry.offset - entry.memberStart);
+	    return gzipStream;
+	} catch (IOException e) {
+	    input.close();
+	    throw e;
+	}
+    }
+
+    /**
+     * Position of the data and of the gzip member, which contains it.
+     */
+    private static class IndexEntry {
+	/** Uncompressed position */
+	private final long offset;
+	/** Compressed position of the member */
+	private final long memberOffset;
+	/** Uncompressed position of the start of the member */
+	private final long memberStart;
+
+	IndexEntry(long offset, long memberOffset, long memberStart) {
+	    this.offset = offset;
+	    this.memberOffset = memberOffset;
+	    this.memberStart = memberStart;
+	}
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a gzip file, which can be read from named positions without
+ * decompressing the data before them. The {@link IndexedGzipFile} reads these
+ * positions.
+ *
+ * The data is split into blocks of {@link #MEMBER_SIZE} bytes, and each block
+ * is compressed to a complete gzip member, so decompression can start at the
+ * beginning of every member. The blocks are compressed on several threads. The
+ * positions, which were marked by {@link #addIndexEntry(String)}, are written
+ * behind the data as index. The index is stored in the extra fields of empty
+ * gzip members, and the last member locates the first index member. Because
+ * these members don't contain data, gunzip and every gzip reader, which
+ * supports concatenated members, read the same data as without the index.
+ */
+public class IndexedGzipOutputStream extends OutputStream {
+    /** Number of uncompressed bytes, which are compressed to one gzip member */
+    public static final int MEMBER_SIZE = 256 * 1024;
+
+    /** Subfield ID of the index data */
+    static final byte[] INDEX_SUBFIELD = { 'P', 'I' };
+    /** Subfield ID of the position of the index */
+    static final byte[] LOCATOR_SUBFIELD = { 'P', 'L' };
+    /** Gzip member with the index position: header, extra field and trailer */
+    static final int LOCATOR_LENGTH = 10 + 2 + 4 + 8 + 2 + 8;
+    /** Maximum length of the index data in one extra field */
+    static final int MAX_INDEX_DATA_LENGTH = 0xffff - 4;
+    /** Raw deflate stream without data */
+    private static final byte[] EMPTY_DEFLATE_STREAM = { 3, 0 };
+
+    private final OutputStream output;
+    private final int compressionLevel;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<Future<byte[]>> pendingMembers = new LinkedList<Future<byte[]>>();
+    /** Compressed positions of the written members */
+    private final List<Long> memberOffsets = new ArrayList<Long>();
+    private final Map<String, Long> indexEntries = new LinkedHashMap<String, Long>();
+    private long position = 0;
+    private long compressedPosition = 0;
+    private byte[] block = new byte[MEMBER_SIZE];
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    /**
+     * @param output
+     *            stream, which receives the gzip members
+     * @param compressionLevel
+     *            deflate level from 0 to 9, or
+     *            {@link Deflater#DEFAULT_COMPRESSION}
+     * @param threads
+     *            number of threads, which compress members
+     */
+    public IndexedGzipOutputStream(OutputStream output, int compressionLevel, int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.output = output;
+	this.compressionLevel = compressionLevel;
+	this.threads = threads;
+	executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Marks the current position, which can be read by
+     * {@link IndexedGzipFile#getInputStream(String)}.
+     *
+     * @param name
+     *            name of the position, e.g. the name of a tar entry
+     */
+    public void addIndexEntry(String name) {
+	indexEntries.put(name, position);
+    }
+
+    /**
+     * @return number of uncompressed bytes, which were written
+     */
+    public long getPosition() {
+	return position;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+	write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+	if (closed) {
+	    throw new IOException("The gzip stream is closed.");
+	}
+	position += length;
+	while (length > 0) {
+	    int count = Math.min(length, block.length - blockLength);
+	    System.arraycopy(data, offset, block, blockLength, count);
+	    blockLength += count;
+	    offset += count;
+	    length -= count;
+	    if (blockLength == block.length) {
+		submitBlock();
+	    }
+	}
+    }
+
+    /**
+     * Passes the current block to the executor, and writes finished members if
+     * too many blocks are pending.
+     */
+    private void submitBlock() throws IOException {
+	pendingMembers.add(executor.submit(new MemberCompressor(block, blockLength, compressionLevel)));
+	block = new byte[MEMBER_SIZE];
+	blockLength = 0;
+	while (pendingMembers.size() > 2 * threads) {
+	    writeNextMember();
+	}
+    }
+
+    private void writeNextMember() throws IOException {
+	try {
+	    byte[] member = pendingMembers.removeFirst().get();
+	    memberOffsets.add(compressedPosition);
+	    output.write(member);
+	    compressedPosition += member.length;
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The gzip compression was interrupted.", e);
+	}
+    }
+
+    /**
+     * Writes the remaining members and the index, and closes the output.
+     */
+    @Override
+    public void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	try {
+	    if (blockLength > 0) {
+		submitBlock();
+	    }
+	    while (!pendingMembers.isEmpty()) {
+		writeNextMember();
+	    }
+	    writeIndex();
+	    output.flush();
+	} finally {
+	    executor.shutdownNow();
+	    output.close();
+	}
+    }
+
+    /**
+     * Writes the index entries with the position of the member, which contains
+     * them, and the locator member.
+     */
+    private void writeIndex() throws IOException {
+	long indexOffset = compressedPosition;
+	ByteArrayOutputStream indexData = new ByteArrayOutputStream();
+	DataOutputStream indexStream = new DataOutputStream(indexData);
+	indexStream.writeInt(indexEntries.size());
+	for (Entry<String, Long> indexEntry : indexEntries.entrySet()) {
+	    long offset = indexEntry.getValue();
+	    int member = (int) (offset / MEMBER_SIZE);
+	    indexStream.writeUTF(indexEntry.getKey());
+	    indexStream.writeLong(offset);
+	    indexStream.writeLong(member < memberOffsets.size() ? memberOffsets.get(member) : indexOffset);
+	    indexStream.writeLong((long) member * MEMBER_SIZE);
+	}
+	indexStream.close();
+	byte[] index = indexData.toByteArray();
+	for (int start = 0; start < index.length; start += MAX_INDEX_DATA_LENGTH) {
+	    int length = Math.min(MAX_INDEX_DATA_LENGTH, index.length - start);
+	    writeEmptyMember(INDEX_SUBFIELD, index, start, length);
+	}
+	byte[] locator = new byte[8];
+	for (int i = 0; i < 8; i++) {
+	    locator[i] = (byte) (indexOffset >> (56 - 8 * i));
+	}
+	writeEmptyMember(LOCATOR_SUBFIELD, locator, 0, locator.length);
+    }
+
+    /**
+     * Writes a gzip member without data, which has one extra subfield.
+     */
+    private void writeEmptyMember(byte[] subfield, byte[] data, int offset, int length) throws IOException {
+	ByteArrayOutputStream member = new ByteArrayOutputStream(length + 32);
+	writeHeader(member, true, 0);
+	int extraLength = length + 4;
+	member.write(new byte[] { (byte) extraLength, (byte) (extraLength >> 8), subfield[0], subfield[1],
+		(byte) length, (byte) (length >> 8) });
+	member.write(data, offset, length);
+	member.write(EMPTY_DEFLATE_STREAM);
+	// CRC32 and size of the empty data:
+	member.write(new byte[8]);
+	output.write(member.toByteArray());
+	compressedPosition += member.size();
+    }
+
+    /**
+     * Writes the header of a gzip member without name, comment and
+     * modification time.
+     */
+    private static void writeHeader(ByteArrayOutputStream member, boolean extraField, int extraFlags) {
+	// magic number, deflate, optional FEXTRA flag, no modification time, unknown OS:
+	member.write(0x1f);
+	member.write(0x8b);
+	member.write(8);
+	member.write(extraField ? 4 : 0);
+	member.write(new byte[4], 0, 4);
+	member.write(extraFlags);
+	member.write(255);
+    }
+
+    /**
+     * Compresses one block to a complete gzip member.
+     */
+    private static class MemberCompressor implements Callable<byte[]> {
+	private final byte[] data;
+	private final int length;
+	private final int compressionLevel;
+
+	MemberCompressor(byte[] data, int length, int compressionLevel) {
+	    this.data = data;
+	    this.length = length;
+	    this.compressionLevel = compressionLevel;
+	}
+
+	@Override
+	public byte[] call() {
+	    byte[] deflated = new BlockDeflater(data, length, null, true, compressionLevel,
+		    Deflater.DEFAULT_STRATEGY).call();
+	    CRC32 checksum = new CRC32();
+	    checksum.update(data, 0, length);
+	    long crc = checksum.getValue();
+	    ByteArrayOutputStream member = new ByteArrayOutputStream(deflated.length + 18);
+	    writeHeader(member, false, compressionLevel == Deflater.BEST_COMPRESSION ? 2
+		    : compressionLevel == Deflater.BEST_SPEED ? 4 : 0);
+	    member.write(deflated, 0, deflated.length);
+	    member.write(new byte[] { (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+		    (byte) length, (byte) (length >> 8), (byte) (length >> 16), (byte) (length >> 24) }, 0, 8);
+	    return member.toByteArray();
+	}
+    }
+}
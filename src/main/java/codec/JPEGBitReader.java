@@ -0,0 +1,106 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+/**
+ * Reads the bits of an entropy coded JPEG segment. Stuffed zero bytes after
+ * 0xFF are removed. If a marker is reached, the reader returns zero bits, as
+ * suggested by the JPEG standard.
+ */
+class JPEGBitReader {
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private long buffer = 0;
+    private int bufferedBits = 0;
+
+    /**
+     * @param data
+     *            the complete JPEG file
+     * @param start
+     *            first byte of the entropy coded segment
+     * @param end
+     *            first byte after the entropy coded segment
+     */
+    JPEGBitReader(byte[] data, int start, int end) {
+	this.data = data;
+	this.position = start;
+	this.end = end;
+    }
+
+    private void fill() {
+	while (bufferedBits <= 56) {
+	    int next = 0;
+	    if (position < end) {
+		next = data[position] & 0xFF;
+		if (next == 0xFF) {
+		    int following = position + 1 < end ? data[position + 1] & 0xFF : 0xD9;
+		    if (following == 0) {
+			position += 2;
+		    } else {
+			next = 0; // marker: don't consume
+		    }
+		} else {
+		    position++;
+		}
+	    }
+	    buffer = buffer << 8 | next;
+	    bufferedBits += 8;
+	}
+    }
+
+    int peekBits(int count) {
+	if (bufferedBits < count) {
+	    fill();
+	}
+	return (int) (buffer >>> (bufferedBits - count)) & ((1 << count) - 1);
+    }
+
+    void skipBits(int count) {
+	bufferedBits -= count;
+    }
+
+    int readBits(int count) {
+	if (count == 0) {
+	    return 0;
+	}
+	int bits = peekBits(count);
+	bufferedBits -= count;
+	return bits;
+    }
+
+    /**
+     * Reads a coefficient of the passed magnitude category and extends its
+     * sign (Annex F.2.2.1).
+     *
+     * @param category
+     * @return coefficient value
+     */
+    int receiveExtend(int category) {
+	if (category == 0) {
+	    return 0;
+	}
+	int value = readBits(category);
+	if (value < 1 << (category - 1)) {
+	    value += (-1 << category) + 1;
+	}
+	return value;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.util.Arrays;
+
+/**
+ * Collects the bits of an entropy coded JPEG segment. If stuffing is enabled, a
+ * zero byte is inserted after every 0xFF byte. Without stuffing, the writer
+ * keeps the exact bit sequence, so that independently encoded parts of a scan
+ * can be joined afterwards with {@link #append(JPEGBitWriter)}.
+ */
+class JPEGBitWriter {
+    private final boolean stuffing;
+    private byte[] bytes;
+    private int length = 0;
+    private long buffer = 0;
+    private int bufferedBits = 0;
+
+    JPEGBitWriter(boolean stuffing, int initialCapacity) {
+	this.stuffing = stuffing;
+	this.bytes = new byte[Math.max(initialCapacity, 64)];
+    }
+
+    void writeBits(int bits, int count) {
+	if (count == 0) {
+	    return;
+	}
+	buffer = buffer << count | (bits & ((1L << count) - 1));
+	bufferedBits += count;
+	while (bufferedBits >= 8) {
+	    bufferedBits -= 8;
+	    writeByte((int) (buffer >>> bufferedBits) & 0xFF);
+	}
+    }
+
+    /**
+     * Writes the magnitude bits of a coefficient (Annex F.1.2.1).
+     *
+     * @param value
+     *            coefficient value
+     * @param category
+     *            magnitude category of the value
+     */
+    void writeCoefficientBits(int value, int category) {
+	writeBits(value < 0 ? value - 1 : value, category);
+    }
+
+    private void writeByte(int value) {
+	ensureCapacity(length + 2);
+	bytes[length++] = (byte) value;
+	if (stuffing && value == 0xFF) {
+	    bytes[length++] = 0;
+	}
+    }
+
+    private void ensureCapacity(int capacity) {
+	if (capacity > bytes.length) {
+	    bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+	}
+    }
+
+    /**
+     * Pads the last byte with 1 bits.
+     */
+    void padToByte() {
+	if (bufferedBits > 0) {
+	    writeBits(0x7F, 8 - bufferedBits);
+	}
+    }
+
+    /**
+     * Writes a marker. The bit stream has to be padded before.
+     *
+     * @param marker
+     */
+    void writeMarker(int marker) {
+	ensureCapacity(length + 2);
+	bytes[length++] = (byte) 0xFF;
+	bytes[length++] = (byte) marker;
+    }
+
+    /**
+     * Appends all bits of a writer that was created without stuffing.
+     *
+     * @param other
+     */
+    void append(JPEGBitWriter other) {
+	if (bufferedBits == 0 && !stuffing) {
+	    ensureCapacity(length + other.length);
+	    System.arraycopy(other.bytes, 0, bytes, length, other.length);
+	    length += other.length;
+	} else {
+	    for (int i = 0; i < other.length; i++) {
+		writeBits(other.bytes[i] & 0xFF, 8);
+	    }
+	}
+	writeBits((int) other.buffer, other.bufferedBits);
+    }
+
+    byte[] toByteArray() {
+	return Arrays.copyOf(bytes, length);
+    }
+
+    int size() {
+	return length;
+    }
+}
@@ -0,0 +1,795 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The quantised DCT coefficients of a baseline JPEG image.
+ *
+ * The JPEG file is parsed and the entropy coded scan is Huffman decoded, but
+ * the coefficients are neither de-quantised nor transformed back into pixels.
+ * After the coefficients were altered, {@link #write(File)} re-emits the
+ * original header segments together with optimised Huffman tables and the new
+ * entropy coded scan. The image is therefore never round tripped through the
+ * pixel domain, and the quantisation tables stay untouched.
+ *
+ * Decoding is done in parallel, if the image has restart intervals. The
+ * encoding is always split into independent parts along MCU rows, which are
+ * encoded in parallel and joined afterwards.
+ *
+ * Supported are sequential Huffman coded JPEGs (SOF0 and SOF1) with a single
+ * scan. Progressive or arithmetic coded images are rejected with an
+ * {@link IOException}.
+ */
+public class JPEGCoefficientImage {
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DHT = 0xC4;
+    private static final int DRI = 0xDD;
+    private static final int RST0 = 0xD0;
+
+    /** Order of the coefficients inside of a block is the zig-zag order. */
+    public static final int BLOCK_SIZE = 64;
+
+    private final List<byte[]> headerSegments = new ArrayList<byte[]>();
+    private final JPEGHuffmanTable[] dcTables = new JPEGHuffmanTable[4];
+    private final JPEGHuffmanTable[] acTables = new JPEGHuffmanTable[4];
+    private final List<Component> components = new ArrayList<Component>();
+    private final List<Component> scanComponents = new ArrayList<Component>();
+    private byte[] scanHeader;
+    private byte[] trailer = new byte[0];
+    private int width;
+    private int height;
+    private int restartInterval = 0;
+    private int mcusPerLine;
+    private int mcuRows;
+    private boolean frameFound = false;
+
+    /**
+     * A colour component of the image with its coefficient blocks.
+     */
+    public static class Component {
+	final int id;
+	final int horizontalSampling;
+	final int verticalSampling;
+	int dcTable;
+	int acTable;
+	int blocksPerLine;
+	int blockRows;
+	/** coefficients of all blocks, 64 per block, in zig-zag order */
+	short[] coefficients;
+
+	Component(int id, int horizontalSampling, int verticalSampling) {
+	    this.id = id;
+	    this.horizontalSampling = horizontalSampling;
+	    this.verticalSampling = verticalSampling;
+	}
+
+	/**
+	 * @return the quantised coefficients of this component. Changes to the
+	 *         array are written by {@link JPEGCoefficientImage#write}.
+	 */
+	public short[] getCoefficients() {
+	    return coefficients;
+	}
+    }
+
+    private JPEGCoefficientImage() {
+    }
+
+    /**
+     * Parses the JPEG file and decodes the quantised DCT coefficients.
+     *
+     * @param jpeg
+     * @return the coefficient image
+     * @throws IOException
+     *             if the file isn't a supported JPEG
+     */
+    public static JPEGCoefficientImage read(File jpeg) throws IOException {
+	JPEGCoefficientImage image = new JPEGCoefficientImage();
+	image.parse(FileUtils.readFileToByteArray(jpeg));
+	return image;
+    }
+
+    /**
+     * Checks with a streaming marker parser, that stops at the frame header,
+     * if the file is a JPEG that can be handled by this class.
+     *
+     * @param file
+     * @return true for sequential Huffman coded JPEGs
+     */
+    public static boolean isSupported(File file) {
+	DataInputStream input = null;
+	try {
+	    input = new DataInputStream(new FileInputStream(file));
+	    if (input.readUnsignedByte() != 0xFF || input.readUnsignedByte() != SOI) {
+		return false;
+	    }
+	    while (true) {
+		int marker = nextMarker(input);
+		if (marker == 0xC0 || marker == 0xC1) {
+		    return true;
+		}
+		if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+		    return false;
+		}
+		if (marker == SOS || marker == EOI) {
+		    return false;
+		}
+		IOUtils.skipFully(input, input.readUnsignedShort() - 2);
+	    }
+	} catch (IOException e) {
+	    return false;
+	} finally {
+	    IOUtils.closeQuietly(input);
+	}
+    }
+
+    private static int nextMarker(DataInputStream input) throws IOException {
+	int value = input.readUnsignedByte();
+	while (value != 0xFF) {
+	    value = input.readUnsignedByte();
+	}
+	while (value == 0xFF) {
+	    value = input.readUnsignedByte();
+	}
+	return value;
+    }
+
+    /*
+     * ****** PARSING *********
+     */
+
+    private void parse(byte[] data) throws IOException {
+	if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+	    throw new IOException("Not a JPEG file");
+	}
+	int position = 2;
+	while (true) {
+	    if (position + 4 > data.length) {
+		throw new EOFException("JPEG ends before the scan");
+	    }
+	    if ((data[position] & 0xFF) != 0xFF) {
+		throw new IOException("Corrupt JPEG: marker expected at " + position);
+	    }
+	    int marker = data[position + 1] & 0xFF;
+	    if (marker == 0xFF) {
+		position++; // fill byte
+		continue;
+	    }
+	    int length = readShort(data, position + 2);
+	    int segmentEnd = position + 2 + length;
+	    if (segmentEnd > data.length) {
+		throw new EOFException("JPEG segment exceeds the file");
+	    }
+	    if (marker == 0xC0 || marker == 0xC1) {
+		parseFrame(data, position + 4);
+	    } else if (marker >= 0xC2 && marker <= 0xCF && marker != DHT && marker != 0xC8 && marker != 0xCC) {
+		throw new IOException("Only sequential Huffman coded JPEGs are supported");
+	    } else if (marker == DHT) {
+		parseHuffmanTables(data, position + 4, segmentEnd);
+	    } else if (marker == DRI) {
+		restartInterval = readShort(data, position + 4);
+	    }
+	    if (marker == SOS) {
+		scanHeader = Arrays.copyOfRange(data, position, segmentEnd);
+		parseScanHeader(data, position + 4);
+		int scanEnd = findScanEnd(data, segmentEnd);
+		decodeScan(data, segmentEnd, scanEnd);
+		parseTrailer(data, scanEnd);
+		return;
+	    }
+	    if (marker != DHT) {
+		headerSegments.add(Arrays.copyOfRange(data, position, segmentEnd));
+	    }
+	    position = segmentEnd;
+	}
+    }
+
+    private static int readShort(byte[] data, int position) {
+	return (data[position] & 0xFF) << 8 | data[position + 1] & 0xFF;
+    }
+
+    private void parseFrame(byte[] data, int position) throws IOException {
+	if (frameFound) {
+	    throw new IOException("Only one frame is supported");
+	}
+	frameFound = true;
+	height = readShort(data, position + 1);
+	width = readShort(data, position + 3);
+	int count = data[position + 5] & 0xFF;
+	if (width == 0 || height == 0) {
+	    throw new IOException("JPEGs with DNL segments are not supported");
+	}
+	position += 6;
+	for (int i = 0; i < count; i++) {
+	    int sampling = data[position + 1] & 0xFF;
+	    components.add(new Component(data[position] & 0xFF, sampling >> 4, sampling & 0x0F));
+	    position += 3;
+	}
+    }
+
+    private void parseHuffmanTables(byte[] data, int position, int end) {
+	while (position < end) {
+	    int tableClass = (data[position] & 0xFF) >> 4;
+	    int tableId = data[position] & 0x03;
+	    int[] bits = new int[17];
+	    int count = 0;
+	    for (int i = 1; i <= 16; i++) {
+		bits[i] = data[position + i] & 0xFF;
+		count += bits[i];
+	    }
+	    int[] values = new int[count];
+	    for (int i = 0; i < count; i++) {
+		values[i] = data[position + 17 + i] & 0xFF;
+	    }
+	    JPEGHuffmanTable table = new JPEGHuffmanTable(bits, values);
+	    if (tableClass == 0) {
+		dcTables[tableId] = table;
+	    } else {
+		acTables[tableId] = table;
+	    }
+	    position += 17 + count;
+	}
+    }
+
+    private void parseScanHeader(byte[] data, int position) throws IOException {
+	if (!frameFound) {
+	    throw new IOException("Scan without frame header");
+	}
+	int count = data[position] & 0xFF;
+	position++;
+	for (int i = 0; i < count; i++) {
+	    Component component = getComponent(data[position] & 0xFF);
+	    component.dcTable = (data[position + 1] & 0xFF) >> 4;
+	    component.acTable = data[position + 1] & 0x03;
+	    if (dcTables[component.dcTable] == null || acTables[component.acTable] == null) {
+		throw new IOException("Scan references an undefined Huffman table");
+	    }
+	    scanComponents.add(component);
+	    position += 2;
+	}
+	int spectralStart = data[position] & 0xFF;
+	int spectralEnd = data[position + 1] & 0xFF;
+	if (spectralStart != 0 || spectralEnd != 63 || data[position + 2] != 0) {
+	    throw new IOException("Only sequential JPEG scans are supported");
+	}
+	if (scanComponents.size() != components.size()) {
+	    throw new IOException("Only JPEGs with a single scan are supported");
+	}
+	layoutBlocks();
+    }
+
+    private Component getComponent(int id) throws IOException {
+	for (Component component : components) {
+	    if (component.id == id) {
+		return component;
+	    }
+	}
+	throw new IOException("Scan references an unknown component");
+    }
+
+    /**
+     * Calculates the number of MCUs and blocks of the scan (Annex A.2).
+     */
+    private void layoutBlocks() {
+	int maxHorizontal = 1;
+	int maxVertical = 1;
+	for (Component component : components) {
+	    maxHorizontal = Math.max(maxHorizontal, component.horizontalSampling);
+	    maxVertical = Math.max(maxVertical, component.verticalSampling);
+	}
+	if (scanComponents.size() == 1) {
+	    Component component = scanComponents.get(0);
+	    int componentWidth = ceilDiv(width * component.horizontalSampling, maxHorizontal);
+	    int componentHeight = ceilDiv(height * component.verticalSampling, maxVertical);
+	    component.blocksPerLine = ceilDiv(componentWidth, 8);
+	    component.blockRows = ceilDiv(componentHeight, 8);
+	    mcusPerLine = component.blocksPerLine;
+	    mcuRows = component.blockRows;
+	} else {
+	    mcusPerLine = ceilDiv(width, 8 * maxHorizontal);
+	    mcuRows = ceilDiv(height, 8 * maxVertical);
+	    for (Component component : components) {
+		component.blocksPerLine = mcusPerLine * component.horizontalSampling;
+		component.blockRows = mcuRows * component.verticalSampling;
+	    }
+	}
+	for (Component component : components) {
+	    component.coefficients = new short[component.blocksPerLine * component.blockRows * BLOCK_SIZE];
+	}
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+	return (value + divisor - 1) / divisor;
+    }
+
+    /**
+     * The scan ends with the first marker that isn't a restart marker.
+     */
+    private static int findScanEnd(byte[] data, int position) throws IOException {
+	for (int i = position; i < data.length - 1; i++) {
+	    if ((data[i] & 0xFF) == 0xFF) {
+		int next = data[i + 1] & 0xFF;
+		if (next != 0 && (next < RST0 || next > RST0 + 7)) {
+		    return i;
+		}
+		i++;
+	    }
+	}
+	throw new EOFException("JPEG scan isn't terminated");
+    }
+
+    private void parseTrailer(byte[] data, int position) throws IOException {
+	if ((data[position + 1] & 0xFF) != EOI) {
+	    throw new IOException("Only JPEGs with a single scan are supported");
+	}
+	trailer = Arrays.copyOfRange(data, position + 2, data.length);
+    }
+
+    /*
+     * ****** DECODING *********
+     */
+
+    private int getMcuCount() {
+	return mcusPerLine * mcuRows;
+    }
+
+    private void decodeScan(final byte[] data, int start, int end) throws IOException {
+	final List<int[]> intervals = new ArrayList<int[]>();
+	if (restartInterval > 0) {
+	    int intervalStart = start;
+	    for (int i = start; i < end - 1; i++) {
+		if ((data[i] & 0xFF) == 0xFF) {
+		    int next = data[i + 1] & 0xFF;
+		    if (next >= RST0 && next <= RST0 + 7) {
+			intervals.add(new int[] { intervalStart, i });
+			intervalStart = i + 2;
+		    }
+		    i++;
+		}
+	    }
+	    intervals.add(new int[] { intervalStart, end });
+	} else {
+	    intervals.add(new int[] { start, end });
+	}
+	List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+	for (int i = 0; i < intervals.size(); i++) {
+	    final int[] interval = intervals.get(i);
+	    final int firstMcu = restartInterval > 0 ? i * restartInterval : 0;
+	    final int lastMcu = restartInterval > 0 ? Math.min(firstMcu + restartInterval, getMcuCount())
+		    : getMcuCount();
+	    tasks.add(new Callable<Void>() {
+		@Override
+		public Void call() throws IOException {
+		    decodeMcus(new JPEGBitReader(data, interval[0], interval[1]), firstMcu, lastMcu);
+		    return null;
+		}
+	    });
+	}
+	runAll(tasks);
+    }
+
+    private void decodeMcus(JPEGBitReader reader, int firstMcu, int lastMcu) throws IOException {
+	int[] predictions = new int[scanComponents.size()];
+	for (int mcu = firstMcu; mcu < lastMcu; mcu++) {
+	    for (int c = 0; c < scanComponents.size(); c++) {
+		Component component = scanComponents.get(c);
+		for (int offset : getBlockOffsets(component, mcu)) {
+		    predictions[c] = decodeBlock(reader, component, offset, predictions[c]);
+		}
+	    }
+	}
+    }
+
+    private int decodeBlock(JPEGBitReader reader, Component component, int offset, int prediction)
+	    throws IOException {
+	short[] coefficients = component.coefficients;
+	int dc = prediction + reader.receiveExtend(dcTables[component.dcTable].decode(reader));
+	coefficients[offset] = (short) dc;
+	JPEGHuffmanTable acTable = acTables[component.acTable];
+	for (int k = 1; k < BLOCK_SIZE;) {
+	    int symbol = acTable.decode(reader);
+	    int run = symbol >> 4;
+	    int category = symbol & 0x0F;
+	    if (category == 0) {
+		if (run != 15) {
+		    break; // end of block
+		}
+		k += 16;
+	    } else {
+		k += run;
+		if (k >= BLOCK_SIZE) {
+		    throw new IOException("Corrupt JPEG data: coefficient index out of range");
+		}
+		coefficients[offset + k] = (short) reader.receiveExtend(category);
+		k++;
+	    }
+	}
+	return dc;
+    }
+
+    /**
+     * Returns the offsets of all blocks of a component in one MCU, in coding
+     * order.
+     */
+    private int[] getBlockOffsets(Component component, int mcu) {
+	int mcuRow = mcu / mcusPerLine;
+	int mcuColumn = mcu % mcusPerLine;
+	if (scanComponents.size() == 1) {
+	    return new int[] { (mcuRow * component.blocksPerLine + mcuColumn) * BLOCK_SIZE };
+	}
+	int[] offsets = new int[component.horizontalSampling * component.verticalSampling];
+	int index = 0;
+	for (int v = 0; v < component.verticalSampling; v++) {
+	    int blockRow = mcuRow * component.verticalSampling + v;
+	    for (int h = 0; h < component.horizontalSampling; h++) {
+		int blockColumn = mcuColumn * component.horizontalSampling + h;
+		offsets[index++] = (blockRow * component.blocksPerLine + blockColumn) * BLOCK_SIZE;
+	    }
+	}
+	return offsets;
+    }
+
+    /*
+     * ****** ENCODING *********
+     */
+
+    /**
+     * Writes the JPEG with the current coefficients. The header segments of
+     * the original file are kept, only the Huffman tables are optimised for
+     * the new coefficients.
+     *
+     * @param output
+     * @throws IOException
+     */
+    public void write(File output) throws IOException {
+	OutputStream outputStream = new FileOutputStream(output);
+	try {
+	    write(outputStream);
+	} finally {
+	    outputStream.close();
+	}
+    }
+
+    /**
+     * Writes the JPEG with the current coefficients to a stream.
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    public void write(OutputStream outputStream) throws IOException {
+	final int[][] ranges = getEncodingRanges();
+	final JPEGHuffmanTable[] newDcTables = new JPEGHuffmanTable[4];
+	final JPEGHuffmanTable[] newAcTables = new JPEGHuffmanTable[4];
+	optimiseHuffmanTables(ranges, newDcTables, newAcTables);
+	List<Callable<JPEGBitWriter>> tasks = new ArrayList<Callable<JPEGBitWriter>>();
+	for (final int[] range : ranges) {
+	    tasks.add(new Callable<JPEGBitWriter>() {
+		@Override
+		public JPEGBitWriter call() {
+		    return encodeRange(range[0], range[1], newDcTables, newAcTables);
+		}
+	    });
+	}
+	List<JPEGBitWriter> parts = runAll(tasks);
+	outputStream.write(0xFF);
+	outputStream.write(SOI);
+	for (byte[] segment : headerSegments) {
+	    outputStream.write(segment);
+	}
+	writeHuffmanTables(outputStream, newDcTables, newAcTables);
+	outputStream.write(scanHeader);
+	if (restartInterval > 0) {
+	    // parts are aligned to restart intervals and already stuffed:
+	    for (JPEGBitWriter part : parts) {
+		outputStream.write(part.toByteArray());
+	    }
+	} else {
+	    int size = 0;
+	    for (JPEGBitWriter part : parts) {
+		size += part.size();
+	    }
+	    JPEGBitWriter scan = new JPEGBitWriter(true, size + size / 64 + 16);
+	    for (JPEGBitWriter part : parts) {
+		scan.append(part);
+	    }
+	    scan.padToByte();
+	    outputStream.write(scan.toByteArray());
+	}
+	outputStream.write(0xFF);
+	outputStream.write(EOI);
+	outputStream.write(trailer);
+    }
+
+    /**
+     * Splits the MCUs into independently encodable ranges of whole MCU rows,
+     * or whole restart intervals.
+     */
+    private int[][] getEncodingRanges() {
+	int mcuCount = getMcuCount();
+	int parts = Math.max(1, Math.min(mcuRows, Runtime.getRuntime().availableProcessors() * 4));
+	int unit = mcusPerLine;
+	if (restartInterval > 0) {
+	    unit = restartInterval;
+	    parts = Math.max(1, Math.min(parts, ceilDiv(mcuCount, restartInterval)));
+	}
+	int units = ceilDiv(mcuCount, unit);
+	int unitsPerPart = ceilDiv(units, parts);
+	List<int[]> ranges = new ArrayList<int[]>();
+	for (int first = 0; first < mcuCount; first += unitsPerPart * unit) {
+	    ranges.add(new int[] { first, Math.min(mcuCount, first + unitsPerPart * unit) });
+	}
+	return ranges.toArray(new int[ranges.size()][]);
+    }
+
+    /**
+     * The DC coefficient of the last block of a component in the MCU before
+     * the passed MCU, which is the DC prediction for the MCU.
+     */
+    private int getPrediction(Component component, int mcu) {
+	if (mcu == 0 || restartInterval > 0 && mcu % restartInterval == 0) {
+	    return 0;
+	}
+	int[] offsets = getBlockOffsets(component, mcu - 1);
+	return component.coefficients[offsets[offsets.length - 1]];
+    }
+
+    private void optimiseHuffmanTables(int[][] ranges, JPEGHuffmanTable[] newDcTables,
+	    JPEGHuffmanTable[] newAcTables) throws IOException {
+	List<Callable<long[][]>> tasks = new ArrayList<Callable<long[][]>>();
+	for (final int[] range : ranges) {
+	    tasks.add(new Callable<long[][]>() {
+		@Override
+		public long[][] call() {
+		    return countSymbols(range[0], range[1]);
+		}
+	    });
+	}
+	long[][] frequencies = new long[8][256];
+	for (long[][] partFrequencies : runAll(tasks)) {
+	    for (int table = 0; table < 8; table++) {
+		for (int symbol = 0; symbol < 256; symbol++) {
+		    frequencies[table][symbol] += partFrequencies[table][symbol];
+		}
+	    }
+	}
+	for (Component component : scanComponents) {
+	    if (newDcTables[component.dcTable] == null) {
+		newDcTables[component.dcTable] = JPEGHuffmanTable.createOptimal(frequencies[component.dcTable]);
+	    }
+	    if (newAcTables[component.acTable] == null) {
+		newAcTables[component.acTable] = JPEGHuffmanTable.createOptimal(frequencies[4 + component.acTable]);
+	    }
+	}
+    }
+
+    /**
+     * Counts the Huffman symbols of a range of MCUs. Index 0-3 are the DC
+     * tables, 4-7 the AC tables.
+     */
+    private long[][] countSymbols(int firstMcu, int lastMcu) {
+	long[][] frequencies = new long[8][256];
+	int[] predictions = new int[scanComponents.size()];
+	for (int c = 0; c < scanComponents.size(); c++) {
+	    predictions[c] = getPrediction(scanComponents.get(c), firstMcu);
+	}
+	for (int mcu = firstMcu; mcu < lastMcu; mcu++) {
+	    if (restartInterval > 0 && mcu % restartInterval == 0) {
+		Arrays.fill(predictions, 0);
+	    }
+	    for (int c = 0; c < scanComponents.size(); c++) {
+		Component component = scanComponents.get(c);
+		long[] dcFrequencies = frequencies[component.dcTable];
+		long[] acFrequencies = frequencies[4 + component.acTable];
+		short[] coefficients = component.coefficients;
+		for (int offset : getBlockOffsets(component, mcu)) {
+		    dcFrequencies[category(coefficients[offset] - predictions[c])]++;
+		    predictions[c] = coefficients[offset];
+		    int run = 0;
+		    for (int k = 1; k < BLOCK_SIZE; k++) {
+			int value = coefficients[offset + k];
+			if (value == 0) {
+			    run++;
+			    continue;
+			}
+			while (run > 15) {
+			    acFrequencies[0xF0]++;
+			    run -= 16;
+			}
+			acFrequencies[run << 4 | category(value)]++;
+			run = 0;
+		    }
+		    if (run > 0) {
+			acFrequencies[0]++;
+		    }
+		}
+	    }
+	}
+	return frequencies;
+    }
+
+    private JPEGBitWriter encodeRange(int firstMcu, int lastMcu, JPEGHuffmanTable[] newDcTables,
+	    JPEGHuffmanTable[] newAcTables) {
+	boolean restarts = restartInterval > 0;
+	JPEGBitWriter writer = new JPEGBitWriter(restarts, (lastMcu - firstMcu) * 64);
+	int[] predictions = new int[scanComponents.size()];
+	for (int c = 0; c < scanComponents.size(); c++) {
+	    predictions[c] = getPrediction(scanComponents.get(c), firstMcu);
+	}
+	for (int mcu = firstMcu; mcu < lastMcu; mcu++) {
+	    if (restarts && mcu % restartInterval == 0 && mcu > 0) {
+		writer.padToByte();
+		writer.writeMarker(RST0 + (mcu / restartInterval - 1) % 8);
+		Arrays.fill(predictions, 0);
+	    }
+	    for (int c = 0; c < scanComponents.size(); c++) {
+		Component component = scanComponents.get(c);
+		for (int offset : getBlockOffsets(component, mcu)) {
+		    encodeBlock(writer, component.coefficients, offset, predictions[c],
+			    newDcTables[component.dcTable], newAcTables[component.acTable]);
+		    predictions[c] = component.coefficients[offset];
+		}
+	    }
+	}
+	if (restarts) {
+	    writer.padToByte();
+	}
+	return writer;
+    }
+
+    private static void encodeBlock(JPEGBitWriter writer, short[] coefficients, int offset, int prediction,
+	    JPEGHuffmanTable dcTable, JPEGHuffmanTable acTable) {
+	int difference = coefficients[offset] - prediction;
+	int dcCategory = category(difference);
+	dcTable.encode(writer, dcCategory);
+	writer.writeCoefficientBits(difference, dcCategory);
+	int run = 0;
+	for (int k = 1; k < BLOCK_SIZE; k++) {
+	    int value = coefficients[offset + k];
+	    if (value == 0) {
+		run++;
+		continue;
+	    }
+	    while (run > 15) {
+		acTable.encode(writer, 0xF0);
+		run -= 16;
+	    }
+	    int acCategory = category(value);
+	    acTable.encode(writer, run << 4 | acCategory);
+	    writer.writeCoefficientBits(value, acCategory);
+	    run = 0;
+	}
+	if (run > 0) {
+	    acTable.encode(writer, 0); // end of block
+	}
+    }
+
+    /**
+     * Magnitude category (number of significant bits) of a value.
+     */
+    private static int category(int value) {
+	return 32 - Integer.numberOfLeadingZeros(value < 0 ? -value : value);
+    }
+
+    private void writeHuffmanTables(OutputStream outputStream, JPEGHuffmanTable[] newDcTables,
+	    JPEGHuffmanTable[] newAcTables) throws IOException {
+	ByteArrayOutputStream segment = new ByteArrayOutputStream();
+	for (int tableClass = 0; tableClass < 2; tableClass++) {
+	    JPEGHuffmanTable[] tables = tableClass == 0 ? newDcTables : newAcTables;
+	    for (int id = 0; id < 4; id++) {
+		if (tables[id] == null) {
+		    continue;
+		}
+		segment.write(tableClass << 4 | id);
+		for (int i = 1; i <= 16; i++) {
+		    segment.write(tables[id].bits[i]);
+		}
+		for (int value : tables[id].values) {
+		    segment.write(value);
+		}
+	    }
+	}
+	outputStream.write(0xFF);
+	outputStream.write(DHT);
+	outputStream.write((segment.size() + 2) >> 8);
+	outputStream.write((segment.size() + 2) & 0xFF);
+	segment.writeTo(outputStream);
+    }
+
+    /*
+     * ****** HELPER *********
+     */
+
+    /**
+     * Executes the tasks on all available processors and returns their
+     * results in the order of the tasks.
+     */
+    static <T> List<T> runAll(List<Callable<T>> tasks) throws IOException {
+	List<T> results = new ArrayList<T>();
+	if (tasks.size() == 1) {
+	    try {
+		results.add(tasks.get(0).call());
+		return results;
+	    } catch (IOException e) {
+		throw e;
+	    } catch (Exception e) {
+		throw new IOException(e);
+	    }
+	}
+	ExecutorService executor = Executors
+		.newFixedThreadPool(Math.min(tasks.size(), Runtime.getRuntime().availableProcessors()));
+	try {
+	    for (Future<T> future : executor.invokeAll(tasks)) {
+		results.add(future.get());
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException(e);
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IOException(e.getCause());
+	} finally {
+	    executor.shutdownNow();
+	}
+	return results;
+    }
+
+    /*
+     * ****** GETTER *********
+     */
+
+    /**
+     * @return all colour components in the order of the frame header
+     */
+    public List<Component> getComponents() {
+	return components;
+    }
+
+    public int getWidth() {
+	return width;
+    }
+
+    public int getHeight() {
+	return height;
+    }
+}
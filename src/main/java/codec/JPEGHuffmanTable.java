@@ -0,0 +1,243 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+
+/**
+ * A JPEG Huffman table as defined in the DHT segment (ITU T.81, Annex C). The
+ * table can be used for decoding and encoding, and it can be generated from
+ * symbol statistics to get an optimal table for the coefficients that have to
+ * be encoded (Annex K.2).
+ */
+class JPEGHuffmanTable {
+    private static final int LOOKAHEAD_BITS = 8;
+
+    /** number of codes of each length 1..16 (index 0 is unused) */
+    final int[] bits = new int[17];
+    /** symbol values, sorted by code length */
+    final int[] values;
+
+    private final int[] maxCode = new int[18];
+    private final int[] valueOffset = new int[17];
+    private final int[] lookahead = new int[1 << LOOKAHEAD_BITS];
+    private final int[] encodeCode = new int[256];
+    private final int[] encodeSize = new int[256];
+
+    JPEGHuffmanTable(int[] bits, int[] values) {
+	System.arraycopy(bits, 0, this.bits, 0, 17);
+	this.values = values.clone();
+	build();
+    }
+
+    /**
+     * Generates the code tables for decoding and encoding (Annex C and F.2.2.3).
+     */
+    private void build() {
+	int[] codeSizes = new int[values.length];
+	int[] codes = new int[values.length];
+	int index = 0;
+	for (int length = 1; length <= 16; length++) {
+	    for (int i = 0; i < bits[length]; i++) {
+		codeSizes[index++] = length;
+	    }
+	}
+	int code = 0;
+	int size = codeSizes.length > 0 ? codeSizes[0] : 0;
+	for (int i = 0; i < codeSizes.length;) {
+	    while (i < codeSizes.length && codeSizes[i] == size) {
+		codes[i++] = code++;
+	    }
+	    code <<= 1;
+	    size++;
+	}
+	int position = 0;
+	for (int length = 1; length <= 16; length++) {
+	    if (bits[length] == 0) {
+		maxCode[length] = -1;
+	    } else {
+		valueOffset[length] = position - codes[position];
+		position += bits[length];
+		maxCode[length] = codes[position - 1];
+	    }
+	}
+	maxCode[17] = Integer.MAX_VALUE;
+	for (int i = 0; i < codeSizes.length; i++) {
+	    encodeCode[values[i]] = codes[i];
+	    encodeSize[values[i]] = codeSizes[i];
+	    if (codeSizes[i] <= LOOKAHEAD_BITS) {
+		int shift = LOOKAHEAD_BITS - codeSizes[i];
+		int first = codes[i] << shift;
+		for (int j = 0; j < 1 << shift; j++) {
+		    lookahead[first + j] = codeSizes[i] << 8 | values[i];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Decodes the next symbol from the bit stream.
+     *
+     * @param reader
+     * @return decoded symbol
+     * @throws IOException
+     *             if the stream contains an invalid code
+     */
+    int decode(JPEGBitReader reader) throws IOException {
+	int entry = lookahead[reader.peekBits(LOOKAHEAD_BITS)];
+	if (entry != 0) {
+	    reader.skipBits(entry >> 8);
+	    return entry & 0xFF;
+	}
+	int code = reader.readBits(LOOKAHEAD_BITS);
+	int length = LOOKAHEAD_BITS;
+	do {
+	    code = code << 1 | reader.readBits(1);
+	    length++;
+	} while (length < 17 && code > maxCode[length]);
+	if (length > 16) {
+	    throw new IOException("Corrupt JPEG data: bad Huffman code");
+	}
+	return values[valueOffset[length] + code];
+    }
+
+    /**
+     * Writes the code of a symbol to the bit stream.
+     *
+     * @param writer
+     * @param symbol
+     */
+    void encode(JPEGBitWriter writer, int symbol) {
+	writer.writeBits(encodeCode[symbol], encodeSize[symbol]);
+    }
+
+    /**
+     * Size of the DHT segment entry of this table in bytes, excluding the
+     * table class and identifier byte.
+     *
+     * @return number of bytes
+     */
+    int getSegmentLength() {
+	return 16 + values.length;
+    }
+
+    /**
+     * Creates an optimal table for the passed symbol frequencies, limited to 16
+     * bit code lengths (Annex K.2, figures K.1 to K.4).
+     *
+     * @param frequencies
+     *            frequency of each of the 256 symbols
+     * @return optimised huffman table
+     */
+    static JPEGHuffmanTable createOptimal(long[] frequencies) {
+	long[] frequency = new long[257];
+	System.arraycopy(frequencies, 0, frequency, 0, 256);
+	boolean used = false;
+	for (int i = 0; i < 256; i++) {
+	    used |= frequency[i] > 0;
+	}
+	if (!used) {
+	    // the table is referenced, but not needed: keep one symbol
+	    frequency[0] = 1;
+	}
+	// reserve one code point, so that no code consists only of 1 bits:
+	frequency[256] = 1;
+	int[] codeSize = new int[257];
+	int[] others = new int[257];
+	for (int i = 0; i < 257; i++) {
+	    others[i] = -1;
+	}
+	while (true) {
+	    int c1 = -1;
+	    int c2 = -1;
+	    long v = Long.MAX_VALUE;
+	    for (int i = 0; i <= 256; i++) {
+		if (frequency[i] != 0 && frequency[i] <= v) {
+		    v = frequency[i];
+		    c1 = i;
+		}
+	    }
+	    v = Long.MAX_VALUE;
+	    for (int i = 0; i <= 256; i++) {
+		if (frequency[i] != 0 && frequency[i] <= v && i != c1) {
+		    v = frequency[i];
+		    c2 = i;
+		}
+	    }
+	    if (c2 < 0) {
+		break;
+	    }
+	    frequency[c1] += frequency[c2];
+	    frequency[c2] = 0;
+	    codeSize[c1]++;
+	    while (others[c1] >= 0) {
+		c1 = others[c1];
+		codeSize[c1]++;
+	    }
+	    others[c1] = c2;
+	    codeSize[c2]++;
+	    while (others[c2] >= 0) {
+		c2 = others[c2];
+		codeSize[c2]++;
+	    }
+	}
+	int[] count = new int[33];
+	for (int i = 0; i <= 256; i++) {
+	    if (codeSize[i] > 0) {
+		count[codeSize[i]]++;
+	    }
+	}
+	// limit the code lengths to 16 bits:
+	for (int i = 32; i > 16; i--) {
+	    while (count[i] > 0) {
+		int j = i - 2;
+		while (count[j] == 0) {
+		    j--;
+		}
+		count[i] -= 2;
+		count[i - 1]++;
+		count[j + 1] += 2;
+		count[j]--;
+	    }
+	}
+	// remove the reserved code point:
+	int longest = 16;
+	while (count[longest] == 0) {
+	    longest--;
+	}
+	count[longest]--;
+	int[] bits = new int[17];
+	System.arraycopy(count, 0, bits, 0, 17);
+	int symbols = 0;
+	for (int i = 1; i <= 16; i++) {
+	    symbols += bits[i];
+	}
+	int[] values = new int[symbols];
+	int index = 0;
+	for (int length = 1; length <= 32; length++) {
+	    for (int symbol = 0; symbol < 256; symbol++) {
+		if (codeSize[symbol] == length) {
+		    values[index++] = symbol;
+		}
+	    }
+	}
+	return new JPEGHuffmanTable(bits, values);
+    }
+}
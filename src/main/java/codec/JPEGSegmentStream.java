@@ -0,0 +1,240 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streaming marker parser for JPEG files. The marker segments of the header
+ * are indexed by reading only their 4 byte marker and length fields, from the
+ * SOI marker up to the first SOS (start of scan) marker. The entropy coded
+ * image data after the SOS marker is never read, so the cost of the parsing
+ * depends on the size of the header, not on the size of the image.
+ *
+ * Like the {@link PNGChunkStream}, the file is copied byte for byte with
+ * {@link FileChannel#transferTo}, and large data can be streamed into, and out
+ * of, a sequence of segments of bounded size.
+ */
+public class JPEGSegmentStream extends RecordStream<JPEGSegmentStream.Segment> {
+    /** Start of image */
+    public static final int SOI = 0xD8;
+    /** Start of scan, the entropy coded data follows this segment */
+    public static final int SOS = 0xDA;
+    /** End of image */
+    public static final int EOI = 0xD9;
+    /** JFIF header */
+    public static final int APP0 = 0xE0;
+    /** Exif header */
+    public static final int APP1 = 0xE1;
+    /** Application segment, which isn't used by JFIF or Exif */
+    public static final int APP11 = 0xEB;
+    /**
+     * Maximum data length of a segment. The 16 bit length field includes its
+     * own 2 bytes.
+     */
+    public static final int MAX_DATA_LENGTH = 0xFFFF - 2;
+
+    /**
+     * Checks the SOI marker and indexes the segments up to the first SOS
+     * marker.
+     *
+     * @param channel
+     *            of a JPEG file
+     * @throws IOException
+     *             if the file isn't a JPEG file, or its header is broken
+     */
+    public JPEGSegmentStream(FileChannel channel) throws IOException {
+	super(channel, "JPEG");
+	ByteBuffer header = ByteBuffer.allocate(4);
+	header.limit(2);
+	readFully(header, 0);
+	if ((header.get(0) & 0xFF) != 0xFF || (header.get(1) & 0xFF) != SOI) {
+	    throw new IOException("The file isn't a JPEG file.");
+	}
+	long position = 2;
+	while (records.isEmpty() || records.get(records.size() - 1).marker != SOS) {
+	    header.clear();
+	    header.limit(2);
+	    readFully(header, position);
+	    if ((header.get(0) & 0xFF) != 0xFF) {
+		throw new IOException("Missing JPEG marker at position " + position);
+	    }
+	    int marker = header.get(1) & 0xFF;
+	    if (marker == 0xFF) {
+		position++; // fill byte
+		continue;
+	    }
+	    if (marker == EOI) {
+		throw new IOException("The JPEG file has no image data.");
+	    }
+	    if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+		position += 2; // marker without segment
+		continue;
+	    }
+	    header.limit(4);
+	    readFully(header, position + 2);
+	    int length = header.getShort(2) & 0xFFFF;
+	    Segment segment = new Segment(marker, position, length - 2);
+	    if (length < 2 || segment.getEnd() > channel.size()) {
+		throw new IOException("The JPEG segment at position " + position + " exceeds the file.");
+	    }
+	    records.add(segment);
+	    position = segment.getEnd();
+	}
+    }
+
+    /**
+     * @return all segments in file order, from the first segment after SOI to
+     *         the SOS segment
+     */
+    public List<Segment> getSegments() {
+	return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Gets the position behind the leading APP0 (JFIF) and APP1 (Exif)
+     * segments, where other segments can be inserted without moving the JFIF
+     * or Exif header.
+     *
+     * @return insert position
+     */
+    public long getInsertPosition() {
+	long position = 2;
+	for (Segment segment : records) {
+	    if (segment.marker != APP0 && segment.marker != APP1) {
+		break;
+	    }
+	    position = segment.getEnd();
+	}
+	return position;
+    }
+
+    /**
+     * Writes a complete segment: marker, length and data.
+     *
+     * @param output
+     * @param marker
+     *            second byte of the marker, e.g. {@link #APP11}
+     * @param data
+     * @param offset
+     * @param length
+     *            at most {@link #MAX_DATA_LENGTH}
+     * @throws IOException
+     */
+    public static void writeSegment(WritableByteChannel output, int marker, byte[] data, int offset, int length)
+	    throws IOException {
+	if (length > MAX_DATA_LENGTH) {
+	    throw new IllegalArgumentException("The JPEG segment data is too long: " + length);
+	}
+	byte[] header = new byte[4];
+	ByteBuffer.wrap(header).put((byte) 0xFF).put((byte) marker).putShort((short) (length + 2));
+	writeFully(output, ByteBuffer.wrap(header));
+	writeFully(output, ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Creates a stream, which splits the written bytes into segments of
+     * bounded size. Only one segment is buffered at a time. Closing the stream
+     * writes the last segment, but doesn't close the output.
+     *
+     * @param output
+     * @param marker
+     *            second byte of the marker, e.g. {@link #APP11}
+     * @param prefix
+     *            bytes at the start of the data of each segment, e.g. an
+     *            identifier
+     * @param maxLength
+     *            maximum length of the segment data, including the prefix
+     * @return stream of segment data
+     */
+    public static OutputStream newSegmentOutputStream(final WritableByteChannel output, final int marker,
+	    byte[] prefix, int maxLength) {
+	if (maxLength <= prefix.length || maxLength > MAX_DATA_LENGTH) {
+	    throw new IllegalArgumentException("Invalid JPEG segment length " + maxLength);
+	}
+	return new RecordOutputStream(prefix, maxLength) {
+	    @Override
+	    protected void writeRecord(byte[] data, int length) throws IOException {
+		writeSegment(output, marker, data, 0, length);
+	    }
+	};
+    }
+
+    /**
+     * Creates a stream over the data of several segments of this file.
+     *
+     * @param dataSegments
+     *            segments of this stream in reading order
+     * @param skip
+     *            number of bytes at the start of each segment's data, which
+     *            aren't part of the stream, e.g. a prefix
+     * @return concatenated segment data
+     */
+    public InputStream newSegmentInputStream(List<Segment> dataSegments, int skip) {
+	return newRecordInputStream(dataSegments, skip);
+    }
+
+    /**
+     * Position and size of a marker segment in the file.
+     */
+    public static class Segment extends RecordStream.Record {
+	/** Second byte of the marker */
+	public final int marker;
+	/** Length of the segment data */
+	public final int length;
+
+	/**
+	 * @param marker
+	 * @param position
+	 *            position of the marker
+	 * @param length
+	 */
+	Segment(int marker, long position, int length) {
+	    super(position);
+	    this.marker = marker;
+	    this.length = length;
+	}
+
+	@Override
+	public long getDataPosition() {
+	    return position + 4;
+	}
+
+	@Override
+	public long getDataLength() {
+	    return length;
+	}
+
+	/**
+	 * @return position after the segment data
+	 */
+	@Override
+	public long getEnd() {
+	    return position + 4 + length;
+	}
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A pseudo random permutation of the numbers 0 to size-1, which is defined by
+ * a password. The permutation is calculated on demand with a balanced Feistel
+ * network and cycle walking, so that it needs no memory, independent of the
+ * size.
+ */
+public class KeyedPermutation {
+    private static final int ROUNDS = 4;
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] roundKeys = new long[ROUNDS];
+
+    /**
+     * @param size
+     *            number of permuted elements
+     * @param password
+     *            defines the permutation
+     */
+    public KeyedPermutation(long size, String password) {
+	this.size = size;
+	int bits = 64 - Long.numberOfLeadingZeros(Math.max(size - 1, 1));
+	this.halfBits = (bits + 1) / 2;
+	this.halfMask = (1L << halfBits) - 1;
+	try {
+	    byte[] hash = MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+	    ByteBuffer buffer = ByteBuffer.wrap(hash);
+	    for (int i = 0; i < ROUNDS; i++) {
+		roundKeys[i] = buffer.getLong();
+	    }
+	} catch (NoSuchAlgorithmException e) {
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    /**
+     * @param index
+     *            position in the permuted order
+     * @return element at that position
+     */
+    public long get(long index) {
+	long value = index;
+	do {
+	    value = encrypt(value);
+	} while (value >= size);
+	return value;
+    }
+
+    public long size() {
+	return size;
+    }
+
+    private long encrypt(long value) {
+	long left = value >>> halfBits;
+	long right = value & halfMask;
+	for (int round = 0; round < ROUNDS; round++) {
+	    long next = left ^ (mix(right ^ roundKeys[round]) & halfMask);
+	    left = right;
+	    right = next;
+	}
+	return left << halfBits | right;
+    }
+
+    /**
+     * Finaliser of the SplitMix64 generator.
+     */
+    private static long mix(long value) {
+	value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+	value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+	return value ^ (value >>> 31);
+    }
+}
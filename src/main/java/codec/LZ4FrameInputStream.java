@@ -0,0 +1,247 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads data in the LZ4 frame format, as written by the
+ * {@link LZ4FrameOutputStream} or the lz4 tool. Concatenated and skippable
+ * frames, dependent blocks and all checksums of the format are supported.
+ */
+public class LZ4FrameInputStream extends InputStream {
+    private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    /** Window of dependent blocks */
+    private static final int HISTORY_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    private final XXHash32 contentChecksum = new XXHash32();
+    private boolean blockChecksums;
+    private boolean contentChecksums;
+    private boolean dependentBlocks;
+    private byte[] compressed = new byte[0];
+    /** History of dependent blocks, followed by the current block */
+    private byte[] window = new byte[0];
+    private int windowPosition = 0;
+    private int windowLength = 0;
+    private boolean frameOpen = false;
+    private boolean finished = false;
+
+    /**
+     * @param input
+     *            stream, which starts with an LZ4 frame
+     */
+    public LZ4FrameInputStream(InputStream input) {
+	this.input = input;
+    }
+
+    @Override
+    public int read() throws IOException {
+	byte[] single = new byte[1];
+	return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+	if (length == 0) {
+	    return 0;
+	}
+	while (windowPosition == windowLength) {
+	    if (finished || !nextBlock()) {
+		finished = true;
+		return -1;
+	    }
+	}
+	int count = Math.min(length, windowLength - windowPosition);
+	System.arraycopy(window, windowPosition, data, offset, count);
+	windowPosition += count;
+	return count;
+    }
+
+    /**
+     * Reads the next block, and the next frame header if the current frame is
+     * finished.
+     *
+     * @return false, if there are no more frames
+     */
+    private boolean nextBlock() throws IOException {
+	if (!frameOpen && !readFrameHeader()) {
+	    return false;
+	}
+	int blockSize = readInt();
+	if (blockSize == 0) {
+	    if (contentChecksums && readInt() != (int) contentChecksum.getValue()) {
+		throw new IOException("The LZ4 content checksum is wrong.");
+	    }
+	    frameOpen = false;
+	    return true;
+	}
+	boolean uncompressed = (blockSize & LZ4FrameOutputStream.UNCOMPRESSED_FLAG) != 0;
+	blockSize &= ~LZ4FrameOutputStream.UNCOMPRESSED_FLAG;
+	if (blockSize > compressed.length) {
+	    throw new IOException("The LZ4 block is larger than its maximum size.");
+	}
+	IOUtils.readFully(input, compressed, 0, blockSize);
+	if (blockChecksums) {
+	    XXHash32 blockChecksum = new XXHash32();
+	    blockChecksum.update(compressed, 0, blockSize);
+	    if (readInt() != (int) blockChecksum.getValue()) {
+		throw new IOException("The LZ4 block checksum is wrong.");
+	    }
+	}
+	int historyLength = dependentBlocks ? Math.min(HISTORY_SIZE, windowLength) : 0;
+	System.arraycopy(window, windowLength - historyLength, window, 0, historyLength);
+	if (uncompressed) {
+	    System.arraycopy(compressed, 0, window, historyLength, blockSize);
+	    windowLength = historyLength + blockSize;
+	} else {
+	    windowLength = decompress(compressed, blockSize, window, historyLength);
+	}
+	windowPosition = historyLength;
+	if (contentChecksums) {
+	    contentChecksum.update(window, windowPosition, windowLength - windowPosition);
+	}
+	return true;
+    }
+
+    /**
+     * Skips skippable frames, and reads the header of the next LZ4 frame.
+     *
+     * @return false, if the input ends before the next frame
+     */
+    private boolean readFrameHeader() throws IOException {
+	int magic;
+	while (true) {
+	    byte[] magicBytes = new byte[4];
+	    int count = IOUtils.read(input, magicBytes);
+	    if (count == 0) {
+		return false;
+	    } else if (count < 4) {
+		throw new EOFException("The LZ4 frame is truncated.");
+	    }
+	    magic = XXHash32.readInt(magicBytes, 0);
+	    if ((magic & 0xfffffff0) != SKIPPABLE_MAGIC) {
+		break;
+	    }
+	    IOUtils.skipFully(input, readInt() & 0xffffffffL);
+	}
+	if (magic != LZ4FrameOutputStream.MAGIC) {
+	    throw new IOException("The data isn't an LZ4 frame.");
+	}
+	byte[] descriptor = new byte[10];
+	IOUtils.readFully(input, descriptor, 0, 2);
+	int flags = descriptor[0] & 0xff;
+	if ((flags >> 6) != 1 || (flags & 1) != 0) {
+	    throw new IOException("The LZ4 frame has an unsupported version or a dictionary.");
+	}
+	dependentBlocks = (flags & 0x20) == 0;
+	blockChecksums = (flags & 0x10) != 0;
+	contentChecksums = (flags & 0x04) != 0;
+	int descriptorLength = 2;
+	if ((flags & 0x08) != 0) {
+	    // the content size isn't needed:
+	    IOUtils.readFully(input, descriptor, 2, 8);
+	    descriptorLength += 8;
+	}
+	XXHash32 headerChecksum = new XXHash32();
+	headerChecksum.update(descriptor, 0, descriptorLength);
+	if (input.read() != (int) ((headerChecksum.getValue() >> 8) & 0xff)) {
+	    throw new IOException("The LZ4 frame header checksum is wrong.");
+	}
+	int maxBlockSize = 1 << (8 + 2 * ((descriptor[1] >> 4) & 7));
+	if (maxBlockSize < LZ4FrameOutputStream.BLOCK_SIZE) {
+	    throw new IOException("The LZ4 frame has an invalid block size.");
+	}
+	compressed = new byte[maxBlockSize];
+	window = new byte[HISTORY_SIZE + maxBlockSize];
+	windowLength = 0;
+	windowPosition = 0;
+	contentChecksum.reset();
+	frameOpen = true;
+	return true;
+    }
+
+    private int readInt() throws IOException {
+	byte[] bytes = new byte[4];
+	IOUtils.readFully(input, bytes);
+	return XXHash32.readInt(bytes, 0);
+    }
+
+    /**
+     * Decompresses a block of the LZ4 block format. Matches can reach back
+     * into the data before the output position.
+     *
+     * @return the end position of the decompressed data
+     */
+    static int decompress(byte[] compressed, int length, byte[] data, int output) throws IOException {
+	int position = 0;
+	try {
+	    while (true) {
+		int token = compressed[position++] & 0xff;
+		int literalLength = token >>> 4;
+		if (literalLength == 15) {
+		    int b;
+		    do {
+			b = compressed[position++] & 0xff;
+			literalLength += b;
+		    } while (b == 255);
+		}
+		if (position + literalLength > length) {
+		    throw new IOException("The LZ4 block is corrupt.");
+		}
+		System.arraycopy(compressed, position, data, output, literalLength);
+		position += literalLength;
+		output += literalLength;
+		if (position == length) {
+		    return output;
+		}
+		int offset = (compressed[position] & 0xff) | (compressed[position + 1] & 0xff) << 8;
+		position += 2;
+		int matchLength = token & 15;
+		if (matchLength == 15) {
+		    int b;
+		    do {
+			b = compressed[position++] & 0xff;
+			matchLength += b;
+		    } while (b == 255);
+		}
+		matchLength += LZ4FrameOutputStream.MIN_MATCH;
+		if (offset == 0 || offset > output) {
+		    throw new IOException("The LZ4 block is corrupt.");
+		}
+		int reference = output - offset;
+		for (int i = 0; i < matchLength; i++) {
+		    data[output++] = data[reference++];
+		}
+	    }
+	} catch (ArrayIndexOutOfBoundsException e) {
+	    throw new IOException("The LZ4 block is corrupt.", e);
+	}
+    }
+
+    @Override
+    public void close() throws IOException {
+	input.close();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes data in the LZ4 frame format, which the lz4 tool reads.
+ *
+ * The data is split into independent blocks of {@link #BLOCK_SIZE} bytes. Each
+ * block is compressed with the greedy hash table search of the fast LZ4 mode,
+ * and stored uncompressed if that doesn't make it smaller. The frame ends with
+ * the xxHash of the content. LZ4 compresses less than deflate, but many times
+ * faster.
+ */
+public class LZ4FrameOutputStream extends OutputStream {
+    /** Number of uncompressed bytes of a block */
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    static final int MAGIC = 0x184D2204;
+    /** Version 1, independent blocks, content checksum */
+    static final int FRAME_FLAGS = 0x64;
+    /** Maximum block size of 64 KB */
+    static final int BLOCK_DESCRIPTOR = 0x40;
+    /** Flag of the block size, which marks uncompressed blocks */
+    static final int UNCOMPRESSED_FLAG = 0x80000000;
+
+    static final int MIN_MATCH = 4;
+    /** The last literals of a block, which can't be part of a match */
+    static final int LAST_LITERALS = 5;
+    /** Minimum distance of the start of the last match to the block end */
+    static final int MATCH_FIND_LIMIT = 12;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_OFFSET = 0xffff;
+
+    private final OutputStream output;
+    private final XXHash32 contentChecksum = new XXHash32();
+    private final byte[] block = new byte[BLOCK_SIZE];
+    private final byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 255 + 16];
+    private final int[] hashTable = new int[1 << HASH_BITS];
+    private int blockLength = 0;
+    private boolean closed = false;
+
+    /**
+     * Writes the frame header.
+     *
+     * @param output
+     *            stream, which receives the LZ4 frame
+     * @throws IOException
+     */
+    public LZ4FrameOutputStream(OutputStream output) throws IOException {
+	this.output = output;
+	byte[] descriptor = { (byte) FRAME_FLAGS, (byte) BLOCK_DESCRIPTOR };
+	XXHash32 headerChecksum = new XXHash32();
+	headerChecksum.update(descriptor, 0, descriptor.length);
+	writeInt(MAGIC);
+	output.write(descriptor);
+	output.write((int) (headerChecksum.getValue() >> 8));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+	write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+	if (closed) {
+	    throw new IOException("The LZ4 stream is closed.");
+	}
+	contentChecksum.update(data, offset, length);
+	while (length > 0) {
+	    int count = Math.min(length, block.length - blockLength);
+	    System.arraycopy(data, offset, block, blockLength, count);
+	    blockLength += count;
+	    offset += count;
+	    length -= count;
+	    if (blockLength == block.length) {
+		writeBlock();
+	    }
+	}
+    }
+
+    private void writeBlock() throws IOException {
+	int compressedLength = compress(block, blockLength, compressed, hashTable);
+	if (compressedLength < blockLength) {
+	    writeInt(compressedLength);
+	    output.write(compressed, 0, compressedLength);
+	} else {
+	    writeInt(blockLength | UNCOMPRESSED_FLAG);
+	    output.write(block, 0, blockLength);
+	}
+	blockLength = 0;
+    }
+
+    private void writeInt(int value) throws IOException {
+	output.write(new byte[] { (byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24) });
+    }
+
+    /**
+     * Writes the remaining block, the end mark and the content checksum, and
+     * closes the output.
+     */
+    @Override
+    public void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	try {
+	    if (blockLength > 0) {
+		writeBlock();
+	    }
+	    writeInt(0);
+	    writeInt((int) contentChecksum.getValue());
+	    output.flush();
+	} finally {
+	    output.close();
+	}
+    }
+
+    /**
+     * Compresses a block to the LZ4 block format.
+     *
+     * @param data
+     *            uncompressed block
+     * @param length
+     *            number of bytes of the block
+     * @param compressed
+     *            buffer with space for length + length / 255 + 16 bytes
+     * @param hashTable
+     *            positions of the last occurrences of 4 byte sequences
+     * @return the compressed length
+     */
+    static int compress(byte[] data, int length, byte[] compressed, int[] hashTable) {
+	int output = 0;
+	int anchor = 0;
+	if (length >= MATCH_FIND_LIMIT + 1) {
+	    Arrays.fill(hashTable, -1);
+	    int matchLimit = length - LAST_LITERALS;
+	    int position = 0;
+	    while (position <= length - MATCH_FIND_LIMIT) {
+		int sequence = XXHash32.readInt(data, position);
+		int hash = hash(sequence);
+		int reference = hashTable[hash];
+		hashTable[hash] = position;
+		if (reference < 0 || position - reference > MAX_OFFSET
+			|| XXHash32.readInt(data, reference) != sequence) {
+		    // skip faster through incompressible data:
+		    position += 1 + ((position - anchor) >> 6);
+		    continue;
+		}
+		while (position > anchor && reference > 0 && data[position - 1] == data[reference - 1]) {
+		    position--;
+		    reference--;
+		}
+		int matchLength = MIN_MATCH;
+		while (position + matchLength < matchLimit
+			&& data[position + matchLength] == data[reference + matchLength]) {
+		    matchLength++;
+		}
+		output = writeSequence(data, anchor, position - anchor, position - reference, matchLength,
+			compressed, output);
+		position += matchLength;
+		anchor = position;
+		hashTable[hash(XXHash32.readInt(data, position - 2))] = position - 2;
+	    }
+	}
+	return writeSequence(data, anchor, length - anchor, 0, 0, compressed, output);
+    }
+
+    private static int hash(int sequence) {
+	return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    /**
+     * Writes literals, which are followed by a match, or the last literals of
+     * a block if the match length is 0.
+     */
+    private static int writeSequence(byte[] data, int literalStart, int literalLength, int offset,
+	    int matchLength, byte[] compressed, int output) {
+	int tokenPosition = output++;
+	int token = Math.min(literalLength, 15) << 4;
+	output = writeLength(literalLength, compressed, output);
+	System.arraycopy(data, literalStart, compressed, output, literalLength);
+	output += literalLength;
+	if (matchLength > 0) {
+	    compressed[output++] = (byte) offset;
+	    compressed[output++] = (byte) (offset >> 8);
+	    token |= Math.min(matchLength - MIN_MATCH, 15);
+	    output = writeLength(matchLength - MIN_MATCH, compressed, output);
+	}
+	compressed[tokenPosition] = (byte) token;
+	return output;
+    }
+
+    /**
+     * Writes the bytes of a length, which don't fit into the 4 bits of the
+     * token.
+     */
+    private static int writeLength(int length, byte[] compressed, int output) {
+	if (length >= 15) {
+	    length -= 15;
+	    for (; length >= 255; length -= 255) {
+		compressed[output++] = (byte) 255;
+	    }
+	    compressed[output++] = (byte) length;
+	}
+	return output;
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSString;
+
+/**
+ * Appends an incremental update to a PDF file: new or changed objects, a cross
+ * reference section for these objects, and a trailer which points to the
+ * previous cross reference section. The bytes of the original file are left
+ * untouched, so the original file can be restored by cutting off the update.
+ *
+ * The objects are written in the order of the method calls. Stream data is
+ * copied from files with {@link FileChannel#transferTo}.
+ */
+public class PDFIncrementalWriter {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final FileChannel output;
+    private final long updatePosition;
+    private int nextObjectNumber;
+    /** object number -> offset and generation */
+    private final Map<Integer, long[]> xref = new TreeMap<Integer, long[]>();
+
+    /**
+     * Starts the update at the end of the output file. A line break is added,
+     * if the file doesn't end with one.
+     *
+     * @param output
+     *            channel of the copied original file, opened for reading and
+     *            writing
+     * @param size
+     *            the /Size of the original trailer, which is the first free
+     *            object number
+     * @throws IOException
+     */
+    public PDFIncrementalWriter(FileChannel output, int size) throws IOException {
+	this.output = output;
+	updatePosition = output.size();
+	output.position(updatePosition);
+	nextObjectNumber = size;
+	ByteBuffer last = ByteBuffer.allocate(1);
+	if (updatePosition == 0 || output.read(last, updatePosition - 1) != 1
+		|| (last.get(0) != '\n' && last.get(0) != '\r')) {
+	    write("\n");
+	}
+    }
+
+    /**
+     * @return position of the first byte of the update, the length of the
+     *         original file
+     */
+    public long getUpdatePosition() {
+	return updatePosition;
+    }
+
+    /**
+     * @return reference to a new object number
+     */
+    public COSObject newReference() throws IOException {
+	COSObject reference = new COSObject(null);
+	reference.setObjectNumber(COSInteger.get(nextObjectNumber++));
+	reference.setGenerationNumber(COSInteger.ZERO);
+	return reference;
+    }
+
+    /**
+     * Writes an object. An object of the original file is replaced, if its
+     * reference is passed.
+     *
+     * @param reference
+     *            object number and generation
+     * @param object
+     *            a direct object, e.g. a dictionary
+     * @throws IOException
+     */
+    public void writeObject(COSObject reference, COSBase object) throws IOException {
+	startObject(reference);
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	writeDirect(object, bytes);
+	bytes.write("\nendobj\n".getBytes(ASCII));
+	writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Writes a stream object with the bytes of a file as stream data. The
+     * /Length of the dictionary is set to the file size.
+     *
+     * @param reference
+     * @param dictionary
+     *            stream dictionary, with the filters of the data
+     * @param data
+     *            encoded stream data
+     * @throws IOException
+     */
+    public void writeStream(COSObject reference, COSDictionary dictionary, File data) throws IOException {
+	startObject(reference);
+	dictionary.setLong(COSName.LENGTH, data.length());
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	writeDirect(dictionary, bytes);
+	bytes.write("\nstream\n".getBytes(ASCII));
+	writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+	FileInputStream input = new FileInputStream(data);
+	try {
+	    FileChannel channel = input.getChannel();
+	    long position = 0;
+	    long size = channel.size();
+	    while (position < size) {
+		position += channel.transferTo(position, size - position, output);
+	    }
+	} finally {
+	    input.close();
+	}
+	write("\nendstream\nendobj\n");
+    }
+
+    private void startObject(COSObject reference) throws IOException {
+	long generation = reference.getGenerationNumber().longValue();
+	xref.put(reference.getObjectNumber().intValue(), new long[] { output.position(), generation });
+	write(reference.getObjectNumber().longValue() + " " + generation + " obj\n");
+    }
+
+    /**
+     * Writes the cross reference section and the trailer, which complete the
+     * update.
+     *
+     * @param trailer
+     *            entries of the new trailer, like /Root, /Info and /ID, without
+     *            /Size and /Prev
+     * @param prev
+     *            position of the previous cross reference section
+     * @param xrefStream
+     *            true to write a cross reference stream, which is needed if
+     *            the original file uses cross reference streams, false to write
+     *            a cross reference table
+     * @throws IOException
+     */
+    public void finish(COSDictionary trailer, long prev, boolean xrefStream) throws IOException {
+	COSDictionary newTrailer = new COSDictionary(trailer);
+	newTrailer.setLong(COSName.PREV, prev);
+	long startxref;
+	if (xrefStream) {
+	    COSObject reference = newReference();
+	    newTrailer.setInt(COSName.SIZE, nextObjectNumber);
+	    startxref = output.position();
+	    xref.put(reference.getObjectNumber().intValue(), new long[] { startxref, 0 });
+	    writeXrefStream(reference, newTrailer);
+	} else {
+	    newTrailer.setInt(COSName.SIZE, nextObjectNumber);
+	    startxref = output.position();
+	    writeXrefTable(newTrailer);
+	}
+	write("startxref\n" + startxref + "\n%%EOF\n");
+    }
+
+    private void writeXrefTable(COSDictionary trailer) throws IOException {
+	StringBuilder table = new StringBuilder("xref\n");
+	for (int[] subsection : getSubsections()) {
+	    table.append(subsection[0]).append(' ').append(subsection[1]).append('\n');
+	    for (int number = subsection[0]; number < subsection[0] + subsection[1]; number++) {
+		long[] entry = xref.get(number);
+		table.append(String.format("%010d %05d n\r\n", entry[0], entry[1]));
+	    }
+	}
+	table.append("trailer\n");
+	write(table.toString());
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	writeDirect(trailer, bytes);
+	bytes.write('\n');
+	writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * Writes an uncompressed cross reference stream with 1 byte for the type,
+     * as many bytes as needed for the largest offset, and 2 bytes for the
+     * generation.
+     */
+    private void writeXrefStream(COSObject reference, COSDictionary trailer) throws IOException {
+	int offsetBytes = 1;
+	for (long[] entry : xref.values()) {
+	    while (entry[0] >>> (8 * offsetBytes) != 0) {
+		offsetBytes++;
+	    }
+	}
+	COSArray index = new COSArray();
+	for (int[] subsection : getSubsections()) {
+	    index.add(COSInteger.get(subsection[0]));
+	    index.add(COSInteger.get(subsection[1]));
+	}
+	COSArray widths = new COSArray();
+	widths.add(COSInteger.ONE);
+	widths.add(COSInteger.get(offsetBytes));
+	widths.add(COSInteger.TWO);
+	ByteArrayOutputStream data = new ByteArrayOutputStream();
+	for (long[] entry : xref.values()) {
+	    data.write(1);
+	    for (int i = offsetBytes - 1; i >= 0; i--) {
+		data.write((int) (entry[0] >>> (8 * i)));
+	    }
+	    data.write((int) (entry[1] >>> 8));
+	    data.write((int) entry[1]);
+	}
+	trailer.setItem(COSName.TYPE, COSName.XREF);
+	trailer.setItem(COSName.INDEX, index);
+	trailer.setItem(COSName.W, widths);
+	trailer.setInt(COSName.LENGTH, data.size());
+	write(reference.getObjectNumber().longValue() + " 0 obj\n");
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	writeDirect(trailer, bytes);
+	bytes.write("\nstream\n".getBytes(ASCII));
+	data.writeTo(bytes);
+	bytes.write("\nendstream\nendobj\n".getBytes(ASCII));
+	writeFully(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    /**
+     * @return first object number and count of each run of consecutive object
+     *         numbers
+     */
+    private Iterable<int[]> getSubsections() {
+	Map<Integer, int[]> subsections = new TreeMap<Integer, int[]>();
+	int[] subsection = null;
+	for (int number : xref.keySet()) {
+	    if (subsection == null || subsection[0] + subsection[1] != number) {
+		subsection = new int[] { number, 0 };
+		subsections.put(number, subsection);
+	    }
+	    subsection[1]++;
+	}
+	return subsections.values();
+    }
+
+    private void write(String text) throws IOException {
+	writeFully(ByteBuffer.wrap(text.getBytes(ASCII)));
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    output.write(buffer);
+	}
+    }
+
+    /**
+     * Serializes a direct object. Indirect objects are written as references.
+     *
+     * @param object
+     * @param output
+     * @throws IOException
+     *             if the object can't be serialized
+     */
+    public static void writeDirect(COSBase object, OutputStream output) throws IOException {
+	if (object == null || object instanceof COSNull) {
+	    output.write("null".getBytes(ASCII));
+	} else if (object instanceof COSObject) {
+	    COSObject reference = (COSObject) object;
+	    output.write((reference.getObjectNumber().longValue() + " " + reference.getGenerationNumber().longValue()
+		    + " R").getBytes(ASCII));
+	} else if (object instanceof COSDictionary) {
+	    output.write("<<".getBytes(ASCII));
+	    for (Entry<COSName, COSBase> entry : ((COSDictionary) object).entrySet()) {
+		entry.getKey().writePDF(output);
+		output.write(' ');
+		writeDirect(entry.getValue(), output);
+		output.write('\n');
+	    }
+	    output.write(">>".getBytes(ASCII));
+	} else if (object instanceof COSArray) {
+	    COSArray array = (COSArray) object;
+	    output.write('[');
+	    for (int i = 0; i < array.size(); i++) {
+		if (i > 0) {
+		    output.write(' ');
+		}
+		writeDirect(array.get(i), output);
+	    }
+	    output.write(']');
+	} else if (object instanceof COSName) {
+	    ((COSName) object).writePDF(output);
+	} else if (object instanceof COSString) {
+	    ((COSString) object).writePDF(output);
+	} else if (object instanceof COSInteger) {
+	    ((COSInteger) object).writePDF(output);
+	} else if (object instanceof COSFloat) {
+	    ((COSFloat) object).writePDF(output);
+	} else if (object instanceof COSBoolean) {
+	    ((COSBoolean) object).writePDF(output);
+	} else {
+	    throw new IOException("Can't write the PDF object " + object.getClass().getSimpleName());
+	}
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.io.RandomAccess;
+import org.apache.pdfbox.pdfparser.NonSequentialPDFParser;
+
+/**
+ * Reads only the structure of a PDF file, which is needed to find or add
+ * attachments: the cross reference sections, the trailer and the document
+ * catalog. All other objects are parsed on demand, when they are resolved, so
+ * the pages and their content are never read.
+ *
+ * The data of the parsed streams is kept in a scratch file instead of the
+ * heap, so even huge embedded files can be read.
+ */
+public class PDFStructureReader {
+    /** Number of bytes at the end of the file, which contain the startxref */
+    private static final int TAIL_LENGTH = 2048;
+
+    private final File scratchFile;
+    private final RandomAccess scratch;
+    private final MinimalParser parser;
+    private final long startxref;
+    private final boolean xrefStream;
+
+    /**
+     * Parses the cross reference sections, the trailer and the catalog.
+     *
+     * @param pdf
+     * @throws IOException
+     *             if the file isn't a readable PDF file
+     */
+    public PDFStructureReader(File pdf) throws IOException {
+	scratchFile = File.createTempFile("PDFStructureReader", ".tmp");
+	scratch = new org.apache.pdfbox.io.RandomAccessFile(scratchFile, "rw");
+	MinimalParser minimalParser = null;
+	try {
+	    minimalParser = new MinimalParser(pdf, scratch);
+	    minimalParser.parseStructure();
+	    startxref = readStartxref(pdf);
+	    xrefStream = !startsWithXrefKeyword(pdf, startxref);
+	} catch (IOException e) {
+	    close(minimalParser);
+	    throw e;
+	}
+	parser = minimalParser;
+    }
+
+    /**
+     * Reads the position of the last cross reference section from the end of
+     * the file.
+     */
+    private static long readStartxref(File pdf) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(pdf, "r");
+	try {
+	    byte[] tail = new byte[(int) Math.min(file.length(), TAIL_LENGTH)];
+	    file.seek(file.length() - tail.length);
+	    file.readFully(tail);
+	    String text = new String(tail, "ISO-8859-1");
+	    int keyword = text.lastIndexOf("startxref");
+	    if (keyword < 0) {
+		throw new IOException("The PDF file has no startxref.");
+	    }
+	    String[] tokens = text.substring(keyword + "startxref".length()).trim().split("\\s+");
+	    try {
+		return Long.parseLong(tokens[0]);
+	    } catch (NumberFormatException e) {
+		throw new IOException("The startxref of the PDF file is invalid.");
+	    }
+	} finally {
+	    file.close();
+	}
+    }
+
+    private static boolean startsWithXrefKeyword(File pdf, long position) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(pdf, "r");
+	try {
+	    byte[] keyword = new byte[4];
+	    file.seek(position);
+	    file.readFully(keyword);
+	    return new String(keyword, "ISO-8859-1").equals("xref");
+	} finally {
+	    file.close();
+	}
+    }
+
+    /**
+     * @return the trailer, merged from all cross reference sections
+     */
+    public COSDictionary getTrailer() {
+	return parser.getCOSDocument().getTrailer();
+    }
+
+    /**
+     * @return reference to the document catalog
+     * @throws IOException
+     *             if the trailer has no catalog
+     */
+    public COSObject getCatalogReference() throws IOException {
+	COSBase root = getTrailer().getItem(COSName.ROOT);
+	if (!(root instanceof COSObject)) {
+	    throw new IOException("The PDF trailer has no reference to the catalog.");
+	}
+	return (COSObject) root;
+    }
+
+    /**
+     * @return the document catalog
+     * @throws IOException
+     */
+    public COSDictionary getCatalog() throws IOException {
+	COSBase catalog = resolve(getCatalogReference());
+	if (!(catalog instanceof COSDictionary)) {
+	    throw new IOException("The PDF catalog isn't a dictionary.");
+	}
+	return (COSDictionary) catalog;
+    }
+
+    /**
+     * Parses the object of an indirect reference, if it wasn't parsed yet.
+     * Direct objects are returned as they are.
+     *
+     * @param object
+     *            direct object or indirect reference, may be null
+     * @return the direct object, or null
+     * @throws IOException
+     */
+    public COSBase resolve(COSBase object) throws IOException {
+	if (!(object instanceof COSObject)) {
+	    return object;
+	}
+	COSObject reference = (COSObject) object;
+	if (reference.getObject() == null) {
+	    return parser.resolve(reference);
+	}
+	return reference.getObject();
+    }
+
+    /**
+     * Resolves a dictionary entry.
+     *
+     * @param dictionary
+     * @param key
+     * @return the direct value, or null if the dictionary has no such entry
+     * @throws IOException
+     */
+    public COSBase resolve(COSDictionary dictionary, COSName key) throws IOException {
+	return resolve(dictionary.getItem(key));
+    }
+
+    /**
+     * @return position of the last cross reference section
+     */
+    public long getStartxref() {
+	return startxref;
+    }
+
+    /**
+     * @return true, if the last cross reference section is a cross reference
+     *         stream, false if it is a cross reference table
+     */
+    public boolean isXrefStream() {
+	return xrefStream;
+    }
+
+    /**
+     * @return true, if the document is encrypted
+     */
+    public boolean isEncrypted() {
+	return getTrailer().getItem(COSName.ENCRYPT) != null;
+    }
+
+    /**
+     * Closes the PDF file and deletes the scratch file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+	close(parser);
+    }
+
+    private void close(MinimalParser minimalParser) throws IOException {
+	try {
+	    if (minimalParser != null) {
+		minimalParser.close();
+	    }
+	} finally {
+	    scratch.close();
+	    scratchFile.delete();
+	}
+    }
+
+    /**
+     * Non sequential parser, which stops after the catalog, and gives access
+     * to its on demand parsing of single objects.
+     */
+    private static class MinimalParser extends NonSequentialPDFParser {
+
+	private MinimalParser(File pdf, RandomAccess scratch) throws IOException {
+	    super(pdf, scratch);
+	}
+
+	/**
+	 * PDFBox reads the minimal parsing option from the JVM-wide system
+	 * property {@link #SYSPROP_PARSEMINIMAL} in the constructor, and keeps
+	 * it in a private field. The field of this parser is set directly, so
+	 * other parsers, which run at the same time, aren't affected.
+	 */
+	void parseStructure() throws IOException {
+	    try {
+		Field parseMinimal = NonSequentialPDFParser.class.getDeclaredField("parseMinimalCatalog");
+		parseMinimal.setAccessible(true);
+		parseMinimal.setBoolean(this, true);
+	    } catch (ReflectiveOperationException | SecurityException e) {
+		// Without the option, the pages are parsed, too, which is
+		// slower, but gives the same structure.
+	    }
+	    initialParse();
+	}
+
+	COSDocument getCOSDocument() {
+	    return document;
+	}
+
+	COSBase resolve(COSObject reference) throws IOException {
+	    return parseObjectDynamically(reference, false);
+	}
+
+	void close() throws IOException {
+	    try {
+		pdfSource.close();
+	    } finally {
+		document.close();
+	    }
+	}
+    }
+}
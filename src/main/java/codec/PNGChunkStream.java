@@ -0,0 +1,205 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Works on the raw chunk sequence of a PNG file, without decoding any image
+ * data. The chunks are indexed by reading only their 8 byte headers, and are
+ * copied byte for byte with {@link FileChannel#transferTo}, so techniques
+ * which only add or remove ancillary chunks leave all other bytes of the file
+ * untouched. Large data can be streamed into, and out of, a sequence of chunks
+ * of bounded size.
+ */
+public class PNGChunkStream extends RecordStream<PNGChunkStream.Chunk> {
+    /** The 8 bytes every PNG file starts with */
+    public static final byte[] SIGNATURE = { (byte) 137, 80, 78, 71, 13, 10, 26, 10 };
+    /** Chunk types are 4 ASCII letters */
+    public static final Charset TYPE_CHARSET = Charset.forName("ISO-8859-1");
+
+    /**
+     * Checks the signature and indexes all chunks of the PNG file.
+     *
+     * @param channel
+     *            of a PNG file
+     * @throws IOException
+     *             if the file isn't a complete PNG file
+     */
+    public PNGChunkStream(FileChannel channel) throws IOException {
+	super(channel, "PNG");
+	ByteBuffer signature = ByteBuffer.allocate(SIGNATURE.length);
+	readFully(signature, 0);
+	if (!Arrays.equals(signature.array(), SIGNATURE)) {
+	    throw new IOException("The file isn't a PNG file.");
+	}
+	long position = SIGNATURE.length;
+	ByteBuffer header = ByteBuffer.allocate(8);
+	while (records.isEmpty() || !records.get(records.size() - 1).type.equals("IEND")) {
+	    header.clear();
+	    readFully(header, position);
+	    long length = header.getInt(0) & 0xFFFFFFFFL;
+	    String type = new String(header.array(), 4, 4, TYPE_CHARSET);
+	    Chunk chunk = new Chunk(type, position, length);
+	    if (length > Integer.MAX_VALUE || chunk.getEnd() > channel.size()) {
+		throw new IOException("The PNG chunk " + type + " exceeds the file.");
+	    }
+	    records.add(chunk);
+	    position = chunk.getEnd();
+	}
+	if (!records.get(0).type.equals("IHDR")) {
+	    throw new IOException("The PNG file doesn't start with an IHDR chunk.");
+	}
+    }
+
+    /**
+     * @return all chunks in file order, from IHDR to IEND
+     */
+    public List<Chunk> getChunks() {
+	return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * @return the IEND chunk
+     */
+    public Chunk getEndChunk() {
+	return records.get(records.size() - 1);
+    }
+
+    /**
+     * Writes a complete chunk: length, type, data and CRC.
+     *
+     * @param output
+     * @param type
+     *            4 letter chunk type
+     * @param data
+     * @param offset
+     * @param length
+     * @throws IOException
+     */
+    public static void writeChunk(WritableByteChannel output, String type, byte[] data, int offset, int length)
+	    throws IOException {
+	byte[] typeBytes = type.getBytes(TYPE_CHARSET);
+	if (typeBytes.length != 4) {
+	    throw new IllegalArgumentException("Invalid PNG chunk type " + type);
+	}
+	CRC32 crc = new CRC32();
+	crc.update(typeBytes);
+	crc.update(data, offset, length);
+	byte[] header = new byte[8];
+	ByteBuffer.wrap(header).putInt(length).put(typeBytes);
+	writeFully(output, ByteBuffer.wrap(header));
+	writeFully(output, ByteBuffer.wrap(data, offset, length));
+	byte[] checksum = new byte[4];
+	ByteBuffer.wrap(checksum).putInt((int) crc.getValue());
+	writeFully(output, ByteBuffer.wrap(checksum));
+    }
+
+    /**
+     * Creates a stream, which splits the written bytes into chunks of bounded
+     * size. Only one chunk is buffered at a time. Closing the stream writes the
+     * last chunk, but doesn't close the output.
+     *
+     * @param output
+     * @param type
+     *            4 letter chunk type
+     * @param prefix
+     *            bytes at the start of the data of each chunk
+     * @param maxLength
+     *            maximum length of the chunk data, including the prefix
+     * @return stream of chunk data
+     */
+    public static OutputStream newChunkOutputStream(final WritableByteChannel output, final String type,
+	    byte[] prefix, int maxLength) {
+	if (maxLength <= prefix.length) {
+	    throw new IllegalArgumentException("The chunks are too small for the prefix.");
+	}
+	return new RecordOutputStream(prefix, maxLength) {
+	    @Override
+	    protected void writeRecord(byte[] data, int length) throws IOException {
+		writeChunk(output, type, data, 0, length);
+	    }
+	};
+    }
+
+    /**
+     * Creates a stream over the data of several chunks of this file. The data
+     * is read in bounded blocks directly from the file.
+     *
+     * @param dataChunks
+     *            chunks of this stream in reading order
+     * @param skip
+     *            number of bytes at the start of each chunk's data, which
+     *            aren't part of the stream, e.g. a prefix
+     * @return concatenated chunk data
+     */
+    public InputStream newChunkInputStream(List<Chunk> dataChunks, int skip) {
+	return newRecordInputStream(dataChunks, skip);
+    }
+
+    /**
+     * Position and size of a chunk in the file.
+     */
+    public static class Chunk extends RecordStream.Record {
+	public final String type;
+	/** Length of the chunk data */
+	public final long length;
+
+	/**
+	 * @param type
+	 * @param position
+	 *            position of the length field
+	 * @param length
+	 */
+	Chunk(String type, long position, long length) {
+	    super(position);
+	    this.type = type;
+	    this.length = length;
+	}
+
+	@Override
+	public long getDataPosition() {
+	    return position + 8;
+	}
+
+	@Override
+	public long getDataLength() {
+	    return length;
+	}
+
+	/**
+	 * @return position after the CRC of the chunk
+	 */
+	@Override
+	public long getEnd() {
+	    return position + 12 + length;
+	}
+    }
+}
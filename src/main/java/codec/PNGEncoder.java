@@ -0,0 +1,232 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+import ar.com.hjg.pngj.FilterType;
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineHelper;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.pixels.PixelsWriter;
+import ar.com.hjg.pngj.pixels.PixelsWriterDefault;
+
+/**
+ * The PNG output of all algorithms, which create images. The images are encoded
+ * with PNGJ, which writes them row by row directly to the file, without the
+ * disk cache of ImageIO.
+ *
+ * An encoder has a zlib compression level, from 0 (no compression, fastest) to
+ * 9 (smallest file), and a PNG filter strategy. If more than one thread is
+ * configured, the image data is deflated in independent blocks on several
+ * cores, see {@link ParallelDeflaterStream}. The output is a standard PNG image
+ * in all configurations.
+ *
+ * The algorithms use the {@link #getDefault() default encoder}, which can be
+ * replaced to change the settings for the whole tool.
+ */
+public class PNGEncoder {
+    /** Compression level of the default encoder */
+    public static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    private static volatile PNGEncoder defaultEncoder = new PNGEncoder(DEFAULT_COMPRESSION_LEVEL,
+	    FilterType.FILTER_DEFAULT, Runtime.getRuntime().availableProcessors());
+
+    private final int compressionLevel;
+    private final FilterType filterType;
+    private final int threads;
+
+    /**
+     * @param compressionLevel
+     *            zlib compression level from 0 to 9
+     * @param filterType
+     *            one of the standard PNG filters, or an adaptive strategy of
+     *            PNGJ
+     * @param threads
+     *            number of threads to deflate the image data. 1 deflates on
+     *            the calling thread.
+     */
+    public PNGEncoder(int compressionLevel, FilterType filterType, int threads) {
+	if (compressionLevel < 0 || compressionLevel > 9) {
+	    throw new IllegalArgumentException("The compression level has to be between 0 and 9.");
+	}
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.compressionLevel = compressionLevel;
+	this.filterType = filterType;
+	this.threads = threads;
+    }
+
+    /**
+     * @return the encoder, which is used by the algorithms
+     */
+    public static PNGEncoder getDefault() {
+	return defaultEncoder;
+    }
+
+    /**
+     * Sets the encoder, which is used by the algorithms.
+     *
+     * @param encoder
+     */
+    public static void setDefault(PNGEncoder encoder) {
+	defaultEncoder = encoder;
+    }
+
+    /**
+     * @return zlib compression level
+     */
+    public int getCompressionLevel() {
+	return compressionLevel;
+    }
+
+    /**
+     * @return filter strategy
+     */
+    public FilterType getFilterType() {
+	return filterType;
+    }
+
+    /**
+     * @return number of threads, which deflate the image data
+     */
+    public int getThreads() {
+	return threads;
+    }
+
+    /**
+     * Creates a PNGJ writer with the settings of this encoder. The caller has
+     * to write all rows, and to end and close the writer.
+     *
+     * @param output
+     *            is overwritten if it exists
+     * @param imageInfo
+     * @return configured writer
+     */
+    public PngWriter createWriter(File output, ImageInfo imageInfo) {
+	PngWriter writer;
+	if (threads > 1 && imageInfo.getTotalRawBytes() > ParallelDeflaterStream.BLOCK_SIZE) {
+	    writer = new ParallelPngWriter(output, imageInfo);
+	} else {
+	    writer = new PngWriter(output, imageInfo, true);
+	}
+	writer.setCompLevel(compressionLevel);
+	writer.setFilterType(filterType);
+	return writer;
+    }
+
+    /**
+     * Writes the image as 8 bit RGB, or RGBA if the image has an alpha channel,
+     * PNG file. Grey images are written as 8 bit grey PNG files.
+     *
+     * @param image
+     * @param output
+     *            is overwritten if it exists
+     * @throws IOException
+     */
+    public void write(BufferedImage image, File output) throws IOException {
+	write(image, output, Collections.<String, String> emptyMap());
+    }
+
+    /**
+     * Writes the image like {@link #write(BufferedImage, File)}, and adds text
+     * chunks in front of the image data. Readers can get the texts from the
+     * PNG header, without decoding any row.
+     *
+     * @param image
+     * @param output
+     *            is overwritten if it exists
+     * @param texts
+     *            keywords and texts of the tEXt chunks
+     * @throws IOException
+     */
+    public void write(BufferedImage image, File output, Map<String, String> texts) throws IOException {
+	int width = image.getWidth();
+	int height = image.getHeight();
+	boolean grey = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+	boolean alpha = image.getColorModel().hasAlpha();
+	ImageInfo imageInfo = new ImageInfo(width, height, 8, alpha, grey, false);
+	try {
+	    PngWriter writer = createWriter(output, imageInfo);
+	    try {
+		for (Map.Entry<String, String> text : texts.entrySet()) {
+		    writer.getMetadata().setText(text.getKey(), text.getValue()).setPriority(true);
+		}
+		ImageLineInt line = new ImageLineInt(imageInfo);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+		    if (grey) {
+			image.getRaster().getSamples(0, y, width, 1, 0, line.getScanline());
+		    } else {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			if (alpha) {
+			    ImageLineHelper.setPixelsRGBA8(line, row);
+			} else {
+			    ImageLineHelper.setPixelsRGB8(line, row);
+			}
+		    }
+		    writer.writeRow(line);
+		}
+		writer.end();
+	    } finally {
+		writer.close();
+	    }
+	} catch (PngjException e) {
+	    throw new IOException("Can't write the PNG image " + output, e);
+	}
+    }
+
+    /**
+     * PNGJ writer, which deflates the image data with a
+     * {@link ParallelDeflaterStream}.
+     */
+    private class ParallelPngWriter extends PngWriter {
+
+	ParallelPngWriter(File output, ImageInfo imageInfo) {
+	    super(output, imageInfo, true);
+	}
+
+	@Override
+	protected PixelsWriter createPixelsWriter(ImageInfo imageInfo) {
+	    return new PixelsWriterDefault(imageInfo) {
+		@Override
+		protected void initParams() {
+		    // called before the first row, when the output stream is set
+		    setCompressorStream(new ParallelDeflaterStream(getOs(), buflen, getTotalBytesToWrite(),
+			    deflaterCompLevel, deflaterStrategy, threads));
+		    super.initParams();
+		}
+	    };
+	}
+    }
+
+    @Override
+    public String toString() {
+	return "PNG encoder (compression level " + compressionLevel + ", filter " + filterType + ", " + threads
+		+ (threads == 1 ? " thread)" : " threads)");
+    }
+}
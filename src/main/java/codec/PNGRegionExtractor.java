@@ -0,0 +1,124 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngReader;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngjException;
+import ar.com.hjg.pngj.chunks.ChunkCopyBehaviour;
+
+/**
+ * Extracts several rectangular regions of a PNG image into separate PNG files,
+ * in a single pass over the image.
+ *
+ * The image is decoded row by row with PNGJ. Each row is copied to the output
+ * images of all regions it belongs to, without converting the samples, so the
+ * extracted images have the same pixel format as the source image. An output
+ * image is opened when its first row is reached, and closed after its last
+ * row. Decoding stops after the last row of the lowest region.
+ */
+public class PNGRegionExtractor {
+
+    /* private constructor: static class */
+    private PNGRegionExtractor() {
+    }
+
+    /**
+     * Writes each region of the PNG image to the output file with the same
+     * index. Existing output files are overwritten.
+     *
+     * @param png
+     * @param regions
+     *            have to lie completely inside of the image bounds
+     * @param outputs
+     *            one file for each region
+     * @throws IOException
+     *             if the image can't be read, a region exceeds the image, or
+     *             an output can't be written
+     */
+    public static void extract(File png, List<Rectangle> regions, List<? extends File> outputs) throws IOException {
+	if (regions.size() != outputs.size()) {
+	    throw new IllegalArgumentException("There has to be one output file for each region.");
+	}
+	PngReader reader;
+	try {
+	    reader = new PngReader(png);
+	} catch (PngjException e) {
+	    throw new IOException("Can't read the PNG image " + png, e);
+	}
+	PngWriter[] writers = new PngWriter[regions.size()];
+	ImageLineInt[] lines = new ImageLineInt[regions.size()];
+	try {
+	    ImageInfo imageInfo = reader.imgInfo;
+	    Rectangle bounds = new Rectangle(0, 0, imageInfo.cols, imageInfo.rows);
+	    int lastRow = 0;
+	    for (Rectangle region : regions) {
+		if (region.isEmpty() || !bounds.contains(region)) {
+		    throw new IOException("The region " + region + " isn't part of the image " + png);
+		}
+		lastRow = Math.max(lastRow, region.y + region.height);
+	    }
+	    for (int y = 0; y < lastRow; y++) {
+		int[] samples = ((ImageLineInt) reader.readRow()).getScanline();
+		for (int i = 0; i < regions.size(); i++) {
+		    Rectangle region = regions.get(i);
+		    if (y < region.y || y >= region.y + region.height) {
+			continue;
+		    }
+		    if (writers[i] == null) {
+			writers[i] = createWriter(reader, region, outputs.get(i));
+			lines[i] = new ImageLineInt(writers[i].imgInfo);
+		    }
+		    System.arraycopy(samples, region.x * imageInfo.channels, lines[i].getScanline(), 0,
+			    region.width * imageInfo.channels);
+		    writers[i].writeRow(lines[i]);
+		    if (y == region.y + region.height - 1) {
+			writers[i].end();
+		    }
+		}
+	    }
+	} catch (PngjException e) {
+	    throw new IOException("Can't extract the regions of the PNG image " + png, e);
+	} finally {
+	    for (PngWriter writer : writers) {
+		if (writer != null) {
+		    writer.close();
+		}
+	    }
+	    reader.close();
+	}
+    }
+
+    private static PngWriter createWriter(PngReader reader, Rectangle region, File output) {
+	ImageInfo imageInfo = reader.imgInfo;
+	PngWriter writer = PNGEncoder.getDefault().createWriter(output, new ImageInfo(region.width, region.height,
+		imageInfo.bitDepth, imageInfo.alpha, imageInfo.greyscale, imageInfo.indexed));
+	writer.copyChunksFrom(reader.getChunksList(),
+		ChunkCopyBehaviour.COPY_PALETTE | ChunkCopyBehaviour.COPY_TRANSPARENCY);
+	return writer;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+
+/**
+ * Reads a bzip2 file, which consists of concatenated bzip2 streams, on several
+ * threads, in the way of pbzip2.
+ *
+ * The file is scanned for the byte aligned stream headers, which are "BZh",
+ * the block size and the magic number of the first block or of the end of the
+ * stream. Each stream is decompressed by its own task, and the decompressed
+ * streams are returned in their original order. At most two streams per
+ * thread are pending.
+ *
+ * Files with one stream, as written by bzip2, and files with streams, which
+ * are larger than {@link #MAX_SEGMENT_LENGTH}, are decompressed sequentially,
+ * because a single stream can't be split at a byte boundary.
+ */
+public class ParallelBZip2InputStream extends InputStream {
+    /** Maximum compressed length of a stream, which is decompressed in memory */
+    public static final int MAX_SEGMENT_LENGTH = 1024 * 1024;
+
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
+    /** "BZh", the block size and the 48 bit magic number */
+    private static final int HEADER_LENGTH = 10;
+    private static final byte[] BLOCK_MAGIC = { 0x31, 0x41, 0x59, 0x26, 0x53, 0x59 };
+    private static final byte[] END_OF_STREAM_MAGIC = { 0x17, 0x72, 0x45, 0x38, 0x50, (byte) 0x90 };
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int threads;
+    private final List<Long> segmentStarts;
+    private final LinkedList<Future<byte[]>> pendingSegments = new LinkedList<Future<byte[]>>();
+    private ExecutorService executor = null;
+    private InputStream sequentialInput = null;
+    private int nextSegment = 0;
+    private byte[] segment = new byte[0];
+    private int segmentPosition = 0;
+
+    /**
+     * @param bzip2File
+     *            file with one or more concatenated bzip2 streams
+     * @param threads
+     *            number of threads, which decompress streams
+     * @throws IOException
+     *             if the file can't be read, or doesn't start with a bzip2
+     *             stream
+     */
+    public ParallelBZip2InputStream(File bzip2File, int threads) throws IOException {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.threads = threads;
+	file = new RandomAccessFile(bzip2File, "r");
+	channel = file.getChannel();
+	try {
+	    segmentStarts = findStreams(channel);
+	    if (segmentStarts.isEmpty() || segmentStarts.get(0) != 0) {
+		throw new IOException(bzip2File.getName() + " doesn't start with a bzip2 stream.");
+	    }
+	    if (segmentStarts.size() == 1 || getMaxSegmentLength() > MAX_SEGMENT_LENGTH) {
+		sequentialInput = new BZip2CompressorInputStream(new BufferedInputStream(
+			Channels.newInputStream(channel.position(0))), true);
+	    } else {
+		executor = Executors.newFixedThreadPool(threads);
+	    }
+	} catch (IOException e) {
+	    file.close();
+	    throw e;
+	}
+    }
+
+    /**
+     * Finds the positions of all byte aligned bzip2 stream headers.
+     */
+    private static List<Long> findStreams(FileChannel channel) throws IOException {
+	List<Long> starts = new ArrayList<Long>();
+	byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+	long bufferStart = 0;
+	int length = 0;
+	while (true) {
+	    int read = channel.read(ByteBuffer.wrap(buffer, length, buffer.length - length), bufferStart + length);
+	    if (read > 0) {
+		length += read;
+	    }
+	    for (int i = 0; i + HEADER_LENGTH <= length; i++) {
+		if (isStreamHeader(buffer, i)) {
+		    starts.add(bufferStart + i);
+		}
+	    }
+	    if (read < 0) {
+		return starts;
+	    }
+	    // keep the bytes, which could be the start of a header:
+	    int consumed = Math.max(0, length - HEADER_LENGTH + 1);
+	    System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+	    bufferStart += consumed;
+	    length -= consumed;
+	}
+    }
+
+    private static boolean isStreamHeader(byte[] buffer, int offset) {
+	if (buffer[offset] != 'B' || buffer[offset + 1] != 'Z' || buffer[offset + 2] != 'h'
+		|| buffer[offset + 3] < '1' || buffer[offset + 3] > '9') {
+	    return false;
+	}
+	return startsWith(buffer, offset + 4, BLOCK_MAGIC) || startsWith(buffer, offset + 4, END_OF_STREAM_MAGIC);
+    }
+
+    private static boolean startsWith(byte[] buffer, int offset, byte[] magic) {
+	for (int i = 0; i < magic.length; i++) {
+	    if (buffer[offset + i] != magic[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private long getSegmentEnd(int index) throws IOException {
+	return index + 1 < segmentStarts.size() ? segmentStarts.get(index + 1) : channel.size();
+    }
+
+    private long getMaxSegmentLength() throws IOException {
+	long maxLength = 0;
+	for (int i = 0; i < segmentStarts.size(); i++) {
+	    maxLength = Math.max(maxLength, getSegmentEnd(i) - segmentStarts.get(i));
+	}
+	return maxLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+	byte[] single = new byte[1];
+	return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] data, int offset, int length) throws IOException {
+	if (sequentialInput != null) {
+	    return sequentialInput.read(data, offset, length);
+	}
+	if (length == 0) {
+	    return 0;
+	}
+	while (segmentPosition == segment.length) {
+	    if (!nextSegment()) {
+		return -1;
+	    }
+	}
+	int count = Math.min(length, segment.length - segmentPosition);
+	System.arraycopy(segment, segmentPosition, data, offset, count);
+	segmentPosition += count;
+	return count;
+    }
+
+    /**
+     * Submits streams until enough streams are pending, and takes the next
+     * decompressed stream.
+     *
+     * @return false, if all streams are read
+     */
+    private boolean nextSegment() throws IOException {
+	while (nextSegment < segmentStarts.size() && pendingSegments.size() < 2 * threads) {
+	    long start = segmentStarts.get(nextSegment);
+	    pendingSegments.add(executor.submit(new SegmentDecompressor(start, getSegmentEnd(nextSegment))));
+	    nextSegment++;
+	}
+	if (pendingSegments.isEmpty()) {
+	    return false;
+	}
+	try {
+	    segment = pendingSegments.removeFirst().get();
+	    segmentPosition = 0;
+	    return true;
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The bzip2 decompression was interrupted.", e);
+	}
+    }
+
+    @Override
+    public void close() throws IOException {
+	if (executor != null) {
+	    executor.shutdownNow();
+	}
+	file.close();
+    }
+
+    /**
+     * Decompresses the streams between two positions of the file.
+     */
+    private class SegmentDecompressor implements Callable<byte[]> {
+	private final long start;
+	private final long end;
+
+	SegmentDecompressor(long start, long end) {
+	    this.start = start;
+	    this.end = end;
+	}
+
+	@Override
+	public byte[] call() throws IOException {
+	    ByteBuffer compressed = ByteBuffer.allocate((int) (end - start));
+	    while (compressed.hasRemaining()) {
+		if (channel.read(compressed, start + compressed.position()) < 0) {
+		    throw new IOException("Unexpected end of the bzip2 file.");
+		}
+	    }
+	    InputStream bzip2Stream = new BZip2CompressorInputStream(new ByteArrayInputStream(compressed.array()),
+		    true);
+	    ByteArrayOutputStream decompressed = new ByteArrayOutputStream(compressed.capacity() * 4);
+	    try {
+		IOUtils.copy(bzip2Stream, decompressed);
+	    } finally {
+		bzip2Stream.close();
+	    }
+	    return decompressed.toByteArray();
+	}
+    }
+}
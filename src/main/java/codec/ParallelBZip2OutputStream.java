@@ -0,0 +1,178 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Writes bzip2 compressed data on several threads, in the way of pbzip2.
+ *
+ * The data is split into chunks of the size of a bzip2 block, which is 900 KB
+ * at the block size 9. Each chunk is compressed to a complete bzip2 stream
+ * by its own BZip2CompressorOutputStream, and the streams are concatenated in
+ * their original order. bunzip2 and every bzip2 reader, which supports
+ * concatenated streams, can read the output. The
+ * {@link ParallelBZip2InputStream} finds the start of each stream, and
+ * decompresses the streams in parallel, too.
+ *
+ * At most two chunks per thread are pending, so the memory usage doesn't
+ * depend on the size of the data.
+ */
+public class ParallelBZip2OutputStream extends OutputStream {
+    private final OutputStream output;
+    private final int blockSize;
+    /** Number of uncompressed bytes, which are compressed to one stream */
+    private final int chunkSize;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<Future<byte[]>> pendingChunks = new LinkedList<Future<byte[]>>();
+    private byte[] chunk;
+    private int chunkLength = 0;
+    private boolean closed = false;
+
+    /**
+     * @param output
+     *            stream, which receives the bzip2 streams
+     * @param blockSize
+     *            bzip2 block size from 1 to 9, in units of 100 KB
+     * @param threads
+     *            number of threads, which compress chunks
+     */
+    public ParallelBZip2OutputStream(OutputStream output, int blockSize, int threads) {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	if (blockSize < BZip2CompressorOutputStream.MIN_BLOCKSIZE
+		|| blockSize > BZip2CompressorOutputStream.MAX_BLOCKSIZE) {
+	    throw new IllegalArgumentException("Invalid bzip2 block size " + blockSize);
+	}
+	this.output = output;
+	this.blockSize = blockSize;
+	this.threads = threads;
+	chunkSize = blockSize * 100 * 1000;
+	chunk = new byte[chunkSize];
+	executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+	write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+	if (closed) {
+	    throw new IOException("The bzip2 stream is closed.");
+	}
+	while (length > 0) {
+	    int count = Math.min(length, chunk.length - chunkLength);
+	    System.arraycopy(data, offset, chunk, chunkLength, count);
+	    chunkLength += count;
+	    offset += count;
+	    length -= count;
+	    if (chunkLength == chunk.length) {
+		submitChunk();
+	    }
+	}
+    }
+
+    /**
+     * Passes the current chunk to the executor, and writes finished streams if
+     * too many chunks are pending.
+     */
+    private void submitChunk() throws IOException {
+	pendingChunks.add(executor.submit(new ChunkCompressor(chunk, chunkLength)));
+	chunk = new byte[chunkSize];
+	chunkLength = 0;
+	while (pendingChunks.size() > 2 * threads) {
+	    writeNextChunk();
+	}
+    }
+
+    private void writeNextChunk() throws IOException {
+	try {
+	    output.write(pendingChunks.removeFirst().get());
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The bzip2 compression was interrupted.", e);
+	}
+    }
+
+    /**
+     * Writes the remaining chunks, and closes the output. Empty data is
+     * written as one empty bzip2 stream.
+     */
+    @Override
+    public void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	try {
+	    if (chunkLength > 0 || pendingChunks.isEmpty()) {
+		submitChunk();
+	    }
+	    while (!pendingChunks.isEmpty()) {
+		writeNextChunk();
+	    }
+	    output.flush();
+	} finally {
+	    executor.shutdownNow();
+	    output.close();
+	}
+    }
+
+    /**
+     * Compresses one chunk to a complete bzip2 stream.
+     */
+    private class ChunkCompressor implements Callable<byte[]> {
+	private final byte[] data;
+	private final int length;
+
+	ChunkCompressor(byte[] data, int length) {
+	    this.data = data;
+	    this.length = length;
+	}
+
+	@Override
+	public byte[] call() throws IOException {
+	    ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 3 + 64);
+	    BZip2CompressorOutputStream bzip2Stream = new BZip2CompressorOutputStream(compressed, blockSize);
+	    bzip2Stream.write(data, 0, length);
+	    bzip2Stream.close();
+	    return compressed.toByteArray();
+	}
+    }
+}
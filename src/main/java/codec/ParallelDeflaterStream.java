@@ -0,0 +1,198 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import ar.com.hjg.pngj.PngjOutputException;
+import ar.com.hjg.pngj.pixels.CompressorStream;
+
+/**
+ * Compresses the filtered rows of a PNG image on several threads, in the way of
+ * pigz.
+ *
+ * The rows are collected into blocks of {@link #BLOCK_SIZE} bytes, which are
+ * deflated independently of each other by a {@link BlockDeflater}. Each block
+ * is primed with the last 32 KB of the previous block as preset dictionary, so
+ * the compression ratio is almost the same as for a single deflater. All
+ * blocks but the last end with a sync flush, so their outputs can be
+ * concatenated to one zlib stream, which gets the usual zlib header and the
+ * Adler-32 checksum of all rows. The result is a standard IDAT stream, which
+ * every PNG decoder can read.
+ *
+ * Compressed blocks are written in their original order by the thread that
+ * writes the rows. At most two blocks per thread are pending, so the memory
+ * usage doesn't depend on the size of the image.
+ */
+class ParallelDeflaterStream extends CompressorStream {
+    /** Number of uncompressed bytes, which are deflated in one block. */
+    static final int BLOCK_SIZE = 128 * 1024;
+
+    private final int compressionLevel;
+    private final int strategy;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<Future<byte[]>> pendingBlocks = new LinkedList<Future<byte[]>>();
+    private final Adler32 checksum = new Adler32();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private boolean headerWritten = false;
+
+    /**
+     * @param os
+     *            stream, which receives the zlib stream
+     * @param blockLen
+     *            maximum number of bytes passed to {@link #mywrite}
+     * @param totalbytes
+     *            number of uncompressed bytes
+     * @param compressionLevel
+     *            deflate level from 0 to 9
+     * @param strategy
+     *            deflate strategy, see {@link Deflater#setStrategy(int)}
+     * @param threads
+     *            number of threads, which deflate blocks
+     */
+    ParallelDeflaterStream(OutputStream os, int blockLen, long totalbytes, int compressionLevel, int strategy,
+	    int threads) {
+	super(os, blockLen, totalbytes);
+	this.compressionLevel = compressionLevel;
+	this.strategy = strategy;
+	this.threads = threads;
+	executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override
+    protected void mywrite(byte[] data, int offset, int length) {
+	if (done || isClosed()) {
+	    throw new PngjOutputException("write beyond end of stream");
+	}
+	checksum.update(data, offset, length);
+	bytesIn += length;
+	while (length > 0) {
+	    int count = Math.min(length, block.length - blockLength);
+	    System.arraycopy(data, offset, block, blockLength, count);
+	    blockLength += count;
+	    offset += count;
+	    length -= count;
+	    if (blockLength == block.length) {
+		submitBlock(false);
+	    }
+	}
+    }
+
+    /**
+     * Passes the current block to the executor, and writes finished blocks if
+     * too many blocks are pending.
+     */
+    private void submitBlock(boolean last) {
+	pendingBlocks.add(executor
+		.submit(new BlockDeflater(block, blockLength, dictionary, last, compressionLevel, strategy)));
+	byte[] nextDictionary = BlockDeflater.getDictionary(block, blockLength);
+	if (nextDictionary != null) {
+	    dictionary = nextDictionary;
+	}
+	block = new byte[BLOCK_SIZE];
+	blockLength = 0;
+	while (pendingBlocks.size() > 2 * threads) {
+	    writeNextBlock();
+	}
+    }
+
+    private void writeNextBlock() {
+	try {
+	    if (!headerWritten) {
+		os.write(getZlibHeader());
+		bytesOut += 2;
+		headerWritten = true;
+	    }
+	    byte[] compressed = pendingBlocks.removeFirst().get();
+	    os.write(compressed);
+	    bytesOut += compressed.length;
+	} catch (IOException e) {
+	    throw new PngjOutputException(e);
+	} catch (ExecutionException e) {
+	    throw new PngjOutputException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new PngjOutputException(e);
+	}
+    }
+
+    /**
+     * Creates the two bytes of the zlib header: deflate with a 32 KB window,
+     * no preset dictionary, and the level flag of the compression level.
+     */
+    private byte[] getZlibHeader() {
+	int levelFlag;
+	if (compressionLevel == 6 || compressionLevel == Deflater.DEFAULT_COMPRESSION) {
+	    levelFlag = 2;
+	} else if (compressionLevel < 2) {
+	    levelFlag = 0;
+	} else if (compressionLevel < 6) {
+	    levelFlag = 1;
+	} else {
+	    levelFlag = 3;
+	}
+	int header = 0x7800 | levelFlag << 6;
+	header += 31 - header % 31;
+	return new byte[] { (byte) (header >> 8), (byte) header };
+    }
+
+    @Override
+    public void done() {
+	if (done) {
+	    return;
+	}
+	try {
+	    submitBlock(true);
+	    while (!pendingBlocks.isEmpty()) {
+		writeNextBlock();
+	    }
+	    long adler = checksum.getValue();
+	    os.write(new byte[] { (byte) (adler >> 24), (byte) (adler >> 16), (byte) (adler >> 8), (byte) adler });
+	    bytesOut += 4;
+	} catch (IOException e) {
+	    throw new PngjOutputException(e);
+	} finally {
+	    executor.shutdownNow();
+	}
+	done = true;
+	flush();
+    }
+
+    @Override
+    public void close() {
+	try {
+	    done();
+	} finally {
+	    executor.shutdownNow();
+	    super.close();
+	}
+    }
+}
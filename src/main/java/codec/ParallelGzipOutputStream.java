@@ -0,0 +1,175 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a gzip stream, which is compressed on several threads, in the way of
+ * pigz.
+ *
+ * The data is collected into blocks of {@link #BLOCK_SIZE} bytes, which are
+ * deflated independently of each other by a {@link BlockDeflater}, primed with
+ * the end of the previous block. The compressed blocks are joined in their
+ * original order to one deflate stream, so the output is a single gzip member,
+ * which gunzip and the GzipCompressorInputStream can read like the output of
+ * the GzipCompressorOutputStream. At most two blocks per thread are pending, so
+ * the memory usage doesn't depend on the size of the data.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    /** Number of uncompressed bytes, which are deflated in one block */
+    public static final int BLOCK_SIZE = 128 * 1024;
+
+    private final OutputStream output;
+    private final int compressionLevel;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<Future<byte[]>> pendingBlocks = new LinkedList<Future<byte[]>>();
+    private final CRC32 checksum = new CRC32();
+    private long size = 0;
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private boolean closed = false;
+
+    /**
+     * Writes the gzip header.
+     *
+     * @param output
+     *            stream, which receives the gzip stream
+     * @param compressionLevel
+     *            deflate level from 0 to 9, or
+     *            {@link Deflater#DEFAULT_COMPRESSION}
+     * @param threads
+     *            number of threads, which deflate blocks
+     * @throws IOException
+     */
+    public ParallelGzipOutputStream(OutputStream output, int compressionLevel, int threads) throws IOException {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.output = output;
+	this.compressionLevel = compressionLevel;
+	this.threads = threads;
+	int extraFlags = compressionLevel == Deflater.BEST_COMPRESSION ? 2
+		: compressionLevel == Deflater.BEST_SPEED ? 4 : 0;
+	// magic number, deflate, no flags, no modification time, unknown OS:
+	output.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, (byte) extraFlags, (byte) 255 });
+	executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+	ensureOpen();
+	block[blockLength++] = (byte) b;
+	checksum.update(b);
+	size++;
+	if (blockLength == block.length) {
+	    submitBlock(false);
+	}
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+	ensureOpen();
+	checksum.update(data, offset, length);
+	size += length;
+	while (length > 0) {
+	    int count = Math.min(length, block.length - blockLength);
+	    System.arraycopy(data, offset, block, blockLength, count);
+	    blockLength += count;
+	    offset += count;
+	    length -= count;
+	    if (blockLength == block.length) {
+		submitBlock(false);
+	    }
+	}
+    }
+
+    private void ensureOpen() throws IOException {
+	if (closed) {
+	    throw new IOException("The gzip stream is closed.");
+	}
+    }
+
+    /**
+     * Passes the current block to the executor, and writes finished blocks if
+     * too many blocks are pending.
+     */
+    private void submitBlock(boolean last) throws IOException {
+	pendingBlocks.add(executor.submit(
+		new BlockDeflater(block, blockLength, dictionary, last, compressionLevel, Deflater.DEFAULT_STRATEGY)));
+	byte[] nextDictionary = BlockDeflater.getDictionary(block, blockLength);
+	if (nextDictionary != null) {
+	    dictionary = nextDictionary;
+	}
+	block = new byte[BLOCK_SIZE];
+	blockLength = 0;
+	while (pendingBlocks.size() > 2 * threads) {
+	    writeNextBlock();
+	}
+    }
+
+    private void writeNextBlock() throws IOException {
+	try {
+	    output.write(pendingBlocks.removeFirst().get());
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The gzip compression was interrupted.", e);
+	}
+    }
+
+    /**
+     * Writes the remaining blocks and the gzip trailer, and closes the output.
+     */
+    @Override
+    public void close() throws IOException {
+	if (closed) {
+	    return;
+	}
+	closed = true;
+	try {
+	    submitBlock(true);
+	    while (!pendingBlocks.isEmpty()) {
+		writeNextBlock();
+	    }
+	    long crc = checksum.getValue();
+	    output.write(new byte[] { (byte) crc, (byte) (crc >> 8), (byte) (crc >> 16), (byte) (crc >> 24),
+		    (byte) size, (byte) (size >> 8), (byte) (size >> 16), (byte) (size >> 24) });
+	    output.flush();
+	} finally {
+	    executor.shutdownNow();
+	    output.close();
+	}
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a ZIP archive, whose entries are deflated on several threads.
+ *
+ * The files are read one after the other and split into blocks of
+ * {@link #BLOCK_SIZE} bytes, which are deflated by a {@link BlockDeflater} in
+ * the way of pigz. The compressed blocks are stitched together in their
+ * original order, so each entry is one ordinary deflate stream. The blocks of
+ * the next file are already compressed, while the last blocks of a file are
+ * written, so many small files keep all threads busy as well as a few huge
+ * files. At most two blocks per thread are pending, so the memory usage
+ * doesn't depend on the size of the files.
+ *
+ * Files of compressed formats, like JPEG or ZIP, and files whose first block
+ * doesn't shrink, see {@link CompressionProbe}, are stored without compression,
+ * which saves the deflate work without losing any space. With compression
+ * level 0, all files are stored.
+ *
+ * The local header of an entry is written before its data, and is completed
+ * with the checksum and the compressed size afterwards. Zip64 extensions are
+ * used for entries and archives, which exceed 4 GB, like the
+ * ZipArchiveOutputStream of Apache commons compress does.
+ */
+public class ParallelZipWriter implements Closeable {
+    /** Number of uncompressed bytes, which are deflated in one block */
+    public static final int BLOCK_SIZE = 1024 * 1024;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int MAX_ENTRIES = 0xFFFF;
+    private static final short VERSION = 20;
+    private static final short ZIP64_VERSION = 45;
+    private static final short UTF8_FLAG = 1 << 11;
+    private static final short STORED = 0;
+    private static final short DEFLATED = 8;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final int compressionLevel;
+    private final int threads;
+    private final ExecutorService executor;
+    private final LinkedList<PendingBlock> pendingBlocks = new LinkedList<PendingBlock>();
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private boolean finished = false;
+
+    /**
+     * @param zipFile
+     *            the archive, which is overwritten
+     * @param compressionLevel
+     *            deflate level from 1 to 9, or
+     *            {@link Deflater#DEFAULT_COMPRESSION}, or 0 to store all files
+     * @param threads
+     *            number of threads, which deflate blocks
+     * @throws IOException
+     *             if the archive can't be created
+     */
+    public ParallelZipWriter(File zipFile, int compressionLevel, int threads) throws IOException {
+	if (threads < 1) {
+	    throw new IllegalArgumentException("At least one thread is needed.");
+	}
+	this.compressionLevel = compressionLevel;
+	this.threads = threads;
+	file = new RandomAccessFile(zipFile, "rw");
+	file.setLength(0);
+	channel = file.getChannel();
+	executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Adds a file as entry. The file is read completely, before this method
+     * returns, but its last blocks may still be compressed. The entry is
+     * stored, if compression wouldn't make it smaller.
+     *
+     * @param name
+     *            entry name
+     * @param input
+     *            file, which is archived
+     * @throws IOException
+     */
+    public void addEntry(String name, File input) throws IOException {
+	if (finished) {
+	    throw new IOException("The zip archive is already finished.");
+	}
+	Entry entry = new Entry(name, input.lastModified(), input.length());
+	entries.add(entry);
+	boolean deflate = compressionLevel != Deflater.NO_COMPRESSION && !CompressionProbe.isCompressedFormat(input);
+	CRC32 checksum = new CRC32();
+	InputStream inputStream = new FileInputStream(input);
+	try {
+	    byte[] dictionary = null;
+	    long remaining = entry.size;
+	    boolean first = true;
+	    boolean last;
+	    do {
+		int length = (int) Math.min(BLOCK_SIZE, remaining);
+		byte[] block = new byte[length];
+		IOUtils.readFully(inputStream, block);
+		checksum.update(block, 0, length);
+		remaining -= length;
+		last = remaining == 0;
+		if (last) {
+		    entry.crc = checksum.getValue();
+		}
+		if (first) {
+		    deflate = deflate && CompressionProbe.isCompressible(block, length);
+		    entry.setMethod(deflate ? DEFLATED : STORED);
+		}
+		if (deflate) {
+		    pendingBlocks.add(new PendingBlock(entry, first, last, executor.submit(new BlockDeflater(block,
+			    length, dictionary, last, compressionLevel, Deflater.DEFAULT_STRATEGY))));
+		    dictionary = BlockDeflater.getDictionary(block, length);
+		} else {
+		    pendingBlocks.add(new PendingBlock(entry, first, last, block));
+		}
+		first = false;
+		while (pendingBlocks.size() > 2 * threads) {
+		    writeNextBlock();
+		}
+	    } while (!last);
+	} finally {
+	    inputStream.close();
+	}
+    }
+
+    private void writeNextBlock() throws IOException {
+	PendingBlock block = pendingBlocks.removeFirst();
+	Entry entry = block.entry;
+	if (block.first) {
+	    entry.offset = channel.position();
+	    writeFully(entry.getLocalHeader());
+	}
+	byte[] data;
+	try {
+	    data = block.getData();
+	} catch (ExecutionException e) {
+	    if (e.getCause() instanceof IOException) {
+		throw (IOException) e.getCause();
+	    }
+	    throw new IllegalStateException(e.getCause());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("The compression of " + entry.name + " was interrupted.", e);
+	}
+	writeFully(ByteBuffer.wrap(data));
+	entry.compressedSize += data.length;
+	if (block.last) {
+	    if (!entry.zip64 && entry.compressedSize >= ZIP64_LIMIT) {
+		throw new IOException("The compressed size of " + entry.name + " exceeds 4 GB.");
+	    }
+	    ByteBuffer header = entry.getLocalHeader();
+	    long position = entry.offset;
+	    while (header.hasRemaining()) {
+		position += channel.write(header, position);
+	    }
+	}
+    }
+
+    /**
+     * Writes the remaining blocks and the central directory. The archive is
+     * complete afterwards, but has to be closed.
+     *
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+	if (finished) {
+	    return;
+	}
+	while (!pendingBlocks.isEmpty()) {
+	    writeNextBlock();
+	}
+	long directoryOffset = channel.position();
+	for (Entry entry : entries) {
+	    writeFully(entry.getCentralHeader());
+	}
+	long directorySize = channel.position() - directoryOffset;
+	if (entries.size() >= MAX_ENTRIES || directoryOffset >= ZIP64_LIMIT || directorySize >= ZIP64_LIMIT) {
+	    writeZip64End(directoryOffset, directorySize);
+	}
+	ByteBuffer end = newBuffer(22);
+	end.putInt(0x06054b50);
+	end.putShort((short) 0).putShort((short) 0);
+	end.putShort((short) Math.min(entries.size(), MAX_ENTRIES));
+	end.putShort((short) Math.min(entries.size(), MAX_ENTRIES));
+	end.putInt((int) Math.min(directorySize, ZIP64_LIMIT));
+	end.putInt((int) Math.min(directoryOffset, ZIP64_LIMIT));
+	end.putShort((short) 0);
+	writeFully(rewind(end));
+	finished = true;
+    }
+
+    /**
+     * Writes the zip64 end of central directory record and its locator.
+     */
+    private void writeZip64End(long directoryOffset, long directorySize) throws IOException {
+	long recordOffset = channel.position();
+	ByteBuffer record = newBuffer(56 + 20);
+	record.putInt(0x06064b50).putLong(44);
+	record.putShort(ZIP64_VERSION).putShort(ZIP64_VERSION);
+	record.putInt(0).putInt(0);
+	record.putLong(entries.size()).putLong(entries.size());
+	record.putLong(directorySize).putLong(directoryOffset);
+	record.putInt(0x07064b50).putInt(0).putLong(recordOffset).putInt(1);
+	writeFully(rewind(record));
+    }
+
+    /**
+     * Stops the compression threads and closes the file. An archive, which
+     * wasn't finished, is incomplete.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+	executor.shutdownNow();
+	file.close();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    channel.write(buffer);
+	}
+    }
+
+    private static ByteBuffer newBuffer(int capacity) {
+	return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static ByteBuffer rewind(ByteBuffer buffer) {
+	buffer.rewind();
+	return buffer;
+    }
+
+    /**
+     * Converts a time to the MS-DOS date and time of the zip headers.
+     */
+    static int toDosTime(long time) {
+	Calendar calendar = Calendar.getInstance();
+	calendar.setTimeInMillis(time);
+	int year = calendar.get(Calendar.YEAR);
+	if (year < 1980) {
+	    return (1 << 21) | (1 << 16);
+	}
+	return (year - 1980) << 25 | (calendar.get(Calendar.MONTH) + 1) << 21
+		| calendar.get(Calendar.DAY_OF_MONTH) << 16 | calendar.get(Calendar.HOUR_OF_DAY) << 11
+		| calendar.get(Calendar.MINUTE) << 5 | calendar.get(Calendar.SECOND) >> 1;
+    }
+
+    /**
+     * Block of an entry, which waits to be written. The data of a deflated
+     * entry is compressed by the executor, the data of a stored entry is
+     * written as it is.
+     */
+    private static class PendingBlock {
+	final Entry entry;
+	final boolean first;
+	final boolean last;
+	private final Future<byte[]> compressedData;
+	private final byte[] storedData;
+
+	PendingBlock(Entry entry, boolean first, boolean last, Future<byte[]> compressedData) {
+	    this.entry = entry;
+	    this.first = first;
+	    this.last = last;
+	    this.compressedData = compressedData;
+	    storedData = null;
+	}
+
+	PendingBlock(Entry entry, boolean first, boolean last, byte[] storedData) {
+	    this.entry = entry;
+	    this.first = first;
+	    this.last = last;
+	    compressedData = null;
+	    this.storedData = storedData;
+	}
+
+	byte[] getData() throws ExecutionException, InterruptedException {
+	    return storedData != null ? storedData : compressedData.get();
+	}
+    }
+
+    /**
+     * Header fields of an entry.
+     */
+    private static class Entry {
+	final String name;
+	final byte[] encodedName;
+	final int dosTime;
+	final long size;
+	short method;
+	/**
+	 * True, if the sizes are stored in a zip64 extra field. This is decided
+	 * before the compression, with a margin for the deflate overhead of
+	 * incompressible data.
+	 */
+	boolean zip64;
+	long crc;
+	long compressedSize = 0;
+	long offset;
+
+	Entry(String name, long time, long size) {
+	    this.name = name;
+	    encodedName = name.getBytes(UTF8);
+	    dosTime = toDosTime(time);
+	    this.size = size;
+	}
+
+	void setMethod(short method) {
+	    this.method = method;
+	    zip64 = method == STORED ? size >= ZIP64_LIMIT : size + size / 1000 + 1024 >= ZIP64_LIMIT;
+	}
+
+	ByteBuffer getLocalHeader() {
+	    ByteBuffer header = newBuffer(30 + encodedName.length + (zip64 ? 20 : 0));
+	    header.putInt(0x04034b50);
+	    header.putShort(zip64 ? ZIP64_VERSION : VERSION);
+	    header.putShort(UTF8_FLAG).putShort(method).putInt(dosTime).putInt((int) crc);
+	    header.putInt(zip64 ? -1 : (int) compressedSize).putInt(zip64 ? -1 : (int) size);
+	    header.putShort((short) encodedName.length).putShort((short) (zip64 ? 20 : 0));
+	    header.put(encodedName);
+	    if (zip64) {
+		header.putShort((short) 1).putShort((short) 16).putLong(size).putLong(compressedSize);
+	    }
+	    return rewind(header);
+	}
+
+	ByteBuffer getCentralHeader() {
+	    boolean zip64Offset = offset >= ZIP64_LIMIT;
+	    int extraLength = (zip64 ? 16 : 0) + (zip64Offset ? 8 : 0);
+	    if (extraLength > 0) {
+		extraLength += 4;
+	    }
+	    short version = zip64 || zip64Offset ? ZIP64_VERSION : VERSION;
+	    ByteBuffer header = newBuffer(46 + encodedName.length + extraLength);
+	    header.putInt(0x02014b50).putShort(version).putShort(version);
+	    header.putShort(UTF8_FLAG).putShort(method).putInt(dosTime).putInt((int) crc);
+	    header.putInt(zip64 ? -1 : (int) compressedSize).putInt(zip64 ? -1 : (int) size);
+	    header.putShort((short) encodedName.length).putShort((short) extraLength);
+	    header.putShort((short) 0).putShort((short) 0).putShort((short) 0).putInt(0);
+	    header.putInt(zip64Offset ? -1 : (int) offset);
+	    header.put(encodedName);
+	    if (extraLength > 0) {
+		header.putShort((short) 1).putShort((short) (extraLength - 4));
+		if (zip64) {
+		    header.putLong(size).putLong(compressedSize);
+		}
+		if (zip64Offset) {
+		    header.putLong(offset);
+		}
+	    }
+	    return rewind(header);
+	}
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.client.j2se.BufferedImageLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.qrcode.detector.MultiDetector;
+import com.google.zxing.qrcode.decoder.Decoder;
+import com.google.zxing.qrcode.detector.Detector;
+
+/**
+ * Decodes all QR-codes of an image in parallel. This is the counterpart of the
+ * {@link QRCodeSheetEncoder}.
+ *
+ * If the layout of the sheet is known, each tile is binarized and decoded on
+ * its own, so only the pixels of the tiles are processed. Otherwise all
+ * symbols are detected in the whole image first, and then decoded in
+ * parallel. The detection of a single tile can fail, where the search in the
+ * whole image finds the symbol, so callers fall back to {@link #decodeAll}, if
+ * the tiles can't be decoded.
+ */
+public class QRCodeSheetDecoder {
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+    /** Result of a tile, which isn't blank, but can't be decoded */
+    private static final DecoderResult MISSING = new DecoderResult(null, null, null, null);
+
+    /* private constructor: static class */
+    private QRCodeSheetDecoder() {
+    }
+
+    /**
+     * Decodes the symbols of a sheet, which was cut out of an image. Blank
+     * tiles are skipped.
+     *
+     * @param sheet
+     *            image with the symbols arranged like by the
+     *            {@link QRCodeSheetEncoder}
+     * @param symbolSize
+     *            pixel size of a tile
+     * @return decoded symbols in the order of the tiles
+     * @throws NotFoundException
+     *             if a tile, which isn't blank, can't be decoded, or all tiles
+     *             are blank
+     */
+    public static List<DecoderResult> decodeTiles(final BufferedImage sheet, int symbolSize) throws NotFoundException {
+	int columns = Math.max(1, sheet.getWidth() / symbolSize);
+	int rows = Math.max(1, sheet.getHeight() / symbolSize);
+	List<Callable<DecoderResult>> tasks = new ArrayList<Callable<DecoderResult>>();
+	for (int index = 0; index < columns * rows; index++) {
+	    final Rectangle tile = new Rectangle(index % columns * symbolSize, index / columns * symbolSize,
+		    symbolSize, symbolSize).intersection(new Rectangle(0, 0, sheet.getWidth(), sheet.getHeight()));
+	    tasks.add(new Callable<DecoderResult>() {
+		@Override
+		public DecoderResult call() {
+		    BufferedImageLuminanceSource luminance = new BufferedImageLuminanceSource(sheet, tile.x, tile.y,
+			    tile.width, tile.height);
+		    BitMatrix bits = null;
+		    try {
+			bits = new HybridBinarizer(luminance).getBlackMatrix();
+			return decode(new Detector(bits).detect(null));
+		    } catch (ReaderException e) {
+			// Tiles without black pixels are blank.
+			return bits == null || bits.getTopLeftOnBit() == null ? null : MISSING;
+		    }
+		}
+	    });
+	}
+	return invokeAll(tasks);
+    }
+
+    /**
+     * Detects all symbols of the image, and decodes them in parallel.
+     *
+     * @param image
+     * @return decoded symbols
+     * @throws NotFoundException
+     *             if no readable symbol was found
+     */
+    public static List<DecoderResult> decodeAll(BinaryBitmap image) throws NotFoundException {
+	BitMatrix bits = image.getBlackMatrix();
+	List<Callable<DecoderResult>> tasks = new ArrayList<Callable<DecoderResult>>();
+	try {
+	    for (final DetectorResult symbol : new MultiDetector(bits).detectMulti(null)) {
+		tasks.add(new Callable<DecoderResult>() {
+		    @Override
+		    public DecoderResult call() {
+			try {
+			    return decode(symbol);
+			} catch (ReaderException e) {
+			    return null; // false detection
+			}
+		    }
+		});
+	    }
+	    return invokeAll(tasks);
+	} catch (NotFoundException e) {
+	    // The multi detector misses single symbols, which the detector finds.
+	    try {
+		List<DecoderResult> results = new ArrayList<DecoderResult>();
+		results.add(decode(new Detector(bits).detect(null)));
+		return results;
+	    } catch (ReaderException e2) {
+		throw NotFoundException.getNotFoundInstance();
+	    }
+	}
+    }
+
+    private static DecoderResult decode(DetectorResult symbol) throws ReaderException {
+	return new Decoder().decode(symbol.getBits());
+    }
+
+    /**
+     * Runs the tasks on the pool, and collects the symbols, which could be
+     * decoded. Tasks return null for symbols, which can be skipped, and
+     * {@link #MISSING} for symbols, which can't be decoded.
+     */
+    private static List<DecoderResult> invokeAll(List<Callable<DecoderResult>> tasks) throws NotFoundException {
+	List<DecoderResult> results = new ArrayList<DecoderResult>();
+	for (Future<DecoderResult> future : POOL.invokeAll(tasks)) {
+	    try {
+		if (future.get() == MISSING) {
+		    throw NotFoundException.getNotFoundInstance();
+		} else if (future.get() != null) {
+		    results.add(future.get());
+		}
+	    } catch (ExecutionException e) {
+		throw new IllegalStateException(e.getCause());
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		throw NotFoundException.getNotFoundInstance();
+	    }
+	}
+	if (results.isEmpty()) {
+	    throw NotFoundException.getNotFoundInstance();
+	}
+	return results;
+    }
+
+    /**
+     * Puts the data of a structured append sequence together. The symbols can
+     * be in any order, and may contain duplicates.
+     *
+     * @param symbols
+     *            decoded symbols of one sequence
+     * @return data of all symbols in the order of the sequence
+     * @throws IOException
+     *             if symbols of the sequence are missing, or the parity is
+     *             wrong
+     */
+    public static byte[] joinStructuredAppend(List<DecoderResult> symbols) throws IOException {
+	byte[][] parts = null;
+	int parity = 0;
+	for (DecoderResult symbol : symbols) {
+	    if (!symbol.hasStructuredAppend()) {
+		continue;
+	    }
+	    int sequence = symbol.getStructuredAppendSequenceNumber();
+	    if (parts == null) {
+		parts = new byte[(sequence & 0xF) + 1][];
+	    }
+	    if ((sequence >> 4) >= parts.length) {
+		throw new IOException("The QR-codes belong to different structured append sequences.");
+	    }
+	    parts[sequence >> 4] = getBytes(symbol);
+	    parity = symbol.getStructuredAppendParity();
+	}
+	if (parts == null) {
+	    throw new IOException("No QR-code of a structured append sequence was found.");
+	}
+	ByteArrayOutputStream data = new ByteArrayOutputStream();
+	for (int i = 0; i < parts.length; i++) {
+	    if (parts[i] == null) {
+		throw new IOException("QR-code " + (i + 1) + " of " + parts.length + " wasn't found.");
+	    }
+	    data.write(parts[i]);
+	}
+	if (QRCodeSymbolEncoder.getParity(data.toByteArray()) != parity) {
+	    throw new IOException("The parity of the QR-codes is wrong.");
+	}
+	return data.toByteArray();
+    }
+
+    /**
+     * Gets the bytes of a symbol, which were encoded in byte mode.
+     */
+    private static byte[] getBytes(DecoderResult symbol) throws IOException {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	if (symbol.getByteSegments() != null) {
+	    for (byte[] segment : symbol.getByteSegments()) {
+		bytes.write(segment);
+	    }
+	}
+	return bytes.toByteArray();
+    }
+}
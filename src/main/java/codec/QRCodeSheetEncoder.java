@@ -0,0 +1,227 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+/**
+ * Splits data, which is too big for one QR-code, into a structured append
+ * sequence of up to {@link QRCodeSymbolEncoder#MAX_SYMBOLS} symbols, and tiles
+ * the symbols row by row into one image: the sheet.
+ *
+ * All symbols have the same pixel size and the same version: the largest
+ * version, whose modules are still at least {@link #MIN_MODULE_SIZE} pixels
+ * wide. The symbols are encoded in parallel on a fork/join pool. Each task
+ * draws its symbol directly into its own tile of the sheet's pixel array.
+ */
+public class QRCodeSheetEncoder {
+    /** Width of the light border around each symbol, in modules */
+    public static final int QUIET_ZONE = 4;
+    /** Minimum width of a module in pixels */
+    public static final int MIN_MODULE_SIZE = 2;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final int symbolSize;
+    private final ErrorCorrectionLevel level;
+    private final int version;
+
+    /**
+     * @param symbolSize
+     *            width and height of each symbol in pixels, including the
+     *            quiet zone
+     * @param level
+     *            error correction level of the symbols
+     * @throws WriterException
+     *             if the size is too small for a QR-code
+     */
+    public QRCodeSheetEncoder(int symbolSize, ErrorCorrectionLevel level) throws WriterException {
+	this.symbolSize = symbolSize;
+	this.level = level;
+	int modules = symbolSize / MIN_MODULE_SIZE - 2 * QUIET_ZONE;
+	version = Math.min(40, (modules - 17) / 4);
+	if (version < 1) {
+	    throw new WriterException("The QR-code size " + symbolSize + " is too small.");
+	}
+    }
+
+    /**
+     * @return QR-code version of the symbols
+     */
+    public int getVersion() {
+	return version;
+    }
+
+    /**
+     * @return number of data bytes per symbol
+     */
+    public int getSymbolCapacity() {
+	return QRCodeSymbolEncoder.getCapacity(version, level);
+    }
+
+    /**
+     * @return maximum number of data bytes of a sheet
+     */
+    public int getSheetCapacity() {
+	return QRCodeSymbolEncoder.MAX_SYMBOLS * getSymbolCapacity();
+    }
+
+    /**
+     * @param length
+     *            number of data bytes
+     * @return number of symbols needed for the data
+     */
+    public int getSymbolCount(int length) {
+	return Math.max(1, (length + getSymbolCapacity() - 1) / getSymbolCapacity());
+    }
+
+    /**
+     * Returns the position of a symbol on a sheet. The symbols are arranged in
+     * a square grid, or a grid with one column more than rows, from left to
+     * right and top to bottom.
+     *
+     * @param index
+     *            of the symbol in the sequence
+     * @param count
+     *            number of symbols on the sheet
+     * @param symbolSize
+     *            pixel size of a symbol
+     * @return bounds of the symbol, including its quiet zone
+     */
+    public static Rectangle getSymbolBounds(int index, int count, int symbolSize) {
+	int columns = getColumns(count);
+	return new Rectangle(index % columns * symbolSize, index / columns * symbolSize, symbolSize, symbolSize);
+    }
+
+    private static int getColumns(int count) {
+	return (int) Math.ceil(Math.sqrt(count));
+    }
+
+    /**
+     * Encodes the data into a sheet of QR-codes.
+     *
+     * @param data
+     * @return image with black modules on white background
+     * @throws WriterException
+     *             if the data doesn't fit into {@link #getSheetCapacity()}
+     */
+    public BufferedImage encode(byte[] data) throws WriterException {
+	int count = getSymbolCount(data.length);
+	if (count > QRCodeSymbolEncoder.MAX_SYMBOLS) {
+	    throw new WriterException("The data needs " + count + " QR-codes, but at most "
+		    + QRCodeSymbolEncoder.MAX_SYMBOLS + " can be combined.");
+	}
+	int columns = getColumns(count);
+	int rows = (count + columns - 1) / columns;
+	BufferedImage sheet = new BufferedImage(columns * symbolSize, rows * symbolSize, BufferedImage.TYPE_INT_RGB);
+	int[] pixels = ((DataBufferInt) sheet.getRaster().getDataBuffer()).getData();
+	Arrays.fill(pixels, Color.WHITE.getRGB());
+	try {
+	    POOL.invoke(new SymbolTask(data, QRCodeSymbolEncoder.getParity(data), count, 0, count, pixels,
+		    sheet.getWidth()));
+	} catch (IllegalStateException e) {
+	    // The pool may rethrow a copy of the worker's exception, whose cause
+	    // is the original exception:
+	    for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+		if (cause instanceof WriterException) {
+		    throw (WriterException) cause;
+		}
+	    }
+	    throw e;
+	}
+	return sheet;
+    }
+
+    /**
+     * Draws the modules of a symbol into its tile.
+     */
+    private void drawSymbol(BitMatrix symbol, Rectangle tile, int[] pixels, int sheetWidth) {
+	int moduleSize = symbolSize / (symbol.getWidth() + 2 * QUIET_ZONE);
+	int offset = (symbolSize - symbol.getWidth() * moduleSize) / 2;
+	int black = Color.BLACK.getRGB();
+	for (int y = 0; y < symbol.getHeight(); y++) {
+	    for (int x = 0; x < symbol.getWidth(); x++) {
+		if (!symbol.get(x, y)) {
+		    continue;
+		}
+		int left = tile.x + offset + x * moduleSize;
+		int top = tile.y + offset + y * moduleSize;
+		for (int row = top; row < top + moduleSize; row++) {
+		    Arrays.fill(pixels, row * sheetWidth + left, row * sheetWidth + left + moduleSize, black);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Encodes a range of symbols of the sequence, by splitting the range until
+     * only one symbol is left.
+     */
+    private class SymbolTask extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+	private final byte[] data;
+	private final int parity;
+	private final int count;
+	private final int from;
+	private final int to;
+	private final int[] pixels;
+	private final int sheetWidth;
+
+	SymbolTask(byte[] data, int parity, int count, int from, int to, int[] pixels, int sheetWidth) {
+	    this.data = data;
+	    this.parity = parity;
+	    this.count = count;
+	    this.from = from;
+	    this.to = to;
+	    this.pixels = pixels;
+	    this.sheetWidth = sheetWidth;
+	}
+
+	@Override
+	protected void compute() {
+	    if (to - from > 1) {
+		int middle = (from + to) / 2;
+		invokeAll(new SymbolTask(data, parity, count, from, middle, pixels, sheetWidth),
+			new SymbolTask(data, parity, count, middle, to, pixels, sheetWidth));
+		return;
+	    }
+	    int offset = from * getSymbolCapacity();
+	    int length = Math.min(getSymbolCapacity(), data.length - offset);
+	    try {
+		BitMatrix symbol = QRCodeSymbolEncoder.encode(data, offset, length, from, count, parity, version,
+			level);
+		drawSymbol(symbol, getSymbolBounds(from, count, symbolSize), pixels, sheetWidth);
+	    } catch (WriterException e) {
+		throw new IllegalStateException(e);
+	    }
+	}
+    }
+
+}
@@ -0,0 +1,464 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.util.Arrays;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.reedsolomon.GenericGF;
+import com.google.zxing.common.reedsolomon.ReedSolomonEncoder;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Version;
+
+/**
+ * Encodes binary data into one QR-code symbol of a structured append sequence,
+ * as specified by ISO/IEC 18004.
+ *
+ * The ZXing encoder can't write the structured append header, so the symbol is
+ * built here: the header, the data in byte mode and the padding are split into
+ * the error correction blocks of the version, Reed-Solomon codewords are added
+ * with ZXing, and the interleaved codewords are placed into the module matrix
+ * together with the function patterns. Of the eight data masks, the one with
+ * the lowest penalty score is used, like in the ZXing encoder. ZXing decodes
+ * the symbols, and reports the position in the sequence as result metadata.
+ */
+public class QRCodeSymbolEncoder {
+    /** Maximum number of symbols in a structured append sequence */
+    public static final int MAX_SYMBOLS = 16;
+
+    private static final int MODE_STRUCTURED_APPEND = 0x3;
+    private static final int MODE_BYTE = 0x4;
+    private static final int FORMAT_INFO_POLY = 0x537;
+    private static final int FORMAT_INFO_MASK = 0x5412;
+    private static final int VERSION_INFO_POLY = 0x1F25;
+    private static final int[][] FORMAT_INFO_COORDINATES = { { 8, 0 }, { 8, 1 }, { 8, 2 }, { 8, 3 }, { 8, 4 },
+	    { 8, 5 }, { 8, 7 }, { 8, 8 }, { 7, 8 }, { 5, 8 }, { 4, 8 }, { 3, 8 }, { 2, 8 }, { 1, 8 }, { 0, 8 } };
+    private static final byte EMPTY = -1;
+
+    /* private constructor: static class */
+    private QRCodeSymbolEncoder() {
+    }
+
+    /**
+     * Returns the number of data bytes, which fit into one symbol of a
+     * structured append sequence.
+     *
+     * @param version
+     *            QR-code version from 1 to 40
+     * @param level
+     * @return capacity in bytes
+     */
+    public static int getCapacity(int version, ErrorCorrectionLevel level) {
+	Version qrVersion = Version.getVersionForNumber(version);
+	int dataCodewords = qrVersion.getTotalCodewords() - qrVersion.getECBlocksForLevel(level).getTotalECCodewords();
+	// 20 bits structured append header, 4 bits mode and the character
+	// count:
+	return dataCodewords - 3 - getCharacterCountBits(version) / 8;
+    }
+
+    /**
+     * Computes the parity byte of the structured append header: all bytes of
+     * the complete data, combined with XOR.
+     *
+     * @param data
+     * @return parity
+     */
+    public static int getParity(byte[] data) {
+	int parity = 0;
+	for (byte value : data) {
+	    parity ^= value;
+	}
+	return parity & 0xFF;
+    }
+
+    /**
+     * Encodes a part of the data into a symbol.
+     *
+     * @param data
+     * @param offset
+     *            start of the part, which is stored in this symbol
+     * @param length
+     *            length of the part, at most {@link #getCapacity}
+     * @param index
+     *            position of the symbol in the sequence, from 0
+     * @param count
+     *            number of symbols in the sequence, at most
+     *            {@link #MAX_SYMBOLS}
+     * @param parity
+     *            {@link #getParity(byte[])} of the complete data
+     * @param version
+     * @param level
+     * @return modules of the symbol, without quiet zone. Set bits are dark.
+     * @throws WriterException
+     *             if the data doesn't fit into the symbol
+     */
+    public static BitMatrix encode(byte[] data, int offset, int length, int index, int count, int parity, int version,
+	    ErrorCorrectionLevel level) throws WriterException {
+	if (count < 1 || count > MAX_SYMBOLS || index < 0 || index >= count) {
+	    throw new WriterException("Invalid structured append position " + index + " of " + count);
+	}
+	if (length > getCapacity(version, level)) {
+	    throw new WriterException("Data too big for a symbol of version " + version);
+	}
+	Version qrVersion = Version.getVersionForNumber(version);
+	int dataCodewords = qrVersion.getTotalCodewords() - qrVersion.getECBlocksForLevel(level).getTotalECCodewords();
+	BitArray bits = new BitArray();
+	bits.appendBits(MODE_STRUCTURED_APPEND, 4);
+	bits.appendBits(index, 4);
+	bits.appendBits(count - 1, 4);
+	bits.appendBits(parity, 8);
+	bits.appendBits(MODE_BYTE, 4);
+	bits.appendBits(length, getCharacterCountBits(version));
+	for (int i = offset; i < offset + length; i++) {
+	    bits.appendBits(data[i] & 0xFF, 8);
+	}
+	terminate(bits, dataCodewords);
+	BitArray codewords = interleaveWithECBytes(bits, qrVersion, level);
+	byte[][] bestMatrix = null;
+	int bestPenalty = Integer.MAX_VALUE;
+	for (int mask = 0; mask < 8; mask++) {
+	    byte[][] matrix = buildMatrix(codewords, qrVersion, level, mask);
+	    int penalty = getPenalty(matrix);
+	    if (penalty < bestPenalty) {
+		bestPenalty = penalty;
+		bestMatrix = matrix;
+	    }
+	}
+	return toBitMatrix(bestMatrix);
+    }
+
+    private static int getCharacterCountBits(int version) {
+	return version < 10 ? 8 : 16;
+    }
+
+    /**
+     * Adds the terminator, fills up the last byte, and appends the pad
+     * codewords.
+     */
+    private static void terminate(BitArray bits, int dataCodewords) {
+	int capacity = dataCodewords * 8;
+	for (int i = 0; i < 4 && bits.getSize() < capacity; i++) {
+	    bits.appendBit(false);
+	}
+	while (bits.getSize() % 8 != 0) {
+	    bits.appendBit(false);
+	}
+	for (int i = 0; bits.getSize() < capacity; i++) {
+	    bits.appendBits(i % 2 == 0 ? 0xEC : 0x11, 8);
+	}
+    }
+
+    /**
+     * Splits the data codewords into the blocks of the version, computes the
+     * error correction codewords of each block, and interleaves all codewords.
+     */
+    private static BitArray interleaveWithECBytes(BitArray bits, Version version, ErrorCorrectionLevel level) {
+	Version.ECBlocks ecBlocks = version.getECBlocksForLevel(level);
+	int ecCodewords = ecBlocks.getECCodewordsPerBlock();
+	int[][] dataBlocks = new int[ecBlocks.getNumBlocks()][];
+	int[][] ecBlocksBytes = new int[ecBlocks.getNumBlocks()][];
+	byte[] dataBytes = new byte[bits.getSizeInBytes()];
+	bits.toBytes(0, dataBytes, 0, dataBytes.length);
+	ReedSolomonEncoder encoder = new ReedSolomonEncoder(GenericGF.QR_CODE_FIELD_256);
+	int block = 0;
+	int offset = 0;
+	int maxDataLength = 0;
+	for (Version.ECB ecb : ecBlocks.getECBlocks()) {
+	    for (int i = 0; i < ecb.getCount(); i++) {
+		int dataLength = ecb.getDataCodewords();
+		int[] toEncode = new int[dataLength + ecCodewords];
+		for (int j = 0; j < dataLength; j++) {
+		    toEncode[j] = dataBytes[offset + j] & 0xFF;
+		}
+		encoder.encode(toEncode, ecCodewords);
+		dataBlocks[block] = new int[dataLength];
+		ecBlocksBytes[block] = new int[ecCodewords];
+		System.arraycopy(toEncode, 0, dataBlocks[block], 0, dataLength);
+		System.arraycopy(toEncode, dataLength, ecBlocksBytes[block], 0, ecCodewords);
+		maxDataLength = Math.max(maxDataLength, dataLength);
+		offset += dataLength;
+		block++;
+	    }
+	}
+	BitArray result = new BitArray();
+	for (int i = 0; i < maxDataLength; i++) {
+	    for (int[] dataBlock : dataBlocks) {
+		if (i < dataBlock.length) {
+		    result.appendBits(dataBlock[i], 8);
+		}
+	    }
+	}
+	for (int i = 0; i < ecCodewords; i++) {
+	    for (int[] ecBlock : ecBlocksBytes) {
+		result.appendBits(ecBlock[i], 8);
+	    }
+	}
+	return result;
+    }
+
+    /**
+     * Builds the module matrix of the symbol. The matrix is indexed by
+     * [y][x]: 1 is a dark module, 0 a light module.
+     */
+    private static byte[][] buildMatrix(BitArray codewords, Version version, ErrorCorrectionLevel level, int mask) {
+	int dimension = version.getDimensionForVersion();
+	byte[][] matrix = new byte[dimension][dimension];
+	for (byte[] row : matrix) {
+	    Arrays.fill(row, EMPTY);
+	}
+	embedFinderPattern(matrix, 0, 0);
+	embedFinderPattern(matrix, dimension - 7, 0);
+	embedFinderPattern(matrix, 0, dimension - 7);
+	matrix[dimension - 8][8] = 1;
+	int[] centers = version.getAlignmentPatternCenters();
+	for (int y : centers) {
+	    for (int x : centers) {
+		if (matrix[y][x] == EMPTY) {
+		    embedAlignmentPattern(matrix, x, y);
+		}
+	    }
+	}
+	for (int i = 8; i < dimension - 8; i++) {
+	    byte bit = (byte) ((i + 1) % 2);
+	    if (matrix[6][i] == EMPTY) {
+		matrix[6][i] = bit;
+	    }
+	    if (matrix[i][6] == EMPTY) {
+		matrix[i][6] = bit;
+	    }
+	}
+	embedFormatInfo(matrix, level, mask);
+	embedVersionInfo(matrix, version);
+	embedDataBits(matrix, codewords, mask);
+	return matrix;
+    }
+
+    /**
+     * Embeds a finder pattern with its separator. x and y are the upper left
+     * corner of the pattern.
+     */
+    private static void embedFinderPattern(byte[][] matrix, int x, int y) {
+	for (int dy = -1; dy <= 7; dy++) {
+	    for (int dx = -1; dx <= 7; dx++) {
+		int mx = x + dx;
+		int my = y + dy;
+		if (mx < 0 || my < 0 || mx >= matrix.length || my >= matrix.length) {
+		    continue;
+		}
+		int distance = Math.max(Math.abs(dx - 3), Math.abs(dy - 3));
+		matrix[my][mx] = (byte) (distance == 2 || distance == 4 ? 0 : 1);
+	    }
+	}
+    }
+
+    /**
+     * Embeds an alignment pattern at its center x, y.
+     */
+    private static void embedAlignmentPattern(byte[][] matrix, int x, int y) {
+	for (int dy = -2; dy <= 2; dy++) {
+	    for (int dx = -2; dx <= 2; dx++) {
+		matrix[y + dy][x + dx] = (byte) (Math.max(Math.abs(dx), Math.abs(dy)) == 1 ? 0 : 1);
+	    }
+	}
+    }
+
+    private static void embedFormatInfo(byte[][] matrix, ErrorCorrectionLevel level, int mask) {
+	int formatInfo = level.getBits() << 3 | mask;
+	int bits = (formatInfo << 10 | getBCHCode(formatInfo, FORMAT_INFO_POLY)) ^ FORMAT_INFO_MASK;
+	int dimension = matrix.length;
+	for (int i = 0; i < 15; i++) {
+	    byte bit = (byte) (bits >> i & 1);
+	    matrix[FORMAT_INFO_COORDINATES[i][1]][FORMAT_INFO_COORDINATES[i][0]] = bit;
+	    if (i < 8) {
+		matrix[8][dimension - i - 1] = bit;
+	    } else {
+		matrix[dimension - 7 + (i - 8)][8] = bit;
+	    }
+	}
+    }
+
+    private static void embedVersionInfo(byte[][] matrix, Version version) {
+	int versionNumber = version.getVersionNumber();
+	if (versionNumber < 7) {
+	    return;
+	}
+	int bits = versionNumber << 12 | getBCHCode(versionNumber, VERSION_INFO_POLY);
+	int dimension = matrix.length;
+	int bitIndex = 0;
+	for (int i = 0; i < 6; i++) {
+	    for (int j = 0; j < 3; j++) {
+		byte bit = (byte) (bits >> bitIndex++ & 1);
+		matrix[dimension - 11 + j][i] = bit;
+		matrix[i][dimension - 11 + j] = bit;
+	    }
+	}
+    }
+
+    /**
+     * Computes the BCH error correction bits of format and version
+     * information.
+     */
+    private static int getBCHCode(int value, int poly) {
+	int polyLength = 32 - Integer.numberOfLeadingZeros(poly);
+	value <<= polyLength - 1;
+	while (32 - Integer.numberOfLeadingZeros(value) >= polyLength) {
+	    value ^= poly << (32 - Integer.numberOfLeadingZeros(value) - polyLength);
+	}
+	return value;
+    }
+
+    /**
+     * Places the codewords in two module wide columns from the lower right
+     * corner, upwards and downwards in turn, and applies the data mask.
+     * Modules left over after the last codeword are light before masking.
+     */
+    private static void embedDataBits(byte[][] matrix, BitArray codewords, int mask) {
+	int dimension = matrix.length;
+	int bitIndex = 0;
+	int direction = -1;
+	int y = dimension - 1;
+	for (int x = dimension - 1; x > 0; x -= 2) {
+	    if (x == 6) {
+		// skip the vertical timing pattern
+		x--;
+	    }
+	    while (y >= 0 && y < dimension) {
+		for (int i = 0; i < 2; i++) {
+		    int xx = x - i;
+		    if (matrix[y][xx] != EMPTY) {
+			continue;
+		    }
+		    boolean bit = bitIndex < codewords.getSize() && codewords.get(bitIndex++);
+		    if (isMasked(mask, xx, y)) {
+			bit = !bit;
+		    }
+		    matrix[y][xx] = (byte) (bit ? 1 : 0);
+		}
+		y += direction;
+	    }
+	    direction = -direction;
+	    y += direction;
+	}
+    }
+
+    private static boolean isMasked(int mask, int x, int y) {
+	switch (mask) {
+	case 0:
+	    return ((y + x) & 1) == 0;
+	case 1:
+	    return (y & 1) == 0;
+	case 2:
+	    return x % 3 == 0;
+	case 3:
+	    return (y + x) % 3 == 0;
+	case 4:
+	    return ((y / 2 + x / 3) & 1) == 0;
+	case 5:
+	    return (y * x & 1) + y * x % 3 == 0;
+	case 6:
+	    return ((y * x & 1) + y * x % 3 & 1) == 0;
+	default:
+	    return (y * x % 3 + (y + x & 1) & 1) == 0;
+	}
+    }
+
+    /**
+     * Computes the penalty score of the four mask evaluation rules of the
+     * specification: runs of modules with the same colour, 2x2 blocks,
+     * patterns which look like finder patterns, and the balance of dark and
+     * light modules.
+     */
+    private static int getPenalty(byte[][] matrix) {
+	int dimension = matrix.length;
+	int penalty = 0;
+	int dark = 0;
+	for (int i = 0; i < dimension; i++) {
+	    int rowRun = 1;
+	    int columnRun = 1;
+	    for (int j = 0; j < dimension; j++) {
+		dark += matrix[i][j];
+		if (j > 0) {
+		    rowRun = matrix[i][j] == matrix[i][j - 1] ? rowRun + 1 : 1;
+		    columnRun = matrix[j][i] == matrix[j - 1][i] ? columnRun + 1 : 1;
+		    penalty += rowRun == 5 ? 3 : rowRun > 5 ? 1 : 0;
+		    penalty += columnRun == 5 ? 3 : columnRun > 5 ? 1 : 0;
+		}
+		if (i > 0 && j > 0 && matrix[i][j] == matrix[i - 1][j] && matrix[i][j] == matrix[i][j - 1]
+			&& matrix[i][j] == matrix[i - 1][j - 1]) {
+		    penalty += 3;
+		}
+		if (j + 6 < dimension && isFinderLike(matrix, i, j, true)) {
+		    penalty += 40;
+		}
+		if (j + 6 < dimension && isFinderLike(matrix, j, i, false)) {
+		    penalty += 40;
+		}
+	    }
+	}
+	int total = dimension * dimension;
+	penalty += Math.abs(dark * 2 - total) * 10 / total * 10;
+	return penalty;
+    }
+
+    /**
+     * Checks for the pattern dark-light-dark-dark-dark-light-dark with four
+     * light modules before or after it, in a row or a column.
+     */
+    private static boolean isFinderLike(byte[][] matrix, int y, int x, boolean horizontal) {
+	int[] pattern = { 1, 0, 1, 1, 1, 0, 1 };
+	for (int k = 0; k < pattern.length; k++) {
+	    if (get(matrix, y, x, k, horizontal) != pattern[k]) {
+		return false;
+	    }
+	}
+	return isLight(matrix, y, x, -4, horizontal) || isLight(matrix, y, x, 7, horizontal);
+    }
+
+    private static boolean isLight(byte[][] matrix, int y, int x, int from, boolean horizontal) {
+	int start = (horizontal ? x : y) + from;
+	if (start < 0 || start + 4 > matrix.length) {
+	    return false;
+	}
+	for (int k = from; k < from + 4; k++) {
+	    if (get(matrix, y, x, k, horizontal) != 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    private static int get(byte[][] matrix, int y, int x, int offset, boolean horizontal) {
+	return horizontal ? matrix[y][x + offset] : matrix[y + offset][x];
+    }
+
+    private static BitMatrix toBitMatrix(byte[][] matrix) {
+	BitMatrix bitMatrix = new BitMatrix(matrix.length);
+	for (int y = 0; y < matrix.length; y++) {
+	    for (int x = 0; x < matrix.length; x++) {
+		if (matrix[y][x] == 1) {
+		    bitMatrix.set(x, y);
+		}
+	    }
+	}
+	return bitMatrix;
+    }
+}
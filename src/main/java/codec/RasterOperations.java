@@ -0,0 +1,218 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.IndexColorModel;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * Bulk pixel operations on the rasters of buffered images. Instead of setting
+ * each pixel with {@link BufferedImage#setRGB(int, int, int)}, or drawing with
+ * the generic {@link Graphics} pipeline, whole scanlines are copied with
+ * {@link System#arraycopy(Object, int, Object, int, int)} on the data arrays of
+ * the images, if their memory layout allows this.
+ */
+public class RasterOperations {
+
+    /* private constructor: static class */
+    private RasterOperations() {
+    }
+
+    /**
+     * Sets all pixels of the image to one colour.
+     *
+     * @param image
+     * @param rgb
+     *            colour in the default sRGB ARGB format
+     */
+    public static void fill(BufferedImage image, int rgb) {
+	WritableRaster raster = image.getRaster();
+	int width = raster.getWidth();
+	int height = raster.getHeight();
+	if (width == 0 || height == 0) {
+	    return;
+	}
+	Object pixel = image.getColorModel().getDataElements(rgb, null);
+	int pixelStride = getPixelStride(raster);
+	if (pixelStride == 1 && raster.getDataBuffer() instanceof DataBufferInt
+		&& getScanlineStride(raster) == width) {
+	    Arrays.fill(((DataBufferInt) raster.getDataBuffer()).getData(), 0, width * height, ((int[]) pixel)[0]);
+	    return;
+	}
+	for (int x = 0; x < width; x++) {
+	    raster.setDataElements(x, 0, pixel);
+	}
+	if (pixelStride > 0) {
+	    Object data = getData(raster.getDataBuffer());
+	    int scanlineStride = getScanlineStride(raster);
+	    for (int y = 1; y < height; y++) {
+		System.arraycopy(data, 0, data, y * scanlineStride, width * pixelStride);
+	    }
+	} else {
+	    Object row = raster.getDataElements(0, 0, width, 1, null);
+	    for (int y = 1; y < height; y++) {
+		raster.setDataElements(0, y, width, 1, row);
+	    }
+	}
+    }
+
+    /**
+     * Copies all pixels of the source image into the target image. The pixels
+     * replace the target pixels, they are not blended with them. Pixels
+     * outside of the target image are ignored.
+     *
+     * If both images have the same colour model and memory layout, the
+     * scanlines are copied directly. Otherwise the images are converted by
+     * {@link Graphics#drawImage(java.awt.Image, int, int, java.awt.image.ImageObserver)}
+     * with the {@link AlphaComposite#Src} rule, so translucent source pixels
+     * aren't blended either.
+     *
+     * @param source
+     * @param target
+     * @param x
+     *            horizontal position of the source in the target image
+     * @param y
+     *            vertical position of the source in the target image
+     */
+    public static void copy(BufferedImage source, BufferedImage target, int x, int y) {
+	Rectangle area = new Rectangle(x, y, source.getWidth(), source.getHeight())
+		.intersection(new Rectangle(0, 0, target.getWidth(), target.getHeight()));
+	if (area.isEmpty()) {
+	    return;
+	}
+	if (!haveSameColours(source, target)) {
+	    Graphics2D graphics = target.createGraphics();
+	    graphics.setComposite(AlphaComposite.Src);
+	    graphics.drawImage(source, x, y, null);
+	    graphics.dispose();
+	    return;
+	}
+	WritableRaster sourceRaster = source.getRaster();
+	WritableRaster targetRaster = target.getRaster();
+	int pixelStride = getPixelStride(sourceRaster);
+	if (pixelStride > 0 && haveSameLayout(sourceRaster, targetRaster)) {
+	    Object sourceData = getData(sourceRaster.getDataBuffer());
+	    Object targetData = getData(targetRaster.getDataBuffer());
+	    int sourceStride = getScanlineStride(sourceRaster);
+	    int targetStride = getScanlineStride(targetRaster);
+	    int length = area.width * pixelStride;
+	    for (int row = area.y; row < area.y + area.height; row++) {
+		System.arraycopy(sourceData, (row - y) * sourceStride + (area.x - x) * pixelStride, targetData,
+			row * targetStride + area.x * pixelStride, length);
+	    }
+	} else {
+	    targetRaster.setDataElements(area.x, area.y,
+		    sourceRaster.createChild(area.x - x, area.y - y, area.width, area.height, 0, 0, null));
+	}
+    }
+
+    /**
+     * Pixels can be copied without conversion, if both images have the same
+     * direct colour model. Indexed images are excluded, because their palettes
+     * can differ.
+     */
+    private static boolean haveSameColours(BufferedImage source, BufferedImage target) {
+	ColorModel colorModel = source.getColorModel();
+	return !(colorModel instanceof IndexColorModel) && colorModel.equals(target.getColorModel())
+		&& source.getSampleModel().getTransferType() == target.getSampleModel().getTransferType()
+		&& source.getSampleModel().getNumDataElements() == target.getSampleModel().getNumDataElements();
+    }
+
+    private static boolean haveSameLayout(WritableRaster source, WritableRaster target) {
+	if (getPixelStride(target) != getPixelStride(source)
+		|| source.getDataBuffer().getDataType() != target.getDataBuffer().getDataType()) {
+	    return false;
+	}
+	SampleModel sourceModel = source.getSampleModel();
+	SampleModel targetModel = target.getSampleModel();
+	if (sourceModel.getClass() != targetModel.getClass()) {
+	    return false;
+	}
+	if (sourceModel instanceof SinglePixelPackedSampleModel) {
+	    return Arrays.equals(((SinglePixelPackedSampleModel) sourceModel).getBitMasks(),
+		    ((SinglePixelPackedSampleModel) targetModel).getBitMasks());
+	}
+	return Arrays.equals(((ComponentSampleModel) sourceModel).getBandOffsets(),
+		((ComponentSampleModel) targetModel).getBandOffsets());
+    }
+
+    /**
+     * Returns the number of array elements of one pixel, if the pixels of each
+     * scanline are stored contiguously in one array, beginning with the first
+     * array element. Otherwise 0 is returned.
+     */
+    private static int getPixelStride(WritableRaster raster) {
+	DataBuffer dataBuffer = raster.getDataBuffer();
+	if (raster.getParent() != null || raster.getSampleModelTranslateX() != 0
+		|| raster.getSampleModelTranslateY() != 0 || dataBuffer.getNumBanks() != 1
+		|| dataBuffer.getOffset() != 0 || getData(dataBuffer) == null) {
+	    return 0;
+	}
+	SampleModel sampleModel = raster.getSampleModel();
+	if (sampleModel instanceof SinglePixelPackedSampleModel) {
+	    return 1;
+	}
+	if (sampleModel instanceof PixelInterleavedSampleModel) {
+	    PixelInterleavedSampleModel interleavedModel = (PixelInterleavedSampleModel) sampleModel;
+	    int[] bandOffsets = interleavedModel.getBandOffsets();
+	    for (int bandOffset : bandOffsets) {
+		if (bandOffset >= interleavedModel.getPixelStride()) {
+		    return 0;
+		}
+	    }
+	    return interleavedModel.getPixelStride();
+	}
+	return 0;
+    }
+
+    private static int getScanlineStride(WritableRaster raster) {
+	SampleModel sampleModel = raster.getSampleModel();
+	if (sampleModel instanceof SinglePixelPackedSampleModel) {
+	    return ((SinglePixelPackedSampleModel) sampleModel).getScanlineStride();
+	}
+	return ((ComponentSampleModel) sampleModel).getScanlineStride();
+    }
+
+    private static Object getData(DataBuffer dataBuffer) {
+	if (dataBuffer instanceof DataBufferInt) {
+	    return ((DataBufferInt) dataBuffer).getData();
+	} else if (dataBuffer instanceof DataBufferByte) {
+	    return ((DataBufferByte) dataBuffer).getData();
+	} else if (dataBuffer instanceof DataBufferUShort) {
+	    return ((DataBufferUShort) dataBuffer).getData();
+	}
+	return null;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Works on the records of a file format, which consists of a sequence of
+ * length prefixed records, like the chunks of a PNG file or the marker segments
+ * of a JPEG file. The subclasses index the records of their format. This class
+ * reads their data, copies the file byte for byte with
+ * {@link FileChannel#transferTo}, and streams large data into, and out of, a
+ * sequence of records of bounded size.
+ *
+ * @param <R>
+ *            record type of the format
+ */
+public abstract class RecordStream<R extends RecordStream.Record> {
+    protected final FileChannel channel;
+    /** Records in file order, which are added by the subclass */
+    protected final List<R> records = new ArrayList<R>();
+    private final String format;
+
+    /**
+     * @param channel
+     *            of the file
+     * @param format
+     *            name of the file format for error messages, e.g. PNG
+     */
+    protected RecordStream(FileChannel channel, String format) {
+	this.channel = channel;
+	this.format = format;
+    }
+
+    protected void readFully(ByteBuffer buffer, long position) throws IOException {
+	while (buffer.hasRemaining()) {
+	    int count = channel.read(buffer, position);
+	    if (count < 0) {
+		throw new IOException("Unexpected end of the " + format + " file.");
+	    }
+	    position += count;
+	}
+    }
+
+    /**
+     * Reads the beginning of the data of a record, e.g. the keyword of a text
+     * chunk or the identifier of a segment.
+     *
+     * @param record
+     * @param maxLength
+     *            maximum number of bytes to read
+     * @return the first bytes of the record data
+     * @throws IOException
+     */
+    public byte[] readData(R record, int maxLength) throws IOException {
+	ByteBuffer data = ByteBuffer.allocate((int) Math.min(maxLength, record.getDataLength()));
+	readFully(data, record.getDataPosition());
+	return data.array();
+    }
+
+    /**
+     * Reads the complete data of a record.
+     *
+     * @param record
+     * @return record data without its header
+     * @throws IOException
+     */
+    public byte[] readData(R record) throws IOException {
+	return readData(record, (int) record.getDataLength());
+    }
+
+    /**
+     * Copies a byte range of the file to the output, without buffering it in
+     * the heap.
+     *
+     * @param position
+     * @param count
+     * @param output
+     * @throws IOException
+     */
+    public void transfer(long position, long count, WritableByteChannel output) throws IOException {
+	while (count > 0) {
+	    long transferred = channel.transferTo(position, count, output);
+	    if (transferred <= 0) {
+		throw new IOException("Unexpected end of the " + format + " file.");
+	    }
+	    position += transferred;
+	    count -= transferred;
+	}
+    }
+
+    /**
+     * Copies the whole file, but leaves out the removed records.
+     *
+     * @param output
+     * @param removedRecords
+     *            records of this stream
+     * @throws IOException
+     */
+    public void transferWithout(WritableByteChannel output, List<R> removedRecords) throws IOException {
+	long position = 0;
+	for (R record : records) {
+	    if (removedRecords.contains(record)) {
+		transfer(position, record.position - position, output);
+		position = record.getEnd();
+	    }
+	}
+	transfer(position, channel.size() - position, output);
+    }
+
+    /**
+     * Creates a stream over the data of several records of this file. The data
+     * is read in bounded blocks directly from the file.
+     *
+     * @param dataRecords
+     *            records of this stream in reading order
+     * @param skip
+     *            number of bytes at the start of each record's data, which
+     *            aren't part of the stream, e.g. a prefix
+     * @return concatenated record data
+     */
+    protected InputStream newRecordInputStream(List<R> dataRecords, int skip) {
+	return new RecordInputStream(new ArrayList<R>(dataRecords), skip);
+    }
+
+    protected static void writeFully(WritableByteChannel output, ByteBuffer buffer) throws IOException {
+	while (buffer.hasRemaining()) {
+	    output.write(buffer);
+	}
+    }
+
+    /**
+     * Splits the written bytes into records of bounded size. Only one record
+     * is buffered at a time. Closing the stream writes the last record, but
+     * doesn't close the output.
+     */
+    protected abstract static class RecordOutputStream extends OutputStream {
+	private final byte[] buffer;
+	private final int prefixLength;
+	private int length;
+	private boolean closed = false;
+
+	/**
+	 * @param prefix
+	 *            bytes at the start of the data of each record
+	 * @param maxLength
+	 *            maximum length of the record data, including the prefix
+	 */
+	protected RecordOutputStream(byte[] prefix, int maxLength) {
+	    buffer = Arrays.copyOf(prefix, maxLength);
+	    prefixLength = prefix.length;
+	    length = prefixLength;
+	}
+
+	/**
+	 * Writes a complete record with the data.
+	 */
+	protected abstract void writeRecord(byte[] data, int length) throws IOException;
+
+	@Override
+	public void write(int b) throws IOException {
+	    write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] data, int offset, int count) throws IOException {
+	    if (closed) {
+		throw new IOException("The record stream is closed.");
+	    }
+	    while (count > 0) {
+		if (length == buffer.length) {
+		    writeRecord(buffer, length);
+		    length = prefixLength;
+		}
+		int copied = Math.min(count, buffer.length - length);
+		System.arraycopy(data, offset, buffer, length, copied);
+		length += copied;
+		offset += copied;
+		count -= copied;
+	    }
+	}
+
+	@Override
+	public void close() throws IOException {
+	    if (!closed && length > prefixLength) {
+		writeRecord(buffer, length);
+	    }
+	    closed = true;
+	}
+    }
+
+    private class RecordInputStream extends InputStream {
+	private final List<R> dataRecords;
+	private final int skip;
+	private int recordIndex = -1;
+	private long position;
+	private long end;
+
+	RecordInputStream(List<R> dataRecords, int skip) {
+	    this.dataRecords = dataRecords;
+	    this.skip = skip;
+	}
+
+	@Override
+	public int read() throws IOException {
+	    byte[] b = new byte[1];
+	    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] data, int offset, int count) throws IOException {
+	    if (count == 0) {
+		return 0;
+	    }
+	    while (position >= end) {
+		if (++recordIndex >= dataRecords.size()) {
+		    return -1;
+		}
+		R record = dataRecords.get(recordIndex);
+		position = record.getDataPosition() + Math.min(skip, record.getDataLength());
+		end = record.getDataPosition() + record.getDataLength();
+	    }
+	    ByteBuffer buffer = ByteBuffer.wrap(data, offset, (int) Math.min(count, end - position));
+	    int read = channel.read(buffer, position);
+	    if (read < 0) {
+		throw new IOException("Unexpected end of the " + format + " file.");
+	    }
+	    position += read;
+	    return read;
+	}
+    }
+
+    /**
+     * Position and size of a record in the file.
+     */
+    public abstract static class Record {
+	/** Position of the first byte of the record */
+	public final long position;
+
+	protected Record(long position) {
+	    this.position = position;
+	}
+
+	/**
+	 * @return position of the first data byte
+	 */
+	public abstract long getDataPosition();
+
+	/**
+	 * @return number of data bytes
+	 */
+	public abstract long getDataLength();
+
+	/**
+	 * @return position after the last byte of the record
+	 */
+	public abstract long getEnd();
+    }
+}
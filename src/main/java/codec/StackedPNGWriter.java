@@ -0,0 +1,110 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ar.com.hjg.pngj.ImageInfo;
+import ar.com.hjg.pngj.ImageLineHelper;
+import ar.com.hjg.pngj.ImageLineInt;
+import ar.com.hjg.pngj.PngWriter;
+import ar.com.hjg.pngj.PngjException;
+
+/**
+ * Writes images one below the other into one PNG image. All images are left
+ * aligned, the width of the output image is the width of the widest image.
+ * Pixels right of narrower images are transparent, or black if no image has an
+ * alpha channel.
+ *
+ * The output image is never held in memory: PNGJ encodes it row by row, and
+ * each row is pulled on demand from the {@link ImageRowSource} of the image it
+ * belongs to. Therefore only a few scanlines are needed, independent of the
+ * size of the images.
+ */
+public class StackedPNGWriter {
+
+    /* private constructor: static class */
+    private StackedPNGWriter() {
+    }
+
+    /**
+     * Writes the images, from top to bottom in the order of the list, into the
+     * output PNG file. An existing output file is overwritten.
+     *
+     * @param images
+     * @param output
+     * @throws IOException
+     *             if an image can't be read, or the output can't be written
+     */
+    public static void write(List<File> images, File output) throws IOException {
+	List<ImageRowSource> sources = new ArrayList<ImageRowSource>();
+	try {
+	    int width = 0;
+	    int height = 0;
+	    boolean alpha = false;
+	    for (File image : images) {
+		ImageRowSource source = ImageRowSource.open(image);
+		sources.add(source);
+		width = Math.max(width, source.getWidth());
+		height += source.getHeight();
+		alpha |= source.hasAlpha();
+	    }
+	    if (width == 0 || height == 0) {
+		throw new IOException("There are no pixels to write to " + output);
+	    }
+	    write(sources, new ImageInfo(width, height, 8, alpha), output);
+	} catch (PngjException e) {
+	    throw new IOException("Can't write the PNG image " + output, e);
+	} finally {
+	    for (ImageRowSource source : sources) {
+		source.close();
+	    }
+	}
+    }
+
+    private static void write(List<ImageRowSource> sources, ImageInfo imageInfo, File output) throws IOException {
+	PngWriter writer = PNGEncoder.getDefault().createWriter(output, imageInfo);
+	try {
+	    ImageLineInt line = new ImageLineInt(imageInfo);
+	    int[] row = new int[imageInfo.cols];
+	    for (ImageRowSource source : sources) {
+		// readRow doesn't change the pixels right of the source image:
+		Arrays.fill(row, source.getWidth(), row.length, 0);
+		for (int y = 0; y < source.getHeight(); y++) {
+		    source.readRow(row);
+		    if (imageInfo.alpha) {
+			ImageLineHelper.setPixelsRGBA8(line, row);
+		    } else {
+			ImageLineHelper.setPixelsRGB8(line, row);
+		    }
+		    writer.writeRow(line);
+		}
+		source.close();
+	    }
+	    writer.end();
+	} finally {
+	    writer.close();
+	}
+    }
+}
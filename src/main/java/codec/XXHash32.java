@@ -0,0 +1,129 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import java.util.zip.Checksum;
+
+/**
+ * The 32 bit xxHash, which the LZ4 frame format uses for the header and
+ * content checksums, with the seed 0.
+ *
+ * https://github.com/Cyan4973/xxHash
+ */
+class XXHash32 implements Checksum {
+    private static final int PRIME1 = 0x9E3779B1;
+    private static final int PRIME2 = 0x85EBCA77;
+    private static final int PRIME3 = 0xC2B2AE3D;
+    private static final int PRIME4 = 0x27D4EB2F;
+    private static final int PRIME5 = 0x165667B1;
+
+    private final byte[] buffer = new byte[16];
+    private int bufferLength;
+    private int v1;
+    private int v2;
+    private int v3;
+    private int v4;
+    private long totalLength;
+
+    XXHash32() {
+	reset();
+    }
+
+    @Override
+    public void reset() {
+	v1 = PRIME1 + PRIME2;
+	v2 = PRIME2;
+	v3 = 0;
+	v4 = -PRIME1;
+	bufferLength = 0;
+	totalLength = 0;
+    }
+
+    @Override
+    public void update(int b) {
+	update(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+	totalLength += length;
+	int end = offset + length;
+	if (bufferLength > 0) {
+	    int count = Math.min(length, buffer.length - bufferLength);
+	    System.arraycopy(data, offset, buffer, bufferLength, count);
+	    bufferLength += count;
+	    offset += count;
+	    if (bufferLength < buffer.length) {
+		return;
+	    }
+	    processStripe(buffer, 0);
+	    bufferLength = 0;
+	}
+	for (; offset + 16 <= end; offset += 16) {
+	    processStripe(data, offset);
+	}
+	System.arraycopy(data, offset, buffer, 0, end - offset);
+	bufferLength = end - offset;
+    }
+
+    private void processStripe(byte[] data, int offset) {
+	v1 = round(v1, readInt(data, offset));
+	v2 = round(v2, readInt(data, offset + 4));
+	v3 = round(v3, readInt(data, offset + 8));
+	v4 = round(v4, readInt(data, offset + 12));
+    }
+
+    @Override
+    public long getValue() {
+	int hash;
+	if (totalLength >= 16) {
+	    hash = Integer.rotateLeft(v1, 1) + Integer.rotateLeft(v2, 7) + Integer.rotateLeft(v3, 12)
+		    + Integer.rotateLeft(v4, 18);
+	} else {
+	    hash = PRIME5;
+	}
+	hash += (int) totalLength;
+	int position = 0;
+	for (; position + 4 <= bufferLength; position += 4) {
+	    hash = Integer.rotateLeft(hash + readInt(buffer, position) * PRIME3, 17) * PRIME4;
+	}
+	for (; position < bufferLength; position++) {
+	    hash = Integer.rotateLeft(hash + (buffer[position] & 0xff) * PRIME5, 11) * PRIME1;
+	}
+	hash ^= hash >>> 15;
+	hash *= PRIME2;
+	hash ^= hash >>> 13;
+	hash *= PRIME3;
+	hash ^= hash >>> 16;
+	return hash & 0xffffffffL;
+    }
+
+    private static int round(int value, int input) {
+	return Integer.rotateLeft(value + input * PRIME2, 13) * PRIME1;
+    }
+
+    /**
+     * @return the little endian integer at the offset
+     */
+    static int readInt(byte[] data, int offset) {
+	return (data[offset] & 0xff) | (data[offset + 1] & 0xff) << 8 | (data[offset + 2] & 0xff) << 16
+		| (data[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * Format level helpers for the information encapsulation techniques. The
+ * classes of this package work directly on the coded representation of carrier
+ * files (e.g. the quantised DCT coefficients of a JPEG), so that the techniques
+ * of the {@link algorithm} package don't need a full decode and re-encode of
+ * their carriers.
+ */
+package codec;
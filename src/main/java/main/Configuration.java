@@ -38,6 +38,8 @@ import algorithm.BagItPackaging;
 import algorithm.F5Steganography;
 import algorithm.ImageImageFrameExpanding;
 import algorithm.ImageInformationEmbeddingFrame;
+import algorithm.IntegratedF5Steganography;
+import algorithm.JPEGSegmentAdding;
 import algorithm.JPEGTextAdding;
 import algorithm.MetsSubmissionInformationPackage;
 import algorithm.OaiOreSubmissionInformationPackage;
@@ -165,9 +167,11 @@ public class Configuration {
 	    algorithms.add(new TextInformationFrame());
 	    algorithms.add(new OpenStegoRandomLSBSteganography());
 	    algorithms.add(new F5Steganography());
+	    algorithms.add(new IntegratedF5Steganography());
 	    algorithms.add(new BagItPackaging());
 	    algorithms.add(new PNGChunkAdding());
 	    algorithms.add(new JPEGTextAdding());
+	    algorithms.add(new JPEGSegmentAdding());
 	    algorithms.add(new PDFFileAttacher());
 	    algorithms.add(new ZipPackaging());
 	    algorithms.add(new TarPackaging());
@@ -22,6 +22,7 @@ package main;
 import static main.Configuration.VERSION;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -30,6 +31,7 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.ParameterException;
 
 import algorithm.AbstractAlgorithm;
+import algorithm.QRCodeBatchEncoder;
 import controller.PeriCATControllerBuilder;
 
 /**
@@ -52,6 +54,7 @@ public class Main {
 	handleProjectHelpOption();
 	handleVersionOption();
 	handleListAlgorithmsOption();
+	handleQRCodeBatchOption();
 	handleVerboseOption(builder);
 	handleAlgorithmOption(builder);
 	handleCarrierOption(builder);
@@ -120,6 +123,39 @@ public class Main {
 	}
     }
 
+    /**
+     * Create QR-codes for all files of a payload directory, print the
+     * statistics and exit.
+     */
+    private static void handleQRCodeBatchOption() {
+	if (options.qrCodeBatch == null) {
+	    return;
+	}
+	File payloadDirectory = new File(options.qrCodeBatch);
+	if (!payloadDirectory.isDirectory()) {
+	    System.out.println("The payload directory \"" + options.qrCodeBatch + "\" is not a directory.");
+	    System.exit(0);
+	}
+	if (options.outputDirectory == null) {
+	    Configuration.createEncapsulationConstants();
+	}
+	File outputDirectory = new File(
+		options.outputDirectory != null ? options.outputDirectory : Configuration.OUTPUT_DIRECTORY);
+	try {
+	    QRCodeBatchEncoder encoder = new QRCodeBatchEncoder(options.qrCodeSize, options.qrCodesPerPage, "png",
+		    Runtime.getRuntime().availableProcessors());
+	    QRCodeBatchEncoder.Report report = encoder.encode(payloadDirectory, outputDirectory);
+	    System.out.println(report);
+	    for (File skipped : report.getSkipped()) {
+		System.out.println("Too big for a QR-code: " + skipped.getName());
+	    }
+	    System.exit(0);
+	} catch (IOException | IllegalArgumentException e) {
+	    System.out.println("The QR-code batch failed: " + e.getMessage());
+	    System.exit(-1);
+	}
+    }
+
     /**
      * Set the tool to verbose mode.
      * 
@@ -274,6 +310,14 @@ public class Main {
 	@Parameter(names = { "-o",
 		"--outputDirectory" }, description = "Output directory. Default is the PeriCAT_output directory for encapsulation and the PeriCAT_restored directory for decapsulation in the same directory as the PeriCAT.jar file.")
 	public String outputDirectory;
+	@Parameter(names = {
+		"--qrBatch" }, description = "Create a QR-code for each file of this payload directory, and write them to the output directory.")
+	public String qrCodeBatch;
+	@Parameter(names = { "--qrSize" }, description = "Size of the QR-codes of the QR-code batch in pixels.")
+	public int qrCodeSize = 200;
+	@Parameter(names = {
+		"--qrPage" }, description = "Number of QR-codes, which are packed onto one page by the QR-code batch. 1 writes a file for each QR-code.")
+	public int qrCodesPerPage = 1;
 	/* Information only parameter: */
 	@Parameter(names = { "-h", "--help" }, description = "Print this message.")
 	public boolean help;
@@ -28,6 +28,7 @@ import algorithm.BagItPackaging;
 import algorithm.F5Steganography;
 import algorithm.ImageImageFrameExpanding;
 import algorithm.ImageInformationEmbeddingFrame;
+import algorithm.JPEGSegmentAdding;
 import algorithm.JPEGTextAdding;
 import algorithm.MetsSubmissionInformationPackage;
 import algorithm.OaiOreSubmissionInformationPackage;
@@ -56,6 +57,7 @@ public class PeriCAT {
     public static final AbstractAlgorithm BAG_IT_PACKAGING = new BagItPackaging();
     public static final AbstractAlgorithm PNG_CHUNK_ADDING = new PNGChunkAdding();
     public static final AbstractAlgorithm JPEG_TEXT_ADDING = new JPEGTextAdding();
+    public static final AbstractAlgorithm JPEG_SEGMENT_ADDING = new JPEGSegmentAdding();
     public static final AbstractAlgorithm PDF_FILE_ATTACHER = new PDFFileAttacher();
     public static final AbstractAlgorithm ZIP_PACKAGING = new ZipPackaging();
     public static final AbstractAlgorithm TAR_PACKAGING = new TarPackaging();
@@ -55,14 +55,32 @@ public class PayloadSegment {
      * @param algorithm
      */
     public PayloadSegment(File carrier, File payload, AbstractAlgorithm algorithm) {
+	try {
+	    this.payload = FileUtils.readFileToByteArray(payload);
+	} catch (IOException e) {
+	}
+	properties = createRestorationMetadata(carrier, payload, algorithm);
+    }
+
+    /**
+     * Creates the restoration metadata of a payload segment, without reading
+     * the payload into memory. Algorithms, which stream large payloads, can
+     * store this metadata next to the payload bytes.
+     * 
+     * @param carrier
+     * @param payload
+     * @param algorithm
+     * @return restoration metadata
+     */
+    public static Properties createRestorationMetadata(File carrier, File payload, AbstractAlgorithm algorithm) {
 	String payloadChecksum = "";
 	String carrierChecksum = "";
 	try {
-	    this.payload = FileUtils.readFileToByteArray(payload);
 	    payloadChecksum += FileUtils.checksumCRC32(payload);
 	    carrierChecksum += FileUtils.checksumCRC32(carrier);
 	} catch (IOException e) {
 	}
+	Properties properties = new Properties();
 	properties.put("carrierName", carrier.getName());
 	properties.put("carrierChecksum", carrierChecksum);
 	properties.put("payloadName", payload.getName());
@@ -70,6 +88,7 @@ public class PayloadSegment {
 	properties.put("algorithm", algorithm.getClass().getName());
 	properties.put("carrierPath", "" + carrier.getAbsolutePath());
 	properties.put("payloadPath", "" + payload.getAbsolutePath());
+	return properties;
     }
 
     /**
@@ -127,10 +146,28 @@ public class PayloadSegment {
      * @return payload segment as byte array
      */
     public byte[] getPayloadSegmentBytes() {
+	return getPayloadSegmentBytes(true);
+    }
+
+    /**
+     * Returns the payload segment without the date, which Properties.store
+     * writes into the comments of the restoration metadata. Equal payloads
+     * result in equal bytes, e.g. for QR-code labels.
+     * 
+     * @return payload segment as byte array
+     */
+    public byte[] getReproduciblePayloadSegmentBytes() {
+	return getPayloadSegmentBytes(false);
+    }
+
+    private byte[] getPayloadSegmentBytes(boolean withDate) {
 	try {
 	    ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
 	    properties.store(byteOut, TOOL_DESCRIPTION);
 	    byte[] restorationMetadata = byteOut.toByteArray();
+	    if (!withDate) {
+		restorationMetadata = removeDateComment(restorationMetadata);
+	    }
 	    ByteArrayOutputStream byteSection = new ByteArrayOutputStream();
 	    byteSection.write(START_SEQ);
 	    byteSection.write(restorationMetadata);
@@ -146,6 +183,16 @@ public class PayloadSegment {
 	}
     }
 
+    /**
+     * Properties.store writes the comment line first, and then the date line.
+     */
+    private static byte[] removeDateComment(byte[] restorationMetadata) throws IOException {
+	String text = new String(restorationMetadata, "ISO-8859-1");
+	int dateStart = text.indexOf('\n') + 1;
+	int dateEnd = text.indexOf('\n', dateStart) + 1;
+	return (text.substring(0, dateStart) + text.substring(dateEnd)).getBytes("ISO-8859-1");
+    }
+
     public byte[] getPayloadBytes() {
 	return payload;
     }
@@ -19,11 +19,14 @@
  */
 package algorithm;
 
+import static main.Configuration.OUTPUT_DIRECTORY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.awt.Color;
+import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -36,10 +39,12 @@ import java.util.Properties;
 
 import javax.imageio.ImageIO;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
 
 import main.TestDataProvider;
+import model.PayloadSegment;
 import model.RestoredFile;
 
 public class ImageImageFrameExpandingTest extends AbstractAlgorithmTest {
@@ -68,6 +73,121 @@ public class ImageImageFrameExpandingTest extends AbstractAlgorithmTest {
 	multipleFilesTest(TestDataProvider.PNG_FILE_2, TestDataProvider.PNG_FILE, TestDataProvider.PNG_FILE_2);
     }
 
+    @Test
+    public void restorationMetadataTableTest() {
+	try {
+	    File carrier = TestDataProvider.PNG_FILE;
+	    File payload1 = TestDataProvider.PNG_FILE_2;
+	    File payload2 = new File(OUTPUT_DIRECTORY + "cat_jpg_1.png");
+	    ImageIO.write(ImageIO.read(TestDataProvider.JPG_FILE), "png", payload2);
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload1);
+	    payloadList.add(payload2);
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertNotNull(outputFile);
+	    // The payload images are stacked below the carrier, followed by one
+	    // restoration metadata image:
+	    BufferedImage carrierBuffered = ImageIO.read(carrier);
+	    BufferedImage payload1Buffered = ImageIO.read(payload1);
+	    BufferedImage payload2Buffered = ImageIO.read(payload2);
+	    BufferedImage outputBuffered = ImageIO.read(outputFile);
+	    assertEquals(carrierBuffered.getHeight() + payload1Buffered.getHeight() + payload2Buffered.getHeight()
+		    + algorithm.METADATA_HEIGHT, outputBuffered.getHeight());
+	    Properties lastEntry = algorithm.getRestorationMetadata(outputFile);
+	    assertEquals("" + (carrierBuffered.getHeight() + payload1Buffered.getHeight()),
+		    lastEntry.getProperty("payloadY"));
+
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(3, outputHash.size());
+	    assertTrue(outputHash.get(carrier.getName()).wasCarrier);
+	    assertTrue(outputHash.get(payload1.getName()).wasPayload);
+	    assertTrue(outputHash.get(payload2.getName()).wasPayload);
+	    assertSamePixels(carrierBuffered, ImageIO.read(outputHash.get(carrier.getName())));
+	    assertSamePixels(payload1Buffered, ImageIO.read(outputHash.get(payload1.getName())));
+	    assertSamePixels(payload2Buffered, ImageIO.read(outputHash.get(payload2.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void nestedFramesTest() {
+	try {
+	    // Former versions of the algorithm appended each payload image in a
+	    // frame of its own, with its own restoration metadata image:
+	    File carrier = TestDataProvider.PNG_FILE;
+	    File payload1 = TestDataProvider.PNG_FILE_2;
+	    File payload2 = new File(OUTPUT_DIRECTORY + "cat_jpg_1.png");
+	    ImageIO.write(ImageIO.read(TestDataProvider.JPG_FILE), "png", payload2);
+	    File outputFile = new File(OUTPUT_DIRECTORY + "nested_" + carrier.getName());
+	    FileUtils.copyFile(carrier, outputFile);
+	    appendFrame(outputFile, payload1);
+	    appendFrame(outputFile, payload2);
+
+	    List<RestoredFile> restoredFiles = algorithm.restore(outputFile);
+	    assertEquals(3, restoredFiles.size());
+	    // The frames are restored from the outside to the inside:
+	    assertEquals(payload2.getName(), restoredFiles.get(0).getName());
+	    assertEquals(payload1.getName(), restoredFiles.get(1).getName());
+	    RestoredFile restoredCarrier = restoredFiles.get(2);
+	    assertTrue(restoredCarrier.wasCarrier);
+	    assertSamePixels(ImageIO.read(payload2), ImageIO.read(restoredFiles.get(0)));
+	    assertSamePixels(ImageIO.read(payload1), ImageIO.read(restoredFiles.get(1)));
+	    assertSamePixels(ImageIO.read(carrier), ImageIO.read(restoredCarrier));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    /**
+     * Appends the payload image and a restoration metadata image without
+     * payload position to the frame, like former versions of the algorithm.
+     */
+    private void appendFrame(File frame, File payload) throws IOException {
+	BufferedImage frameBuffered = ImageIO.read(frame);
+	BufferedImage payloadBuffered = ImageIO.read(payload);
+	int width = Math.max(frameBuffered.getWidth(), payloadBuffered.getWidth());
+	PayloadSegment payloadSegment = new PayloadSegment(frame, payload, algorithm);
+	payloadSegment.addOptionalProperty("carrierWidth", "" + frameBuffered.getWidth());
+	payloadSegment.addOptionalProperty("carrierHeight", "" + frameBuffered.getHeight());
+	payloadSegment.addOptionalProperty("payloadWidth", "" + payloadBuffered.getWidth());
+	payloadSegment.addOptionalProperty("payloadHeight", "" + payloadBuffered.getHeight());
+	File metadataFile = new File(OUTPUT_DIRECTORY + "frameMetadata.txt");
+	FileUtils.writeByteArrayToFile(metadataFile, payloadSegment.getRestorationMetadataBytes());
+	BufferedImage metadataImage = new BufferedImage(width, algorithm.METADATA_HEIGHT,
+		BufferedImage.TYPE_INT_RGB);
+	Graphics graphics = metadataImage.getGraphics();
+	graphics.setColor(Color.blue);
+	graphics.fillRect(0, 0, width, algorithm.METADATA_HEIGHT);
+	File metadataImageFile = new File(OUTPUT_DIRECTORY + "frameMetadata.png");
+	ImageIO.write(metadataImage, "png", metadataImageFile);
+	File embeddedMetadata = new OpenStegoRandomLSBSteganography().encapsulate(metadataImageFile, metadataFile);
+	assertNotNull(embeddedMetadata);
+	BufferedImage outputBuffered = new BufferedImage(width,
+		frameBuffered.getHeight() + payloadBuffered.getHeight() + algorithm.METADATA_HEIGHT,
+		BufferedImage.TYPE_INT_ARGB);
+	graphics = outputBuffered.getGraphics();
+	graphics.drawImage(frameBuffered, 0, 0, null);
+	graphics.drawImage(payloadBuffered, 0, frameBuffered.getHeight(), null);
+	graphics.drawImage(ImageIO.read(embeddedMetadata), 0, frameBuffered.getHeight() + payloadBuffered.getHeight(),
+		null);
+	ImageIO.write(outputBuffered, "png", frame);
+	FileUtils.forceDelete(embeddedMetadata);
+    }
+
+    private void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+	assertEquals(expected.getWidth(), actual.getWidth());
+	assertEquals(expected.getHeight(), actual.getHeight());
+	for (int y = 0; y < expected.getHeight(); y++) {
+	    for (int x = 0; x < expected.getWidth(); x++) {
+		assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+	    }
+	}
+    }
+
     @Test
     public void restorationMetadataImageTest() {
 	File carrier = TestDataProvider.PNG_FILE;
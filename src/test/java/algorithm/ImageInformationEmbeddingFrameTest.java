@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import main.TestDataProvider;
@@ -86,4 +87,39 @@ public class ImageInformationEmbeddingFrameTest extends AbstractAlgorithmTest {
 	    e.printStackTrace();
 	}
     }
+
+    @Test
+    public void densePackingTest() {
+	try {
+	    File carrier = TestDataProvider.PNG_FILE;
+	    File payload1 = TestDataProvider.TXT_FILE;
+	    File payload2 = TestDataProvider.XML_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload1);
+	    payloadList.add(payload2);
+
+	    ImageInformationEmbeddingFrame algorithm = new ImageInformationEmbeddingFrame();
+	    algorithm.densePackingButton.setSelected(true);
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertNotNull(outputFile);
+
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(3, outputHash.size());
+	    RestoredFile restoredPayload1 = outputHash.get(payload1.getName());
+	    RestoredFile restoredPayload2 = outputHash.get(payload2.getName());
+	    assertNotNull(outputHash.get(carrier.getName()));
+	    assertTrue(FileUtils.contentEquals(payload1, restoredPayload1));
+	    assertTrue(FileUtils.contentEquals(payload2, restoredPayload2));
+	    assertTrue(restoredPayload1.checksumValid);
+	    assertTrue(restoredPayload2.checksumValid);
+	    assertEquals(payload1.getAbsolutePath(), restoredPayload1.originalFilePath);
+	    assertEquals(payload2.getAbsolutePath(), restoredPayload2.originalFilePath);
+	    assertTrue(restoredPayload1.relatedFiles.contains(restoredPayload2));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
 }
@@ -22,17 +22,27 @@ package algorithm;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
 import org.junit.Test;
 
+import codec.PDFStructureReader;
 import main.TestDataProvider;
 import model.RestoredFile;
 
@@ -60,21 +70,15 @@ public class PDFFileAttacherTest extends AbstractAlgorithmTest {
 	    RestoredFile restoredPayload = outputHash.get(payload.getName());
 	    assertNotNull(restoredCarrier);
 	    assertNotNull(restoredPayload);
-	    /*
-	     * TODO: as long as I can see, it is at the moment not possible to
-	     * remove the attached file with pdf box, so we can't restore the
-	     * carrier. We would have to use a different pdf library to solve
-	     * this.
-	     */
-	    // assertEquals(FileUtils.checksumCRC32(carrier),
-	    // FileUtils.checksumCRC32(restoredCarrier));
+	    // The attachments are an incremental update of the carrier:
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(restoredCarrier));
 	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(restoredPayload));
 
 	    // check restoration metadata:
 	    // (This algorithm doesn't save original file paths, as it doesn't
 	    // use the payload segment)
 	    assertEquals(algorithm, restoredCarrier.algorithm);
-	    // assertTrue(restoredCarrier.checksumValid);
+	    assertTrue(restoredCarrier.checksumValid);
 	    assertTrue(restoredPayload.checksumValid);
 	    assertTrue(restoredCarrier.wasCarrier);
 	    assertFalse(restoredCarrier.wasPayload);
@@ -116,14 +120,13 @@ public class PDFFileAttacherTest extends AbstractAlgorithmTest {
 	    assertNotNull(restoredCarrier);
 	    assertNotNull(restoredPayload1);
 	    assertNotNull(restoredPayload2);
-	    // assertEquals(FileUtils.checksumCRC32(carrier),
-	    // FileUtils.checksumCRC32(restoredCarrier));
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(restoredCarrier));
 	    assertEquals(FileUtils.checksumCRC32(payload1), FileUtils.checksumCRC32(restoredPayload1));
 	    assertEquals(FileUtils.checksumCRC32(payload2), FileUtils.checksumCRC32(restoredPayload2));
 
 	    // check restoration metadata:
 	    assertEquals(algorithm, restoredCarrier.algorithm);
-	    // assertTrue(restoredCarrier.checksumValid);
+	    assertTrue(restoredCarrier.checksumValid);
 	    // assertTrue(restoredPayload1.checksumValid);
 	    // assertTrue(restoredPayload2.checksumValid);
 	    assertTrue(restoredCarrier.wasCarrier);
@@ -142,4 +145,67 @@ public class PDFFileAttacherTest extends AbstractAlgorithmTest {
 	    e.printStackTrace();
 	}
     }
+
+    @Test
+    public void pdfCompressedFileAttacherTest() {
+	try {
+	    File carrier = TestDataProvider.PDF_FILE;
+	    File textPayload = TestDataProvider.XML_FILE;
+	    File imagePayload = TestDataProvider.JPG_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(textPayload);
+	    payloadList.add(imagePayload);
+
+	    PDFFileAttacher algorithm = new PDFFileAttacher();
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertNotNull(outputFile);
+	    // The xml payload is deflated, the jpg payload is stored:
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(3, outputHash.size());
+	    RestoredFile restoredCarrier = outputHash.get(carrier.getName());
+	    RestoredFile restoredTextPayload = outputHash.get(textPayload.getName());
+	    RestoredFile restoredImagePayload = outputHash.get(imagePayload.getName());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(restoredCarrier));
+	    assertEquals(FileUtils.checksumCRC32(textPayload), FileUtils.checksumCRC32(restoredTextPayload));
+	    assertEquals(FileUtils.checksumCRC32(imagePayload), FileUtils.checksumCRC32(restoredImagePayload));
+	    assertTrue(restoredCarrier.checksumValid);
+	    assertTrue(restoredTextPayload.checksumValid);
+	    assertTrue(restoredImagePayload.checksumValid);
+
+	    Map<String, COSBase> filters = getEmbeddedFileFilters(outputFile);
+	    assertEquals(2, filters.size());
+	    assertEquals(COSName.FLATE_DECODE, filters.get(textPayload.getName()));
+	    assertTrue(filters.containsKey(imagePayload.getName()));
+	    assertNull(filters.get(imagePayload.getName()));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    /**
+     * @return the /Filter of each embedded file stream by the name of the
+     *         attached file, or null for streams without filter
+     */
+    private static Map<String, COSBase> getEmbeddedFileFilters(File pdf) throws IOException {
+	Map<String, COSBase> filters = new HashMap<String, COSBase>();
+	PDFStructureReader reader = new PDFStructureReader(pdf);
+	try {
+	    COSDictionary namesDictionary = (COSDictionary) reader.resolve(reader.getCatalog(), COSName.NAMES);
+	    COSDictionary filesTree = (COSDictionary) reader.resolve(namesDictionary, COSName.EMBEDDED_FILES);
+	    COSArray names = (COSArray) reader.resolve(filesTree, COSName.NAMES);
+	    for (int i = 1; i < names.size(); i += 2) {
+		COSDictionary specification = (COSDictionary) reader.resolve(names.get(i));
+		String fileName = ((COSString) reader.resolve(specification, COSName.F)).getString();
+		COSDictionary embeddedFiles = (COSDictionary) reader.resolve(specification, COSName.EF);
+		COSStream embeddedFile = (COSStream) reader.resolve(embeddedFiles, COSName.F);
+		filters.put(new File(fileName).getName(), reader.resolve(embeddedFile, COSName.FILTER));
+	    }
+	} finally {
+	    reader.close();
+	}
+	return filters;
+    }
 }
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Hashtable;
@@ -33,6 +34,8 @@ import java.util.List;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import codec.PNGChunkStream;
+import codec.PNGChunkStream.Chunk;
 import main.TestDataProvider;
 import model.RestoredFile;
 
@@ -66,10 +69,8 @@ public class PNGChunkAddingTest extends AbstractAlgorithmTest {
 	    assertNotNull(restoredCarrier);
 	    assertNotNull(restoredPayload);
 	    assertNotNull(restoredPayload2);
-	    // TODO: The carrier checksum is not valid, because the PNG library
-	    // reorders the chunks! We would have to use a different library.
-	    // assertEquals(FileUtils.checksumCRC32(carrier),
-	    // FileUtils.checksumCRC32(restoredCarrier));
+	    // The chunks of the carrier are copied byte for byte:
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(restoredCarrier));
 	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(restoredPayload));
 	    assertEquals(FileUtils.checksumCRC32(payload2), FileUtils.checksumCRC32(restoredPayload2));
 
@@ -77,8 +78,7 @@ public class PNGChunkAddingTest extends AbstractAlgorithmTest {
 	    assertEquals("" + carrier.getAbsolutePath(), restoredCarrier.originalFilePath);
 	    assertEquals("" + payload.getAbsolutePath(), restoredPayload.originalFilePath);
 	    assertEquals(algorithm, restoredCarrier.algorithm);
-	    // can't be true for this algorithm:
-	    // assertTrue(restoredCarrier.checksumValid);
+	    assertTrue(restoredCarrier.checksumValid);
 	    assertTrue(restoredPayload.checksumValid);
 	    assertTrue(restoredCarrier.wasCarrier);
 	    assertFalse(restoredCarrier.wasPayload);
@@ -92,4 +92,61 @@ public class PNGChunkAddingTest extends AbstractAlgorithmTest {
 	    e.printStackTrace();
 	}
     }
+
+    @Test
+    public void pngBinaryChunkAddingTest() {
+	try {
+	    File carrier = TestDataProvider.PNG_FILE;
+	    File payload = TestDataProvider.JPG_FILE;
+	    File payload2 = TestDataProvider.PDF_FILE;
+
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    payloadList.add(payload2);
+
+	    PNGChunkAdding algorithm = new PNGChunkAdding();
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertNotNull(outputFile);
+	    // The payloads are split into chunks of bounded size:
+	    int metadataChunks = 0;
+	    int dataChunks = 0;
+	    FileInputStream input = new FileInputStream(outputFile);
+	    try {
+		PNGChunkStream png = new PNGChunkStream(input.getChannel());
+		for (Chunk chunk : png.getChunks()) {
+		    if (!chunk.type.equals(PNGChunkAdding.PAYLOAD_CHUNK)) {
+			continue;
+		    }
+		    assertTrue(chunk.length <= PNGChunkAdding.MAX_CHUNK_LENGTH);
+		    if (png.readData(chunk, 1)[0] == 0) {
+			metadataChunks++;
+		    } else {
+			dataChunks++;
+		    }
+		}
+	    } finally {
+		input.close();
+	    }
+	    assertEquals(2, metadataChunks);
+	    assertTrue(dataChunks > 2);
+
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(3, outputHash.size());
+	    RestoredFile restoredCarrier = outputHash.get(carrier.getName());
+	    RestoredFile restoredPayload = outputHash.get(payload.getName());
+	    RestoredFile restoredPayload2 = outputHash.get(payload2.getName());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(restoredCarrier));
+	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(restoredPayload));
+	    assertEquals(FileUtils.checksumCRC32(payload2), FileUtils.checksumCRC32(restoredPayload2));
+	    assertTrue(restoredCarrier.checksumValid);
+	    assertTrue(restoredPayload.checksumValid);
+	    assertTrue(restoredPayload2.checksumValid);
+	    assertEquals("" + payload2.getAbsolutePath(), restoredPayload2.originalFilePath);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
 }
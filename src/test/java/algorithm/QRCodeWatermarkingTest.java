@@ -19,19 +19,26 @@
  */
 package algorithm;
 
+import static main.Configuration.OUTPUT_DIRECTORY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.imageio.ImageIO;
+
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import com.google.zxing.NotFoundException;
+
+import codec.QRCodeSheetDecoder;
 import main.TestDataProvider;
 import model.RestoredFile;
 
@@ -120,4 +127,162 @@ public class QRCodeWatermarkingTest extends AbstractAlgorithmTest {
 	    e.printStackTrace();
 	}
     }
+
+    @Test
+    public void structuredAppendTest() {
+	try {
+	    File carrier = TestDataProvider.PNG_FILE;
+	    File payload = TestDataProvider.XML_FILE;
+	    QRCodeWatermarking algorithm = new QRCodeWatermarking();
+	    // The payload doesn't fit into one QR-code of this size:
+	    algorithm.sizeField.setText("100");
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    algorithm.setCarrierEncapsulation(false);
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertNotNull(outputFile);
+	    assertTrue(ImageIO.read(outputFile).getWidth() > 100);
+
+	    List<RestoredFile> restoredFiles = algorithm.restore(outputFile);
+	    assertEquals(1, restoredFiles.size());
+	    RestoredFile restoredPayload = restoredFiles.get(0);
+	    assertEquals(payload.getName(), restoredPayload.getName());
+	    assertTrue(FileUtils.contentEquals(payload, restoredPayload));
+	    assertTrue(restoredPayload.checksumValid);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void layoutTest() {
+	try {
+	    File carrier = TestDataProvider.PNG_FILE;
+	    File payload = TestDataProvider.XML_FILE;
+	    QRCodeWatermarking algorithm = new QRCodeWatermarking();
+	    algorithm.sizeField.setText("100");
+	    algorithm.xPositionField.setText("30");
+	    algorithm.yPositionField.setText("40");
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    algorithm.setCarrierEncapsulation(true);
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertNotNull(outputFile);
+	    // The position and size of the QR-codes are stored in the header:
+	    QRCodeLayout layout = QRCodeLayout.read(outputFile);
+	    assertNotNull(layout);
+	    assertEquals(30, layout.bounds.x);
+	    assertEquals(40, layout.bounds.y);
+	    assertEquals(100, layout.symbolSize);
+	    assertTrue(layout.bounds.width > 100);
+
+	    List<RestoredFile> restoredFiles = algorithm.restore(outputFile);
+	    assertEquals(2, restoredFiles.size());
+	    RestoredFile restoredPayload = restoredFiles.get(0).wasPayload ? restoredFiles.get(0)
+		    : restoredFiles.get(1);
+	    assertTrue(FileUtils.contentEquals(payload, restoredPayload));
+	    assertTrue(restoredPayload.checksumValid);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void missedTileTest() {
+	try {
+	    // The detector misses one QR-code of the page in its tile, but finds
+	    // it in the whole image:
+	    File page = TestDataProvider.QR_CODE_PAGE_FILE;
+	    QRCodeLayout layout = QRCodeLayout.read(page);
+	    assertNotNull(layout);
+	    try {
+		QRCodeSheetDecoder.decodeTiles(ImageIO.read(page), layout.symbolSize);
+		fail("The tile of the QR-code should be missed.");
+	    } catch (NotFoundException e) {
+	    }
+	    List<RestoredFile> restoredFiles = new QRCodeWatermarking().restore(page);
+	    assertEquals(4, restoredFiles.size());
+	    File[] payloads = { TestDataProvider.TXT_FILE, TestDataProvider.TXT_FILE_2, TestDataProvider.TXT_FILE_3,
+		    TestDataProvider.XML_FILE };
+	    for (File payload : payloads) {
+		RestoredFile restoredPayload = null;
+		for (RestoredFile restoredFile : restoredFiles) {
+		    if (restoredFile.getName().equals(payload.getName())) {
+			restoredPayload = restoredFile;
+		    }
+		}
+		assertNotNull(restoredPayload);
+		assertTrue(restoredPayload.checksumValid);
+		assertTrue(FileUtils.contentEquals(payload, restoredPayload));
+	    }
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void batchTest() {
+	try {
+	    File payloadDirectory = new File(OUTPUT_DIRECTORY + "payloads");
+	    List<File> payloads = new ArrayList<File>();
+	    payloads.add(TestDataProvider.TXT_FILE);
+	    payloads.add(TestDataProvider.TXT_FILE_2);
+	    payloads.add(TestDataProvider.TXT_FILE_3);
+	    payloads.add(TestDataProvider.XML_FILE);
+	    for (File payload : payloads) {
+		FileUtils.copyFileToDirectory(payload, payloadDirectory);
+	    }
+	    File outputDirectory = new File(OUTPUT_DIRECTORY + "qrcodes");
+	    // All QR-codes on one page:
+	    QRCodeBatchEncoder encoder = new QRCodeBatchEncoder(300, 4, "png", 2);
+	    QRCodeBatchEncoder.Report report = encoder.encode(payloadDirectory, outputDirectory);
+	    assertEquals(4, report.getSymbols());
+	    assertEquals(1, report.getFiles());
+	    assertTrue(report.getSkipped().isEmpty());
+	    File page = outputDirectory.listFiles()[0];
+	    List<RestoredFile> restoredFiles = new QRCodeWatermarking().restore(page);
+	    assertEquals(4, restoredFiles.size());
+	    for (RestoredFile restoredPayload : restoredFiles) {
+		assertTrue(restoredPayload.checksumValid);
+		assertTrue(FileUtils.contentEquals(new File(payloadDirectory, restoredPayload.getName()),
+			restoredPayload));
+	    }
+	    // One file for each QR-code:
+	    FileUtils.deleteDirectory(outputDirectory);
+	    report = new QRCodeBatchEncoder(300, 1, "png", 2).encode(payloadDirectory, outputDirectory);
+	    assertEquals(4, report.getSymbols());
+	    assertEquals(4, report.getFiles());
+	    File label = new File(outputDirectory, "short.txt.png");
+	    restoredFiles = new QRCodeWatermarking().restore(label);
+	    assertEquals(1, restoredFiles.size());
+	    assertTrue(FileUtils.contentEquals(TestDataProvider.TXT_FILE_2, restoredFiles.get(0)));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void batchSameBaseNameTest() {
+	try {
+	    File payloadDirectory = new File(OUTPUT_DIRECTORY + "payloads");
+	    File textPayload = new File(payloadDirectory, "label.txt");
+	    File xmlPayload = new File(payloadDirectory, "label.xml");
+	    FileUtils.copyFile(TestDataProvider.TXT_FILE_2, textPayload);
+	    FileUtils.copyFile(TestDataProvider.XML_FILE, xmlPayload);
+	    File outputDirectory = new File(OUTPUT_DIRECTORY + "qrcodes");
+	    QRCodeBatchEncoder.Report report = new QRCodeBatchEncoder(300, 1, "png", 2).encode(payloadDirectory,
+		    outputDirectory);
+	    assertEquals(2, report.getFiles());
+	    assertEquals(2, outputDirectory.listFiles().length);
+	    for (File payload : payloadDirectory.listFiles()) {
+		File label = new File(outputDirectory, payload.getName() + ".png");
+		List<RestoredFile> restoredFiles = new QRCodeWatermarking().restore(label);
+		assertEquals(1, restoredFiles.size());
+		assertEquals(payload.getName(), restoredFiles.get(0).getName());
+		assertTrue(FileUtils.contentEquals(payload, restoredFiles.get(0)));
+	    }
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
 }
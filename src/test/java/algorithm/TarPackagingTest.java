@@ -27,12 +27,16 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import codec.CodecBenchmark;
+import codec.CompressionCodec;
+import codec.IndexedGzipFile;
 import main.TestDataProvider;
 import model.RestoredFile;
 
@@ -141,4 +145,149 @@ public class TarPackagingTest extends AbstractAlgorithmTest {
 	}
     }
 
+    @Test
+    public void parallelGzipTarPackagingTest() {
+	try {
+	    File carrier = TestDataProvider.PDF_FILE;
+	    File payload = TestDataProvider.JPG_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    File outputFile = new TarPackaging(1).encapsulate(carrier, payloadList);
+	    long singleThreadChecksum = FileUtils.checksumCRC32(outputFile);
+	    TarPackaging algorithm = new TarPackaging(4);
+	    outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertTrue(outputFile.getName().endsWith(".tgz"));
+	    // The blocks are compressed independently of the thread count:
+	    assertEquals(singleThreadChecksum, FileUtils.checksumCRC32(outputFile));
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(2, outputHash.size());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(outputHash.get(carrier.getName())));
+	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(outputHash.get(payload.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void parallelBZip2TarPackagingTest() {
+	try {
+	    File carrier = TestDataProvider.PDF_FILE;
+	    File payload = TestDataProvider.JPG_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    TarPackaging singleThreadAlgorithm = new TarPackaging(1);
+	    ((TarPackaging.TarConfigurationPanel) singleThreadAlgorithm.panel).bzip2CompressionButton.setSelected(true);
+	    File outputFile = singleThreadAlgorithm.encapsulate(carrier, payloadList);
+	    long singleThreadChecksum = FileUtils.checksumCRC32(outputFile);
+	    TarPackaging algorithm = new TarPackaging(4);
+	    ((TarPackaging.TarConfigurationPanel) algorithm.panel).bzip2CompressionButton.setSelected(true);
+	    outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertTrue(outputFile.getName().endsWith(".tbz2"));
+	    // The chunks are compressed independently of the thread count:
+	    assertEquals(singleThreadChecksum, FileUtils.checksumCRC32(outputFile));
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(2, outputHash.size());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(outputHash.get(carrier.getName())));
+	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(outputHash.get(payload.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void indexedGzipTarPackagingTest() {
+	try {
+	    File carrier = TestDataProvider.PDF_FILE;
+	    File payload1 = TestDataProvider.JPG_FILE;
+	    File payload2 = TestDataProvider.XML_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload1);
+	    payloadList.add(payload2);
+	    TarPackaging algorithm = new TarPackaging(4);
+	    ((TarPackaging.TarConfigurationPanel) algorithm.panel).indexedGzipCompressionButton.setSelected(true);
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertTrue(outputFile.getName().endsWith(".tgz"));
+	    assertTrue(IndexedGzipFile.hasIndex(outputFile));
+	    // Only the selected entry is extracted:
+	    List<RestoredFile> restoredFiles = algorithm.restore(outputFile, Arrays.asList(payload2.getName()));
+	    assertEquals(1, restoredFiles.size());
+	    assertEquals(FileUtils.checksumCRC32(payload2), FileUtils.checksumCRC32(restoredFiles.get(0)));
+	    // The archive can be read from the start, too:
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(3, outputHash.size());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(outputHash.get(carrier.getName())));
+	    assertEquals(FileUtils.checksumCRC32(payload1),
+		    FileUtils.checksumCRC32(outputHash.get(payload1.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void xzAndLz4TarPackagingTest() {
+	try {
+	    File carrier = TestDataProvider.PS_FILE;
+	    File payload = TestDataProvider.XML_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    TarPackaging algorithm = new TarPackaging(2);
+	    TarPackaging.TarConfigurationPanel tarPanel = (TarPackaging.TarConfigurationPanel) algorithm.panel;
+	    tarPanel.compressionLevelBox.setCompressionLevel(1);
+	    tarPanel.xzCompressionButton.setSelected(true);
+	    File xzFile = algorithm.encapsulate(carrier, payloadList);
+	    assertTrue(xzFile.getName().endsWith(".txz"));
+	    assertEquals(2, algorithm.restore(xzFile).size());
+	    tarPanel.lz4CompressionButton.setSelected(true);
+	    File lz4File = algorithm.encapsulate(carrier, payloadList);
+	    assertTrue(lz4File.getName().endsWith(".tar.lz4"));
+	    assertTrue(lz4File.length() > xzFile.length());
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(lz4File)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(2, outputHash.size());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(outputHash.get(carrier.getName())));
+	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(outputHash.get(payload.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void autoCodecTarPackagingTest() {
+	try {
+	    File carrier = TestDataProvider.PS_FILE;
+	    File payload = TestDataProvider.TXT_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+	    TarPackaging algorithm = new TarPackaging(2);
+	    TarPackaging.TarConfigurationPanel tarPanel = (TarPackaging.TarConfigurationPanel) algorithm.panel;
+	    tarPanel.autoCompressionButton.setSelected(true);
+	    // Without a minimum throughput, the codec with the smallest output is
+	    // selected:
+	    tarPanel.minThroughputField.setText("0");
+	    byte[] sample = CodecBenchmark.readSample(Arrays.asList(carrier, payload), CodecBenchmark.SAMPLE_LENGTH);
+	    CompressionCodec smallest = CodecBenchmark.selectCodec(
+		    CodecBenchmark.measureAll(sample, CompressionLevelBox.DEFAULT_LEVEL, 2), 0);
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    assertTrue(outputFile.getName().endsWith("." + smallest.getExtension()));
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(2, outputHash.size());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(outputHash.get(carrier.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
 }
@@ -23,12 +23,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -91,4 +95,72 @@ public class ZipPackagingTest extends AbstractAlgorithmTest {
 	    e.printStackTrace();
 	}
     }
+
+    @Test
+    public void zipPackagingStoredEntriesTest() {
+	try {
+	    File carrier = TestDataProvider.JPG_FILE;
+	    File payload = TestDataProvider.TXT_FILE_3;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload);
+
+	    ZipPackaging algorithm = new ZipPackaging();
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    ZipFile zipFile = new ZipFile(outputFile);
+	    try {
+		// The jpg is already compressed:
+		assertEquals(ZipEntry.STORED, zipFile.getEntry(carrier.getName()).getMethod());
+		assertEquals(ZipEntry.DEFLATED, zipFile.getEntry(payload.getName()).getMethod());
+	    } finally {
+		zipFile.close();
+	    }
+	    algorithm.setCompressionLevel(0);
+	    outputFile = algorithm.encapsulate(carrier, payloadList);
+	    zipFile = new ZipFile(outputFile);
+	    try {
+		assertEquals(ZipEntry.STORED, zipFile.getEntry(payload.getName()).getMethod());
+	    } finally {
+		zipFile.close();
+	    }
+	    Hashtable<String, RestoredFile> outputHash = new Hashtable<String, RestoredFile>();
+	    for (RestoredFile file : algorithm.restore(outputFile)) {
+		outputHash.put(file.getName(), file);
+	    }
+	    assertEquals(2, outputHash.size());
+	    assertEquals(FileUtils.checksumCRC32(carrier), FileUtils.checksumCRC32(outputHash.get(carrier.getName())));
+	    assertEquals(FileUtils.checksumCRC32(payload), FileUtils.checksumCRC32(outputHash.get(payload.getName())));
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    @Test
+    public void zipPackagingSelectiveRestoreTest() {
+	try {
+	    File carrier = TestDataProvider.TXT_FILE;
+	    File payload1 = TestDataProvider.JPG_FILE;
+	    File payload2 = TestDataProvider.XML_FILE;
+	    List<File> payloadList = new ArrayList<File>();
+	    payloadList.add(payload1);
+	    payloadList.add(payload2);
+
+	    ZipPackaging algorithm = new ZipPackaging();
+	    File outputFile = algorithm.encapsulate(carrier, payloadList);
+	    List<RestoredFile> restoredFiles = algorithm.restore(outputFile, Arrays.asList(payload2.getName()));
+	    assertEquals(1, restoredFiles.size());
+	    RestoredFile restoredPayload = restoredFiles.get(0);
+	    assertEquals(payload2.getName(), restoredPayload.getName());
+	    assertEquals(FileUtils.checksumCRC32(payload2), FileUtils.checksumCRC32(restoredPayload));
+	    assertTrue(restoredPayload.wasPayload);
+	    assertTrue(restoredPayload.relatedFiles.isEmpty());
+	    try {
+		algorithm.restore(outputFile, Arrays.asList("missing.txt"));
+		fail("An entry, which doesn't exist, can't be restored.");
+	    } catch (IOException e) {
+		// expected
+	    }
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import static main.Configuration.OUTPUT_DIRECTORY;
+import static main.Configuration.RESTORED_DIRECTORY;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import algorithm.AbstractAlgorithm;
+import algorithm.F5Steganography;
+import algorithm.IntegratedF5Steganography;
+import main.TestDataProvider;
+
+/**
+ * Compares the integrated F5 implementation with the F5 plug-in, which runs the
+ * external f5.jar. For each technique the average encapsulation and restore
+ * time and the used heap is printed.
+ *
+ * This is no unit test, because it needs some time and the f5.jar needs a
+ * display. Run it with: java benchmark.F5Benchmark [iterations]
+ */
+public class F5Benchmark {
+    private static final int WARM_UP = 2;
+
+    public static void main(String[] args) throws IOException {
+	int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+	FileUtils.forceMkdir(new File(OUTPUT_DIRECTORY));
+	FileUtils.forceMkdir(new File(RESTORED_DIRECTORY));
+	List<File> payloadList = new ArrayList<File>();
+	payloadList.add(TestDataProvider.TXT_FILE);
+	try {
+	    run(new IntegratedF5Steganography(), payloadList, iterations);
+	    run(new F5Steganography(), payloadList, iterations);
+	} finally {
+	    FileUtils.deleteDirectory(new File(OUTPUT_DIRECTORY));
+	    FileUtils.deleteDirectory(new File(RESTORED_DIRECTORY));
+	}
+    }
+
+    private static void run(AbstractAlgorithm algorithm, List<File> payloadList, int iterations) {
+	File carrier = TestDataProvider.JPG_FILE;
+	for (int i = 0; i < WARM_UP; i++) {
+	    File outputFile = algorithm.encapsulateFiles(carrier, payloadList);
+	    if (outputFile == null) {
+		System.out.println(algorithm.getName() + ": encapsulation failed");
+		return;
+	    }
+	    algorithm.decapsulate(outputFile);
+	}
+	Runtime runtime = Runtime.getRuntime();
+	System.gc();
+	long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+	long peak = usedBefore;
+	long encapsulationTime = 0;
+	long restoreTime = 0;
+	File outputFile = null;
+	for (int i = 0; i < iterations; i++) {
+	    long start = System.nanoTime();
+	    outputFile = algorithm.encapsulateFiles(carrier, payloadList);
+	    if (outputFile == null) {
+		System.out.println(algorithm.getName() + ": encapsulation failed");
+		return;
+	    }
+	    long middle = System.nanoTime();
+	    algorithm.decapsulate(outputFile);
+	    restoreTime += System.nanoTime() - middle;
+	    encapsulationTime += middle - start;
+	    peak = Math.max(peak, runtime.totalMemory() - runtime.freeMemory());
+	}
+	System.out.println(algorithm.getName());
+	System.out.println("    encapsulation: " + encapsulationTime / iterations / 1000000 + " ms");
+	System.out.println("    restore:       " + restoreTime / iterations / 1000000 + " ms");
+	System.out.println("    heap:          " + (peak - usedBefore) / 1024 + " KB");
+	System.out.println("    carrier size:  " + carrier.length() + " -> " + outputFile.length() + " bytes");
+    }
+}
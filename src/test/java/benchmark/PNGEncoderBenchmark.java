@@ -0,0 +1,118 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import ar.com.hjg.pngj.FilterType;
+import codec.PNGEncoder;
+
+/**
+ * Compares the speed and the file size of PNG images written by ImageIO with
+ * the {@link PNGEncoder} at several compression levels, filter strategies and
+ * numbers of threads. Each written image is read again with ImageIO, to check
+ * that it has the same pixels as the original image.
+ *
+ * Run it with: java benchmark.PNGEncoderBenchmark [size] [iterations]
+ * [threads]
+ */
+public class PNGEncoderBenchmark {
+    private static final int[] LEVELS = { 1, 6, 9 };
+    private static final FilterType[] FILTERS = { FilterType.FILTER_NONE, FilterType.FILTER_PAETH,
+	    FilterType.FILTER_DEFAULT };
+
+    public static void main(String[] args) throws IOException {
+	int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+	int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+	int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+	BufferedImage image = createImage(size);
+	File output = File.createTempFile("PNGEncoderBenchmark", ".png");
+	try {
+	    long start = System.nanoTime();
+	    for (int i = 0; i < iterations; i++) {
+		ImageIO.write(image, "png", output);
+	    }
+	    print("ImageIO", System.nanoTime() - start, iterations, output, image);
+	    for (int level : LEVELS) {
+		for (FilterType filter : FILTERS) {
+		    benchmark(new PNGEncoder(level, filter, 1), image, iterations, output);
+		    if (threads > 1) {
+			benchmark(new PNGEncoder(level, filter, threads), image, iterations, output);
+		    }
+		}
+	    }
+	} finally {
+	    output.delete();
+	}
+    }
+
+    /**
+     * Creates a photo like image: smooth gradients with some noise.
+     */
+    private static BufferedImage createImage(int size) {
+	BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+	Random random = new Random(0);
+	for (int y = 0; y < size; y++) {
+	    for (int x = 0; x < size; x++) {
+		int red = (x * 255 / size + random.nextInt(8)) & 0xFF;
+		int green = (y * 255 / size + random.nextInt(8)) & 0xFF;
+		int blue = ((x + y) * 127 / size + random.nextInt(8)) & 0xFF;
+		image.setRGB(x, y, red << 16 | green << 8 | blue);
+	    }
+	}
+	return image;
+    }
+
+    private static void benchmark(PNGEncoder encoder, BufferedImage image, int iterations, File output)
+	    throws IOException {
+	long start = System.nanoTime();
+	for (int i = 0; i < iterations; i++) {
+	    encoder.write(image, output);
+	}
+	print(encoder.toString(), System.nanoTime() - start, iterations, output, image);
+    }
+
+    private static boolean identical(BufferedImage first, BufferedImage second) {
+	if (first.getWidth() != second.getWidth() || first.getHeight() != second.getHeight()) {
+	    return false;
+	}
+	for (int y = 0; y < first.getHeight(); y++) {
+	    for (int x = 0; x < first.getWidth(); x++) {
+		if (first.getRGB(x, y) != second.getRGB(x, y)) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    private static void print(String encoder, long time, int iterations, File output, BufferedImage image)
+	    throws IOException {
+	System.out.println(encoder);
+	System.out.println("    time: " + time / iterations / 1000000 + " ms");
+	System.out.println("    size: " + output.length() / 1024 + " KB");
+	System.out.println("    identical pixels: " + identical(image, ImageIO.read(output)));
+    }
+}
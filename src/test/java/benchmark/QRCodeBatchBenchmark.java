@@ -0,0 +1,124 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Hashtable;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import algorithm.QRCodeBatchEncoder;
+import model.PayloadSegment;
+
+/**
+ * Compares the QR-codes per second of the {@link QRCodeBatchEncoder}, with
+ * separate files and with packed pages, to the encoding of each payload with
+ * a new QRCodeWriter, a new image and ImageIO.
+ *
+ * Run it with: java benchmark.QRCodeBatchBenchmark [payloads] [size]
+ * [threads]
+ */
+public class QRCodeBatchBenchmark {
+    private static final int PAYLOAD_SIZE = 300;
+    private static final int SYMBOLS_PER_PAGE = 16;
+
+    public static void main(String[] args) throws IOException, WriterException {
+	int payloads = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+	int size = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+	int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+	File directory = new File(FileUtils.getTempDirectory(), "QRCodeBatchBenchmark");
+	File payloadDirectory = new File(directory, "payloads");
+	File outputDirectory = new File(directory, "qrcodes");
+	try {
+	    createPayloads(payloadDirectory, payloads);
+	    long start = System.nanoTime();
+	    for (File payload : payloadDirectory.listFiles()) {
+		writeWithImageIO(payload, size, outputDirectory);
+	    }
+	    double seconds = (System.nanoTime() - start) / 1e9;
+	    System.out.println("QRCodeWriter and ImageIO for each payload");
+	    System.out.println(String.format("    %.1f QR-codes per second", payloads / seconds));
+	    benchmark(new QRCodeBatchEncoder(size, 1, "png", 1), "separate files, 1 thread", payloadDirectory,
+		    outputDirectory);
+	    benchmark(new QRCodeBatchEncoder(size, SYMBOLS_PER_PAGE, "png", 1), "pages, 1 thread", payloadDirectory,
+		    outputDirectory);
+	    if (threads > 1) {
+		benchmark(new QRCodeBatchEncoder(size, 1, "png", threads), "separate files, " + threads + " threads",
+			payloadDirectory, outputDirectory);
+		benchmark(new QRCodeBatchEncoder(size, SYMBOLS_PER_PAGE, "png", threads),
+			"pages, " + threads + " threads", payloadDirectory, outputDirectory);
+	    }
+	} finally {
+	    FileUtils.deleteDirectory(directory);
+	}
+    }
+
+    /**
+     * Creates text files with random letters.
+     */
+    private static void createPayloads(File payloadDirectory, int payloads) throws IOException {
+	Random random = new Random(0);
+	for (int i = 0; i < payloads; i++) {
+	    StringBuilder text = new StringBuilder();
+	    for (int j = 0; j < PAYLOAD_SIZE; j++) {
+		text.append((char) ('a' + random.nextInt(26)));
+	    }
+	    FileUtils.writeStringToFile(new File(payloadDirectory, String.format("payload%05d.txt", i)),
+		    text.toString());
+	}
+    }
+
+    /**
+     * The way of QR-code watermarking before the batch mode.
+     */
+    private static void writeWithImageIO(File payload, int size, File outputDirectory)
+	    throws IOException, WriterException {
+	PayloadSegment metadata = new PayloadSegment(payload);
+	metadata.addOptionalProperty("usedMethod", "SEPARATE_FILE");
+	Hashtable<EncodeHintType, ErrorCorrectionLevel> hintMap = new Hashtable<EncodeHintType, ErrorCorrectionLevel>();
+	hintMap.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
+	BitMatrix matrix = new QRCodeWriter().encode(new String(metadata.getPayloadSegmentBytes()),
+		BarcodeFormat.QR_CODE, size, size, hintMap);
+	BufferedImage image = MatrixToImageWriter.toBufferedImage(matrix);
+	FileUtils.forceMkdir(outputDirectory);
+	ImageIO.write(image, "png", new File(outputDirectory, payload.getName() + ".png"));
+    }
+
+    private static void benchmark(QRCodeBatchEncoder encoder, String name, File payloadDirectory,
+	    File outputDirectory) throws IOException {
+	FileUtils.deleteDirectory(outputDirectory);
+	QRCodeBatchEncoder.Report report = encoder.encode(payloadDirectory, outputDirectory);
+	System.out.println(name);
+	System.out.println("    " + report);
+    }
+}
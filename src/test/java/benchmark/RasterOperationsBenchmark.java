@@ -0,0 +1,160 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+
+import codec.RasterOperations;
+
+/**
+ * Compares the pixel operations of the image techniques with their former
+ * implementations: colouring an image with setRGB, drawing QR-code modules with
+ * fillRect, and compositing images with Graphics.drawImage. For each operation
+ * the average time and whether both results are identical is printed.
+ *
+ * Run it with: java benchmark.RasterOperationsBenchmark [size] [iterations]
+ */
+public class RasterOperationsBenchmark {
+
+    public static void main(String[] args) {
+	int size = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+	int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+	benchmarkFill(size, iterations);
+	benchmarkModules(size, iterations);
+	benchmarkCopy(size, iterations, BufferedImage.TYPE_3BYTE_BGR);
+	benchmarkCopy(size, iterations, BufferedImage.TYPE_4BYTE_ABGR);
+	benchmarkCopy(size, iterations, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static void benchmarkFill(int size, int iterations) {
+	int color = Color.blue.getRGB();
+	BufferedImage before = new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+	BufferedImage after = new BufferedImage(size, size, BufferedImage.TYPE_4BYTE_ABGR);
+	long beforeTime = 0;
+	long afterTime = 0;
+	for (int i = 0; i < iterations; i++) {
+	    long start = System.nanoTime();
+	    for (int x = 0; x < size; x++) {
+		for (int y = 0; y < size; y++) {
+		    before.setRGB(x, y, color);
+		}
+	    }
+	    long middle = System.nanoTime();
+	    RasterOperations.fill(after, color);
+	    afterTime += System.nanoTime() - middle;
+	    beforeTime += middle - start;
+	}
+	print("fill " + size + "x" + size, "setRGB", beforeTime, "fill", afterTime, iterations,
+		identical(before, after));
+    }
+
+    private static void benchmarkModules(int size, int iterations) {
+	boolean[] modules = new boolean[size * size];
+	Random random = new Random(0);
+	for (int i = 0; i < modules.length; i++) {
+	    modules[i] = random.nextBoolean();
+	}
+	BufferedImage before = null;
+	BufferedImage after = null;
+	long beforeTime = 0;
+	long afterTime = 0;
+	for (int i = 0; i < iterations; i++) {
+	    long start = System.nanoTime();
+	    before = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+	    Graphics graphics = before.getGraphics();
+	    graphics.setColor(Color.WHITE);
+	    graphics.fillRect(0, 0, size, size);
+	    graphics.setColor(Color.BLACK);
+	    for (int x = 0; x < size; x++) {
+		for (int y = 0; y < size; y++) {
+		    if (modules[y * size + x]) {
+			graphics.fillRect(x, y, 1, 1);
+		    }
+		}
+	    }
+	    graphics.dispose();
+	    long middle = System.nanoTime();
+	    after = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+	    int[] pixels = ((DataBufferInt) after.getRaster().getDataBuffer()).getData();
+	    Arrays.fill(pixels, Color.WHITE.getRGB());
+	    for (int y = 0; y < size; y++) {
+		for (int x = 0; x < size; x++) {
+		    if (modules[y * size + x]) {
+			pixels[y * size + x] = Color.BLACK.getRGB();
+		    }
+		}
+	    }
+	    afterTime += System.nanoTime() - middle;
+	    beforeTime += middle - start;
+	}
+	print("QR modules " + size + "x" + size, "fillRect", beforeTime, "data array", afterTime, iterations,
+		identical(before, after));
+    }
+
+    private static void benchmarkCopy(int size, int iterations, int type) {
+	BufferedImage source = new BufferedImage(size, size, type);
+	Random random = new Random(0);
+	for (int x = 0; x < size; x++) {
+	    for (int y = 0; y < size; y++) {
+		source.setRGB(x, y, random.nextInt() | 0xFF000000);
+	    }
+	}
+	BufferedImage before = new BufferedImage(size + 7, size * 2, type);
+	BufferedImage after = new BufferedImage(size + 7, size * 2, type);
+	long beforeTime = 0;
+	long afterTime = 0;
+	for (int i = 0; i < iterations; i++) {
+	    long start = System.nanoTime();
+	    Graphics graphics = before.getGraphics();
+	    graphics.drawImage(source, 3, size / 2, null);
+	    graphics.dispose();
+	    long middle = System.nanoTime();
+	    RasterOperations.copy(source, after, 3, size / 2);
+	    afterTime += System.nanoTime() - middle;
+	    beforeTime += middle - start;
+	}
+	print("copy " + size + "x" + size + " (type " + type + ")", "drawImage", beforeTime, "copy", afterTime,
+		iterations, identical(before, after));
+    }
+
+    private static boolean identical(BufferedImage first, BufferedImage second) {
+	for (int y = 0; y < first.getHeight(); y++) {
+	    for (int x = 0; x < first.getWidth(); x++) {
+		if (first.getRGB(x, y) != second.getRGB(x, y)) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    private static void print(String operation, String beforeName, long beforeTime, String afterName,
+	    long afterTime, int iterations, boolean identical) {
+	System.out.println(operation);
+	System.out.println("    " + beforeName + ": " + beforeTime / iterations / 1000 + " us");
+	System.out.println("    " + afterName + ": " + afterTime / iterations / 1000 + " us");
+	System.out.println("    identical result: " + identical);
+    }
+}
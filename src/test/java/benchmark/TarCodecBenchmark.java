@@ -0,0 +1,80 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import algorithm.TarPackaging;
+import codec.CodecBenchmark;
+import codec.CodecBenchmark.Result;
+import codec.CompressionCodec;
+import main.TestDataProvider;
+
+/**
+ * Measures the compression ratio and the throughput of each
+ * {@link CompressionCodec} of the {@link TarPackaging} on the given files, or
+ * on the test data. All files are compressed as one stream, like in a tar
+ * archive, and each codec is warmed up, like in the automatic selection. At
+ * the end, the codec is printed, which the automatic selection takes for the
+ * minimum throughput.
+ *
+ * Run it with: java benchmark.TarCodecBenchmark [level] [MB/s] [threads]
+ * [files]
+ */
+public class TarCodecBenchmark {
+
+    public static void main(String[] args) throws IOException {
+	int level = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+	double minThroughput = args.length > 1 ? Double.parseDouble(args[1]) : 20;
+	int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+	List<File> files = new ArrayList<File>();
+	for (int i = 3; i < args.length; i++) {
+	    files.add(new File(args[i]));
+	}
+	if (files.isEmpty()) {
+	    files.addAll(Arrays.asList(TestDataProvider.PDF_FILE, TestDataProvider.PS_FILE, TestDataProvider.BMP_FILE,
+		    TestDataProvider.JPG_FILE, TestDataProvider.PNG_FILE, TestDataProvider.TXT_FILE,
+		    TestDataProvider.XML_FILE));
+	}
+	byte[] data = readAll(files);
+	System.out.println(files.size() + " files, " + data.length / 1024 + " KB, level " + level + ", " + threads
+		+ (threads == 1 ? " thread" : " threads"));
+	List<Result> results = CodecBenchmark.measureAll(data, level, threads);
+	for (Result result : results) {
+	    System.out.println(result.codec);
+	    System.out.println("    time: " + result.time / 1000000 + " ms");
+	    System.out.println(String.format("    throughput: %.1f MB/s", result.getThroughput()));
+	    System.out.println(String.format("    ratio: %.3f", result.getRatio()));
+	}
+	System.out.println("auto at " + minThroughput + " MB/s: " + CodecBenchmark.selectCodec(results, minThroughput));
+    }
+
+    private static byte[] readAll(List<File> files) throws IOException {
+	long size = 0;
+	for (File file : files) {
+	    size += file.length();
+	}
+	return CodecBenchmark.readSample(files, (int) Math.min(size, Integer.MAX_VALUE - 8));
+    }
+}
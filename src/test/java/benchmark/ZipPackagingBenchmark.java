@@ -0,0 +1,161 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import algorithm.ZipPackaging;
+import codec.ParallelZipWriter;
+
+/**
+ * Compares the throughput of the {@link ParallelZipWriter}, which is used by
+ * the {@link ZipPackaging}, with a single ZipArchiveOutputStream, which was
+ * used before. The dataset consists of text like and random files, half of
+ * them small and half of them large. Each archive is opened again with
+ * java.util.zip, to check that it has all entries.
+ *
+ * Run it with: java benchmark.ZipPackagingBenchmark [files] [megabytes]
+ * [threads]
+ */
+public class ZipPackagingBenchmark {
+    private static final String[] WORDS = { "PeriCAT", "carrier", "payload", "encapsulation", "metadata",
+	    "restoration", "archive", "digital", "preservation", "the", "of", "and" };
+
+    public static void main(String[] args) throws IOException {
+	int files = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+	int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+	int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+	File directory = new File(FileUtils.getTempDirectory(), "ZipPackagingBenchmark");
+	File dataDirectory = new File(directory, "data");
+	File output = new File(directory, "output.zip");
+	try {
+	    createDataset(dataDirectory, files, megabytes * 1024L * 1024L);
+	    File[] dataset = dataDirectory.listFiles();
+	    long start = System.nanoTime();
+	    writeWithArchiveStream(dataset, output);
+	    print("ZipArchiveOutputStream", System.nanoTime() - start, dataset, output);
+	    benchmark(1, dataset, output);
+	    if (threads > 1) {
+		benchmark(threads, dataset, output);
+	    }
+	} finally {
+	    FileUtils.deleteDirectory(directory);
+	}
+    }
+
+    /**
+     * Creates the files, which are text like with even and random with odd
+     * numbers. Every second pair of files is 100 times larger than the other
+     * pairs.
+     */
+    private static void createDataset(File directory, int files, long totalSize) throws IOException {
+	directory.mkdirs();
+	Random random = new Random(0);
+	long unit = Math.max(1, totalSize / (files / 2 * 100 + (files - files / 2)));
+	for (int i = 0; i < files; i++) {
+	    long size = (i / 2) % 2 == 0 ? unit : unit * 100;
+	    OutputStream output = new FileOutputStream(new File(directory, String.format("file%05d.dat", i)));
+	    try {
+		byte[] buffer = new byte[64 * 1024];
+		for (long written = 0; written < size; written += buffer.length) {
+		    if (i % 2 == 0) {
+			fillWithText(buffer, random);
+		    } else {
+			random.nextBytes(buffer);
+		    }
+		    output.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+		}
+	    } finally {
+		output.close();
+	    }
+	}
+    }
+
+    private static void fillWithText(byte[] buffer, Random random) {
+	int position = 0;
+	while (position < buffer.length) {
+	    byte[] word = (WORDS[random.nextInt(WORDS.length)] + ' ').getBytes();
+	    int length = Math.min(word.length, buffer.length - position);
+	    System.arraycopy(word, 0, buffer, position, length);
+	    position += length;
+	}
+    }
+
+    private static void writeWithArchiveStream(File[] dataset, File output) throws IOException {
+	ZipArchiveOutputStream archiveStream = new ZipArchiveOutputStream(output);
+	try {
+	    for (File file : dataset) {
+		archiveStream.putArchiveEntry(new ZipArchiveEntry(file.getName()));
+		InputStream input = new FileInputStream(file);
+		try {
+		    IOUtils.copy(input, archiveStream);
+		} finally {
+		    input.close();
+		}
+		archiveStream.closeArchiveEntry();
+	    }
+	} finally {
+	    archiveStream.close();
+	}
+    }
+
+    private static void benchmark(int threads, File[] dataset, File output) throws IOException {
+	long start = System.nanoTime();
+	ParallelZipWriter zipWriter = new ParallelZipWriter(output, Deflater.DEFAULT_COMPRESSION, threads);
+	try {
+	    for (File file : dataset) {
+		zipWriter.addEntry(file.getName(), file);
+	    }
+	    zipWriter.finish();
+	} finally {
+	    zipWriter.close();
+	}
+	print("ParallelZipWriter, " + threads + (threads == 1 ? " thread" : " threads"), System.nanoTime() - start,
+		dataset, output);
+    }
+
+    private static void print(String writer, long time, File[] dataset, File output) throws IOException {
+	long size = 0;
+	for (File file : dataset) {
+	    size += file.length();
+	}
+	ZipFile zipFile = new ZipFile(output);
+	int entries = zipFile.size();
+	zipFile.close();
+	System.out.println(writer);
+	System.out.println("    time: " + time / 1000000 + " ms");
+	System.out.println(String.format("    throughput: %.1f MB/s", size / 1024.0 / 1024.0 / (time / 1e9)));
+	System.out.println("    size: " + output.length() / 1024 + " KB");
+	System.out.println("    all entries: " + (entries == dataset.length));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import ar.com.hjg.pngj.FilterType;
+import codec.PNGChunkStream.Chunk;
+
+public class PNGEncoderTest {
+
+    @Test
+    public void parallelRoundTripTest() throws IOException {
+	// The raw image data is many times larger than one block:
+	BufferedImage image = createImage(700, 500);
+	int[] levels = { 1, 6, 9 };
+	int[] levelFlags = { 0, 2, 3 };
+	for (int i = 0; i < levels.length; i++) {
+	    File output = File.createTempFile("parallel", ".png");
+	    try {
+		new PNGEncoder(levels[i], FilterType.FILTER_DEFAULT, 4).write(image, output);
+		assertSamePixels(image, ImageIO.read(output));
+		byte[] zlibHeader = readZlibHeader(output);
+		assertEquals(0, ((zlibHeader[0] & 0xff) << 8 | (zlibHeader[1] & 0xff)) % 31);
+		assertEquals(levelFlags[i], (zlibHeader[1] & 0xff) >> 6);
+	    } finally {
+		output.delete();
+	    }
+	}
+    }
+
+    @Test
+    public void defaultCompressionLevelTest() throws DataFormatException {
+	byte[] data = new byte[3 * ParallelDeflaterStream.BLOCK_SIZE + 1000];
+	new Random(1).nextBytes(data);
+	Arrays.fill(data, 1000, 200000, (byte) 7);
+	ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+	ParallelDeflaterStream deflaterStream = new ParallelDeflaterStream(compressed, 4096, data.length,
+		Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 2);
+	// Rows are written one by one, like by PNGJ:
+	for (int offset = 0; offset < data.length; offset += 4096) {
+	    deflaterStream.write(data, offset, Math.min(4096, data.length - offset));
+	}
+	deflaterStream.close();
+	byte[] zlibStream = compressed.toByteArray();
+	// The default level is level 6:
+	assertEquals(2, (zlibStream[1] & 0xff) >> 6);
+	Inflater inflater = new Inflater();
+	inflater.setInput(zlibStream);
+	byte[] inflated = new byte[data.length];
+	int length = 0;
+	while (!inflater.finished() && length < inflated.length) {
+	    length += inflater.inflate(inflated, length, inflated.length - length);
+	}
+	assertTrue(inflater.finished());
+	inflater.end();
+	assertTrue(Arrays.equals(data, inflated));
+    }
+
+    /**
+     * Creates an image with gradients and noise, which compresses neither too
+     * well nor too badly.
+     */
+    private BufferedImage createImage(int width, int height) {
+	BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	Random random = new Random(42);
+	for (int y = 0; y < height; y++) {
+	    for (int x = 0; x < width; x++) {
+		int noise = random.nextInt(16);
+		image.setRGB(x, y, (x % 256) << 16 | (y % 256) << 8 | (x + y + noise) % 256);
+	    }
+	}
+	return image;
+    }
+
+    private void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+	assertEquals(expected.getWidth(), actual.getWidth());
+	assertEquals(expected.getHeight(), actual.getHeight());
+	for (int y = 0; y < expected.getHeight(); y++) {
+	    for (int x = 0; x < expected.getWidth(); x++) {
+		assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+	    }
+	}
+    }
+
+    /**
+     * @return the first two bytes of the image data
+     */
+    private byte[] readZlibHeader(File png) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(png, "r");
+	try {
+	    PNGChunkStream chunks = new PNGChunkStream(file.getChannel());
+	    for (Chunk chunk : chunks.getChunks()) {
+		if (chunk.type.equals("IDAT")) {
+		    return chunks.readData(chunk, 2);
+		}
+	    }
+	    throw new IOException("The PNG image has no image data.");
+	} finally {
+	    file.close();
+	}
+    }
+}
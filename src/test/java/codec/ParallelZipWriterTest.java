@@ -0,0 +1,99 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import main.TestDataProvider;
+
+public class ParallelZipWriterTest {
+
+    @Test
+    public void deflatedAndStoredEntriesTest() throws IOException {
+	// The text file is deflated in several blocks, the jpg file is stored:
+	byte[] text = createText(2 * ParallelZipWriter.BLOCK_SIZE + 1000);
+	File textFile = File.createTempFile("blocks", ".txt");
+	File zipFile = File.createTempFile("parallel", ".zip");
+	try {
+	    FileUtils.writeByteArrayToFile(textFile, text);
+	    ParallelZipWriter writer = new ParallelZipWriter(zipFile, 6, 4);
+	    try {
+		writer.addEntry("blocks.txt", textFile);
+		writer.addEntry("image.jpg", TestDataProvider.JPG_FILE);
+		writer.finish();
+	    } finally {
+		writer.close();
+	    }
+	    ZipFile archive = new ZipFile(zipFile);
+	    try {
+		assertEquals(2, archive.size());
+		ZipEntry textEntry = archive.getEntry("blocks.txt");
+		assertEquals(ZipEntry.DEFLATED, textEntry.getMethod());
+		assertEquals(text.length, textEntry.getSize());
+		assertTrue(textEntry.getCompressedSize() < text.length / 2);
+		assertArrayEquals(text, readEntry(archive, textEntry));
+		ZipEntry imageEntry = archive.getEntry("image.jpg");
+		assertEquals(ZipEntry.STORED, imageEntry.getMethod());
+		assertEquals(TestDataProvider.JPG_FILE.length(), imageEntry.getCompressedSize());
+		assertArrayEquals(FileUtils.readFileToByteArray(TestDataProvider.JPG_FILE),
+			readEntry(archive, imageEntry));
+	    } finally {
+		archive.close();
+	    }
+	} finally {
+	    textFile.delete();
+	    zipFile.delete();
+	}
+    }
+
+    /**
+     * @return random words of a small alphabet, which deflate well
+     */
+    private static byte[] createText(int length) {
+	Random random = new Random(1);
+	byte[] text = new byte[length];
+	for (int i = 0; i < length; i++) {
+	    text[i] = (byte) (random.nextInt(6) == 0 ? ' ' : 'a' + random.nextInt(8));
+	}
+	return text;
+    }
+
+    private static byte[] readEntry(ZipFile archive, ZipEntry entry) throws IOException {
+	InputStream input = archive.getInputStream(entry);
+	try {
+	    return IOUtils.toByteArray(input);
+	} finally {
+	    input.close();
+	}
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * This project has received funding from the European Unions Seventh 
+ * Framework Programme for research, technological development and 
+ * demonstration under grant agreement no FP7-601138 PERICLES.
+ * 
+ * Copyright 2015 Anna Eggers, State- and Univeristy Library Goettingen
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import codec.PixelBytePacking.UnpackedFile;
+
+public class PixelBytePackingTest {
+
+    @Test
+    public void damagedImageTest() throws IOException {
+	byte[] data = new byte[3000];
+	new Random(1).nextBytes(data);
+	File file = File.createTempFile("packed", ".bin");
+	File image = File.createTempFile("packed", ".png");
+	File directory = new File(FileUtils.getTempDirectory(), "unpacked" + System.nanoTime());
+	try {
+	    FileUtils.writeByteArrayToFile(file, data);
+	    directory.mkdir();
+	    PixelBytePacking.pack(file, 20, image);
+	    UnpackedFile unpackedFile = PixelBytePacking.unpack(image, directory);
+	    assertTrue(unpackedFile.checksumValid);
+	    assertEquals(file.getAbsolutePath(), unpackedFile.originalPath);
+	    assertArrayEquals(data, FileUtils.readFileToByteArray(unpackedFile.file));
+
+	    // A changed pixel of the file data is kept, and marked as invalid:
+	    BufferedImage pixels = ImageIO.read(image);
+	    int lastRow = pixels.getHeight() - 1;
+	    pixels.setRGB(0, lastRow, ~pixels.getRGB(0, lastRow));
+	    ImageIO.write(pixels, "png", image);
+	    unpackedFile = PixelBytePacking.unpack(image, directory);
+	    assertFalse(unpackedFile.checksumValid);
+	    assertEquals(file.getName(), unpackedFile.file.getName());
+	    assertEquals(data.length, unpackedFile.file.length());
+	} finally {
+	    file.delete();
+	    image.delete();
+	    FileUtils.deleteQuietly(directory);
+	}
+    }
+}
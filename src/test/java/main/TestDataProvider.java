@@ -48,6 +48,8 @@ public class TestDataProvider {
     public final static File TXT_FILE_2 = new File(TEST_DIRECTORY + "testdata/short.txt");
     public final static File TXT_FILE_3 = new File(TEST_DIRECTORY + "testdata/short_tutorial.txt");
     public final static File XML_FILE = new File(TEST_DIRECTORY + "testdata/metadata.xml");
+    /** Page of the QR-code batch with the four text and xml files */
+    public final static File QR_CODE_PAGE_FILE = new File(TEST_DIRECTORY + "testdata/qrcode_page.png");
 
     public static EncapsulationData getDatasetBmp() {
 	List<File> bmpPayload = new ArrayList<File>();